@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jmh;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.sussex.gdsc.analytics.parameters.NoIndexCurrencyParameter;
+import uk.ac.sussex.gdsc.analytics.parameters.OneIndexCurrencyParameter;
+import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
+
+/**
+ * Benchmark the formatting of currency parameters.
+ *
+ * <p>The baseline creates a new currency {@link NumberFormat} for each value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-server", "-Xms512M", "-Xmx512M"})
+public class CurrencyFormatBenchmark {
+  /** The locale. */
+  @Param({"en-GB", "de-DE", "ja-JP"})
+  private String languageTag;
+
+  /** The value. */
+  @Param({"1.99", "1234567.891"})
+  private double value;
+
+  /** The locale. */
+  private Locale locale;
+
+  /** The no index parameter. */
+  private NoIndexCurrencyParameter noIndexParameter;
+
+  /** The one index parameter. */
+  private OneIndexCurrencyParameter oneIndexParameter;
+
+  /** The string builder. */
+  private final StringBuilder sb = new StringBuilder();
+
+  /**
+   * Create the parameters.
+   */
+  @Setup
+  public void setup() {
+    locale = Locale.forLanguageTag(languageTag);
+    noIndexParameter =
+        new NoIndexCurrencyParameter(ProtocolSpecification.TRANSACTION_REVENUE, locale, value);
+    oneIndexParameter =
+        new OneIndexCurrencyParameter(ProtocolSpecification.PRODUCT_PRICE, locale, 3, value);
+  }
+
+  /**
+   * Format using a new number format.
+   *
+   * @return the string builder
+   */
+  @Benchmark
+  public StringBuilder numberFormat() {
+    sb.setLength(0);
+    return sb.append("tr=").append(NumberFormat.getCurrencyInstance(locale).format(value));
+  }
+
+  /**
+   * Format the no index parameter.
+   *
+   * @return the string builder
+   */
+  @Benchmark
+  public StringBuilder noIndexCurrencyParameter() {
+    sb.setLength(0);
+    return noIndexParameter.formatTo(sb);
+  }
+
+  /**
+   * Format the one index parameter.
+   *
+   * @return the string builder
+   */
+  @Benchmark
+  public StringBuilder oneIndexCurrencyParameter() {
+    sb.setLength(0);
+    return oneIndexParameter.formatTo(sb);
+  }
+}
@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jmh;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.GzipHitTransport;
+import uk.ac.sussex.gdsc.analytics.HitBatch;
+import uk.ac.sussex.gdsc.analytics.HitTransport;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+/**
+ * Benchmark the gzip compression of a batch of hits.
+ *
+ * <p>The time is for compression of the batch. Divide by the number of hits for the CPU cost per
+ * hit. The auxiliary counters report the total bytes before and after compression; the ratio is
+ * the compressed size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-server", "-Xms512M", "-Xmx512M"})
+public class GzipBatchBenchmark {
+  /** The number of hits in the batch. */
+  @Param({"1", "20"})
+  private int hits;
+
+  /** The compression level. */
+  @Param({"1", "6", "9"})
+  private int level;
+
+  /** The payload. */
+  private ByteBuffer payload;
+
+  /** The batch. */
+  private HitBatch batch;
+
+  /**
+   * The auxiliary counters.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    /** The bytes before compression. */
+    public long bytesIn;
+    /** The bytes after compression. */
+    public long bytesOut;
+  }
+
+  /**
+   * The transport. This records the compressed size.
+   */
+  @State(Scope.Thread)
+  public static class Transport {
+    /** The size of the last payload. */
+    int size;
+    /** The transport. */
+    GzipHitTransport gzip;
+
+    /**
+     * Create the transport.
+     *
+     * @param state the benchmark state
+     */
+    @Setup(Level.Trial)
+    public void setup(GzipBatchBenchmark state) {
+      final CompletableFuture<DispatchStatus> complete =
+          CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+      final HitTransport delegate = (payload, batch) -> {
+        size = payload.remaining();
+        return complete;
+      };
+      gzip = new GzipHitTransport(delegate, state.level);
+    }
+
+    /**
+     * Close the transport.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      gzip.close();
+    }
+  }
+
+  /**
+   * Create the batch of hits. Each hit is from a different client and page.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    final StringBuilder sb = new StringBuilder();
+    final ThreadLocalRandom rng = ThreadLocalRandom.current();
+    for (int i = 0; i < hits; i++) {
+      if (i != 0) {
+        sb.append('\n');
+      }
+      sb.append(Parameters.newRequiredBuilder("UA-12345-6")
+          .addHitType(HitType.PAGEVIEW).addClientId(UUID.randomUUID())
+          .addDocumentHostName("www.example.com").addDocumentPath("/docs/page" + rng.nextInt(100))
+          .addDocumentTitle("Documentation page").addScreenResolution(1920, 1080)
+          .addUserLanguage(Locale.UK).addApplicationName("gdsc-analytics")
+          .addApplicationVersion("3.1").build().format());
+    }
+    payload = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    batch = HitBatch.of(hits);
+  }
+
+  /**
+   * Send the batch with gzip compression.
+   *
+   * @param transport the transport
+   * @param counters the counters
+   * @return the status
+   */
+  @Benchmark
+  public DispatchStatus gzip(Transport transport, Counters counters) {
+    final DispatchStatus status = transport.gzip.send(payload, batch).join();
+    counters.bytesIn += payload.remaining();
+    counters.bytesOut += transport.size;
+    return status;
+  }
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jmh;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.sussex.gdsc.analytics.parameters.HitParser;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+/**
+ * Benchmark the parsing of URL encoded hits.
+ *
+ * <p>The baseline splits the hit using {@link String#split(String)} and decodes using
+ * {@link URLDecoder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-server", "-Xms512M", "-Xmx512M"})
+public class HitParserBenchmark {
+  /** The hit. */
+  private final String hit = Parameters.newRequiredBuilder("UA-12345-6")
+      .addHitType(HitType.PAGEVIEW).addDocumentLocationUrl("http://www.example.com/index.html")
+      .addDocumentTitle("Hit parser benchmark").addCustomDimension(12, "dimension value")
+      .addCustomMetric(3, 42).addNonInteractionHit(true).addCacheBuster().build().format();
+
+  /** The parser. */
+  private final HitParser parser = new HitParser();
+
+  /**
+   * Split and decode each name and value.
+   *
+   * @param bh the blackhole
+   * @throws UnsupportedEncodingException if UTF-8 is not supported
+   */
+  @Benchmark
+  public void split(Blackhole bh) throws UnsupportedEncodingException {
+    for (final String pair : hit.split("&")) {
+      final int index = pair.indexOf('=');
+      bh.consume(URLDecoder.decode(pair.substring(0, index), "UTF-8"));
+      bh.consume(URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+    }
+  }
+
+  /**
+   * Parse each pair and resolve the specification.
+   *
+   * @param bh the blackhole
+   */
+  @Benchmark
+  public void parseSpecification(Blackhole bh) {
+    parser.reset(hit);
+    while (parser.next()) {
+      bh.consume(parser.getSpecification());
+      bh.consume(parser.getValueStart());
+    }
+  }
+
+  /**
+   * Parse each pair and decode the value.
+   *
+   * @param bh the blackhole
+   */
+  @Benchmark
+  public void parseValue(Blackhole bh) {
+    parser.reset(hit);
+    while (parser.next()) {
+      bh.consume(parser.getSpecification());
+      bh.consume(parser.getValue());
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.sussex.gdsc.analytics.parameters.ParameterUtils;
+
+/**
+ * Benchmark the formatting of number parameters.
+ *
+ * <p>The baseline uses {@link StringBuilder#append(double)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-server", "-Xms512M", "-Xmx512M"})
+public class NumberFormatBenchmark {
+  /** The value. */
+  @Param({"1.5", "3.141592653589793", "1.0E-5", "123456.789"})
+  private double value;
+
+  /** The string builder. */
+  private final StringBuilder sb = new StringBuilder();
+
+  /**
+   * Format using the string builder.
+   *
+   * @return the string builder
+   */
+  @Benchmark
+  public StringBuilder append() {
+    sb.setLength(0);
+    return sb.append(value);
+  }
+
+  /**
+   * Format using the parameter utilities.
+   *
+   * @return the string builder
+   */
+  @Benchmark
+  public StringBuilder appendNumberTo() {
+    sb.setLength(0);
+    return ParameterUtils.appendNumberTo(sb, value);
+  }
+}
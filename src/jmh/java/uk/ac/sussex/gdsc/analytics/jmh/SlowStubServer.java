@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jmh;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.sussex.gdsc.analytics.VirtualThreads;
+
+/**
+ * A stub server that responds slowly to hits.
+ *
+ * <p>The server is run in its own JVM so that each end of a connection uses the file descriptors
+ * of a different process. The port is written to standard output when the server has started.
+ *
+ * <p>The server handles:
+ *
+ * <ul>
+ *
+ * <li>{@code /collect}: Discard the request and respond with 200 after the delay.
+ *
+ * <li>{@code /stats}: Respond with the peak number of {@code /collect} requests in-flight and
+ * reset the peak.
+ *
+ * </ul>
+ */
+public final class SlowStubServer {
+  /** The buffer used to read requests. */
+  private final ThreadLocal<byte[]> buffer = ThreadLocal.withInitial(() -> new byte[1024]);
+
+  /** The number of requests in-flight. */
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  /** The peak number of requests in-flight. */
+  private final AtomicInteger peakInFlight = new AtomicInteger();
+
+  /** The response delay (in milliseconds). */
+  private final int delay;
+
+  /**
+   * Create a new instance.
+   *
+   * @param delay the response delay (in milliseconds)
+   */
+  private SlowStubServer(int delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * Start the server.
+   *
+   * <p>Arguments are the connection backlog and the response delay (in milliseconds).
+   *
+   * @param args the arguments
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static void main(String[] args) throws IOException {
+    final int backlog = Integer.parseInt(args[0]);
+    final SlowStubServer stub = new SlowStubServer(Integer.parseInt(args[1]));
+    final HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), backlog);
+    server.createContext("/collect", stub::collect);
+    server.createContext("/stats", stub::stats);
+    // The server must not limit the concurrency
+    server.setExecutor(VirtualThreads.isAvailable() ? VirtualThreads.newExecutorService()
+        : Executors.newCachedThreadPool());
+    server.start();
+    System.out.println(server.getAddress().getPort());
+    System.out.flush();
+  }
+
+  /**
+   * Handle a hit.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void collect(HttpExchange exchange) throws IOException {
+    // Consume the request body so the connection can be reused
+    try (InputStream in = exchange.getRequestBody()) {
+      while (in.read(buffer.get()) != -1) {
+        // Discard
+      }
+    }
+    final int count = inFlight.incrementAndGet();
+    peakInFlight.accumulateAndGet(count, Math::max);
+    try {
+      Thread.sleep(delay);
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inFlight.decrementAndGet();
+    }
+    exchange.sendResponseHeaders(200, -1);
+    exchange.close();
+  }
+
+  /**
+   * Report and reset the peak number of requests in-flight.
+   *
+   * @param exchange the exchange
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void stats(HttpExchange exchange) throws IOException {
+    final byte[] body =
+        Integer.toString(peakInFlight.getAndSet(0)).getBytes(StandardCharsets.US_ASCII);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jmh;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.sussex.gdsc.analytics.DefaultHitDispatcher;
+import uk.ac.sussex.gdsc.analytics.FlushResult;
+import uk.ac.sussex.gdsc.analytics.GoogleAnalyticsClient;
+import uk.ac.sussex.gdsc.analytics.VirtualThreads;
+
+/**
+ * Benchmark sending hits to a local stub server that responds slowly.
+ *
+ * <p>Compares a cached pool of platform threads with virtual threads (Java 21+). The time is for
+ * all the hits to be sent. The auxiliary counters report the peak number of requests in-flight at
+ * the server, the peak number of live platform threads and the heap used (in MiB) when all the
+ * hits have been submitted. The counters are summed over the iterations in the summary table; use
+ * the per-iteration average.
+ *
+ * <p>The {@link SlowStubServer} runs in a separate JVM. Each concurrent request uses a file
+ * descriptor in each process so the open file limit ({@code ulimit -n}) must exceed the number of
+ * requests.
+ *
+ * <p>Results on JDK 21.0.1 (Linux, 1 GiB heap) for 10000 requests with a 200 ms delay (mean of 5
+ * iterations):
+ *
+ * <pre>
+ * executor  time (ms)  peak in-flight (max)  peak threads  heap used (MiB)
+ * platform       4184          2763 (3677)          4317              269
+ * virtual        3350          8375 (9921)            16               25
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-server", "-Xms1G", "-Xmx1G"})
+public class VirtualThreadBenchmark {
+  /** The number of bytes in a MiB. */
+  private static final long MIB = 1L << 20;
+
+  /** The executor type. */
+  @Param({"platform", "virtual"})
+  private String executor;
+
+  /** The number of concurrent requests. */
+  @Param({"10000"})
+  private int requests;
+
+  /** The response delay of the server (in milliseconds). */
+  @Param({"200"})
+  private int delay;
+
+  /** The stub server process. */
+  private Process server;
+
+  /** The URL of the stub server. */
+  private URL url;
+
+  /** The URL of the stub server statistics. */
+  private URL stats;
+
+  /** The client. */
+  private GoogleAnalyticsClient client;
+
+  /** The executor service of the client. */
+  private ExecutorService clientExecutor;
+
+  /**
+   * The auxiliary counters.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    /** The peak number of requests in-flight at the server. */
+    public long peakInFlight;
+    /** The peak number of live platform threads. */
+    public long peakThreads;
+    /** The heap used when all the hits have been submitted (in MiB). */
+    public long heapUsed;
+  }
+
+  /**
+   * Start the stub server.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Setup(Level.Trial)
+  public void setupServer() throws IOException {
+    if ("virtual".equals(executor) && !VirtualThreads.isAvailable()) {
+      throw new IllegalStateException("Virtual threads require Java 21");
+    }
+    final String java =
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+        SlowStubServer.class.getName(), Integer.toString(requests), Integer.toString(delay))
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(server.getInputStream(), StandardCharsets.US_ASCII));
+    final String port = reader.readLine();
+    if (port == null) {
+      server.destroy();
+      throw new IOException("Stub server failed to start");
+    }
+    final String host = InetAddress.getLoopbackAddress().getHostAddress();
+    url = new URL("http", host, Integer.parseInt(port), "/collect");
+    stats = new URL("http", host, Integer.parseInt(port), "/stats");
+  }
+
+  /**
+   * Create the client.
+   */
+  @Setup(Level.Iteration)
+  public void setupClient() {
+    final GoogleAnalyticsClient.Builder builder = GoogleAnalyticsClient.newBuilder("UA-12345-6")
+        .setHitDispatcher(new DefaultHitDispatcher(url)).setThreadCount(0)
+        .setVirtualThreads("virtual".equals(executor));
+    clientExecutor = builder.getOrCreateExecutorService();
+    client = builder.build();
+    ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    System.gc();
+  }
+
+  /**
+   * Shutdown the client.
+   */
+  @TearDown(Level.Iteration)
+  public void tearDownClient() {
+    clientExecutor.shutdownNow();
+  }
+
+  /**
+   * Stop the stub server.
+   */
+  @TearDown(Level.Trial)
+  public void tearDownServer() {
+    server.destroy();
+  }
+
+  /**
+   * Read and reset the peak number of requests in-flight at the stub server.
+   *
+   * @return the peak number of requests in-flight
+   */
+  private int readPeakInFlight() {
+    try (InputStream in = stats.openStream()) {
+      final byte[] bytes = new byte[16];
+      int length = 0;
+      for (int n; (n = in.read(bytes, length, bytes.length - length)) > 0;) {
+        length += n;
+      }
+      return Integer.parseInt(new String(bytes, 0, length, StandardCharsets.US_ASCII));
+    } catch (final IOException ex) {
+      throw new IllegalStateException("Failed to read the stub server statistics", ex);
+    }
+  }
+
+  /**
+   * Send the hits and wait for completion.
+   *
+   * @param counters the counters
+   * @return the result
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Benchmark
+  public FlushResult send(Counters counters) throws InterruptedException {
+    for (int i = 0; i < requests; i++) {
+      client.event("benchmark", "send").send();
+    }
+    final Runtime runtime = Runtime.getRuntime();
+    counters.heapUsed = (runtime.totalMemory() - runtime.freeMemory()) / MIB;
+    final FlushResult result = client.flush(1, TimeUnit.MINUTES);
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    counters.peakThreads = threads.getPeakThreadCount();
+    counters.peakInFlight = readPeakInFlight();
+    return result;
+  }
+}
@@ -0,0 +1,265 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorate a {@link HitTransport} to combine single hits into batch requests.
+ *
+ * <p>Hits are collected until the batch is full or the linger time has elapsed since the first
+ * hit was added. The batch is then sent using the delegate transport. The delegate should send to
+ * the batch endpoint, e.g. {@link UrlUtils#getGoogleAnalyticsBatchUrl(boolean)}. The future
+ * returned for each hit completes with the result of its batch.
+ *
+ * <p>The batch limits of the Google Analytics Measurement Protocol are respected: a batch has at
+ * most {@value #MAX_BATCH_HITS} hits and {@value #MAX_BATCH_BYTES} bytes. A hit larger than
+ * {@value #MAX_HIT_BYTES} bytes, or a payload that is already a batch or is encoded, is passed
+ * directly to the delegate.
+ *
+ * <p>Note: Any queue time in the hit is computed before the hit is added to the batch. It does not
+ * include the time the hit waits for the batch to be sent, which is at most the linger time.
+ */
+public final class BatchingHitTransport implements HitTransport {
+
+  /** The maximum number of hits in a batch. */
+  public static final int MAX_BATCH_HITS = 20;
+
+  /** The maximum number of bytes for a hit in a batch. */
+  public static final int MAX_HIT_BYTES = 8192;
+
+  /** The maximum number of bytes for a batch. */
+  public static final int MAX_BATCH_BYTES = 16384;
+
+  /** The separator between hits. */
+  private static final byte NEW_LINE = '\n';
+
+  /** The delegate transport. */
+  private final HitTransport delegate;
+
+  /** The executor used to schedule sending a batch after the linger time. */
+  private final ScheduledExecutorService scheduler;
+
+  /** The maximum number of hits in a batch. */
+  private final int maxHits;
+
+  /** The linger time (in nanoseconds). */
+  private final long linger;
+
+  /** The buffer for the current batch. */
+  private final byte[] buffer = new byte[MAX_BATCH_BYTES];
+
+  /** The number of bytes in the current batch. */
+  private int size;
+
+  /** The results for the hits in the current batch. */
+  private final List<CompletableFuture<DispatchStatus>> results = new ArrayList<>();
+
+  /** The identifier of the current batch. */
+  private long batchId;
+
+  /**
+   * A batch of hits to send.
+   */
+  private static final class Batch {
+    /** The payload. */
+    final byte[] payload;
+    /** The results for the hits. */
+    final List<CompletableFuture<DispatchStatus>> results;
+
+    /**
+     * Create a new instance.
+     *
+     * @param payload the payload
+     * @param results the results
+     */
+    Batch(byte[] payload, List<CompletableFuture<DispatchStatus>> results) {
+      this.payload = payload;
+      this.results = results;
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param delegate the delegate transport
+   * @param scheduler the executor used to schedule sending a batch after the linger time
+   * @param maxHits the maximum number of hits in a batch
+   * @param linger the time to wait for more hits after the first hit is added to a batch
+   * @param unit the unit of the linger time
+   * @throws IllegalArgumentException if the maximum hits is not in the range {@code [1, 20]} or
+   *         the linger time is negative
+   */
+  public BatchingHitTransport(HitTransport delegate, ScheduledExecutorService scheduler,
+      int maxHits, long linger, TimeUnit unit) {
+    this.delegate = Objects.requireNonNull(delegate, "Transport");
+    this.scheduler = Objects.requireNonNull(scheduler, "Scheduler");
+    if (maxHits <= 0 || maxHits > MAX_BATCH_HITS) {
+      throw new IllegalArgumentException(
+          "Max hits is not in [1, " + MAX_BATCH_HITS + "]: " + maxHits);
+    }
+    if (linger < 0) {
+      throw new IllegalArgumentException("Linger time is negative: " + linger);
+    }
+    this.maxHits = maxHits;
+    this.linger = unit.toNanos(linger);
+  }
+
+  /**
+   * Gets the maximum number of hits in a batch.
+   *
+   * @return the maximum hits
+   */
+  public int getMaxHits() {
+    return maxHits;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The payload of a single hit is copied to the current batch and can be reused when this
+   * method returns.
+   */
+  @Override
+  public CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch) {
+    final int length = payload.remaining();
+    if (batch.getHitCount() != 1 || batch.getContentEncoding() != null
+        || !batch.isDefaultContentType() || length > MAX_HIT_BYTES) {
+      return delegate.send(payload, batch);
+    }
+    final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+    Batch overflow = null;
+    Batch full = null;
+    long lingerId = -1;
+    synchronized (this) {
+      if (size != 0 && size + 1 + length > MAX_BATCH_BYTES) {
+        overflow = take();
+      }
+      if (size != 0) {
+        buffer[size++] = NEW_LINE;
+      }
+      payload.duplicate().get(buffer, size, length);
+      size += length;
+      results.add(result);
+      if (results.size() == maxHits) {
+        full = take();
+      } else if (results.size() == 1) {
+        lingerId = batchId;
+      }
+    }
+    dispatch(overflow);
+    dispatch(full);
+    if (lingerId >= 0) {
+      final long id = lingerId;
+      try {
+        scheduler.schedule(() -> flush(id), linger, TimeUnit.NANOSECONDS);
+      } catch (final RejectedExecutionException ex) {
+        // Scheduler has been shutdown
+        flush(id);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Send the current batch immediately.
+   */
+  public void flush() {
+    Batch batch;
+    synchronized (this) {
+      batch = results.isEmpty() ? null : take();
+    }
+    dispatch(batch);
+  }
+
+  /**
+   * Send the batch if it is the current batch.
+   *
+   * @param id the batch identifier
+   */
+  private void flush(long id) {
+    Batch batch = null;
+    synchronized (this) {
+      if (id == batchId && !results.isEmpty()) {
+        batch = take();
+      }
+    }
+    dispatch(batch);
+  }
+
+  /**
+   * Take the current batch and start a new batch. Must be called when holding the lock.
+   *
+   * @return the batch
+   */
+  private Batch take() {
+    final Batch batch = new Batch(Arrays.copyOf(buffer, size), new ArrayList<>(results));
+    size = 0;
+    results.clear();
+    batchId++;
+    return batch;
+  }
+
+  /**
+   * Send the batch using the delegate transport and complete the result of each hit.
+   *
+   * @param batch the batch (may be null)
+   */
+  private void dispatch(Batch batch) {
+    if (batch == null) {
+      return;
+    }
+    CompletableFuture<DispatchStatus> future;
+    try {
+      future = delegate.send(ByteBuffer.wrap(batch.payload), HitBatch.of(batch.results.size()));
+    } catch (final RuntimeException ex) {
+      future = new CompletableFuture<>();
+      future.completeExceptionally(ex);
+    }
+    future.whenComplete((status, ex) -> {
+      if (ex == null) {
+        batch.results.forEach(r -> r.complete(status));
+      } else {
+        final Throwable cause =
+            ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        batch.results.forEach(r -> r.completeExceptionally(cause));
+      }
+    });
+  }
+}
@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+/**
+ * The aggregate result of sending a bulk sequence of hits using a {@link GoogleAnalyticsClient}.
+ *
+ * @see GoogleAnalyticsClient#send(Iterable)
+ * @see HitSubscriber
+ */
+public final class BulkResult {
+
+  /** The count of each dispatch status. */
+  private final int[] counts;
+
+  /**
+   * Create a new instance.
+   *
+   * @param counts the count of each dispatch status (indexed by ordinal)
+   */
+  BulkResult(int[] counts) {
+    this.counts = counts;
+  }
+
+  /**
+   * Gets the number of hits with the dispatch status.
+   *
+   * @param status the status
+   * @return the count
+   */
+  public int getCount(DispatchStatus status) {
+    return counts[status.ordinal()];
+  }
+
+  /**
+   * Gets the number of hits sent. This is the count of {@link DispatchStatus#COMPLETE}.
+   *
+   * @return the sent count
+   */
+  public int getSent() {
+    return getCount(DispatchStatus.COMPLETE);
+  }
+
+  /**
+   * Gets the total number of hits.
+   *
+   * @return the total
+   */
+  public int getTotal() {
+    int total = 0;
+    for (final int count : counts) {
+      total += count;
+    }
+    return total;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("BulkResult[total=").append(getTotal());
+    for (final DispatchStatus status : DispatchStatus.values()) {
+      final int count = counts[status.ordinal()];
+      if (count != 0) {
+        sb.append(", ").append(status).append('=').append(count);
+      }
+    }
+    return sb.append(']').toString();
+  }
+}
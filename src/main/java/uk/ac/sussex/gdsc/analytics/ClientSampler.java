@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects a consistent subset of clients to send hits.
+ *
+ * <p>Each client is assigned a fixed point in {@code [0, 1)} using a hash of the client key (the
+ * user Id or client Id). Hits from the client are sent if the point is below the sample rate. All
+ * hits from a client are either sent or dropped so sessions are not fragmented. Lowering the rate
+ * removes clients from the sample; the remaining clients are unchanged.
+ *
+ * <p>The rate can be changed at runtime. The rate is automatically lowered when the number of
+ * queued hits passes a threshold. Thresholds are configured using
+ * {@link #setQueueLimit(int, double)}. The effective rate is the minimum of the rate and the limit
+ * for the highest threshold that has been reached.
+ *
+ * <p>This class is thread-safe. An instance can be shared among client instances; the queue depth
+ * is the total of the hits queued by all the clients.
+ */
+public final class ClientSampler {
+
+  /** The multiplier to convert the upper 53-bits of a long to a double in [0, 1). */
+  private static final double DOUBLE_MULTIPLIER = 0x1.0p-53;
+
+  /** The shift to obtain the upper 53-bits of a long. */
+  private static final int DOUBLE_SHIFT = 11;
+
+  /** The FNV-1a 64-bit offset basis. */
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+  /** The FNV-1a 64-bit prime. */
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /** The sample rate. */
+  private volatile double rate;
+
+  /** The queue limits. */
+  private volatile QueueLimits queueLimits = new QueueLimits(new int[0], new double[0]);
+
+  /** The number of hits queued. */
+  private final AtomicInteger queued = new AtomicInteger();
+
+  /**
+   * The maximum rate for each queue depth threshold.
+   */
+  private static final class QueueLimits {
+    /** The queue depth thresholds, in ascending order. */
+    final int[] depths;
+    /** The maximum rate for each queue depth threshold. */
+    final double[] rates;
+
+    /**
+     * Create a new instance.
+     *
+     * @param depths the depths
+     * @param rates the rates
+     */
+    QueueLimits(int[] depths, double[] rates) {
+      this.depths = depths;
+      this.rates = rates;
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param rate the sample rate
+   * @throws IllegalArgumentException if the rate is not in the range [0, 1]
+   */
+  public ClientSampler(double rate) {
+    setRate(rate);
+  }
+
+  /**
+   * Gets the sample rate.
+   *
+   * @return the sample rate
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Sets the sample rate.
+   *
+   * @param rate the sample rate
+   * @throws IllegalArgumentException if the rate is not in the range [0, 1]
+   */
+  public void setRate(double rate) {
+    this.rate = requireRate(rate);
+  }
+
+  /**
+   * Sets the maximum sample rate when the number of queued hits reaches the threshold.
+   *
+   * <p>A rate of 1 removes the threshold.
+   *
+   * @param depth the queue depth threshold
+   * @param rate the maximum sample rate
+   * @throws IllegalArgumentException if the depth is not strictly positive or the rate is not in
+   *         the range [0, 1]
+   */
+  public synchronized void setQueueLimit(int depth, double rate) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("Depth is not strictly positive: " + depth);
+    }
+    requireRate(rate);
+    final int[] depths = queueLimits.depths;
+    final double[] limits = queueLimits.rates;
+    int[] newDepths = depths;
+    double[] newLimits = limits;
+    int index = Arrays.binarySearch(newDepths, depth);
+    if (index >= 0) {
+      if (rate == 1) {
+        // Remove
+        final int tail = newDepths.length - index - 1;
+        newDepths = Arrays.copyOf(newDepths, newDepths.length - 1);
+        newLimits = Arrays.copyOf(newLimits, newLimits.length - 1);
+        System.arraycopy(depths, index + 1, newDepths, index, tail);
+        System.arraycopy(limits, index + 1, newLimits, index, tail);
+      } else {
+        newLimits = newLimits.clone();
+        newLimits[index] = rate;
+      }
+    } else if (rate != 1) {
+      // Insert
+      index = -index - 1;
+      final int tail = newDepths.length - index;
+      newDepths = Arrays.copyOf(newDepths, newDepths.length + 1);
+      newLimits = Arrays.copyOf(newLimits, newLimits.length + 1);
+      System.arraycopy(depths, index, newDepths, index + 1, tail);
+      System.arraycopy(limits, index, newLimits, index + 1, tail);
+      newDepths[index] = depth;
+      newLimits[index] = rate;
+    }
+    queueLimits = new QueueLimits(newDepths, newLimits);
+  }
+
+  /**
+   * Gets the number of hits queued by the clients using the sampler.
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    return queued.get();
+  }
+
+  /**
+   * Gets the effective sample rate. This is the minimum of the sample rate and the limit for the
+   * current queue depth.
+   *
+   * @return the effective sample rate
+   */
+  public double getEffectiveRate() {
+    double result = rate;
+    final QueueLimits limits = queueLimits;
+    final int[] d = limits.depths;
+    final double[] l = limits.rates;
+    final int depth = queued.get();
+    // Limits are not ordered by rate so check all thresholds that have been reached
+    for (int i = 0; i < d.length && depth >= d[i]; i++) {
+      result = Math.min(result, l[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Checks if the client with the sample point is sampled.
+   *
+   * @param point the sample point in [0, 1)
+   * @return true if sampled
+   * @see #getSamplePoint(String)
+   */
+  public boolean isSampled(double point) {
+    return point < getEffectiveRate();
+  }
+
+  /**
+   * Gets the sample point in {@code [0, 1)} for the client key.
+   *
+   * <p>This uses a 64-bit FNV-1a hash of the characters mixed using the Stafford variant 13 of
+   * the MurmurHash3 finaliser.
+   *
+   * @param clientKey the client key
+   * @return the sample point
+   */
+  public static double getSamplePoint(String clientKey) {
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < clientKey.length(); i++) {
+      hash = (hash ^ clientKey.charAt(i)) * FNV_PRIME;
+    }
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    hash = hash ^ (hash >>> 31);
+    return (hash >>> DOUBLE_SHIFT) * DOUBLE_MULTIPLIER;
+  }
+
+  /**
+   * Record a hit has been queued.
+   */
+  void queued() {
+    queued.incrementAndGet();
+  }
+
+  /**
+   * Record a queued hit has been removed from the queue.
+   */
+  void dequeued() {
+    queued.decrementAndGet();
+  }
+
+  /**
+   * Check the rate is in the range [0, 1].
+   *
+   * @param rate the rate
+   * @return the rate
+   * @throws IllegalArgumentException if the rate is not in the range [0, 1]
+   */
+  private static double requireRate(double rate) {
+    // This is false for NaN
+    if (!(rate >= 0 && rate <= 1)) {
+      throw new IllegalArgumentException("Rate is not in [0, 1]: " + rate);
+    }
+    return rate;
+  }
+}
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+/**
+ * Limits the number of concurrent requests using a limit that adapts to the measured round-trip
+ * time.
+ *
+ * <p>The limit is adjusted using additive-increase/multiplicative-decrease (AIMD):
+ *
+ * <ul>
+ * <li>If a request fails, or the round-trip time exceeds the baseline by the tolerance, then the
+ * limit is multiplied by the backoff ratio. The limit is decreased at most once per window of
+ * in-flight requests: the requests that were in-flight when the limit was decreased do not
+ * decrease it again. This prevents a burst of slow responses from collapsing the limit.
+ * <li>Otherwise the limit is increased by {@code 1 / limit}, i.e. approximately 1 per round-trip
+ * of all in-flight requests. The limit is only increased when the in-flight requests use at least
+ * half of the limit.
+ * </ul>
+ *
+ * <p>The baseline is the minimum round-trip time of the previous window of samples. This allows
+ * the baseline to follow a change in the latency of the endpoint.
+ *
+ * <p>This class is thread-safe. An instance can be shared among client instances.
+ */
+public final class ConcurrencyLimiter {
+
+  /** The default minimum limit. */
+  public static final int DEFAULT_MIN_LIMIT = 1;
+
+  /** The default maximum limit. */
+  public static final int DEFAULT_MAX_LIMIT = 64;
+
+  /** The default initial limit. */
+  private static final int DEFAULT_INITIAL_LIMIT = 4;
+
+  /** The default ratio of the round-trip time to the baseline that signals overload. */
+  private static final double DEFAULT_TOLERANCE = 2;
+
+  /** The default ratio to decrease the limit. */
+  private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+  /** The number of samples in the window used to compute the baseline round-trip time. */
+  private static final int WINDOW_SIZE = 256;
+
+  /** The minimum limit. */
+  private final int minLimit;
+
+  /** The maximum limit. */
+  private final int maxLimit;
+
+  /** The ratio of the round-trip time to the baseline that signals overload. */
+  private final double tolerance;
+
+  /** The ratio to decrease the limit. */
+  private final double backoffRatio;
+
+  /** The limit. Guarded by this. */
+  private double limit;
+
+  /** The number of in-flight requests. Guarded by this. */
+  private int inFlight;
+
+  /** The baseline round-trip time (in nanoseconds). Guarded by this. */
+  private long baseline = Long.MAX_VALUE;
+
+  /** The minimum round-trip time of the current window (in nanoseconds). Guarded by this. */
+  private long windowMin = Long.MAX_VALUE;
+
+  /** The number of samples in the current window. Guarded by this. */
+  private int windowCount;
+
+  /**
+   * The number of releases before the limit can be decreased again. This is the number of
+   * requests that were in-flight when the limit was decreased. Guarded by this.
+   */
+  private int recovery;
+
+  /**
+   * Create a new instance with the default limits.
+   */
+  public ConcurrencyLimiter() {
+    this(DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param minLimit the minimum limit
+   * @param maxLimit the maximum limit
+   * @throws IllegalArgumentException if the minimum is not strictly positive or the maximum is
+   *         below the minimum
+   */
+  public ConcurrencyLimiter(int minLimit, int maxLimit) {
+    this(minLimit, maxLimit, DEFAULT_TOLERANCE, DEFAULT_BACKOFF_RATIO);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param minLimit the minimum limit
+   * @param maxLimit the maximum limit
+   * @param tolerance the ratio of the round-trip time to the baseline that signals overload
+   * @param backoffRatio the ratio to decrease the limit
+   * @throws IllegalArgumentException if the minimum is not strictly positive; the maximum is below
+   *         the minimum; the tolerance is not above 1; or the backoff ratio is not in (0, 1)
+   */
+  public ConcurrencyLimiter(int minLimit, int maxLimit, double tolerance, double backoffRatio) {
+    if (minLimit < 1) {
+      throw new IllegalArgumentException("Minimum limit is not strictly positive: " + minLimit);
+    }
+    if (maxLimit < minLimit) {
+      throw new IllegalArgumentException("Maximum limit is below the minimum: " + maxLimit);
+    }
+    // These are false for NaN
+    if (!(tolerance > 1)) {
+      throw new IllegalArgumentException("Tolerance is not above 1: " + tolerance);
+    }
+    if (!(backoffRatio > 0 && backoffRatio < 1)) {
+      throw new IllegalArgumentException("Backoff ratio is not in (0, 1): " + backoffRatio);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.tolerance = tolerance;
+    this.backoffRatio = backoffRatio;
+    limit = Math.max(minLimit, Math.min(maxLimit, DEFAULT_INITIAL_LIMIT));
+  }
+
+  /**
+   * Gets the minimum limit.
+   *
+   * @return the minimum limit
+   */
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  /**
+   * Gets the maximum limit.
+   *
+   * @return the maximum limit
+   */
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * Gets the current limit.
+   *
+   * @return the limit
+   */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * Gets the number of in-flight requests.
+   *
+   * @return the in-flight requests
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Gets the baseline round-trip time. This is {@link Long#MAX_VALUE} if there are no samples.
+   *
+   * @return the baseline (in nanoseconds)
+   */
+  public synchronized long getBaseline() {
+    return Math.min(baseline, windowMin);
+  }
+
+  /**
+   * Acquire a permit to send a request, waiting if the limit has been reached.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while (inFlight >= (int) limit) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Acquire a permit to send a request if the limit has not been reached.
+   *
+   * @return true if acquired
+   */
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  /**
+   * Release the permit without updating the limit. This is used when the request was not sent.
+   */
+  public synchronized void release() {
+    inFlight--;
+    if (recovery > 0) {
+      recovery--;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Release the permit and update the limit using the round-trip time of the request.
+   *
+   * @param rtt the round-trip time (in nanoseconds)
+   * @param dropped set to true if the request failed
+   */
+  public synchronized void release(long rtt, boolean dropped) {
+    final int used = inFlight;
+    inFlight--;
+    if (!dropped) {
+      windowMin = Math.min(windowMin, rtt);
+      if (++windowCount == WINDOW_SIZE) {
+        baseline = windowMin;
+        windowMin = Long.MAX_VALUE;
+        windowCount = 0;
+      }
+    }
+    if (dropped || rtt > getBaseline() * tolerance) {
+      if (recovery > 0) {
+        // Already decreased for the requests sent with the previous limit
+        recovery--;
+      } else {
+        limit = Math.max(minLimit, limit * backoffRatio);
+        recovery = inFlight;
+      }
+    } else {
+      if (recovery > 0) {
+        recovery--;
+      }
+      if (used * 2 >= limit) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+    }
+    notifyAll();
+  }
+}
@@ -30,26 +30,35 @@
 package uk.ac.sussex.gdsc.analytics;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import uk.ac.sussex.gdsc.analytics.jfr.HitEvents;
 import uk.ac.sussex.gdsc.analytics.parameters.QueueTimeParameter;
 
 /**
  * Sends hit requests to the Google Analytics server.
+ *
+ * <p>The hit is encoded and sent using a {@link HitTransport}. The default transport uses a
+ * {@link HttpURLConnection}.
  */
 public class DefaultHitDispatcher implements HitDispatcher {
 
   /** The logger. */
   private static final Logger logger = Logger.getLogger(DefaultHitDispatcher.class.getName());
 
+  /** The logger for errors. Repeated errors are suppressed. */
+  private static final RateLimitedLogger errorLogger = RateLimitedLogger.newErrorLogger(logger);
+
   /**
    * The shared last IO exception that occurred when dispatching a request. If this is not null then
    * the tracker is disabled as it is assumed that all subsequent tracking requests will fail.
@@ -58,14 +67,8 @@ public class DefaultHitDispatcher implements HitDispatcher {
    */
   private static AtomicReference<IOException> sharedIoException = new AtomicReference<>();
 
-  /** The url used for tracking requests. */
-  private final URL url;
-
-  /** The proxy used for tracking requests. */
-  private Proxy proxy;
-
-  /** The connection provider. */
-  private HttpConnectionProvider connectionProvider;
+  /** The transport used for tracking requests. */
+  private final HitTransport transport;
 
   /**
    * The disabled flag.
@@ -96,8 +99,7 @@ public class DefaultHitDispatcher implements HitDispatcher {
    * @param proxy the proxy (may be null)
    */
   public DefaultHitDispatcher(URL url, Proxy proxy) {
-    // New instances will have their own IO Exception
-    this(url, null, proxy, new AtomicReference<>());
+    this(url, null, proxy);
   }
 
   /**
@@ -119,29 +121,31 @@ public class DefaultHitDispatcher implements HitDispatcher {
    */
   DefaultHitDispatcher(URL url, HttpConnectionProvider connectionProvider, Proxy proxy) {
     // New instances will have their own IO Exception
-    this(url, connectionProvider, proxy, new AtomicReference<>());
+    this(new HttpUrlConnectionTransport(url, connectionProvider, proxy), new AtomicReference<>());
   }
 
   /**
    * Create a new instance.
    *
-   * @param url the url (required)
-   * @param connectionProvider the connection provider (may be null)
-   * @param proxy the proxy (may be null)
+   * <p>Note: The {@link HttpUrlConnectionCallback} passed to
+   * {@link #send(CharSequence, long, HttpUrlConnectionCallback)} is only supported by a
+   * {@link HttpUrlConnectionTransport}. It is ignored by other transports.
+   *
+   * @param transport the transport
+   */
+  public DefaultHitDispatcher(HitTransport transport) {
+    this(transport, new AtomicReference<>());
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param transport the transport (required)
    * @param lastIoException the last io exception (required)
    */
-  private DefaultHitDispatcher(URL url, HttpConnectionProvider connectionProvider, Proxy proxy,
+  private DefaultHitDispatcher(HitTransport transport,
       AtomicReference<IOException> lastIoException) {
-    this.url = Objects.requireNonNull(url, "URL is null");
-    if (connectionProvider == null) {
-      this.connectionProvider = new HttpConnectionProvider() {
-        // Use the default implementation in the interface
-      };
-    } else {
-      this.connectionProvider = connectionProvider;
-    }
-    // Does not matter if this is null
-    this.proxy = proxy;
+    this.transport = Objects.requireNonNull(transport, "Transport is null");
     // This should not be null but check anyway
     this.lastIoException = Objects.requireNonNull(lastIoException, "Invalid internal state");
   }
@@ -178,7 +182,17 @@ public class DefaultHitDispatcher implements HitDispatcher {
   public static DefaultHitDispatcher getDefault(boolean secure, boolean debug, Proxy proxy) {
     // This URL should be effectively final as it is set using System properties
     final URL url = UrlUtils.getGoogleAnalyticsUrl(secure, debug);
-    return new DefaultHitDispatcher(url, null, proxy, sharedIoException);
+    return new DefaultHitDispatcher(new HttpUrlConnectionTransport(url, null, proxy),
+        sharedIoException);
+  }
+
+  /**
+   * Gets the transport.
+   *
+   * @return the transport
+   */
+  public HitTransport getTransport() {
+    return transport;
   }
 
   /**
@@ -191,72 +205,86 @@ public class DefaultHitDispatcher implements HitDispatcher {
    */
   @Override
   public DispatchStatus send(CharSequence hit, long timestamp, HttpUrlConnectionCallback callback) {
+    final Object event = HitEvents.beginDispatch();
+    final DispatchStatus status = sendHit(hit, timestamp, callback);
+    HitEvents.commitDispatch(event, hit, status);
+    return status;
+  }
+
+  /**
+   * Send the hit to Google Analytics.
+   *
+   * @param hit the hit
+   * @param timestamp the timestamp when the hit occurred
+   * @param callback the callback
+   * @return the dispatch status
+   */
+  private DispatchStatus sendHit(CharSequence hit, long timestamp,
+      HttpUrlConnectionCallback callback) {
     // Do nothing if disabled
     if (isDisabled()) {
       return DispatchStatus.DISABLED;
     }
     Objects.requireNonNull(hit, "Hit was null");
+    final byte[] out =
+        addQueueTime(hit, timestamp).toString().getBytes(StandardCharsets.UTF_8);
     try {
-      final HttpURLConnection connection = connectionProvider.openConnection(url, proxy);
-      connection.setRequestMethod("POST");
-      connection.setDoOutput(true);
-      connection.setUseCaches(false);
-      connection.setRequestProperty("Content-Type",
-          "application/x-www-form-urlencoded; charset=utf-8");
-
-      final CharSequence request = addQueueTime(hit, timestamp);
-
-      // Send the request
-      final byte[] out = request.toString().getBytes(StandardCharsets.UTF_8);
-      connection.setFixedLengthStreamingMode(out.length);
-      connection.connect();
-
-      // Once connected ensure that disconnect is called
-      int responseCode;
-      try {
-        try (OutputStream os = connection.getOutputStream()) {
-          os.write(out);
-        }
-        responseCode = connection.getResponseCode();
-        if (callback != null) {
-          callback.process(connection);
-        }
-      } finally {
-        connection.disconnect();
-      }
-
-      //////////////////////////////////////
-      // Note: Valid on 31-Aug-2018
-      // ----
-      // https://developers.google.com/analytics/devguides/collection/protocol/v1/validating-hits
-      // "The Google Analytics Measurement Protocol does not return HTTP error codes".
-      // ----
-      // So the response code will ALWAYS be HTTP_OK.
-      // However since the connection may be to something else via the connection provider,
-      // or Google change this response in the future we process the result anyway.
-      //////////////////////////////////////
-
-      if (responseCode == HttpURLConnection.HTTP_OK) {
-        logger.log(Level.FINE, () -> String.format("Sent hit '%s'", request));
-        // This is a success. All other returns are an error.
-        return DispatchStatus.COMPLETE;
+      final DispatchStatus status = send(ByteBuffer.wrap(out), callback);
+      // Log structured fields and not the hit which may be large
+      if (status == DispatchStatus.COMPLETE && logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "Sent hit: bytes={0}", out.length);
       }
-      logger.log(Level.WARNING, () -> String
-          .format("Failed to send hit '%s', received response code %d", request, responseCode));
+      return status;
     } catch (final UnknownHostException ex) {
       setLastIoException(ex);
       // Occurs when there is no connection to the Internet so this is not severe
-      logger.log(Level.WARNING, () -> String.format("Unknown host: %s", ex.getMessage()));
+      if (errorLogger.isLoggable(Level.WARNING)) {
+        errorLogger.log(Level.WARNING, "unknownHost", "Unknown host: host={0}", ex.getMessage());
+      }
     } catch (final IOException ex) {
       setLastIoException(ex);
       // Log all others at a severe level
-      logger.log(Level.SEVERE, () -> String.format("Send error: %s : %s",
-          ex.getClass().getSimpleName(), ex.getMessage()));
+      if (errorLogger.isLoggable(Level.SEVERE)) {
+        errorLogger.log(Level.SEVERE, ex.getClass().getName(),
+            "Send error: error={0}, message={1}", ex.getClass().getSimpleName(), ex.getMessage());
+      }
     }
     // Get here only on error
     return DispatchStatus.ERROR;
   }
 
+  /**
+   * Send the payload using the transport and wait for the result.
+   *
+   * @param payload the payload
+   * @param callback the callback
+   * @return the dispatch status
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private DispatchStatus send(ByteBuffer payload, HttpUrlConnectionCallback callback)
+      throws IOException {
+    if (transport instanceof HttpUrlConnectionTransport) {
+      // Send synchronously with support for the callback
+      return ((HttpUrlConnectionTransport) transport).send(payload, HitBatch.single(), callback);
+    }
+    final CompletableFuture<DispatchStatus> future = transport.send(payload, HitBatch.single());
+    try {
+      return future.join();
+    } catch (final CompletionException ex) {
+      final Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      // Log all others at a severe level
+      if (errorLogger.isLoggable(Level.SEVERE)) {
+        errorLogger.log(Level.SEVERE, cause.getClass().getName(),
+            "Transport error: error={0}, message={1}", cause.getClass().getSimpleName(),
+            cause.getMessage());
+      }
+      return DispatchStatus.ERROR;
+    }
+  }
+
   /**
    * Adds the queue time to the hit.
    *
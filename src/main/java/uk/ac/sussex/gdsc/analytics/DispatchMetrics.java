@@ -0,0 +1,309 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the hits dispatched by a {@link GoogleAnalyticsClient}.
+ *
+ * <p>Records the count of hits for each {@link DispatchStatus}, gauges of the hits queued and in
+ * flight, the bytes sent, and histograms of the queue time and send time. Recording is lock-free
+ * and does not allocate memory.
+ *
+ * <p>The metrics can be shared by multiple clients and registered with the platform MBean server.
+ *
+ * @see GoogleAnalyticsClient.Builder#setMetrics(DispatchMetrics)
+ */
+public final class DispatchMetrics implements DispatchMetricsMXBean {
+
+  /** The default object name used to register the MBean. */
+  public static final String DEFAULT_OBJECT_NAME =
+      "uk.ac.sussex.gdsc.analytics:type=DispatchMetrics";
+
+  /** The median percentile. */
+  private static final double P50 = 50;
+  /** The 99th percentile. */
+  private static final double P99 = 99;
+
+  /** The count of each status. */
+  private final LongAdder[] statusCounts;
+  /** The number of hits queued. */
+  private final LongAdder queued = new LongAdder();
+  /** The number of hits in flight. */
+  private final LongAdder inFlight = new LongAdder();
+  /** The bytes sent. */
+  private final LongAdder bytesSent = new LongAdder();
+  /** The queue time. */
+  private final LatencyHistogram queueTime = new LatencyHistogram();
+  /** The send time. */
+  private final LatencyHistogram sendTime = new LatencyHistogram();
+
+  /**
+   * Create a new instance.
+   */
+  public DispatchMetrics() {
+    statusCounts = new LongAdder[DispatchStatus.values().length];
+    for (int i = 0; i < statusCounts.length; i++) {
+      statusCounts[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a hit that was not submitted for sending.
+   *
+   * @param status the status
+   */
+  public void recordStatus(DispatchStatus status) {
+    statusCounts[status.ordinal()].increment();
+  }
+
+  /**
+   * Record a hit that was submitted for sending.
+   */
+  public void recordSubmitted() {
+    queued.increment();
+  }
+
+  /**
+   * Record a submitted hit that was removed before sending. It is counted as
+   * {@link DispatchStatus#SHUTDOWN}.
+   */
+  public void recordCancelled() {
+    recordCancelled(DispatchStatus.SHUTDOWN);
+  }
+
+  /**
+   * Record a submitted hit that was removed before sending.
+   *
+   * @param status the status
+   */
+  public void recordCancelled(DispatchStatus status) {
+    queued.decrement();
+    recordStatus(status);
+  }
+
+  /**
+   * Record the start of sending a submitted hit.
+   *
+   * @param queueNanos the time the hit was queued (in nanoseconds)
+   */
+  public void recordStarted(long queueNanos) {
+    queued.decrement();
+    inFlight.increment();
+    queueTime.record(queueNanos);
+  }
+
+  /**
+   * Record the end of sending a submitted hit.
+   *
+   * <p>The bytes are only counted if the status is {@link DispatchStatus#COMPLETE}.
+   *
+   * @param status the status
+   * @param bytes the bytes in the hit
+   * @param sendNanos the time taken to send the hit (in nanoseconds)
+   */
+  public void recordCompleted(DispatchStatus status, long bytes, long sendNanos) {
+    inFlight.decrement();
+    recordStatus(status);
+    if (status == DispatchStatus.COMPLETE) {
+      bytesSent.add(bytes);
+    }
+    sendTime.record(sendNanos);
+  }
+
+  /**
+   * Gets the count of hits with the status.
+   *
+   * @param status the status
+   * @return the count
+   */
+  public long getCount(DispatchStatus status) {
+    return statusCounts[status.ordinal()].sum();
+  }
+
+  /**
+   * Gets the histogram of the time from submission of the hit to the start of sending (in
+   * nanoseconds).
+   *
+   * @return the queue time
+   */
+  public LatencyHistogram getQueueTime() {
+    return queueTime;
+  }
+
+  /**
+   * Gets the histogram of the time taken to send the hit (in nanoseconds).
+   *
+   * @return the send time
+   */
+  public LatencyHistogram getSendTime() {
+    return sendTime;
+  }
+
+  @Override
+  public long getCompleteCount() {
+    return getCount(DispatchStatus.COMPLETE);
+  }
+
+  @Override
+  public long getErrorCount() {
+    return getCount(DispatchStatus.ERROR);
+  }
+
+  @Override
+  public long getIgnoredCount() {
+    return getCount(DispatchStatus.IGNORED);
+  }
+
+  @Override
+  public long getShutdownCount() {
+    return getCount(DispatchStatus.SHUTDOWN);
+  }
+
+  @Override
+  public long getDisabledCount() {
+    return getCount(DispatchStatus.DISABLED);
+  }
+
+  @Override
+  public long getQuotaExceededCount() {
+    return getCount(DispatchStatus.QUOTA_EXCEEDED);
+  }
+
+  @Override
+  public long getSampledCount() {
+    return getCount(DispatchStatus.SAMPLED);
+  }
+
+  @Override
+  public long getOverloadedCount() {
+    return getCount(DispatchStatus.OVERLOADED);
+  }
+
+  @Override
+  public long getQueuedCount() {
+    return queued.sum();
+  }
+
+  @Override
+  public long getInFlightCount() {
+    return inFlight.sum();
+  }
+
+  @Override
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  @Override
+  public double getQueueTimeMean() {
+    return queueTime.getMean();
+  }
+
+  @Override
+  public long getQueueTimeP50() {
+    return queueTime.getValueAtPercentile(P50);
+  }
+
+  @Override
+  public long getQueueTimeP99() {
+    return queueTime.getValueAtPercentile(P99);
+  }
+
+  @Override
+  public long getQueueTimeMax() {
+    return queueTime.getMax();
+  }
+
+  @Override
+  public double getSendTimeMean() {
+    return sendTime.getMean();
+  }
+
+  @Override
+  public long getSendTimeP50() {
+    return sendTime.getValueAtPercentile(P50);
+  }
+
+  @Override
+  public long getSendTimeP99() {
+    return sendTime.getValueAtPercentile(P99);
+  }
+
+  @Override
+  public long getSendTimeMax() {
+    return sendTime.getMax();
+  }
+
+  @Override
+  public void reset() {
+    for (final LongAdder count : statusCounts) {
+      count.reset();
+    }
+    bytesSent.reset();
+    queueTime.reset();
+    sendTime.reset();
+  }
+
+  /**
+   * Register with the platform MBean server using the {@link #DEFAULT_OBJECT_NAME}.
+   *
+   * @return the object name
+   * @throws JMException if registration fails
+   */
+  public ObjectName register() throws JMException {
+    return register(new ObjectName(DEFAULT_OBJECT_NAME));
+  }
+
+  /**
+   * Register with the platform MBean server using the object name.
+   *
+   * @param name the object name
+   * @return the object name
+   * @throws JMException if registration fails
+   */
+  public ObjectName register(ObjectName name) throws JMException {
+    return ManagementFactory.getPlatformMBeanServer().registerMBean(this, name).getObjectName();
+  }
+
+  /**
+   * Unregister from the platform MBean server.
+   *
+   * @param name the object name
+   * @throws JMException if unregistration fails
+   */
+  public static void unregister(ObjectName name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+  }
+}
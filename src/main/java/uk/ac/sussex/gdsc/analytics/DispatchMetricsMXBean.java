@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+/**
+ * Management interface for the metrics of hits dispatched by a {@link GoogleAnalyticsClient}.
+ *
+ * <p>Times are in nanoseconds. The queue time is the time from submission of the hit to the start
+ * of sending. The send time is the time taken by the {@link HitDispatcher}.
+ *
+ * @see DispatchMetrics
+ */
+public interface DispatchMetricsMXBean {
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#COMPLETE}.
+   *
+   * @return the count
+   */
+  long getCompleteCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#ERROR}.
+   *
+   * @return the count
+   */
+  long getErrorCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#IGNORED}.
+   *
+   * @return the count
+   */
+  long getIgnoredCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#SHUTDOWN}.
+   *
+   * @return the count
+   */
+  long getShutdownCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#DISABLED}.
+   *
+   * @return the count
+   */
+  long getDisabledCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#QUOTA_EXCEEDED}.
+   *
+   * @return the count
+   */
+  long getQuotaExceededCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#SAMPLED}.
+   *
+   * @return the count
+   */
+  long getSampledCount();
+
+  /**
+   * Gets the count of hits with the status {@link DispatchStatus#OVERLOADED}.
+   *
+   * @return the count
+   */
+  long getOverloadedCount();
+
+  /**
+   * Gets the number of hits waiting to be sent.
+   *
+   * @return the count
+   */
+  long getQueuedCount();
+
+  /**
+   * Gets the number of hits being sent.
+   *
+   * @return the count
+   */
+  long getInFlightCount();
+
+  /**
+   * Gets the number of bytes in the hits that were sent successfully.
+   *
+   * @return the bytes sent
+   */
+  long getBytesSent();
+
+  /**
+   * Gets the mean queue time.
+   *
+   * @return the mean
+   */
+  double getQueueTimeMean();
+
+  /**
+   * Gets the median queue time.
+   *
+   * @return the median
+   */
+  long getQueueTimeP50();
+
+  /**
+   * Gets the 99th percentile of the queue time.
+   *
+   * @return the 99th percentile
+   */
+  long getQueueTimeP99();
+
+  /**
+   * Gets the maximum queue time.
+   *
+   * @return the max
+   */
+  long getQueueTimeMax();
+
+  /**
+   * Gets the mean send time.
+   *
+   * @return the mean
+   */
+  double getSendTimeMean();
+
+  /**
+   * Gets the median send time.
+   *
+   * @return the median
+   */
+  long getSendTimeP50();
+
+  /**
+   * Gets the 99th percentile of the send time.
+   *
+   * @return the 99th percentile
+   */
+  long getSendTimeP99();
+
+  /**
+   * Gets the maximum send time.
+   *
+   * @return the max
+   */
+  long getSendTimeMax();
+
+  /**
+   * Reset the counts and times. The gauges for the queued and in-flight hits are not reset.
+   */
+  void reset();
+}
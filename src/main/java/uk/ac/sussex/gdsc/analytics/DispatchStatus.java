@@ -52,5 +52,23 @@ public enum DispatchStatus {
   /**
    * The request not been processed because the tracker previously errored and disabled.
    */
-  DISABLED;
+  DISABLED,
+  /**
+   * The request not been processed because the quota for the tracking Id or client was exceeded.
+   *
+   * @see QuotaManager
+   */
+  QUOTA_EXCEEDED,
+  /**
+   * The request not been processed because the client was not selected by sampling.
+   *
+   * @see ClientSampler
+   */
+  SAMPLED,
+  /**
+   * The request not been processed because the dispatch queue was full.
+   *
+   * @see PriorityLanes
+   */
+  OVERLOADED;
 }
@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+/**
+ * The result of waiting for the pending hits of a {@link GoogleAnalyticsClient}.
+ *
+ * @see GoogleAnalyticsClient#flush(long, java.util.concurrent.TimeUnit)
+ * @see GoogleAnalyticsClient#close(long, java.util.concurrent.TimeUnit)
+ */
+public final class FlushResult {
+
+  /** The number of hits sent. */
+  private final int sent;
+  /** The number of hits dropped. */
+  private final int dropped;
+  /** The number of hits persisted to the spool. */
+  private final int persisted;
+  /** The number of hits still pending. */
+  private final int pending;
+
+  /**
+   * Create a new instance.
+   *
+   * @param sent the number of hits sent
+   * @param dropped the number of hits dropped
+   * @param persisted the number of hits persisted to the spool
+   * @param pending the number of hits still pending
+   */
+  FlushResult(int sent, int dropped, int persisted, int pending) {
+    this.sent = sent;
+    this.dropped = dropped;
+    this.persisted = persisted;
+    this.pending = pending;
+  }
+
+  /**
+   * Gets the number of hits that were sent successfully.
+   *
+   * @return the sent count
+   */
+  public int getSent() {
+    return sent;
+  }
+
+  /**
+   * Gets the number of hits that were not sent. This includes hits that failed to send and hits
+   * that were removed from the queue.
+   *
+   * @return the dropped count
+   */
+  public int getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Gets the number of hits that were removed from the queue and persisted to the spool.
+   *
+   * @return the persisted count
+   */
+  public int getPersisted() {
+    return persisted;
+  }
+
+  /**
+   * Gets the number of hits that were still pending when the timeout elapsed. This includes hits
+   * that were being sent.
+   *
+   * @return the pending count
+   */
+  public int getPending() {
+    return pending;
+  }
+
+  /**
+   * Gets the total number of hits.
+   *
+   * @return the total
+   */
+  public int getTotal() {
+    return sent + dropped + persisted + pending;
+  }
+
+  @Override
+  public String toString() {
+    return "sent=" + sent + ", dropped=" + dropped + ", persisted=" + persisted + ", pending="
+        + pending;
+  }
+}
@@ -29,12 +29,35 @@
 
 package uk.ac.sussex.gdsc.analytics;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import uk.ac.sussex.gdsc.analytics.jfr.HitEvents;
 import uk.ac.sussex.gdsc.analytics.parameters.FormattedParameter;
 import uk.ac.sussex.gdsc.analytics.parameters.HitType;
 import uk.ac.sussex.gdsc.analytics.parameters.HitTypeParameter;
@@ -47,22 +70,33 @@ import uk.ac.sussex.gdsc.analytics.parameters.Parameters.PartialBuilder;
 import uk.ac.sussex.gdsc.analytics.parameters.Parameters.RequiredBuilder;
 import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
 import uk.ac.sussex.gdsc.analytics.parameters.SessionControlParameter;
+import uk.ac.sussex.gdsc.analytics.spool.SharedSpool;
 
 /**
  * Send custom requests to Google Analytics using the <a href=
  * "https://developers.google.com/analytics/devguides/collection/protocol/v1/">Google Analytics
  * Measurement Protocol</a>.
  *
- * <p>The client uses an {@link ExecutorService} to send requests via a {@link HitDispatcher}.
+ * <p>The client uses an {@link ExecutorService} to send requests via a {@link HitDispatcher}. If
+ * the service is a {@link KeyedExecutor} then hits are submitted using the user Id or client Id
+ * as the key and hits from the same client are sent in order.
  *
  * <p>The client represents interactions of a single user (or client). This requires a Google
  * Analytics tracking Id parameter and either a client or user Id parameter. These are fixed for a
  * single client instance.
  *
  * <p>The client manages the session of interaction with a configurable timeout.
+ *
+ * <p>Hits are sent asynchronously. The client can wait for pending hits using
+ * {@link #flush(long, TimeUnit)} and {@link #close(long, TimeUnit)}. If a spool path is configured
+ * then a shutdown hook closes the client when the JVM exits and hits that have not been sent are
+ * persisted to the spool; these are sent by the next client created using the spool.
  */
 public class GoogleAnalyticsClient {
 
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(GoogleAnalyticsClient.class.getName());
+
   /**
    * Used when ignoring requests due to {@link DispatchStatus#IGNORED}.
    */
@@ -75,10 +109,31 @@ public class GoogleAnalyticsClient {
    * Used when ignoring requests due to {@link DispatchStatus#SHUTDOWN}.
    */
   private static final DispatchFuture FUTURE_SHUTDOWN = new DispatchFuture(DispatchStatus.SHUTDOWN);
+  /**
+   * Used when ignoring requests due to {@link DispatchStatus#QUOTA_EXCEEDED}.
+   */
+  private static final DispatchFuture FUTURE_QUOTA_EXCEEDED =
+      new DispatchFuture(DispatchStatus.QUOTA_EXCEEDED);
+  /**
+   * Used when ignoring requests due to {@link DispatchStatus#SAMPLED}.
+   */
+  private static final DispatchFuture FUTURE_SAMPLED = new DispatchFuture(DispatchStatus.SAMPLED);
+  /**
+   * Used when ignoring requests due to {@link DispatchStatus#OVERLOADED}.
+   */
+  private static final DispatchFuture FUTURE_OVERLOADED =
+      new DispatchFuture(DispatchStatus.OVERLOADED);
 
   /** The initial size for the buffer used for the hit string. */
   private static final int HIT_BUFFER_SIZE = 512;
 
+  /** State of a pending hit that has not started. */
+  private static final int NEW = 0;
+  /** State of a pending hit that is being sent. */
+  private static final int RUNNING = 1;
+  /** State of a pending hit that was cancelled. */
+  private static final int CANCELLED = 2;
+
   /**
    * The executor service for dispatching background requests.
    */
@@ -99,6 +154,60 @@ public class GoogleAnalyticsClient {
   /** The ignore flag. */
   private boolean ignore;
 
+  /** The hits that have been submitted to the executor service and are not complete. */
+  private final Set<PendingHit> pending = ConcurrentHashMap.newKeySet();
+
+  /** The sequence number used to process pending hits in submission order. */
+  private final AtomicLong sequence = new AtomicLong();
+
+  /** Set to true when closed. */
+  private volatile boolean closed;
+
+  /** The spool used to persist hits that are not sent (or null). */
+  private final SharedSpool spool;
+
+  /** The task sending the hits persisted in the spool (or null). */
+  private final Future<?> spoolSender;
+
+  /** The state of the task sending the hits persisted in the spool. */
+  private final AtomicInteger spoolSenderState = new AtomicInteger(NEW);
+
+  /** Signal when the task sending the hits persisted in the spool is complete. */
+  private final CountDownLatch spoolSenderDone = new CountDownLatch(1);
+
+  /** The shutdown hook (or null). */
+  private final Thread shutdownHook;
+
+  /** The timeout for the shutdown hook (in milliseconds). */
+  private final long shutdownTimeout;
+
+  /** The metrics (or null). */
+  private final DispatchMetrics metrics;
+
+  /** The quota manager (or null). */
+  private final QuotaManager quotaManager;
+
+  /** The tracking id. */
+  private final String trackingId;
+
+  /** The key identifying the client. This is the user Id or client Id. */
+  private final String clientKey;
+
+  /** The client sampler (or null). */
+  private final ClientSampler sampler;
+
+  /** The sample point of the client. */
+  private final double samplePoint;
+
+  /** The hit builder used when the client is not sampled. */
+  private final HitBuilder<Future<DispatchStatus>> sampledOutHitBuilder;
+
+  /** The priority lanes (or null). */
+  private final PriorityLanes priorityLanes;
+
+  /** The concurrency limiter (or null). */
+  private final ConcurrencyLimiter concurrencyLimiter;
+
   /**
    * Builder to create {@link GoogleAnalyticsClient} instances.
    *
@@ -110,6 +219,12 @@ public class GoogleAnalyticsClient {
     /** Used to reset the hit dispatcher when URL settings change. */
     private static final HitDispatcher NO_HIT_DISPATCHER = null;
 
+    /** The default shutdown timeout in milliseconds. */
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 1000;
+
+    /** The time idle threads wait for new tasks (in seconds). */
+    private static final long IDLE_THREAD_TIMEOUT = 60;
+
     /** The tracking id. */
     private String trackingId;
 
@@ -125,6 +240,12 @@ public class GoogleAnalyticsClient {
     /** The priority. */
     private int threadPriority = Thread.MIN_PRIORITY;
 
+    /** Set to true to preserve the order of hits for each client. */
+    private boolean ordered;
+
+    /** Set to true to use virtual threads. */
+    private boolean virtualThreads;
+
     /** The executor service. */
     private ExecutorService executorService;
 
@@ -146,6 +267,27 @@ public class GoogleAnalyticsClient {
     /** The debug flag. Set to true to use the Google Analytics debug server. */
     private boolean debug;
 
+    /** The spool path. */
+    private Path spoolPath;
+
+    /** The shutdown timeout. */
+    private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+    /** The metrics. */
+    private DispatchMetrics metrics;
+
+    /** The quota manager. */
+    private QuotaManager quotaManager;
+
+    /** The client sampler. */
+    private ClientSampler sampler;
+
+    /** The priority lanes. */
+    private PriorityLanes priorityLanes;
+
+    /** The concurrency limiter. */
+    private ConcurrencyLimiter concurrencyLimiter;
+
     /**
      * Creates a new builder.
      *
@@ -159,10 +301,18 @@ public class GoogleAnalyticsClient {
      * Builds the {@link GoogleAnalyticsClient}.
      *
      * @return the google analytics client
+     * @throws IllegalStateException if priority lanes are used with an ordered executor service
      */
     public GoogleAnalyticsClient build() {
+      // Priority lanes reorder the hits of each client
+      if (priorityLanes != null
+          && (executorService == null ? ordered : executorService instanceof KeyedExecutor)) {
+        throw new IllegalStateException(
+            "Priority lanes cannot be used with an ordered executor service");
+      }
 
-      // This will work if user/client Id are null as it generates a random UUID
+      // The client Id is optional if the user Id is set. A random client Id is generated below
+      // if both are null.
       final RequiredBuilder clientBuilder = Parameters.newRequiredBuilder(trackingId);
       if (userId != null) {
         clientBuilder.addUserId(userId);
@@ -174,6 +324,17 @@ public class GoogleAnalyticsClient {
           clientBuilder.addClientId((String) clientId);
         }
       }
+      // The key used to identify the client
+      String clientKey = userId;
+      if (clientKey == null) {
+        if (clientId == null) {
+          final UUID uuid = UUID.randomUUID();
+          clientBuilder.addClientId(uuid);
+          clientKey = uuid.toString();
+        } else {
+          clientKey = clientId.toString();
+        }
+      }
       if (perHitParameters != null) {
         clientBuilder.add(perHitParameters.build());
       }
@@ -184,7 +345,7 @@ public class GoogleAnalyticsClient {
           (perSessionParameters == null) ? FormattedParameter.empty()
               : perSessionParameters.build();
 
-      return new GoogleAnalyticsClient(clientParameters, sessionParameters, this);
+      return new GoogleAnalyticsClient(clientParameters, sessionParameters, clientKey, this);
     }
 
     /**
@@ -293,7 +454,8 @@ public class GoogleAnalyticsClient {
     /**
      * Sets the thread count for the default executor service.
      *
-     * <p>If positive a fixed thread pool is used. Otherwise a cached thread pool is used.
+     * <p>If positive a fixed thread pool is used. Otherwise a cached thread pool is used; if a
+     * concurrency limiter is set the threads are bounded by the maximum limit.
      *
      * <p>This is ignored if the executor service is provided.
      *
@@ -332,23 +494,92 @@ public class GoogleAnalyticsClient {
       return this;
     }
 
+    /**
+     * Checks if the default executor service preserves the order of hits for each client.
+     *
+     * @return true if ordered
+     */
+    public boolean isOrdered() {
+      return ordered;
+    }
+
+    /**
+     * Sets the default executor service to preserve the order of hits for each client.
+     *
+     * <p>If true and the thread count is above 1 then a {@link KeyedExecutor} is used with a lane
+     * for each thread. Hits are assigned to a lane using the user Id or client Id. If the thread
+     * count is not positive then a lane is created for each available processor.
+     *
+     * <p>This is ignored if the executor service is provided. This cannot be combined with
+     * priority lanes.
+     *
+     * @param ordered Set to true to preserve the order of hits for each client
+     * @return the builder
+     * @see #setExecutorService(ExecutorService)
+     */
+    public Builder setOrdered(boolean ordered) {
+      this.ordered = ordered;
+      return this;
+    }
+
+    /**
+     * Checks if the default executor service uses virtual threads.
+     *
+     * @return true if using virtual threads
+     */
+    public boolean isVirtualThreads() {
+      return virtualThreads;
+    }
+
+    /**
+     * Sets the default executor service to run each hit in a new virtual thread.
+     *
+     * <p>This requires Java 21 or later. It is ignored if virtual threads are not available, or
+     * the default executor service is ordered. The thread count and thread priority are ignored.
+     *
+     * <p>This is ignored if the executor service is provided.
+     *
+     * @param virtualThreads Set to true to use virtual threads
+     * @return the builder
+     * @see VirtualThreads#isAvailable()
+     * @see #setExecutorService(ExecutorService)
+     */
+    public Builder setVirtualThreads(boolean virtualThreads) {
+      this.virtualThreads = virtualThreads;
+      return this;
+    }
+
     /**
      * Gets the executor service used by the client to send requests.
      *
-     * <p>If {@code null} then a default executor service will be created using the thread count and
-     * thread priority within {@link #build()}.
+     * <p>If {@code null} then a default executor service will be created using the thread count,
+     * thread priority, ordered and virtual threads flags within {@link #build()}.
      *
      * @return the executor service
      * @see #setThreadCount(int)
      * @see #setThreadPriority(int)
+     * @see #setOrdered(boolean)
+     * @see #setVirtualThreads(boolean)
      */
     public ExecutorService getOrCreateExecutorService() {
       ExecutorService es = executorService;
       if (es == null) {
         final ThreadFactory tf = new BackgroundThreadFactory(getThreadPriority());
         final int localThreadCount = getThreadCount();
-        if (localThreadCount > 0) {
+        if (isOrdered() && localThreadCount != 1) {
+          es = new KeyedExecutor(localThreadCount > 0 ? localThreadCount
+              : Runtime.getRuntime().availableProcessors(), tf);
+        } else if (!isOrdered() && isVirtualThreads() && VirtualThreads.isAvailable()) {
+          es = VirtualThreads.newExecutorService();
+        } else if (localThreadCount > 0) {
           es = Executors.newFixedThreadPool(localThreadCount, tf);
+        } else if (concurrencyLimiter != null) {
+          // Bound the threads by the maximum concurrency
+          final int max = concurrencyLimiter.getMaxLimit();
+          final ThreadPoolExecutor tpe = new ThreadPoolExecutor(max, max, IDLE_THREAD_TIMEOUT,
+              TimeUnit.SECONDS, new LinkedBlockingQueue<>(), tf);
+          tpe.allowCoreThreadTimeOut(true);
+          es = tpe;
         } else {
           es = Executors.newCachedThreadPool(tf);
         }
@@ -571,6 +802,281 @@ public class GoogleAnalyticsClient {
       this.debug = debug;
       return this;
     }
+
+    /**
+     * Gets the path of the spool used to persist hits that are not sent when the JVM exits.
+     *
+     * @return the spool path
+     */
+    public Path getSpoolPath() {
+      return spoolPath;
+    }
+
+    /**
+     * Sets the path of the spool used to persist hits that are not sent when the JVM exits.
+     * Defaults to {@code null}.
+     *
+     * <p>If not {@code null} the client registers a shutdown hook that calls
+     * {@link GoogleAnalyticsClient#close(long, TimeUnit)} using the shutdown timeout. Hits that
+     * are not sent within the timeout are persisted to the spool. Any hits in the spool are sent
+     * when a client is created.
+     *
+     * @param spoolPath the spool path
+     * @return the builder
+     * @see SharedSpool
+     * @see #setShutdownTimeout(long)
+     */
+    public Builder setSpoolPath(Path spoolPath) {
+      this.spoolPath = spoolPath;
+      return this;
+    }
+
+    /**
+     * Gets the shutdown timeout in milliseconds.
+     *
+     * @return the timeout
+     */
+    public long getShutdownTimeout() {
+      return shutdownTimeout;
+    }
+
+    /**
+     * Sets the time to wait for pending hits to be sent when the JVM exits in milliseconds.
+     *
+     * <p>This is only used when the spool path is set.
+     *
+     * @param timeout the timeout to set
+     * @return the builder
+     * @throws IllegalArgumentException If the timeout is negative
+     * @see #setSpoolPath(Path)
+     */
+    public Builder setShutdownTimeout(long timeout) {
+      this.shutdownTimeout = ParameterUtils.requirePositive(timeout, "Timeout must be positive");
+      return this;
+    }
+
+    /**
+     * Gets the metrics used to record dispatch of hits.
+     *
+     * @return the metrics
+     */
+    public DispatchMetrics getMetrics() {
+      return metrics;
+    }
+
+    /**
+     * Sets the metrics used to record dispatch of hits. Defaults to {@code null}.
+     *
+     * <p>The metrics can be shared among client instances.
+     *
+     * @param metrics the metrics
+     * @return the builder
+     */
+    public Builder setMetrics(DispatchMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Gets the quota manager used to limit the hits sent.
+     *
+     * @return the quota manager
+     */
+    public QuotaManager getQuotaManager() {
+      return quotaManager;
+    }
+
+    /**
+     * Sets the quota manager used to limit the hits sent. Defaults to {@code null}.
+     *
+     * <p>Hits over the quota are not sent and have the status
+     * {@link DispatchStatus#QUOTA_EXCEEDED}. The quota manager can be shared among client
+     * instances.
+     *
+     * @param quotaManager the quota manager
+     * @return the builder
+     */
+    public Builder setQuotaManager(QuotaManager quotaManager) {
+      this.quotaManager = quotaManager;
+      return this;
+    }
+
+    /**
+     * Gets the client sampler used to select a subset of clients to send hits.
+     *
+     * @return the client sampler
+     */
+    public ClientSampler getSampler() {
+      return sampler;
+    }
+
+    /**
+     * Sets the client sampler used to select a subset of clients to send hits. Defaults to
+     * {@code null}.
+     *
+     * <p>The decision uses a hash of the user Id or client Id. Hits from a client that is not
+     * sampled are not built and have the status {@link DispatchStatus#SAMPLED}. The sampler can be
+     * shared among client instances.
+     *
+     * @param sampler the client sampler
+     * @return the builder
+     */
+    public Builder setSampler(ClientSampler sampler) {
+      this.sampler = sampler;
+      return this;
+    }
+
+    /**
+     * Gets the priority lanes used to order the hits sent.
+     *
+     * @return the priority lanes
+     */
+    public PriorityLanes getPriorityLanes() {
+      return priorityLanes;
+    }
+
+    /**
+     * Sets the priority lanes used to order the hits sent. Defaults to {@code null} which sends
+     * hits in the order they are submitted to the executor service.
+     *
+     * <p>Hits rejected or shed because the lanes are full have the status
+     * {@link DispatchStatus#OVERLOADED}. The priority lanes can be shared among client instances
+     * that use the same executor service.
+     *
+     * <p>Priority lanes send hits out of order and cannot be used with an ordered executor
+     * service, i.e. a {@link KeyedExecutor}. Bulk submissions of hits are sent in batches
+     * directly to the executor service and do not use the priority lanes.
+     *
+     * @param priorityLanes the priority lanes
+     * @return the builder
+     */
+    public Builder setPriorityLanes(PriorityLanes priorityLanes) {
+      this.priorityLanes = priorityLanes;
+      return this;
+    }
+
+    /**
+     * Gets the concurrency limiter used to limit the number of in-flight requests.
+     *
+     * @return the concurrency limiter
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+      return concurrencyLimiter;
+    }
+
+    /**
+     * Sets the concurrency limiter used to limit the number of in-flight requests. Defaults to
+     * {@code null}.
+     *
+     * <p>The limit adapts to the round-trip time of the requests. If the thread count is not
+     * positive then the default executor service uses at most the maximum limit of threads.
+     *
+     * <p>The concurrency limiter can be shared among client instances.
+     *
+     * @param concurrencyLimiter the concurrency limiter
+     * @return the builder
+     * @see #setThreadCount(int)
+     */
+    public Builder setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+      this.concurrencyLimiter = concurrencyLimiter;
+      return this;
+    }
+  }
+
+  /**
+   * A hit that has been submitted to the executor service.
+   */
+  private final class PendingHit implements Callable<DispatchStatus> {
+    /** The hit parameters. */
+    final Parameters parameters;
+    /** The timestamp when the hit was reported. */
+    final long timestamp;
+    /** The time when the hit was submitted (in nanoseconds). Only used for metrics. */
+    final long submitted;
+    /** The submission sequence number. */
+    final long id = sequence.getAndIncrement();
+    /** The state. */
+    final AtomicInteger state = new AtomicInteger(NEW);
+    /** Signal when the hit is complete. */
+    final CountDownLatch done = new CountDownLatch(1);
+    /** The dispatch status (or null). */
+    volatile DispatchStatus status;
+
+    /**
+     * Create a new instance.
+     *
+     * @param parameters the hit parameters
+     * @param timestamp the timestamp when the hit was reported
+     */
+    PendingHit(Parameters parameters, long timestamp) {
+      this.parameters = parameters;
+      this.timestamp = timestamp;
+      submitted = metrics == null ? 0 : System.nanoTime();
+    }
+
+    @Override
+    public DispatchStatus call() {
+      if (!state.compareAndSet(NEW, RUNNING)) {
+        final DispatchStatus result = status;
+        return result == null ? DispatchStatus.SHUTDOWN : result;
+      }
+      try {
+        status = dispatchRequest(parameters, timestamp, submitted);
+        return status;
+      } finally {
+        finish();
+      }
+    }
+
+    /**
+     * Cancel the hit if it has not started.
+     *
+     * @return true if cancelled
+     */
+    boolean cancel() {
+      return cancel(DispatchStatus.SHUTDOWN);
+    }
+
+    /**
+     * Cancel the hit if it has not started.
+     *
+     * @param result the status of the cancelled hit
+     * @return true if cancelled
+     */
+    boolean cancel(DispatchStatus result) {
+      if (state.compareAndSet(NEW, CANCELLED)) {
+        status = result;
+        if (metrics != null) {
+          metrics.recordCancelled(result);
+        }
+        finish();
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Wait until the hit is complete.
+     *
+     * @param deadline the deadline (in nanoseconds)
+     * @return true if complete
+     * @throws InterruptedException if interrupted while waiting
+     * @see System#nanoTime()
+     */
+    boolean await(long deadline) throws InterruptedException {
+      return done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Mark the hit as complete.
+     */
+    private void finish() {
+      pending.remove(this);
+      if (sampler != null) {
+        sampler.dequeued();
+      }
+      done.countDown();
+    }
   }
 
   /**
@@ -604,15 +1110,70 @@ public class GoogleAnalyticsClient {
     }
   }
 
+  /**
+   * A pending hit queued in the priority lanes.
+   */
+  private static final class LaneTask extends FutureTask<DispatchStatus>
+      implements PriorityLanes.Task {
+    /** The hit. */
+    private final PendingHit hit;
+
+    /**
+     * Create a new instance.
+     *
+     * @param hit the hit
+     */
+    LaneTask(PendingHit hit) {
+      super(hit);
+      this.hit = hit;
+    }
+
+    @Override
+    public void shed() {
+      hit.cancel(DispatchStatus.OVERLOADED);
+      // Complete the future
+      run();
+    }
+
+    /**
+     * Called when the task is removed from the queue because it cannot be run.
+     */
+    void reject() {
+      hit.cancel(DispatchStatus.SHUTDOWN);
+      // Complete the future
+      run();
+    }
+  }
+
+  /**
+   * Builder for a Google Analytics hit when the client is not sampled. All parameters are
+   * discarded.
+   */
+  private final class SampledOutHitBuilder extends HitBuilder<Future<DispatchStatus>> {
+
+    /**
+     * Creates a new hit builder.
+     */
+    SampledOutHitBuilder() {
+      super(null, HitTypeParameter.EVENT, 0, true);
+    }
+
+    @Override
+    public Future<DispatchStatus> send() {
+      return reject(FUTURE_SAMPLED, null);
+    }
+  }
+
   /**
    * Create an instance.
    *
    * @param clientParameters The client parameters (sent with every hit)
    * @param sessionParameters The session parameters (resent with each new session)
+   * @param clientKey The key identifying the client
    * @param builder the builder
    */
   private GoogleAnalyticsClient(FormattedParameter clientParameters,
-      FormattedParameter sessionParameters, Builder builder) {
+      FormattedParameter sessionParameters, String clientKey, Builder builder) {
     // Freeze the parameters
     this.clientParameters = Objects.requireNonNull(clientParameters, "Client parameters").freeze();
     this.sessionParameters =
@@ -620,6 +1181,58 @@ public class GoogleAnalyticsClient {
     executorService = builder.getOrCreateExecutorService();
     hitDispatcher = builder.getOrCreateHitDispatcher();
     session = new Session(builder.getSessionTimeout());
+    metrics = builder.getMetrics();
+    quotaManager = builder.getQuotaManager();
+    trackingId = builder.getTrackingId();
+    this.clientKey = clientKey;
+    sampler = builder.getSampler();
+    samplePoint = ClientSampler.getSamplePoint(clientKey);
+    sampledOutHitBuilder = new SampledOutHitBuilder();
+    priorityLanes = builder.getPriorityLanes();
+    concurrencyLimiter = builder.getConcurrencyLimiter();
+    final Path spoolPath = builder.getSpoolPath();
+    if (spoolPath == null) {
+      spool = null;
+      spoolSender = null;
+      shutdownHook = null;
+      shutdownTimeout = 0;
+    } else {
+      spool = openSpool(spoolPath);
+      spoolSender = spool == null ? null : startSpoolSender();
+      shutdownTimeout = builder.getShutdownTimeout();
+      shutdownHook = new Thread(this::shutdown, "GoogleAnalyticsClient-shutdown");
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+  }
+
+  /**
+   * Open the spool.
+   *
+   * @param path the path
+   * @return the spool (or null)
+   */
+  private static SharedSpool openSpool(Path path) {
+    try {
+      return SharedSpool.open(path);
+    } catch (final IOException ex) {
+      logger.log(Level.WARNING, () -> String.format("Failed to open spool '%s': %s", path,
+          ex.getMessage()));
+    }
+    return null;
+  }
+
+  /**
+   * Start the task to send the hits persisted in the spool.
+   *
+   * @return the task (or null if rejected)
+   */
+  private Future<?> startSpoolSender() {
+    try {
+      return executorService.submit(this::sendSpooledHits);
+    } catch (final RejectedExecutionException ex) {
+      logger.log(Level.WARNING, "Failed to send spooled hits: Executor service rejected the task");
+    }
+    return null;
   }
 
   /**
@@ -660,11 +1273,19 @@ public class GoogleAnalyticsClient {
    * These may be added to the hit builder or may already be part of the client or session
    * parameters.
    *
+   * <p>If the client is not sampled then no hit is created. The builder discards all parameters
+   * and the send method returns {@link DispatchStatus#SAMPLED}.
+   *
    * @param hitType the hit type
    * @return the hit builder
+   * @see #isSampled()
    */
   //@formatter:on
   HitBuilder<Future<DispatchStatus>> newHitBuilder(HitTypeParameter hitType) {
+    if (!isSampled()) {
+      return sampledOutHitBuilder;
+    }
+    final Object event = HitEvents.beginBuild();
     final boolean isNew = session.refresh();
     final HitBuilder<Future<DispatchStatus>> builder =
         new GoogleAnalyticsHitBuilder(clientParameters, hitType, session.getTimeStamp());
@@ -672,6 +1293,7 @@ public class GoogleAnalyticsClient {
       builder.add(SessionControlParameter.START);
       builder.add(sessionParameters);
     }
+    HitEvents.commitBuild(event, hitType.getHitType());
     return builder;
   }
 
@@ -850,7 +1472,26 @@ public class GoogleAnalyticsClient {
    * @see ExecutorService#isShutdown()
    */
   public boolean isShutdown() {
-    return executorService.isShutdown();
+    return closed || executorService.isShutdown();
+  }
+
+  /**
+   * Returns {@code true} if this tracker has been closed.
+   *
+   * @return {@code true} if this tracker has been closed
+   * @see #close(long, TimeUnit)
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Gets the number of hits that have been submitted for sending and are not complete.
+   *
+   * @return the pending count
+   */
+  public int getPendingCount() {
+    return pending.size();
   }
 
   /**
@@ -902,6 +1543,60 @@ public class GoogleAnalyticsClient {
     return hitDispatcher;
   }
 
+  /**
+   * Gets the metrics used to record dispatch of hits.
+   *
+   * @return the metrics (or null)
+   */
+  public DispatchMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Gets the quota manager used to limit the hits sent.
+   *
+   * @return the quota manager (or null)
+   */
+  public QuotaManager getQuotaManager() {
+    return quotaManager;
+  }
+
+  /**
+   * Gets the client sampler used to select a subset of clients to send hits.
+   *
+   * @return the client sampler (or null)
+   */
+  public ClientSampler getSampler() {
+    return sampler;
+  }
+
+  /**
+   * Gets the priority lanes used to order the hits sent.
+   *
+   * @return the priority lanes (or null)
+   */
+  public PriorityLanes getPriorityLanes() {
+    return priorityLanes;
+  }
+
+  /**
+   * Gets the concurrency limiter used to limit the number of in-flight requests.
+   *
+   * @return the concurrency limiter (or null)
+   */
+  public ConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  /**
+   * Checks if the client is currently sampled. This is true if there is no client sampler.
+   *
+   * @return true if sampled
+   */
+  public boolean isSampled() {
+    return sampler == null || sampler.isSampled(samplePoint);
+  }
+
   /**
    * Send the tracking request to Google Analytics.
    *
@@ -914,17 +1609,450 @@ public class GoogleAnalyticsClient {
    * @throws NullPointerException if request parameters are null
    */
   public Future<DispatchStatus> send(final Parameters parameters, final long timestamp) {
+    final Object event = HitEvents.beginEnqueue();
     if (isIgnore()) {
-      return FUTURE_IGNORED;
+      return reject(FUTURE_IGNORED, event);
     }
     if (isDisabled()) {
-      return FUTURE_DISABLED;
+      return reject(FUTURE_DISABLED, event);
     }
     if (isShutdown()) {
-      return FUTURE_SHUTDOWN;
+      return reject(FUTURE_SHUTDOWN, event);
     }
     Objects.requireNonNull(parameters, "Request parameters cannot be null");
-    return executorService.submit(() -> dispatchRequest(parameters, timestamp));
+    if (!isSampled()) {
+      return reject(FUTURE_SAMPLED, event);
+    }
+    if (quotaManager != null && !quotaManager.tryAcquire(trackingId, clientKey)) {
+      return reject(FUTURE_QUOTA_EXCEEDED, event);
+    }
+    final PendingHit hit = new PendingHit(parameters, timestamp);
+    pending.add(hit);
+    if (sampler != null) {
+      sampler.queued();
+    }
+    if (metrics != null) {
+      metrics.recordSubmitted();
+    }
+    final Future<DispatchStatus> future;
+    if (priorityLanes == null) {
+      try {
+        future = executorService instanceof KeyedExecutor
+            ? ((KeyedExecutor) executorService).submit(clientKey, hit)
+            : executorService.submit(hit);
+      } catch (final RejectedExecutionException ex) {
+        // The executor service has been shutdown
+        hit.cancel(DispatchStatus.SHUTDOWN);
+        HitEvents.commitEnqueue(event, DispatchStatus.SHUTDOWN, pending.size());
+        return FUTURE_SHUTDOWN;
+      }
+    } else {
+      final LaneTask task = new LaneTask(hit);
+      if (!priorityLanes.offer(priorityLanes.getPriority(parameters), task)) {
+        hit.cancel(DispatchStatus.OVERLOADED);
+        HitEvents.commitEnqueue(event, DispatchStatus.OVERLOADED, pending.size());
+        return FUTURE_OVERLOADED;
+      }
+      try {
+        executorService.execute(priorityLanes::runNext);
+      } catch (final RejectedExecutionException ex) {
+        // Each queued task requires a run of the lanes. Remove this task, or if it has already
+        // been taken by another run then remove the next task.
+        final boolean removed = priorityLanes.remove(task);
+        final LaneTask rejected = removed ? task : (LaneTask) priorityLanes.poll();
+        if (rejected != null) {
+          rejected.reject();
+        }
+        if (removed) {
+          HitEvents.commitEnqueue(event, DispatchStatus.SHUTDOWN, pending.size());
+          return FUTURE_SHUTDOWN;
+        }
+      }
+      future = task;
+    }
+    HitEvents.commitEnqueue(event, null, pending.size());
+    return future;
+  }
+
+  /**
+   * Record the status of a hit that is not sent.
+   *
+   * @param future the future containing the status
+   * @param event the enqueue event
+   * @return the future
+   */
+  private Future<DispatchStatus> reject(DispatchFuture future, Object event) {
+    if (metrics != null) {
+      metrics.recordStatus(future.getStatus());
+    }
+    HitEvents.commitEnqueue(event, future.getStatus(), pending.size());
+    return future;
+  }
+
+  /**
+   * Send the tracking requests to Google Analytics.
+   *
+   * <p>This is a bulk submission of hits. The hits are pulled from the iterator on demand and sent
+   * in batches using a {@link HitSubscriber} with the default batch size and maximum batches. The
+   * initial hits are pulled in the calling thread; the remaining hits are pulled by the executor
+   * service when a batch completes. The iterator must not be modified until the result is
+   * complete.
+   *
+   * <p>The timestamp of each hit is the time it is pulled from the iterator. The hit parameters
+   * must include the client parameters, e.g. created using {@link HitBuilder#build()}.
+   *
+   * @param parameters The request parameters
+   * @return the aggregate result
+   * @throws NullPointerException if the iterable is null
+   * @see #newHitSubscriber(int, int)
+   */
+  public CompletableFuture<BulkResult> send(Iterable<? extends Parameters> parameters) {
+    final HitSubscriber subscriber = newHitSubscriber();
+    new IteratorPublisher(parameters.iterator(), subscriber).subscribe();
+    return subscriber.getResult();
+  }
+
+  /**
+   * Send the tracking requests to Google Analytics.
+   *
+   * <p>This is a bulk submission of hits with a timestamp for each hit, for example to send hits
+   * that were recorded while offline. The timestamp is obtained from the hit when it is pulled
+   * from the iterator.
+   *
+   * @param parameters The request parameters
+   * @param timestamp The function to obtain the timestamp when the hit occurred (in milliseconds)
+   * @return the aggregate result
+   * @throws NullPointerException if the iterable or function are null
+   * @see #send(Iterable)
+   * @see #send(Parameters, long)
+   */
+  public CompletableFuture<BulkResult> send(Iterable<? extends Parameters> parameters,
+      ToLongFunction<? super Parameters> timestamp) {
+    Objects.requireNonNull(timestamp, "Timestamp");
+    final HitSubscriber subscriber = newHitSubscriber();
+    new IteratorPublisher(parameters.iterator(), subscriber, timestamp).subscribe();
+    return subscriber.getResult();
+  }
+
+  /**
+   * Send the tracking requests to Google Analytics.
+   *
+   * <p>This is a bulk submission of hits. The hits are pulled from the stream on demand and sent in
+   * batches using a {@link HitSubscriber} with the default batch size and maximum batches. The
+   * stream is closed when the result is complete.
+   *
+   * @param parameters The request parameters
+   * @return the aggregate result
+   * @throws NullPointerException if the stream is null
+   * @see #send(Iterable)
+   */
+  public CompletableFuture<BulkResult> send(Stream<? extends Parameters> parameters) {
+    final HitSubscriber subscriber = newHitSubscriber();
+    new IteratorPublisher(parameters.iterator(), subscriber).subscribe();
+    return subscriber.getResult().whenComplete((result, ex) -> parameters.close());
+  }
+
+  /**
+   * Create a new hit subscriber with the default batch size and maximum batches.
+   *
+   * @return the hit subscriber
+   * @see HitSubscriber#DEFAULT_BATCH_SIZE
+   * @see HitSubscriber#DEFAULT_MAX_BATCHES
+   */
+  public HitSubscriber newHitSubscriber() {
+    return newHitSubscriber(HitSubscriber.DEFAULT_BATCH_SIZE, HitSubscriber.DEFAULT_MAX_BATCHES);
+  }
+
+  /**
+   * Create a new hit subscriber to receive a sequence of hits from a publisher with demand-based
+   * back-pressure.
+   *
+   * <p>Hits are sent in batches; each batch is a single task of the executor service. The number
+   * of hits buffered by the subscriber is limited to the batch size multiplied by the maximum
+   * number of batches. Batches are not queued in the priority lanes.
+   *
+   * @param batchSize the number of hits in a batch
+   * @param maxBatches the maximum number of batches in flight
+   * @return the hit subscriber
+   * @throws IllegalArgumentException if the batch size or maximum batches are not strictly
+   *         positive
+   */
+  public HitSubscriber newHitSubscriber(int batchSize, int maxBatches) {
+    return new HitSubscriber(this, batchSize, maxBatches);
+  }
+
+  /**
+   * Send a batch of hits from the subscriber. The subscriber is notified of the status of each hit
+   * and when the batch is complete.
+   *
+   * @param subscriber the subscriber
+   * @param parameters the hit parameters
+   * @param timestamps the timestamps of the hits
+   * @param size the number of hits
+   */
+  void send(HitSubscriber subscriber, Parameters[] parameters, long[] timestamps, int size) {
+    DispatchStatus rejected = null;
+    if (isIgnore()) {
+      rejected = DispatchStatus.IGNORED;
+    } else if (isDisabled()) {
+      rejected = DispatchStatus.DISABLED;
+    } else if (isShutdown()) {
+      rejected = DispatchStatus.SHUTDOWN;
+    } else if (!isSampled()) {
+      rejected = DispatchStatus.SAMPLED;
+    }
+    final List<PendingHit> hits = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      DispatchStatus status = rejected;
+      if (status == null && quotaManager != null
+          && !quotaManager.tryAcquire(trackingId, clientKey)) {
+        status = DispatchStatus.QUOTA_EXCEEDED;
+      }
+      if (status == null) {
+        final PendingHit hit = new PendingHit(parameters[i], timestamps[i]);
+        pending.add(hit);
+        if (sampler != null) {
+          sampler.queued();
+        }
+        if (metrics != null) {
+          metrics.recordSubmitted();
+        }
+        hits.add(hit);
+      } else {
+        if (metrics != null) {
+          metrics.recordStatus(status);
+        }
+        subscriber.record(status);
+      }
+    }
+    if (hits.isEmpty()) {
+      subscriber.batchComplete(size);
+      return;
+    }
+    final Callable<Void> task = () -> {
+      try {
+        for (final PendingHit hit : hits) {
+          DispatchStatus status = DispatchStatus.ERROR;
+          try {
+            status = hit.call();
+          } finally {
+            subscriber.record(status);
+          }
+        }
+      } finally {
+        subscriber.batchComplete(size);
+      }
+      return null;
+    };
+    try {
+      if (executorService instanceof KeyedExecutor) {
+        ((KeyedExecutor) executorService).submit(clientKey, task);
+      } else {
+        executorService.submit(task);
+      }
+    } catch (final RejectedExecutionException ex) {
+      logger.log(Level.FINE, "Failed to submit hits", ex);
+      for (final PendingHit hit : hits) {
+        hit.cancel();
+        subscriber.record(DispatchStatus.SHUTDOWN);
+      }
+      subscriber.batchComplete(size);
+    }
+  }
+
+  /**
+   * Wait for the hits that are pending to be sent.
+   *
+   * <p>The result contains the count of the hits that were pending when this method was called.
+   * The client continues to accept new hits.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @return the result
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public FlushResult flush(long timeout, TimeUnit unit) throws InterruptedException {
+    return await(timeout, unit, false);
+  }
+
+  /**
+   * Close the client and wait for the hits that are pending to be sent.
+   *
+   * <p>No further hits are accepted. Hits that have not started sending when the timeout elapses
+   * are removed; they are persisted to the spool in submission order if configured, otherwise they
+   * are dropped. Hits that are being sent are reported as pending.
+   *
+   * <p>If sending the hits in the spool has not started it is cancelled; otherwise this waits for
+   * the spooled hit being sent and the remaining hits are left in the spool.
+   *
+   * <p>The executor service is not shutdown as it may be shared among client instances.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @return the result
+   * @throws InterruptedException if interrupted while waiting
+   * @see Builder#setSpoolPath(Path)
+   */
+  public FlushResult close(long timeout, TimeUnit unit) throws InterruptedException {
+    closed = true;
+    try {
+      return await(timeout, unit, true);
+    } finally {
+      if (shutdownHook != null) {
+        try {
+          Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (final IllegalStateException ex) {
+          // The JVM is shutting down
+        }
+      }
+      if (spool != null) {
+        stopSpoolSender();
+        try {
+          spool.close();
+        } catch (final IOException ex) {
+          logger.log(Level.WARNING, () -> "Failed to close spool: " + ex.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait for the hits that are pending to be sent.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @param cancel set to true to remove hits that have not started when the timeout elapses
+   * @return the result
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private FlushResult await(long timeout, TimeUnit unit, boolean cancel)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int sent = 0;
+    int dropped = 0;
+    int persisted = 0;
+    int remaining = 0;
+    for (final PendingHit hit : getPendingHits()) {
+      if (hit.await(deadline)) {
+        if (hit.status == DispatchStatus.COMPLETE) {
+          sent++;
+        } else {
+          dropped++;
+        }
+      } else if (cancel && hit.cancel()) {
+        if (persist(hit)) {
+          persisted++;
+        } else {
+          dropped++;
+        }
+      } else {
+        remaining++;
+      }
+    }
+    return new FlushResult(sent, dropped, persisted, remaining);
+  }
+
+  /**
+   * Gets the pending hits in submission order. Hits persisted to the spool are then sent in the
+   * order they were submitted.
+   *
+   * @return the pending hits
+   */
+  private PendingHit[] getPendingHits() {
+    final PendingHit[] hits = pending.toArray(new PendingHit[0]);
+    Arrays.sort(hits, Comparator.comparingLong(hit -> hit.id));
+    return hits;
+  }
+
+  /**
+   * Persist the hit to the spool.
+   *
+   * @param hit the hit
+   * @return true if persisted
+   */
+  private boolean persist(PendingHit hit) {
+    if (spool != null) {
+      final StringBuilder sb = new StringBuilder(HIT_BUFFER_SIZE);
+      hit.parameters.formatTo(sb);
+      try {
+        return spool.append(sb, hit.timestamp);
+      } catch (final IOException ex) {
+        logger.log(Level.WARNING, () -> "Failed to persist hit: " + ex.getMessage());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Close the client using the shutdown timeout. Called by the shutdown hook.
+   */
+  private void shutdown() {
+    try {
+      final FlushResult result = close(shutdownTimeout, TimeUnit.MILLISECONDS);
+      logger.log(Level.FINE, () -> "Shutdown: " + result);
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stop the task sending the hits persisted in the spool. If the task is running this waits for
+   * the hit being sent.
+   */
+  private void stopSpoolSender() {
+    if (spoolSenderState.compareAndSet(NEW, CANCELLED)) {
+      if (spoolSender != null) {
+        spoolSender.cancel(false);
+      }
+      return;
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        spoolSenderDone.await();
+        break;
+      } catch (final InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Send the hits persisted in the spool. Stops when the client is closed.
+   */
+  private void sendSpooledHits() {
+    if (!spoolSenderState.compareAndSet(NEW, RUNNING)) {
+      return;
+    }
+    try {
+      if (spool.tryAcquireLease()) {
+        try {
+          // Send one hit at a time so that close does not wait for the entire spool
+          int count = 0;
+          long size = spool.size();
+          while (!closed && size != 0) {
+            count += spool.drain(hitDispatcher, 1);
+            final long remaining = spool.size();
+            if (remaining == size) {
+              // The hit was not sent
+              break;
+            }
+            size = remaining;
+          }
+          final int sent = count;
+          logger.log(Level.FINE, () -> String.format("Sent %d spooled hit(s)", sent));
+        } finally {
+          spool.releaseLease();
+        }
+      }
+    } catch (final IOException ex) {
+      logger.log(Level.WARNING, () -> "Failed to send spooled hits: " + ex.getMessage());
+    } finally {
+      spoolSenderDone.countDown();
+    }
   }
 
   /**
@@ -933,12 +2061,52 @@ public class GoogleAnalyticsClient {
    *
    * @param parameters The request parameter data
    * @param timestamp The timestamp when the hit was reported (in milliseconds)
+   * @param submitted The time when the hit was submitted (in nanoseconds)
    * @return true, if successful
    */
-  private DispatchStatus dispatchRequest(Parameters parameters, long timestamp) {
+  private DispatchStatus dispatchRequest(Parameters parameters, long timestamp, long submitted) {
     // Build the request
+    final Object event = HitEvents.beginEncode();
     final StringBuilder sb = new StringBuilder(HIT_BUFFER_SIZE);
     parameters.formatTo(sb);
-    return hitDispatcher.send(sb, timestamp);
+    HitEvents.commitEncode(event, sb);
+    final ConcurrencyLimiter limiter = concurrencyLimiter;
+    if (metrics == null && limiter == null) {
+      return hitDispatcher.send(sb, timestamp);
+    }
+    if (limiter != null) {
+      try {
+        limiter.acquire();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        if (metrics != null) {
+          metrics.recordCancelled();
+        }
+        return DispatchStatus.SHUTDOWN;
+      }
+    }
+    final long start = System.nanoTime();
+    if (metrics != null) {
+      metrics.recordStarted(start - submitted);
+    }
+    DispatchStatus status = DispatchStatus.ERROR;
+    try {
+      status = hitDispatcher.send(sb, timestamp);
+      return status;
+    } finally {
+      final long elapsed = System.nanoTime() - start;
+      if (limiter != null) {
+        if (status == DispatchStatus.COMPLETE || status == DispatchStatus.ERROR) {
+          limiter.release(elapsed, status == DispatchStatus.ERROR);
+        } else {
+          limiter.release();
+        }
+      }
+      if (metrics != null) {
+        // URL encoded hits are ASCII so the length is the number of bytes.
+        // Note the dispatcher may have appended the queue time.
+        metrics.recordCompleted(status, sb.length(), elapsed);
+      }
+    }
   }
 }
@@ -0,0 +1,313 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Decorate a {@link HitTransport} to compress the payload using gzip.
+ *
+ * <p>The compressed payload is sent using the delegate transport with the content encoding
+ * {@value #CONTENT_ENCODING}. The server must support requests with this content encoding. A
+ * payload that is already encoded is passed directly to the delegate.
+ *
+ * <p>Batches of hits contain many repeated parameters and compress well. This is intended to be
+ * used between a {@link BatchingHitTransport} and the transport that sends the request. Single
+ * hits are small and the saving may not justify the CPU cost.
+ *
+ * <p>Payloads are compressed using a {@link Deflater} borrowed from a bounded pool. Compression is
+ * CPU bound and the pool retains at most one idle deflater per available processor. This allows
+ * reuse when hits are sent from short-lived threads, e.g. virtual threads. The native memory of
+ * the pooled deflaters is released by {@link #close()}.
+ */
+public final class GzipHitTransport implements HitTransport, Closeable {
+
+  /** The content encoding. */
+  public static final String CONTENT_ENCODING = "gzip";
+
+  /** The size of the gzip header. */
+  private static final int HEADER_SIZE = 10;
+
+  /** The size of the gzip trailer. */
+  private static final int TRAILER_SIZE = 8;
+
+  /**
+   * The gzip header: magic number; compression method (deflate); flags (none); modification time
+   * (none); extra flags (none); operating system (unknown).
+   */
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0,
+      (byte) 0xff};
+
+  /** The minimum size of the output buffer. */
+  private static final int MIN_BUFFER_SIZE = 1024;
+
+  /** The maximum number of idle compressors in the pool. */
+  private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+
+  /** The delegate transport. */
+  private final HitTransport delegate;
+
+  /** The compression level. */
+  private final int level;
+
+  /** The idle compressors. */
+  private final ConcurrentLinkedQueue<Compressor> pool = new ConcurrentLinkedQueue<>();
+
+  /** The number of idle compressors. */
+  private final AtomicInteger idle = new AtomicInteger();
+
+  /** Set to true when closed. */
+  private volatile boolean closed;
+
+  /**
+   * Compress data to the gzip format. The instance is reused.
+   */
+  private static final class Compressor {
+    /** The deflater. */
+    private final Deflater deflater;
+    /** The checksum of the uncompressed data. */
+    private final CRC32 crc = new CRC32();
+    /** The input buffer used when the payload has no accessible array. */
+    private byte[] input = new byte[0];
+    /** The output buffer. */
+    private byte[] output = new byte[MIN_BUFFER_SIZE];
+
+    /**
+     * Create a new instance.
+     *
+     * @param level the compression level
+     */
+    Compressor(int level) {
+      // Raw deflate data: the gzip header and trailer are written separately
+      deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Compress the remaining bytes of the payload. The position of the payload is not modified.
+     *
+     * @param payload the payload
+     * @return the compressed payload
+     */
+    byte[] compress(ByteBuffer payload) {
+      final int length = payload.remaining();
+      byte[] in;
+      int offset;
+      if (payload.hasArray()) {
+        in = payload.array();
+        offset = payload.arrayOffset() + payload.position();
+      } else {
+        if (input.length < length) {
+          input = new byte[length];
+        }
+        payload.duplicate().get(input, 0, length);
+        in = input;
+        offset = 0;
+      }
+      crc.reset();
+      crc.update(in, offset, length);
+      deflater.reset();
+      deflater.setInput(in, offset, length);
+      deflater.finish();
+
+      byte[] out = output;
+      System.arraycopy(HEADER, 0, out, 0, HEADER_SIZE);
+      int size = HEADER_SIZE;
+      while (!deflater.finished()) {
+        if (size == out.length) {
+          out = Arrays.copyOf(out, out.length * 2);
+        }
+        size += deflater.deflate(out, size, out.length - size);
+      }
+      output = out;
+
+      final byte[] result = Arrays.copyOf(out, size + TRAILER_SIZE);
+      writeInt(result, size, (int) crc.getValue());
+      writeInt(result, size + 4, length);
+      // Release the reference to the payload
+      deflater.setInput(out, 0, 0);
+      return result;
+    }
+
+    /**
+     * Release the native resources of the deflater. The instance cannot be used after this is
+     * called.
+     */
+    void end() {
+      deflater.end();
+    }
+
+    /**
+     * Write the value in little-endian order.
+     *
+     * @param bytes the bytes
+     * @param index the index
+     * @param value the value
+     */
+    private static void writeInt(byte[] bytes, int index, int value) {
+      bytes[index] = (byte) value;
+      bytes[index + 1] = (byte) (value >>> 8);
+      bytes[index + 2] = (byte) (value >>> 16);
+      bytes[index + 3] = (byte) (value >>> 24);
+    }
+  }
+
+  /**
+   * Create a new instance with the default compression level.
+   *
+   * @param delegate the delegate transport
+   */
+  public GzipHitTransport(HitTransport delegate) {
+    this(delegate, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * <p>The compression level is in the range {@code [0, 9]} or
+   * {@link Deflater#DEFAULT_COMPRESSION}. Lower levels are faster and higher levels create smaller
+   * output.
+   *
+   * @param delegate the delegate transport
+   * @param level the compression level
+   * @throws IllegalArgumentException if the compression level is invalid
+   */
+  public GzipHitTransport(HitTransport delegate, int level) {
+    this.delegate = Objects.requireNonNull(delegate, "Transport");
+    if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Compression level is not in [-1, 9]: " + level);
+    }
+    this.level = level;
+  }
+
+  /**
+   * Gets the compression level.
+   *
+   * @return the compression level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The payload is compressed in the calling thread and can be reused when this method
+   * returns.
+   */
+  @Override
+  public CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch) {
+    if (batch.getContentEncoding() != null) {
+      return delegate.send(payload, batch);
+    }
+    return delegate.send(ByteBuffer.wrap(compress(payload)),
+        batch.withContentEncoding(CONTENT_ENCODING));
+  }
+
+  /**
+   * Compress the remaining bytes of the payload using gzip. The position of the payload is not
+   * modified.
+   *
+   * @param payload the payload
+   * @return the compressed payload
+   */
+  byte[] compress(ByteBuffer payload) {
+    Compressor compressor = pool.poll();
+    if (compressor == null) {
+      compressor = new Compressor(level);
+    } else {
+      idle.decrementAndGet();
+    }
+    try {
+      return compressor.compress(payload);
+    } finally {
+      release(compressor);
+    }
+  }
+
+  /**
+   * Return the compressor to the pool. The compressor is ended if the pool is full or closed.
+   *
+   * @param compressor the compressor
+   */
+  private void release(Compressor compressor) {
+    if (!closed) {
+      if (idle.incrementAndGet() <= MAX_IDLE) {
+        pool.offer(compressor);
+        if (closed) {
+          // Closed concurrently
+          endAll();
+        }
+        return;
+      }
+      idle.decrementAndGet();
+    }
+    compressor.end();
+  }
+
+  /**
+   * Gets the number of idle compressors in the pool.
+   *
+   * @return the idle count
+   */
+  int getIdleCount() {
+    return idle.get();
+  }
+
+  /**
+   * End the idle compressors.
+   */
+  private void endAll() {
+    for (Compressor compressor = pool.poll(); compressor != null; compressor = pool.poll()) {
+      idle.decrementAndGet();
+      compressor.end();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Releases the native resources of the pooled deflaters. The transport can still be used;
+   * payloads are then compressed using a deflater that is released after use. The delegate
+   * transport is not closed.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    endAll();
+  }
+}
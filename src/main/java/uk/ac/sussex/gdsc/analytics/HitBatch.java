@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.Objects;
+
+/**
+ * Describe the hits in a payload sent by a {@link HitTransport}.
+
+ */
+public final class HitBatch {
+
+  /** The default content type of the payload for URL encoded hits. */
+  public static final String DEFAULT_CONTENT_TYPE =
+      "application/x-www-form-urlencoded; charset=utf-8";
+
+  /** A batch containing a single hit. */
+  private static final HitBatch SINGLE = new HitBatch(1, DEFAULT_CONTENT_TYPE, null);
+
+  /** The number of hits. */
+  private final int hitCount;
+
+  /** The content type of the payload. */
+  private final String contentType;
+
+  /** The content encoding of the payload (null for no encoding). */
+  private final String contentEncoding;
+
+  /**
+   * Create a new instance.
+   *
+   * @param hitCount the number of hits
+   * @param contentType the content type
+   * @param contentEncoding the content encoding
+   */
+  private HitBatch(int hitCount, String contentType, String contentEncoding) {
+    this.hitCount = hitCount;
+    this.contentType = contentType;
+    this.contentEncoding = contentEncoding;
+  }
+
+  /**
+   * Gets a batch containing a single hit.
+   *
+   * @return the batch
+   */
+  public static HitBatch single() {
+    return SINGLE;
+  }
+
+  /**
+   * Gets a batch containing the specified number of hits.
+   *
+   * @param hitCount the number of hits
+   * @return the batch
+   * @throws IllegalArgumentException if the count is not strictly positive
+   */
+  public static HitBatch of(int hitCount) {
+    if (hitCount == 1) {
+      return SINGLE;
+    }
+    if (hitCount <= 0) {
+      throw new IllegalArgumentException("Hit count is not strictly positive: " + hitCount);
+    }
+    return new HitBatch(hitCount, DEFAULT_CONTENT_TYPE, null);
+  }
+
+  /**
+   * Gets the number of hits.
+   *
+   * @return the hit count
+   */
+  public int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Gets the content type of the payload. The default is {@link #DEFAULT_CONTENT_TYPE} for URL
+   * encoded hits.
+   *
+   * @return the content type
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Checks if the payload contains URL encoded hits using the {@link #DEFAULT_CONTENT_TYPE}.
+   *
+   * @return true if the default content type
+   */
+  public boolean isDefaultContentType() {
+    return DEFAULT_CONTENT_TYPE.equals(contentType);
+  }
+
+  /**
+   * Return a batch with the same hits and the specified content type of the payload.
+   *
+   * @param contentType the content type
+   * @return the batch
+   */
+  public HitBatch withContentType(String contentType) {
+    Objects.requireNonNull(contentType, "Content type");
+    if (this.contentType.equals(contentType)) {
+      return this;
+    }
+    return new HitBatch(hitCount, contentType, contentEncoding);
+  }
+
+  /**
+   * Gets the content encoding of the payload, e.g. {@code gzip}. This is {@code null} if the
+   * payload is not encoded.
+   *
+   * @return the content encoding
+   */
+  public String getContentEncoding() {
+    return contentEncoding;
+  }
+
+  /**
+   * Return a batch with the same hits and the specified content encoding of the payload.
+   *
+   * @param contentEncoding the content encoding (null for no encoding)
+   * @return the batch
+   */
+  public HitBatch withContentEncoding(String contentEncoding) {
+    if (Objects.equals(this.contentEncoding, contentEncoding)) {
+      return this;
+    }
+    return new HitBatch(hitCount, contentType, contentEncoding);
+  }
+
+  @Override
+  public String toString() {
+    return "HitBatch[hitCount=" + hitCount + ", contentType=" + contentType + ", contentEncoding="
+        + contentEncoding + "]";
+  }
+}
@@ -0,0 +1,297 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+/**
+ * Receive a sequence of hits from a publisher and send them using a {@link GoogleAnalyticsClient}
+ * with demand-based back-pressure.
+ *
+ * <p>This follows the subscriber protocol of {@code java.util.concurrent.Flow} (Java 9) without a
+ * dependency on the {@code Flow} interfaces. The publisher signals the subscription using
+ * {@link #onSubscribe(LongConsumer, Runnable)} and must not send more hits than requested. Hits are
+ * collected into batches and each batch is sent in a single task of the client executor service.
+ * The subscriber requests a new batch of hits when a batch completes. The number of hits buffered
+ * is therefore limited to the batch size multiplied by the maximum number of batches.
+ *
+ * <p>Signals to the subscriber must be serial, i.e. not invoked concurrently. The result is
+ * completed when all hits have been sent after the publisher signals completion.
+ *
+ * <p>Hits are sent directly to the executor service and do not use the priority lanes of the
+ * client.
+ *
+ * @see GoogleAnalyticsClient#newHitSubscriber(int, int)
+ */
+public final class HitSubscriber {
+
+  /** The default number of hits in a batch. */
+  public static final int DEFAULT_BATCH_SIZE = 20;
+
+  /** The default maximum number of batches in flight. */
+  public static final int DEFAULT_MAX_BATCHES = 4;
+
+  /** The client. */
+  private final GoogleAnalyticsClient client;
+
+  /** The number of hits in a batch. */
+  private final int batchSize;
+
+  /** The maximum number of batches in flight. */
+  private final int maxBatches;
+
+  /** The count of each dispatch status. */
+  private final int[] counts = new int[DispatchStatus.values().length];
+
+  /** The result. */
+  private final CompletableFuture<BulkResult> result = new CompletableFuture<>();
+
+  /** The number of batches in flight. */
+  private final AtomicInteger active = new AtomicInteger();
+
+  /** The current batch of hits. */
+  private Parameters[] parameters;
+
+  /** The timestamps of the current batch of hits. */
+  private long[] timestamps;
+
+  /** The size of the current batch. */
+  private int size;
+
+  /** The function to request hits from the publisher. */
+  private volatile LongConsumer request;
+
+  /** Set to true when the publisher has terminated. */
+  private volatile boolean done;
+
+  /** The error signalled by the publisher. */
+  private volatile Throwable error;
+
+  /**
+   * Create a new instance.
+   *
+   * @param client the client
+   * @param batchSize the number of hits in a batch
+   * @param maxBatches the maximum number of batches in flight
+   * @throws IllegalArgumentException if the batch size or maximum batches are not strictly
+   *         positive
+   */
+  HitSubscriber(GoogleAnalyticsClient client, int batchSize, int maxBatches) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size is not strictly positive: " + batchSize);
+    }
+    if (maxBatches <= 0) {
+      throw new IllegalArgumentException("Max batches is not strictly positive: " + maxBatches);
+    }
+    this.client = client;
+    this.batchSize = batchSize;
+    this.maxBatches = maxBatches;
+    newBatch();
+  }
+
+  /**
+   * Gets the number of hits in a batch.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Gets the maximum number of batches in flight.
+   *
+   * @return the maximum batches
+   */
+  public int getMaxBatches() {
+    return maxBatches;
+  }
+
+  /**
+   * Gets the result. This is completed when all the hits have been sent after the publisher has
+   * terminated. If the publisher signalled an error the result completes exceptionally with the
+   * error.
+   *
+   * @return the result
+   */
+  public CompletableFuture<BulkResult> getResult() {
+    return result;
+  }
+
+  /**
+   * Invoked when the subscription to the publisher is created. The initial demand is the batch
+   * size multiplied by the maximum number of batches.
+   *
+   * <p>If the subscriber has already been subscribed the new subscription is cancelled.
+   *
+   * @param request the function to request hits from the publisher
+   * @param cancel the function to cancel the subscription
+   */
+  public void onSubscribe(LongConsumer request, Runnable cancel) {
+    Objects.requireNonNull(request, "Request");
+    Objects.requireNonNull(cancel, "Cancel");
+    if (this.request != null) {
+      cancel.run();
+      return;
+    }
+    this.request = request;
+    request.accept((long) batchSize * maxBatches);
+  }
+
+  /**
+   * Invoked with the next hit. The hit is sent when the batch is full or the publisher completes.
+   *
+   * <p>The timestamp of the hit is the current time. Use {@link #onNext(Parameters, long)} if the
+   * hit occurred before it was published.
+   *
+   * @param hit the hit parameters
+   */
+  public void onNext(Parameters hit) {
+    onNext(hit, System.currentTimeMillis());
+  }
+
+  /**
+   * Invoked with the next hit. The hit is sent when the batch is full or the publisher completes.
+   *
+   * @param hit the hit parameters
+   * @param timestamp the timestamp when the hit occurred (in milliseconds)
+   * @see GoogleAnalyticsClient#send(Parameters, long)
+   */
+  public void onNext(Parameters hit, long timestamp) {
+    Objects.requireNonNull(hit, "Hit");
+    if (done) {
+      return;
+    }
+    parameters[size] = hit;
+    timestamps[size] = timestamp;
+    if (++size == batchSize) {
+      sendBatch();
+    }
+  }
+
+  /**
+   * Invoked when the publisher terminates with an error. Hits already received are sent.
+   *
+   * @param throwable the error
+   */
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable, "Throwable");
+    error = throwable;
+    terminate();
+  }
+
+  /**
+   * Invoked when the publisher has sent all hits.
+   */
+  public void onComplete() {
+    terminate();
+  }
+
+  /**
+   * Record the dispatch status of a hit.
+   *
+   * @param status the status
+   */
+  void record(DispatchStatus status) {
+    synchronized (counts) {
+      counts[status.ordinal()]++;
+    }
+  }
+
+  /**
+   * Invoked when a batch of hits is complete. This requests more hits from the publisher.
+   *
+   * @param count the number of hits in the batch
+   */
+  void batchComplete(int count) {
+    final LongConsumer r = request;
+    if (!done && r != null) {
+      r.accept(count);
+    }
+    if (active.decrementAndGet() == 0 && done) {
+      finish();
+    }
+  }
+
+  /**
+   * Send the current batch and create a new batch.
+   */
+  private void sendBatch() {
+    final Parameters[] batchParameters = parameters;
+    final long[] batchTimestamps = timestamps;
+    final int batchCount = size;
+    newBatch();
+    active.incrementAndGet();
+    client.send(this, batchParameters, batchTimestamps, batchCount);
+  }
+
+  /**
+   * Create a new batch.
+   */
+  private void newBatch() {
+    parameters = new Parameters[batchSize];
+    timestamps = new long[batchSize];
+    size = 0;
+  }
+
+  /**
+   * Terminate the subscription. The current batch is sent.
+   */
+  private void terminate() {
+    if (done) {
+      return;
+    }
+    if (size != 0) {
+      sendBatch();
+    }
+    done = true;
+    if (active.get() == 0) {
+      finish();
+    }
+  }
+
+  /**
+   * Complete the result.
+   */
+  private void finish() {
+    final Throwable ex = error;
+    if (ex != null) {
+      result.completeExceptionally(ex);
+      return;
+    }
+    synchronized (counts) {
+      result.complete(new BulkResult(counts.clone()));
+    }
+  }
+}
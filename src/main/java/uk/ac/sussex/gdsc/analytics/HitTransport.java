@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport the encoded hits to the remote server.
+ *
+ * <p>This is a service provider interface that allows a custom HTTP stack to be used to send hits.
+ * The transport receives the request body already encoded and completes asynchronously.
+ * Additional behaviour can be added by decorating a transport, for example
+ * {@link BatchingHitTransport} and {@link RetryingHitTransport}. A {@link DefaultHitDispatcher}
+ * can be created to send hits using a transport.
+ *
+ * <p>Implementations must be thread-safe.
+ *
+ * @see DefaultHitDispatcher#DefaultHitDispatcher(HitTransport)
+ */
+public interface HitTransport {
+
+  /**
+   * Send the payload.
+   *
+   * <p>The payload contains the URL encoded hits in UTF-8 between the position and the limit of
+   * the buffer. If the batch contains more than one hit then each hit is separated by a new line
+   * character ({@code '\n'}). If the batch has a content encoding then the hits have been encoded,
+   * e.g. using gzip compression, and the transport should send the encoding with the request.
+   * The transport should send the {@link HitBatch#getContentType() content type} with the
+   * request; payloads that do not use the {@link HitBatch#DEFAULT_CONTENT_TYPE} are not URL
+   * encoded hits, e.g. JSON events for the GA4 Measurement Protocol.
+   *
+   * <p>The payload is owned by the caller. It must not be modified by the transport and it must
+   * not be used after the returned future has completed.
+   *
+   * <p>The returned future completes with {@link DispatchStatus#COMPLETE} if the payload was
+   * accepted by the server, or {@link DispatchStatus#ERROR} if it was rejected. It completes
+   * exceptionally with an {@link IOException} if the payload could not be sent, for example if
+   * there is no connection to the server.
+   *
+   * @param payload the payload
+   * @param batch the batch descriptor
+   * @return the dispatch status
+   */
+  CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch);
+}
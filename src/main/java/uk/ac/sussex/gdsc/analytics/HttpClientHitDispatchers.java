@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.net.URL;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Create a {@link HitDispatcher} or {@link HitTransport} that uses the
+ * {@code java.net.http.HttpClient}.
+ *
+ * <p>The HTTP client is provided in a multi-release jar for Java 11 or later. On earlier versions
+ * it is not available.
+ *
+ * <p>The client prefers HTTP/2. Concurrent hits sent to the same host from multiple threads are
+ * multiplexed as streams over a single connection. If the server does not support HTTP/2 then the
+ * client uses HTTP/1.1 with a pool of persistent connections. All transports share the same
+ * client.
+ *
+ * <p>The transport does not use a {@link java.net.HttpURLConnection} and the
+ * {@link HttpUrlConnectionCallback} passed to
+ * {@link HitDispatcher#send(CharSequence, long, HttpUrlConnectionCallback)} is ignored. Any 2xx
+ * response code is a success.
+ */
+public final class HttpClientHitDispatchers {
+
+  /** The name of the class that creates the transport. */
+  private static final String FACTORY_CLASS_NAME =
+      "uk.ac.sussex.gdsc.analytics.HttpClientTransportFactory";
+
+  /** The factory (or null). */
+  private static final Function<URL, HitTransport> FACTORY = createFactory(FACTORY_CLASS_NAME);
+
+  /**
+   * No public construction.
+   */
+  private HttpClientHitDispatchers() {}
+
+  /**
+   * Creates the factory.
+   *
+   * @param className the class name of the factory
+   * @return the factory (or null)
+   */
+  @SuppressWarnings("unchecked")
+  static Function<URL, HitTransport> createFactory(String className) {
+    try {
+      return (Function<URL, HitTransport>) Class.forName(className).getDeclaredConstructor()
+          .newInstance();
+    } catch (final ReflectiveOperationException | LinkageError | RuntimeException ex) {
+      Logger.getLogger(HttpClientHitDispatchers.class.getName()).log(Level.FINE,
+          () -> "The HTTP client is not available: " + ex);
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the HTTP client is available.
+   *
+   * @return true if available
+   */
+  public static boolean isAvailable() {
+    return FACTORY != null;
+  }
+
+  /**
+   * Creates a dispatcher that uses the HTTP client to send hits to the URL.
+   *
+   * @param url the url
+   * @return the dispatcher
+   * @throws UnsupportedOperationException if the HTTP client is not available
+   * @throws IllegalArgumentException if the URL is not a valid URI
+   * @see #isAvailable()
+   */
+  public static HitDispatcher newHitDispatcher(URL url) {
+    return new DefaultHitDispatcher(newTransport(url));
+  }
+
+  /**
+   * Creates a transport that uses the HTTP client to send hits to the URL.
+   *
+   * <p>The transport completes asynchronously.
+   *
+   * @param url the url
+   * @return the transport
+   * @throws UnsupportedOperationException if the HTTP client is not available
+   * @throws IllegalArgumentException if the URL is not a valid URI
+   * @see #isAvailable()
+   */
+  public static HitTransport newTransport(URL url) {
+    if (FACTORY == null) {
+      throw new UnsupportedOperationException("The HTTP client requires Java 11");
+    }
+    return FACTORY.apply(url);
+  }
+
+  /**
+   * Creates a dispatcher that uses the HTTP client to send hits to Google Analytics.
+   *
+   * @param secure the secure
+   * @param debug the debug
+   * @return the dispatcher
+   * @throws UnsupportedOperationException if the HTTP client is not available
+   * @see UrlUtils#getGoogleAnalyticsUrl(boolean, boolean)
+   */
+  public static HitDispatcher newHitDispatcher(boolean secure, boolean debug) {
+    return newHitDispatcher(UrlUtils.getGoogleAnalyticsUrl(secure, debug));
+  }
+}
@@ -0,0 +1,59 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+/**
+ * Contains utility functions for HTTP status codes.
+ */
+final class HttpStatusCodes {
+
+  /** The minimum HTTP status code for success. */
+  private static final int SUCCESS_MIN = 200;
+
+  /** The maximum HTTP status code for success. */
+  private static final int SUCCESS_MAX = 299;
+
+  /**
+   * No public construction.
+   */
+  private HttpStatusCodes() {
+    // Do nothing
+  }
+
+  /**
+   * Checks if the response code is a success. Any 2xx code is a success.
+   *
+   * @param responseCode the response code
+   * @return true if a success
+   */
+  static boolean isSuccess(int responseCode) {
+    return responseCode >= SUCCESS_MIN && responseCode <= SUCCESS_MAX;
+  }
+}
@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport hits to a URL using a {@link HttpURLConnection}.
+ *
+ * <p>The payload is sent in the calling thread and the returned future is complete.
+ */
+public class HttpUrlConnectionTransport implements HitTransport {
+
+  /** The logger. */
+  private static final Logger logger =
+      Logger.getLogger(HttpUrlConnectionTransport.class.getName());
+
+  /** The logger for errors. Repeated errors are suppressed. */
+  private static final RateLimitedLogger errorLogger = RateLimitedLogger.newErrorLogger(logger);
+
+  /** The url used for requests. */
+  private final URL url;
+
+  /** The proxy used for requests. */
+  private final Proxy proxy;
+
+  /** The connection provider. */
+  private final HttpConnectionProvider connectionProvider;
+
+  /**
+   * Create a new instance.
+   *
+   * @param url the url
+   */
+  public HttpUrlConnectionTransport(URL url) {
+    this(url, null, null);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param url the url
+   * @param proxy the proxy (may be null)
+   */
+  public HttpUrlConnectionTransport(URL url, Proxy proxy) {
+    this(url, null, proxy);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param url the url (required)
+   * @param connectionProvider the connection provider (may be null)
+   * @param proxy the proxy (may be null)
+   */
+  HttpUrlConnectionTransport(URL url, HttpConnectionProvider connectionProvider, Proxy proxy) {
+    this.url = Objects.requireNonNull(url, "URL is null");
+    if (connectionProvider == null) {
+      this.connectionProvider = new HttpConnectionProvider() {
+        // Use the default implementation in the interface
+      };
+    } else {
+      this.connectionProvider = connectionProvider;
+    }
+    // Does not matter if this is null
+    this.proxy = proxy;
+  }
+
+  /**
+   * Gets the url.
+   *
+   * @return the url
+   */
+  public URL getUrl() {
+    return url;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The payload is sent in the calling thread and the returned future is complete.
+   */
+  @Override
+  public CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch) {
+    final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+    try {
+      result.complete(send(payload, batch, null));
+    } catch (final IOException ex) {
+      result.completeExceptionally(ex);
+    }
+    return result;
+  }
+
+  /**
+   * Send the payload.
+   *
+   * <p>The callback is invoked after the payload has been sent and
+   * {@link HttpURLConnection#getResponseCode()} has returned successfully.
+   *
+   * @param payload the payload
+   * @param batch the batch descriptor
+   * @param callback the callback (may be null)
+   * @return the dispatch status
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  DispatchStatus send(ByteBuffer payload, HitBatch batch, HttpUrlConnectionCallback callback)
+      throws IOException {
+    Objects.requireNonNull(payload, "Payload was null");
+    final int length = payload.remaining();
+    final HttpURLConnection connection = connectionProvider.openConnection(url, proxy);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setUseCaches(false);
+    connection.setRequestProperty("Content-Type", batch.getContentType());
+    if (batch.getContentEncoding() != null) {
+      connection.setRequestProperty("Content-Encoding", batch.getContentEncoding());
+    }
+
+    // Send the request
+    connection.setFixedLengthStreamingMode(length);
+    connection.connect();
+
+    // Once connected ensure that disconnect is called
+    int responseCode;
+    try {
+      try (OutputStream os = connection.getOutputStream()) {
+        write(os, payload);
+      }
+      responseCode = connection.getResponseCode();
+      if (callback != null) {
+        callback.process(connection);
+      }
+    } finally {
+      connection.disconnect();
+    }
+
+    //////////////////////////////////////
+    // Note: Valid on 31-Aug-2018
+    // ----
+    // https://developers.google.com/analytics/devguides/collection/protocol/v1/validating-hits
+    // "The Google Analytics Measurement Protocol does not return HTTP error codes".
+    // ----
+    // So the response code will ALWAYS be HTTP_OK.
+    // However since the connection may be to something else via the connection provider,
+    // or Google change this response in the future we process the result anyway.
+    // The GA4 Measurement Protocol returns HTTP_NO_CONTENT.
+    //////////////////////////////////////
+
+    if (HttpStatusCodes.isSuccess(responseCode)) {
+      // This is a success. All other returns are an error.
+      return DispatchStatus.COMPLETE;
+    }
+    // Log structured fields and not the payload which may be large
+    if (errorLogger.isLoggable(Level.WARNING)) {
+      errorLogger.log(Level.WARNING, "response",
+          "Failed to send hits: hits={0}, bytes={1}, responseCode={2}", batch.getHitCount(),
+          length, responseCode);
+    }
+    return DispatchStatus.ERROR;
+  }
+
+  /**
+   * Write the remaining bytes of the payload to the output stream. The position of the payload is
+   * not modified.
+   *
+   * @param os the output stream
+   * @param payload the payload
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void write(OutputStream os, ByteBuffer payload) throws IOException {
+    if (payload.hasArray()) {
+      os.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+    } else {
+      final byte[] bytes = new byte[payload.remaining()];
+      payload.duplicate().get(bytes);
+      os.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+/**
+ * Publish the hits from an iterator to a {@link HitSubscriber} on demand.
+ *
+ * <p>Hits are pulled from the iterator in the thread that requests them. Requests from concurrent
+ * threads, or from within a signal to the subscriber, are serialised so that only one thread
+ * iterates at a time.
+ */
+final class IteratorPublisher {
+
+  /** The iterator. */
+  private final Iterator<? extends Parameters> iterator;
+
+  /** The subscriber. */
+  private final HitSubscriber subscriber;
+
+  /** The function to obtain the timestamp of a hit (or null to use the current time). */
+  private final ToLongFunction<? super Parameters> timestamp;
+
+  /** The outstanding demand. */
+  private final AtomicLong demand = new AtomicLong();
+
+  /** The work-in-progress count used to serialise the iteration. */
+  private final AtomicInteger wip = new AtomicInteger();
+
+  /** Set to true when cancelled. */
+  private volatile boolean cancelled;
+
+  /** Set to true when the iterator has terminated. Guarded by the work-in-progress count. */
+  private boolean done;
+
+  /**
+   * Create a new instance.
+   *
+   * @param iterator the iterator
+   * @param subscriber the subscriber
+   */
+  IteratorPublisher(Iterator<? extends Parameters> iterator, HitSubscriber subscriber) {
+    this(iterator, subscriber, null);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param iterator the iterator
+   * @param subscriber the subscriber
+   * @param timestamp the function to obtain the timestamp of a hit (or null to use the current
+   *        time)
+   */
+  IteratorPublisher(Iterator<? extends Parameters> iterator, HitSubscriber subscriber,
+      ToLongFunction<? super Parameters> timestamp) {
+    this.iterator = iterator;
+    this.subscriber = subscriber;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Subscribe the subscriber. This will send the initial demand of hits in the calling thread.
+   */
+  void subscribe() {
+    subscriber.onSubscribe(this::request, this::cancel);
+  }
+
+  /**
+   * Request more hits.
+   *
+   * @param count the count
+   */
+  private void request(long count) {
+    if (count <= 0) {
+      return;
+    }
+    demand.accumulateAndGet(count, (current, n) -> {
+      final long sum = current + n;
+      // Cap at unbounded
+      return sum < 0 ? Long.MAX_VALUE : sum;
+    });
+    drain();
+  }
+
+  /**
+   * Cancel the subscription.
+   */
+  private void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Send hits to the subscriber while there is demand.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      // Another thread is iterating and will observe the new demand
+      return;
+    }
+    int missed = 1;
+    do {
+      final long requested = demand.get();
+      long emitted = 0;
+      while (emitted != requested && !done && !cancelled) {
+        final Parameters hit;
+        final long time;
+        try {
+          if (!iterator.hasNext()) {
+            done = true;
+            subscriber.onComplete();
+            break;
+          }
+          hit = iterator.next();
+          if (hit == null) {
+            throw new NullPointerException("Hit parameters are null");
+          }
+          time = timestamp == null ? System.currentTimeMillis() : timestamp.applyAsLong(hit);
+        } catch (final RuntimeException ex) {
+          done = true;
+          subscriber.onError(ex);
+          break;
+        }
+        subscriber.onNext(hit, time);
+        emitted++;
+      }
+      if (emitted != 0) {
+        demand.addAndGet(-emitted);
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+}
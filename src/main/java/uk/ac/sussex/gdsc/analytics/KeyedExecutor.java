@@ -0,0 +1,309 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An executor service that runs tasks with the same key in order.
+ *
+ * <p>Tasks are assigned to one of N serial lanes using a hash of the key. The tasks in a lane are
+ * run in submission order by at most one thread at a time. Lanes run in parallel on a pool of N
+ * threads so throughput scales with the number of lanes.
+ *
+ * <p>A lane runs a limited batch of tasks before yielding its thread to the other lanes. A lane
+ * with a hot key uses at most one thread and does not block the other lanes.
+ *
+ * <p>Tasks submitted without a key are assigned to the lanes in rotation.
+ */
+public final class KeyedExecutor extends AbstractExecutorService {
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(KeyedExecutor.class.getName());
+
+  /** The number of tasks a lane runs before yielding the thread. */
+  private static final int BATCH_SIZE = 16;
+
+  /** The thread pool that runs the lanes. */
+  private final ExecutorService executor;
+
+  /** The lanes. */
+  private final Lane[] lanes;
+
+  /** The next lane for tasks without a key. */
+  private final AtomicInteger next = new AtomicInteger();
+
+  /** The number of tasks that have been submitted and not run. */
+  private final AtomicInteger outstanding = new AtomicInteger();
+
+  /** Signal when shutdown and all the submitted tasks have run. */
+  private final CountDownLatch drained = new CountDownLatch(1);
+
+  /** Set to true when shutdown. */
+  private volatile boolean shutdown;
+
+  /**
+   * A serial lane of tasks.
+   */
+  private final class Lane implements Runnable {
+    /** The tasks. Guarded by this. */
+    final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    /** Set to true when the lane is scheduled to run on the thread pool. Guarded by this. */
+    boolean scheduled;
+
+    /**
+     * Add the task.
+     *
+     * @param task the task
+     */
+    void add(Runnable task) {
+      synchronized (this) {
+        tasks.add(task);
+        if (scheduled) {
+          return;
+        }
+        scheduled = true;
+      }
+      executor.execute(this);
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        final Runnable task;
+        synchronized (this) {
+          task = tasks.poll();
+          if (task == null) {
+            scheduled = false;
+            return;
+          }
+        }
+        try {
+          task.run();
+        } catch (final RuntimeException ex) {
+          logger.log(Level.WARNING, "Task failed", ex);
+        } finally {
+          taskDone();
+        }
+      }
+      // Yield to the other lanes. The lane remains scheduled.
+      try {
+        executor.execute(this);
+      } catch (final RejectedExecutionException ex) {
+        // Shutdown now
+        synchronized (this) {
+          scheduled = false;
+        }
+      }
+    }
+
+    /**
+     * Remove all the tasks.
+     *
+     * @param list the list to receive the tasks
+     */
+    synchronized void drainTo(List<Runnable> list) {
+      list.addAll(tasks);
+      tasks.clear();
+    }
+  }
+
+  /**
+   * Create a new instance with a default thread factory.
+   *
+   * @param laneCount the number of lanes
+   * @throws IllegalArgumentException if the lane count is not strictly positive
+   */
+  public KeyedExecutor(int laneCount) {
+    this(laneCount, Executors.defaultThreadFactory());
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param laneCount the number of lanes
+   * @param threadFactory the thread factory
+   * @throws IllegalArgumentException if the lane count is not strictly positive
+   */
+  public KeyedExecutor(int laneCount, ThreadFactory threadFactory) {
+    if (laneCount < 1) {
+      throw new IllegalArgumentException("Lane count is not strictly positive: " + laneCount);
+    }
+    executor = Executors.newFixedThreadPool(laneCount, threadFactory);
+    lanes = new Lane[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] = new Lane();
+    }
+  }
+
+  /**
+   * Gets the number of lanes.
+   *
+   * @return the lane count
+   */
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  /**
+   * Executes the task after all the tasks previously submitted with a key that maps to the same
+   * lane.
+   *
+   * @param key the key
+   * @param command the task
+   * @throws RejectedExecutionException if shutdown
+   * @throws NullPointerException if the key or task is null
+   */
+  public void execute(Object key, Runnable command) {
+    addTask(lanes[getLane(key.hashCode(), lanes.length)], command);
+  }
+
+  /**
+   * Submits the task for execution after all the tasks previously submitted with a key that maps
+   * to the same lane.
+   *
+   * @param <T> the type of the task's result
+   * @param key the key
+   * @param task the task
+   * @return a Future representing pending completion of the task
+   * @throws RejectedExecutionException if shutdown
+   * @throws NullPointerException if the key or task is null
+   */
+  public <T> Future<T> submit(Object key, Callable<T> task) {
+    final Lane lane = lanes[getLane(key.hashCode(), lanes.length)];
+    final RunnableFuture<T> future = newTaskFor(task);
+    addTask(lane, future);
+    return future;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    addTask(lanes[Math.floorMod(next.getAndIncrement(), lanes.length)], command);
+  }
+
+  /**
+   * Adds the task to the lane.
+   *
+   * @param lane the lane
+   * @param task the task
+   */
+  private void addTask(Lane lane, Runnable task) {
+    Objects.requireNonNull(task, "Task");
+    outstanding.incrementAndGet();
+    if (shutdown) {
+      taskDone();
+      throw new RejectedExecutionException("Shutdown");
+    }
+    lane.add(task);
+  }
+
+  /**
+   * Called when a task is done. Shuts down the thread pool if shutdown and all tasks are done.
+   */
+  private void taskDone() {
+    if (outstanding.decrementAndGet() == 0 && shutdown) {
+      terminate();
+    }
+  }
+
+  /**
+   * Shutdown the thread pool.
+   */
+  private void terminate() {
+    executor.shutdown();
+    drained.countDown();
+  }
+
+  /**
+   * Gets the lane for the hash code.
+   *
+   * @param hash the hash code
+   * @param laneCount the lane count
+   * @return the lane
+   */
+  static int getLane(int hash, int laneCount) {
+    // Spread the upper bits as per HashMap
+    return Math.floorMod(hash ^ (hash >>> 16), laneCount);
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    if (outstanding.get() == 0) {
+      terminate();
+    }
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown = true;
+    final List<Runnable> list = new ArrayList<>();
+    for (final Lane lane : lanes) {
+      lane.drainTo(list);
+    }
+    outstanding.addAndGet(-list.size());
+    executor.shutdownNow();
+    drained.countDown();
+    return list;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return executor.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    return drained.await(timeout, unit)
+        && executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of positive values using buckets with a fixed relative precision.
+ *
+ * <p>Values are stored using log-linear buckets in the style of an HDR histogram: each power of
+ * two is divided into 16 linear sub-buckets. Values below 32 are exact and all other values are
+ * stored with a relative error of at most 1/16. This covers the entire range of a {@code long}
+ * with a fixed size array.
+ *
+ * <p>Recording a value is lock-free and does not allocate memory. This class is thread-safe;
+ * values read while values are recorded may not be a consistent snapshot.
+ */
+public final class LatencyHistogram {
+
+  /** The number of bits used for the sub-buckets. */
+  private static final int SUB_BITS = 4;
+  /** The number of sub-buckets for each power of two. */
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  /** The mask for the sub-bucket. */
+  private static final int SUB_MASK = SUB_COUNT - 1;
+  /** The number of bits in a long that can be set for a positive value. */
+  private static final int POSITIVE_BITS = Long.SIZE - 1;
+  /** The number of buckets. */
+  static final int BUCKETS = (POSITIVE_BITS - SUB_BITS + 1) * SUB_COUNT;
+  /** The maximum percentile. */
+  private static final double MAX_PERCENTILE = 100;
+
+  /** The count in each bucket. */
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  /** The total count. */
+  private final LongAdder count = new LongAdder();
+  /** The sum of the values. */
+  private final LongAdder sum = new LongAdder();
+  /** The maximum value. */
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record the value. Negative values are recorded as zero.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    final long v = Math.max(0, value);
+    counts.incrementAndGet(index(v));
+    count.increment();
+    sum.add(v);
+    long current = max.get();
+    while (v > current && !max.compareAndSet(current, v)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the mean of the recorded values. Returns zero if there are no values.
+   *
+   * @return the mean
+   */
+  public double getMean() {
+    final long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Gets the maximum of the recorded values. Returns zero if there are no values.
+   *
+   * @return the max
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets the value at the given percentile. This is the highest value that is equivalent to the
+   * recorded values at the percentile. Returns zero if there are no values.
+   *
+   * @param percentile the percentile (in the range [0, 100])
+   * @return the value
+   * @throws IllegalArgumentException if the percentile is not in the range [0, 100]
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (!(percentile >= 0 && percentile <= MAX_PERCENTILE)) {
+      throw new IllegalArgumentException("Invalid percentile: " + percentile);
+    }
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    final long target = Math.max(1, (long) Math.ceil(percentile / MAX_PERCENTILE * total));
+    long cumulative = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Reset the histogram. Values recorded during the reset may be lost.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.set(0);
+  }
+
+  /**
+   * Gets the bucket index for the positive value.
+   *
+   * @param value the value
+   * @return the index
+   */
+  static int index(long value) {
+    final int msb = POSITIVE_BITS - Long.numberOfLeadingZeros(value);
+    if (msb < SUB_BITS) {
+      return (int) value;
+    }
+    final int shift = msb - SUB_BITS;
+    return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & SUB_MASK);
+  }
+
+  /**
+   * Gets the lowest value in the bucket.
+   *
+   * @param index the index
+   * @return the value
+   */
+  static long lowestValue(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    final int shift = (index >>> SUB_BITS) - 1;
+    return (long) ((index & SUB_MASK) | SUB_COUNT) << shift;
+  }
+
+  /**
+   * Gets the highest value in the bucket.
+   *
+   * @param index the index
+   * @return the value
+   */
+  static long highestValue(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    final int shift = (index >>> SUB_BITS) - 1;
+    return lowestValue(index) + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,410 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
+
+/**
+ * Queues hits in lanes by priority and selects the next hit to send using weighted-fair
+ * scheduling.
+ *
+ * <p>Each hit is assigned a {@link HitPriority} using the hit type and the flags for a fatal
+ * exception ({@code exf=1}) and a non-interaction hit ({@code ni=1}). By default fatal exceptions
+ * and transactions are high priority and non-interaction hits are low priority.
+ *
+ * <p>Each lane has a bounded queue. The next hit is selected from the non-empty lanes using smooth
+ * weighted round-robin so a lane with weight {@code w} receives {@code w / total} of the dispatch
+ * threads when all lanes have hits.
+ *
+ * <p>When the total number of queued hits reaches the total capacity the system is overloaded. A
+ * new hit then replaces the most recent hit in the lowest priority non-empty lane with a lower
+ * priority; if there is no such lane the new hit is rejected. Replaced hits have the status
+ * {@link DispatchStatus#OVERLOADED}.
+ *
+ * <p>This class is thread-safe. An instance can be shared among client instances that use the
+ * same executor service.
+ */
+public final class PriorityLanes {
+
+  /** The number of lanes. */
+  private static final int LANES = HitPriority.values().length;
+
+  /** The priority for each hit type. */
+  private final EnumMap<HitType, HitPriority> hitTypePriority;
+
+  /** The priority for a non-interaction hit. */
+  private final HitPriority nonInteractionPriority;
+
+  /** The priority for a fatal exception hit. */
+  private final HitPriority fatalExceptionPriority;
+
+  /** The weight of each lane. */
+  private final int[] weights;
+
+  /** The capacity of each lane. */
+  private final int[] capacities;
+
+  /** The total capacity. */
+  private final int totalCapacity;
+
+  /** The queue of each lane. Guarded by this. */
+  private final ArrayDeque<Task>[] queues;
+
+  /** The current weight of each lane for smooth weighted round-robin. Guarded by this. */
+  private final int[] current = new int[LANES];
+
+  /** The total number of queued tasks. Guarded by this. */
+  private int size;
+
+  /** The count of shed tasks for each lane. */
+  private final AtomicLongArray shed = new AtomicLongArray(LANES);
+
+  /**
+   * A task that can be queued in a lane.
+   */
+  interface Task extends Runnable {
+    /**
+     * Called when the task is removed from the queue because the system is overloaded. The task
+     * will not be run.
+     */
+    void shed();
+  }
+
+  /**
+   * Builder to create {@link PriorityLanes} instances.
+   */
+  public static final class Builder {
+
+    /** The default capacity of each lane. */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /** The priority for each hit type. */
+    private final EnumMap<HitType, HitPriority> hitTypePriority = new EnumMap<>(HitType.class);
+
+    /** The priority for a non-interaction hit. */
+    private HitPriority nonInteractionPriority = HitPriority.LOW;
+
+    /** The priority for a fatal exception hit. */
+    private HitPriority fatalExceptionPriority = HitPriority.HIGH;
+
+    /** The weight of each lane. */
+    private final int[] weights = {8, 4, 1};
+
+    /** The capacity of each lane. */
+    private final int[] capacities = {DEFAULT_CAPACITY, DEFAULT_CAPACITY, DEFAULT_CAPACITY};
+
+    /** The total capacity. */
+    private int totalCapacity = 2 * DEFAULT_CAPACITY;
+
+    /**
+     * Create a new instance.
+     */
+    Builder() {
+      for (final HitType hitType : HitType.values()) {
+        hitTypePriority.put(hitType, HitPriority.NORMAL);
+      }
+      hitTypePriority.put(HitType.TRANSACTION, HitPriority.HIGH);
+      hitTypePriority.put(HitType.ITEM, HitPriority.HIGH);
+    }
+
+    /**
+     * Builds the {@link PriorityLanes}.
+     *
+     * @return the priority lanes
+     */
+    public PriorityLanes build() {
+      return new PriorityLanes(this);
+    }
+
+    /**
+     * Sets the priority of the hit type. The default is {@link HitPriority#HIGH} for transaction
+     * and item hits; otherwise {@link HitPriority#NORMAL}.
+     *
+     * @param hitType the hit type
+     * @param priority the priority
+     * @return the builder
+     */
+    public Builder setPriority(HitType hitType, HitPriority priority) {
+      hitTypePriority.put(Objects.requireNonNull(hitType, "Hit type"),
+          Objects.requireNonNull(priority, "Priority"));
+      return this;
+    }
+
+    /**
+     * Sets the priority of a non-interaction hit. This overrides the priority of the hit type.
+     * The default is {@link HitPriority#LOW}.
+     *
+     * @param priority the priority
+     * @return the builder
+     */
+    public Builder setNonInteractionPriority(HitPriority priority) {
+      nonInteractionPriority = Objects.requireNonNull(priority, "Priority");
+      return this;
+    }
+
+    /**
+     * Sets the priority of a fatal exception hit. This overrides the priority of the hit type and
+     * a non-interaction hit. The default is {@link HitPriority#HIGH}.
+     *
+     * @param priority the priority
+     * @return the builder
+     */
+    public Builder setFatalExceptionPriority(HitPriority priority) {
+      fatalExceptionPriority = Objects.requireNonNull(priority, "Priority");
+      return this;
+    }
+
+    /**
+     * Sets the weight of the lane. The default is 8, 4 and 1 for high, normal and low priority.
+     *
+     * @param priority the priority
+     * @param weight the weight
+     * @return the builder
+     * @throws IllegalArgumentException if the weight is not strictly positive
+     */
+    public Builder setWeight(HitPriority priority, int weight) {
+      if (weight < 1) {
+        throw new IllegalArgumentException("Weight is not strictly positive: " + weight);
+      }
+      weights[priority.ordinal()] = weight;
+      return this;
+    }
+
+    /**
+     * Sets the capacity of the lane. The default is 1024.
+     *
+     * @param priority the priority
+     * @param capacity the capacity
+     * @return the builder
+     * @throws IllegalArgumentException if the capacity is not strictly positive
+     */
+    public Builder setCapacity(HitPriority priority, int capacity) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Capacity is not strictly positive: " + capacity);
+      }
+      capacities[priority.ordinal()] = capacity;
+      return this;
+    }
+
+    /**
+     * Sets the total capacity of all the lanes. The system is overloaded when this is reached and
+     * low priority hits are shed. The default is 2048.
+     *
+     * @param totalCapacity the total capacity
+     * @return the builder
+     * @throws IllegalArgumentException if the capacity is not strictly positive
+     */
+    public Builder setTotalCapacity(int totalCapacity) {
+      if (totalCapacity < 1) {
+        throw new IllegalArgumentException("Capacity is not strictly positive: " + totalCapacity);
+      }
+      this.totalCapacity = totalCapacity;
+      return this;
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param builder the builder
+   */
+  @SuppressWarnings("unchecked")
+  private PriorityLanes(Builder builder) {
+    hitTypePriority = new EnumMap<>(builder.hitTypePriority);
+    nonInteractionPriority = builder.nonInteractionPriority;
+    fatalExceptionPriority = builder.fatalExceptionPriority;
+    weights = builder.weights.clone();
+    capacities = builder.capacities.clone();
+    totalCapacity = builder.totalCapacity;
+    queues = (ArrayDeque<Task>[]) new ArrayDeque<?>[LANES];
+    for (int i = 0; i < LANES; i++) {
+      queues[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Creates a builder to create {@link PriorityLanes} instances.
+   *
+   * @return the builder
+   */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the priority of the hit.
+   *
+   * @param parameters the hit parameters
+   * @return the priority
+   */
+  public HitPriority getPriority(Parameters parameters) {
+    final HitType hitType = parameters.getHitType();
+    if (hitType == HitType.EXCEPTION
+        && parameters.isTrue(ProtocolSpecification.IS_EXCEPTION_FATAL)) {
+      return fatalExceptionPriority;
+    }
+    if (parameters.isTrue(ProtocolSpecification.NON_INTERACTION_HIT)) {
+      return nonInteractionPriority;
+    }
+    return hitType == null ? HitPriority.NORMAL : hitTypePriority.get(hitType);
+  }
+
+  /**
+   * Offer the task to the lane.
+   *
+   * <p>If the system is overloaded a lower priority task may be shed to make space. The shed task
+   * is notified using {@link Task#shed()}.
+   *
+   * @param priority the priority
+   * @param task the task
+   * @return true if the task was added
+   */
+  boolean offer(HitPriority priority, Task task) {
+    final int lane = priority.ordinal();
+    Task removed = null;
+    synchronized (this) {
+      if (queues[lane].size() >= capacities[lane]) {
+        shed.incrementAndGet(lane);
+        return false;
+      }
+      if (size >= totalCapacity) {
+        // Shed from the lowest priority lane
+        for (int i = LANES; --i > lane;) {
+          removed = queues[i].pollLast();
+          if (removed != null) {
+            shed.incrementAndGet(i);
+            size--;
+            break;
+          }
+        }
+        if (removed == null) {
+          shed.incrementAndGet(lane);
+          return false;
+        }
+      }
+      queues[lane].addLast(task);
+      size++;
+    }
+    if (removed != null) {
+      removed.shed();
+    }
+    return true;
+  }
+
+  /**
+   * Remove the task from its lane. The task will not be run.
+   *
+   * @param task the task
+   * @return true if the task was removed
+   */
+  synchronized boolean remove(Task task) {
+    for (final ArrayDeque<Task> queue : queues) {
+      if (queue.removeFirstOccurrence(task)) {
+        size--;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remove the next task using weighted-fair scheduling.
+   *
+   * @return the task (or null)
+   */
+  synchronized Task poll() {
+    if (size == 0) {
+      return null;
+    }
+    // Smooth weighted round-robin over the non-empty lanes
+    int best = -1;
+    int total = 0;
+    for (int i = 0; i < LANES; i++) {
+      if (!queues[i].isEmpty()) {
+        current[i] += weights[i];
+        total += weights[i];
+        if (best < 0 || current[i] > current[best]) {
+          best = i;
+        }
+      } else {
+        current[i] = 0;
+      }
+    }
+    current[best] -= total;
+    size--;
+    return queues[best].pollFirst();
+  }
+
+  /**
+   * Run the next task.
+   */
+  void runNext() {
+    final Task task = poll();
+    if (task != null) {
+      task.run();
+    }
+  }
+
+  /**
+   * Gets the number of queued hits.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Gets the number of queued hits in the lane.
+   *
+   * @param priority the priority
+   * @return the size
+   */
+  public synchronized int size(HitPriority priority) {
+    return queues[priority.ordinal()].size();
+  }
+
+  /**
+   * Gets the number of hits in the lane that were shed or rejected because the system was
+   * overloaded.
+   *
+   * @param priority the priority
+   * @return the count
+   */
+  public long getShedCount(HitPriority priority) {
+    return shed.get(priority.ordinal());
+  }
+}
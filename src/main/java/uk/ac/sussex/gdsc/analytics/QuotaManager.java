@@ -0,0 +1,461 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Enforces the Google Analytics collection limits on the client side.
+ *
+ * <p>Hits over the limits are processed by Google Analytics but not recorded. This class allows
+ * them to be dropped before they are sent. Two limits are applied:
+ *
+ * <ul>
+ * <li>A token bucket for each client of a tracking Id. The default allows a burst of 200 hits with
+ * 2 hits per second added back to the bucket.
+ * <li>A monthly count for each tracking Id. The default is 10 million hits per month. The month
+ * starts at midnight UTC on the first day of the month.
+ * </ul>
+ *
+ * <p>The monthly limit can be approached gradually using a down-sample threshold. Above the
+ * threshold hits are accepted with a probability that decreases linearly to zero at the limit.
+ *
+ * <p>The token bucket for each client is packed into a single {@code long} and updated without
+ * locking. Buckets that have refilled are removed when the number of clients exceeds a maximum. If
+ * no bucket can be removed the new client is not limited.
+ *
+ * <p>This class is thread-safe. An instance can be shared among client instances.
+ *
+ * @see <a href="https://developers.google.com/analytics/devguides/collection/protocol/v1/limits-quotas">Limits
+ *      and Quotas</a>
+ */
+public final class QuotaManager {
+
+  /** The default number of hits allowed in a burst from a client. */
+  public static final int DEFAULT_CLIENT_BURST = 200;
+
+  /** The default number of hits per second added to the bucket of a client. */
+  public static final double DEFAULT_CLIENT_RATE = 2;
+
+  /** The default number of hits allowed per tracking Id per month. */
+  public static final long DEFAULT_MONTHLY_LIMIT = 10_000_000;
+
+  /** The default maximum number of clients for each tracking Id. */
+  public static final int DEFAULT_MAX_CLIENTS = 4096;
+
+  /** The maximum number of hits allowed in a burst from a client. */
+  private static final int MAX_CLIENT_BURST = 0xffff;
+
+  /** The number of bits used for the tokens in a bucket. */
+  private static final int TOKEN_BITS = 16;
+
+  /** The mask for the tokens in a bucket. */
+  private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+  /** The minimum interval between sweeps of the client buckets (in milliseconds). */
+  private static final long SWEEP_INTERVAL = 1000;
+
+  /** The number of milliseconds per second. */
+  private static final double MILLIS_PER_SECOND = 1000;
+
+  /** The number of hits allowed in a burst from a client. */
+  private final int clientBurst;
+
+  /** The interval to add a token to the bucket of a client (in milliseconds). */
+  private final long refillInterval;
+
+  /** The number of hits allowed per tracking Id per month. */
+  private final long monthlyLimit;
+
+  /** The maximum number of clients for each tracking Id. */
+  private final int maxClients;
+
+  /** The clock (in milliseconds). */
+  private final LongSupplier clock;
+
+  /** The source of random numbers in [0, 1). */
+  private final DoubleSupplier random;
+
+  /** The usage for each tracking Id. */
+  private final ConcurrentHashMap<String, Property> properties = new ConcurrentHashMap<>();
+
+  /** The fraction of the monthly limit where down-sampling starts. */
+  private volatile double sampleThreshold = 1;
+
+  /**
+   * The usage of a tracking Id.
+   */
+  private final class Property {
+    /** The tracking id. */
+    final String trackingId;
+    /** The count of hits in the current month. */
+    final AtomicLong monthlyCount = new AtomicLong();
+    /** The end of the current month (in milliseconds). */
+    volatile long monthEnd;
+    /** The count of allowed hits. */
+    final LongAdder allowed = new LongAdder();
+    /** The count of hits dropped by the client limit. */
+    final LongAdder clientLimited = new LongAdder();
+    /** The count of hits dropped by the monthly limit. */
+    final LongAdder monthlyLimited = new LongAdder();
+    /** The token bucket of each client. */
+    final ConcurrentHashMap<String, AtomicLong> clients = new ConcurrentHashMap<>();
+    /** The time of the next sweep of the client buckets (in milliseconds). */
+    volatile long nextSweep;
+
+    /**
+     * Create a new instance.
+     *
+     * @param trackingId the tracking id
+     */
+    Property(String trackingId) {
+      this.trackingId = trackingId;
+      monthEnd = getMonthEnd(clock.getAsLong());
+    }
+
+    /**
+     * Reset the monthly count if the month has ended.
+     *
+     * @param now the time (in milliseconds)
+     */
+    void rollover(long now) {
+      if (now >= monthEnd) {
+        synchronized (this) {
+          if (now >= monthEnd) {
+            monthlyCount.set(0);
+            monthEnd = getMonthEnd(now);
+          }
+        }
+      }
+    }
+
+    /**
+     * Gets the token bucket for the client.
+     *
+     * <p>Returns null if the maximum number of clients has been reached.
+     *
+     * @param clientKey the client key
+     * @param now the time (in milliseconds)
+     * @return the bucket (or null)
+     */
+    AtomicLong getBucket(String clientKey, long now) {
+      final AtomicLong bucket = clients.get(clientKey);
+      if (bucket != null) {
+        return bucket;
+      }
+      if (clients.size() >= maxClients) {
+        sweep(now);
+        if (clients.size() >= maxClients) {
+          return null;
+        }
+      }
+      return clients.computeIfAbsent(clientKey, k -> new AtomicLong(pack(now, clientBurst)));
+    }
+
+    /**
+     * Remove the client buckets that are full.
+     *
+     * @param now the time (in milliseconds)
+     */
+    void sweep(long now) {
+      if (now < nextSweep) {
+        return;
+      }
+      nextSweep = now + SWEEP_INTERVAL;
+      clients.forEach((key, bucket) -> {
+        final long state = bucket.get();
+        if (getTokens(state, now) == clientBurst) {
+          // A concurrent update of the bucket will be lost. This allows at most one hit
+          // above the limit.
+          clients.remove(key, bucket);
+        }
+      });
+    }
+
+    /**
+     * Create a snapshot of the usage.
+     *
+     * @return the usage
+     */
+    QuotaUsage getUsage() {
+      return new QuotaUsage(trackingId, monthlyCount.get(), allowed.sum(), clientLimited.sum(),
+          monthlyLimited.sum(), clients.size());
+    }
+  }
+
+  /**
+   * Create a new instance with the default limits.
+   */
+  public QuotaManager() {
+    this(DEFAULT_CLIENT_BURST, DEFAULT_CLIENT_RATE, DEFAULT_MONTHLY_LIMIT);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param clientBurst the number of hits allowed in a burst from a client
+   * @param clientRate the number of hits per second added to the bucket of a client
+   * @param monthlyLimit the number of hits allowed per tracking Id per month
+   * @throws IllegalArgumentException if the burst is not in the range [1, 65535]; or the rate or
+   *         limit are not strictly positive
+   */
+  public QuotaManager(int clientBurst, double clientRate, long monthlyLimit) {
+    this(clientBurst, clientRate, monthlyLimit, DEFAULT_MAX_CLIENTS, System::currentTimeMillis,
+        () -> ThreadLocalRandom.current().nextDouble());
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param clientBurst the number of hits allowed in a burst from a client
+   * @param clientRate the number of hits per second added to the bucket of a client
+   * @param monthlyLimit the number of hits allowed per tracking Id per month
+   * @param maxClients the maximum number of clients for each tracking Id
+   * @param clock the clock (in milliseconds)
+   * @param random the source of random numbers in [0, 1)
+   * @throws IllegalArgumentException if the burst is not in the range [1, 65535]; or the rate,
+   *         limit or maximum clients are not strictly positive
+   */
+  QuotaManager(int clientBurst, double clientRate, long monthlyLimit, int maxClients,
+      LongSupplier clock, DoubleSupplier random) {
+    if (clientBurst < 1 || clientBurst > MAX_CLIENT_BURST) {
+      throw new IllegalArgumentException("Client burst is not in [1, 65535]: " + clientBurst);
+    }
+    // This is false for NaN
+    if (!(clientRate > 0 && clientRate <= MILLIS_PER_SECOND * Integer.MAX_VALUE)) {
+      throw new IllegalArgumentException("Client rate is not strictly positive: " + clientRate);
+    }
+    if (monthlyLimit < 1) {
+      throw new IllegalArgumentException("Monthly limit is not strictly positive: " + monthlyLimit);
+    }
+    if (maxClients < 1) {
+      throw new IllegalArgumentException("Max clients is not strictly positive: " + maxClients);
+    }
+    this.clientBurst = clientBurst;
+    this.refillInterval = Math.max(1, Math.round(MILLIS_PER_SECOND / clientRate));
+    this.monthlyLimit = monthlyLimit;
+    this.maxClients = maxClients;
+    this.clock = clock;
+    this.random = random;
+  }
+
+  /**
+   * Gets the fraction of the monthly limit where down-sampling starts.
+   *
+   * @return the sample threshold
+   */
+  public double getSampleThreshold() {
+    return sampleThreshold;
+  }
+
+  /**
+   * Sets the fraction of the monthly limit where down-sampling starts.
+   *
+   * <p>Above the threshold hits are accepted with a probability that decreases linearly to zero at
+   * the monthly limit. The default of 1 drops all hits at the limit.
+   *
+   * @param sampleThreshold the sample threshold
+   * @throws IllegalArgumentException if the threshold is not in the range (0, 1]
+   */
+  public void setSampleThreshold(double sampleThreshold) {
+    // This is false for NaN
+    if (!(sampleThreshold > 0 && sampleThreshold <= 1)) {
+      throw new IllegalArgumentException("Threshold is not in (0, 1]: " + sampleThreshold);
+    }
+    this.sampleThreshold = sampleThreshold;
+  }
+
+  /**
+   * Try to acquire the quota for a hit.
+   *
+   * <p>If the client key is null then only the monthly limit is applied.
+   *
+   * @param trackingId the tracking id
+   * @param clientKey the client key (e.g. the client or user Id)
+   * @return true if the hit can be sent
+   * @throws NullPointerException if the tracking Id is null
+   */
+  public boolean tryAcquire(String trackingId, String clientKey) {
+    Objects.requireNonNull(trackingId, "Tracking Id");
+    final long now = clock.getAsLong();
+    final Property property = properties.computeIfAbsent(trackingId, Property::new);
+    property.rollover(now);
+
+    if (!isSampled(property.monthlyCount.get())) {
+      property.monthlyLimited.increment();
+      return false;
+    }
+    if (clientKey != null) {
+      final AtomicLong bucket = property.getBucket(clientKey, now);
+      if (bucket != null && !tryConsume(bucket, now)) {
+        property.clientLimited.increment();
+        return false;
+      }
+    }
+    if (property.monthlyCount.incrementAndGet() > monthlyLimit) {
+      property.monthlyCount.decrementAndGet();
+      property.monthlyLimited.increment();
+      return false;
+    }
+    property.allowed.increment();
+    return true;
+  }
+
+  /**
+   * Checks if a hit is sampled given the current count for the month.
+   *
+   * @param count the count
+   * @return true if sampled
+   */
+  private boolean isSampled(long count) {
+    if (count >= monthlyLimit) {
+      return false;
+    }
+    final double start = sampleThreshold * monthlyLimit;
+    if (count < start) {
+      return true;
+    }
+    return random.getAsDouble() * (monthlyLimit - start) < monthlyLimit - count;
+  }
+
+  /**
+   * Try to consume a token from the bucket.
+   *
+   * @param bucket the bucket
+   * @param now the time (in milliseconds)
+   * @return true if a token was consumed
+   */
+  private boolean tryConsume(AtomicLong bucket, long now) {
+    for (;;) {
+      final long state = bucket.get();
+      long time = state >>> TOKEN_BITS;
+      long tokens = state & TOKEN_MASK;
+      if (tokens == clientBurst) {
+        // Refill starts from the first token consumed
+        time = now;
+      } else {
+        final long elapsed = now - time;
+        if (elapsed >= refillInterval) {
+          final long added = elapsed / refillInterval;
+          if (added >= clientBurst - tokens) {
+            tokens = clientBurst;
+            time = now;
+          } else {
+            tokens += added;
+            time += added * refillInterval;
+          }
+        }
+      }
+      if (tokens == 0) {
+        return false;
+      }
+      if (bucket.compareAndSet(state, pack(time, tokens - 1))) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Gets the tokens in the bucket at the given time.
+   *
+   * @param state the state of the bucket
+   * @param now the time (in milliseconds)
+   * @return the tokens
+   */
+  private long getTokens(long state, long now) {
+    final long tokens = state & TOKEN_MASK;
+    final long elapsed = now - (state >>> TOKEN_BITS);
+    return elapsed > 0 ? Math.min(clientBurst, tokens + elapsed / refillInterval) : tokens;
+  }
+
+  /**
+   * Pack the time and tokens of a bucket into a single value.
+   *
+   * @param time the time (in milliseconds)
+   * @param tokens the tokens
+   * @return the state
+   */
+  private static long pack(long time, long tokens) {
+    return (time << TOKEN_BITS) | tokens;
+  }
+
+  /**
+   * Gets the end of the month (UTC) containing the time.
+   *
+   * @param time the time (in milliseconds)
+   * @return the end of the month (in milliseconds)
+   */
+  static long getMonthEnd(long time) {
+    final LocalDate start =
+        Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate().withDayOfMonth(1);
+    return start.plusMonths(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+  }
+
+  /**
+   * Gets the usage of the tracking Id.
+   *
+   * @param trackingId the tracking id
+   * @return the usage (or null if the tracking Id has not been used)
+   */
+  public QuotaUsage getUsage(String trackingId) {
+    final Property property = properties.get(trackingId);
+    if (property == null) {
+      return null;
+    }
+    property.rollover(clock.getAsLong());
+    return property.getUsage();
+  }
+
+  /**
+   * Gets the usage of all the tracking Ids.
+   *
+   * @return the usage
+   */
+  public List<QuotaUsage> getUsage() {
+    final long now = clock.getAsLong();
+    final List<QuotaUsage> list = new ArrayList<>(properties.size());
+    properties.values().forEach(property -> {
+      property.rollover(now);
+      list.add(property.getUsage());
+    });
+    return list;
+  }
+}
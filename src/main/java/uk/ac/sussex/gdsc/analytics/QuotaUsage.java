@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+/**
+ * The usage of the quota for a tracking Id.
+ *
+ * @see QuotaManager
+ */
+public final class QuotaUsage {
+
+  /** The tracking id. */
+  private final String trackingId;
+  /** The number of hits allowed in the current month. */
+  private final long monthlyCount;
+  /** The total number of hits allowed. */
+  private final long allowedCount;
+  /** The number of hits dropped due to the client limit. */
+  private final long clientLimitedCount;
+  /** The number of hits dropped due to the monthly limit. */
+  private final long monthlyLimitedCount;
+  /** The number of clients. */
+  private final int clientCount;
+
+  /**
+   * Create a new instance.
+   *
+   * @param trackingId the tracking id
+   * @param monthlyCount the number of hits allowed in the current month
+   * @param allowedCount the total number of hits allowed
+   * @param clientLimitedCount the number of hits dropped due to the client limit
+   * @param monthlyLimitedCount the number of hits dropped due to the monthly limit
+   * @param clientCount the number of clients
+   */
+  QuotaUsage(String trackingId, long monthlyCount, long allowedCount, long clientLimitedCount,
+      long monthlyLimitedCount, int clientCount) {
+    this.trackingId = trackingId;
+    this.monthlyCount = monthlyCount;
+    this.allowedCount = allowedCount;
+    this.clientLimitedCount = clientLimitedCount;
+    this.monthlyLimitedCount = monthlyLimitedCount;
+    this.clientCount = clientCount;
+  }
+
+  /**
+   * Gets the tracking id.
+   *
+   * @return the tracking id
+   */
+  public String getTrackingId() {
+    return trackingId;
+  }
+
+  /**
+   * Gets the number of hits allowed in the current month.
+   *
+   * @return the monthly count
+   */
+  public long getMonthlyCount() {
+    return monthlyCount;
+  }
+
+  /**
+   * Gets the total number of hits allowed.
+   *
+   * @return the allowed count
+   */
+  public long getAllowedCount() {
+    return allowedCount;
+  }
+
+  /**
+   * Gets the number of hits dropped due to the rate limit of the client.
+   *
+   * @return the client limited count
+   */
+  public long getClientLimitedCount() {
+    return clientLimitedCount;
+  }
+
+  /**
+   * Gets the number of hits dropped or down-sampled due to the monthly limit of the tracking Id.
+   *
+   * @return the monthly limited count
+   */
+  public long getMonthlyLimitedCount() {
+    return monthlyLimitedCount;
+  }
+
+  /**
+   * Gets the number of clients with a rate limit that is in use.
+   *
+   * @return the client count
+   */
+  public int getClientCount() {
+    return clientCount;
+  }
+
+  @Override
+  public String toString() {
+    return trackingId + ": monthly=" + monthlyCount + ", allowed=" + allowedCount
+        + ", clientLimited=" + clientLimitedCount + ", monthlyLimited=" + monthlyLimitedCount
+        + ", clients=" + clientCount;
+  }
+}
@@ -0,0 +1,322 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Log messages with rate limiting of repeated messages.
+ *
+ * <p>Messages are identified by a key. Each key has a token bucket that allows a burst of messages
+ * and is refilled at a fixed rate. Messages are suppressed when the bucket is empty. The number of
+ * suppressed messages is logged when the next message for the key is allowed, or when the period
+ * has elapsed after the first suppressed message. The periodic summary uses a shared background
+ * thread so that the count is not lost if no further messages are logged.
+ *
+ * <p>Messages are logged using a {@link java.text.MessageFormat} pattern and the parameters are
+ * stored in the {@link LogRecord}. This allows handlers to access the fields of the message. The
+ * caller should check {@link #isLoggable(Level)} before creating the parameters.
+ *
+ * <p>This class is thread-safe.
+ */
+final class RateLimitedLogger {
+
+  /** The maximum number of keys. Additional keys share a bucket. */
+  private static final int MAX_KEYS = 64;
+  /** The key used when the number of keys is exceeded. */
+  private static final String OVERFLOW_KEY = "";
+  /** The message pattern for the summary of suppressed messages. */
+  private static final String SUMMARY = "{0} similar message(s) suppressed: key={1}";
+  /** The maximum number of repeated errors logged in a burst. */
+  private static final int ERROR_BURST = 5;
+  /** The period (in seconds) to allow logging of an additional repeated error. */
+  private static final long ERROR_PERIOD = 60;
+  /** The time (in seconds) to keep the idle thread used for the periodic summary. */
+  private static final long KEEP_ALIVE = 60;
+
+  /** The logger. */
+  private final Logger logger;
+  /** The maximum number of tokens in a bucket. */
+  private final int burst;
+  /** The period to add a token to a bucket (in nanoseconds). */
+  private final long period;
+  /** The source of the time in nanoseconds. */
+  private final LongSupplier clock;
+  /** The scheduler for the periodic summary (or null). */
+  private final ScheduledExecutorService scheduler;
+  /** Set to true when the periodic summary is scheduled. */
+  private final AtomicBoolean summaryScheduled = new AtomicBoolean();
+  /** The buckets. */
+  private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+  /**
+   * Holds the scheduler shared by all instances. The thread is created on first use and
+   * terminates when idle.
+   */
+  private static final class SchedulerHolder {
+    /** The scheduler. */
+    static final ScheduledExecutorService SCHEDULER;
+
+    static {
+      final ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory(Thread.MIN_PRIORITY));
+      executor.setKeepAliveTime(KEEP_ALIVE, TimeUnit.SECONDS);
+      executor.allowCoreThreadTimeOut(true);
+      SCHEDULER = executor;
+    }
+  }
+
+  /**
+   * A token bucket for a key.
+   */
+  private static final class Bucket {
+    /** The tokens. */
+    private long tokens;
+    /** The time of the last refill (in nanoseconds). */
+    private long time;
+    /** The number of suppressed messages. */
+    private long suppressed;
+    /** The level of the last suppressed message. */
+    private Level level;
+
+    /**
+     * Create a new instance.
+     *
+     * @param tokens the tokens
+     * @param time the time (in nanoseconds)
+     */
+    Bucket(long tokens, long time) {
+      this.tokens = tokens;
+      this.time = time;
+    }
+
+    /**
+     * Try and take a token.
+     *
+     * <p>Returns -1 if the message is suppressed; otherwise the number of messages suppressed since
+     * the last allowed message.
+     *
+     * @param now the time (in nanoseconds)
+     * @param burst the maximum number of tokens
+     * @param period the period to add a token (in nanoseconds)
+     * @param level the level of the message
+     * @return the suppressed count (or -1)
+     */
+    synchronized long acquire(long now, int burst, long period, Level level) {
+      final long added = (now - time) / period;
+      if (added > 0) {
+        tokens = Math.min(burst, tokens + added);
+        time = tokens == burst ? now : time + added * period;
+      }
+      if (tokens == 0) {
+        suppressed++;
+        this.level = level;
+        return -1;
+      }
+      tokens--;
+      final long count = suppressed;
+      suppressed = 0;
+      return count;
+    }
+
+    /**
+     * Gets the level of the last suppressed message.
+     *
+     * @return the level
+     */
+    synchronized Level getLevel() {
+      return level;
+    }
+
+    /**
+     * Take the number of suppressed messages and reset the count.
+     *
+     * @return the suppressed count
+     */
+    synchronized long takeSuppressed() {
+      final long count = suppressed;
+      suppressed = 0;
+      return count;
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param logger the logger
+   * @param burst the maximum number of messages for a key logged in a burst
+   * @param period the period to allow an additional message for a key
+   * @param unit the unit of the period
+   */
+  RateLimitedLogger(Logger logger, int burst, long period, TimeUnit unit) {
+    this(logger, burst, period, unit, System::nanoTime, SchedulerHolder.SCHEDULER);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * <p>If the scheduler is null the summary of suppressed messages is logged when the next
+   * message for the key is allowed, or when {@link #logSuppressed()} is called.
+   *
+   * @param logger the logger
+   * @param burst the maximum number of messages for a key logged in a burst
+   * @param period the period to allow an additional message for a key
+   * @param unit the unit of the period
+   * @param clock the source of the time in nanoseconds
+   * @param scheduler the scheduler for the periodic summary (can be null)
+   * @throws IllegalArgumentException if the burst or period are not strictly positive
+   */
+  RateLimitedLogger(Logger logger, int burst, long period, TimeUnit unit, LongSupplier clock,
+      ScheduledExecutorService scheduler) {
+    if (burst <= 0) {
+      throw new IllegalArgumentException("Burst must be strictly positive: " + burst);
+    }
+    final long nanos = unit.toNanos(period);
+    if (nanos <= 0) {
+      throw new IllegalArgumentException("Period must be strictly positive: " + period);
+    }
+    this.logger = logger;
+    this.burst = burst;
+    this.period = nanos;
+    this.clock = clock;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Create a new instance to log repeated errors. This allows a burst of 5 messages for a key and
+   * an additional message every 60 seconds.
+   *
+   * @param logger the logger
+   * @return the rate limited logger
+   */
+  static RateLimitedLogger newErrorLogger(Logger logger) {
+    return new RateLimitedLogger(logger, ERROR_BURST, ERROR_PERIOD, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Check if a message of the given level would be logged.
+   *
+   * @param level the level
+   * @return true if loggable
+   */
+  boolean isLoggable(Level level) {
+    return logger.isLoggable(level);
+  }
+
+  /**
+   * Log the message if the rate limit of the key allows.
+   *
+   * <p>If messages for the key have been suppressed then a summary message is logged first.
+   *
+   * @param level the level
+   * @param key the key
+   * @param pattern the message pattern
+   * @param params the parameters of the message
+   * @return true if logged
+   */
+  boolean log(Level level, String key, String pattern, Object... params) {
+    if (!logger.isLoggable(level)) {
+      return false;
+    }
+    final long suppressed = getBucket(key).acquire(clock.getAsLong(), burst, period, level);
+    if (suppressed < 0) {
+      scheduleSummary();
+      return false;
+    }
+    if (suppressed != 0) {
+      publish(level, SUMMARY, suppressed, key);
+    }
+    publish(level, pattern, params);
+    return true;
+  }
+
+  /**
+   * Log a summary of the messages that have been suppressed for each key. The count of suppressed
+   * messages is reset.
+   */
+  void logSuppressed() {
+    summaryScheduled.set(false);
+    buckets.forEach((key, bucket) -> {
+      final Level level = bucket.getLevel();
+      final long suppressed = bucket.takeSuppressed();
+      if (suppressed != 0) {
+        publish(level, SUMMARY, suppressed, key);
+      }
+    });
+  }
+
+  /**
+   * Schedule the summary of suppressed messages after the period, if not already scheduled.
+   */
+  private void scheduleSummary() {
+    if (scheduler != null && summaryScheduled.compareAndSet(false, true)) {
+      scheduler.schedule(this::logSuppressed, period, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Gets the bucket for the key.
+   *
+   * @param key the key
+   * @return the bucket
+   */
+  private Bucket getBucket(String key) {
+    final Bucket bucket = buckets.get(key);
+    if (bucket != null) {
+      return bucket;
+    }
+    final String k = buckets.size() < MAX_KEYS ? key : OVERFLOW_KEY;
+    return buckets.computeIfAbsent(k, x -> new Bucket(burst, clock.getAsLong()));
+  }
+
+  /**
+   * Publish the message.
+   *
+   * @param level the level
+   * @param pattern the message pattern
+   * @param params the parameters of the message
+   */
+  private void publish(Level level, String pattern, Object... params) {
+    final LogRecord record = new LogRecord(level, pattern);
+    record.setParameters(params);
+    record.setLoggerName(logger.getName());
+    // The source is the owner of the logger
+    record.setSourceClassName(logger.getName());
+    logger.log(record);
+  }
+}
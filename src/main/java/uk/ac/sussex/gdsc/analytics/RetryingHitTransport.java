@@ -0,0 +1,205 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decorate a {@link HitTransport} to retry failed requests.
+ *
+ * <p>A request is retried if the transport completes with {@link DispatchStatus#ERROR} or
+ * completes exceptionally. The delay before each retry is doubled up to a maximum. A random
+ * jitter of up to half the delay is subtracted to avoid retries from many clients occurring
+ * together. The result of the final attempt is returned.
+ */
+public final class RetryingHitTransport implements HitTransport {
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(RetryingHitTransport.class.getName());
+
+  /** The default maximum number of attempts. */
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  /** The default initial delay (in milliseconds). */
+  public static final long DEFAULT_INITIAL_DELAY = 500;
+
+  /** The maximum delay (in nanoseconds). */
+  private static final long MAX_DELAY = TimeUnit.MINUTES.toNanos(1);
+
+  /** The delegate transport. */
+  private final HitTransport delegate;
+
+  /** The executor used to schedule retries. */
+  private final ScheduledExecutorService scheduler;
+
+  /** The maximum number of attempts. */
+  private final int maxAttempts;
+
+  /** The initial delay (in nanoseconds). */
+  private final long initialDelay;
+
+  /** The number of retries. */
+  private final AtomicLong retryCount = new AtomicLong();
+
+  /**
+   * Create a new instance with the default maximum attempts and initial delay.
+   *
+   * @param delegate the delegate transport
+   * @param scheduler the executor used to schedule retries
+   */
+  public RetryingHitTransport(HitTransport delegate, ScheduledExecutorService scheduler) {
+    this(delegate, scheduler, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_DELAY, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param delegate the delegate transport
+   * @param scheduler the executor used to schedule retries
+   * @param maxAttempts the maximum number of attempts
+   * @param initialDelay the delay before the first retry
+   * @param unit the unit of the delay
+   * @throws IllegalArgumentException if the attempts are not strictly positive or the delay is
+   *         negative
+   */
+  public RetryingHitTransport(HitTransport delegate, ScheduledExecutorService scheduler,
+      int maxAttempts, long initialDelay, TimeUnit unit) {
+    this.delegate = Objects.requireNonNull(delegate, "Transport");
+    this.scheduler = Objects.requireNonNull(scheduler, "Scheduler");
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("Max attempts is not strictly positive: " + maxAttempts);
+    }
+    if (initialDelay < 0) {
+      throw new IllegalArgumentException("Initial delay is negative: " + initialDelay);
+    }
+    this.maxAttempts = maxAttempts;
+    this.initialDelay = Math.min(MAX_DELAY, unit.toNanos(initialDelay));
+  }
+
+  /**
+   * Gets the maximum number of attempts.
+   *
+   * @return the maximum attempts
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Gets the number of retries.
+   *
+   * @return the retry count
+   */
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The payload is owned by this transport until the returned future has completed.
+   */
+  @Override
+  public CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch) {
+    final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+    attempt(payload, batch, 1, initialDelay, result);
+    return result;
+  }
+
+  /**
+   * Send the payload using the delegate transport. Schedule a retry on failure.
+   *
+   * @param payload the payload
+   * @param batch the batch
+   * @param attempt the attempt
+   * @param delay the delay before the next attempt (in nanoseconds)
+   * @param result the result
+   */
+  private void attempt(ByteBuffer payload, HitBatch batch, int attempt, long delay,
+      CompletableFuture<DispatchStatus> result) {
+    CompletableFuture<DispatchStatus> future;
+    try {
+      // Each attempt has an independent position and limit
+      future = delegate.send(payload.duplicate(), batch);
+    } catch (final RuntimeException ex) {
+      result.completeExceptionally(ex);
+      return;
+    }
+    future.whenComplete((status, ex) -> {
+      if ((ex == null && status != DispatchStatus.ERROR) || attempt >= maxAttempts
+          || result.isDone()) {
+        complete(result, status, ex);
+        return;
+      }
+      // Delay in [delay/2, delay]
+      final long wait = delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "Retrying hits: hits={0}, attempt={1}, delayMs={2}",
+            new Object[] {batch.getHitCount(), attempt + 1, TimeUnit.NANOSECONDS.toMillis(wait)});
+      }
+      retryCount.incrementAndGet();
+      try {
+        scheduler.schedule(() -> attempt(payload, batch, attempt + 1,
+            Math.min(MAX_DELAY, delay * 2), result), wait, TimeUnit.NANOSECONDS);
+      } catch (final RejectedExecutionException rex) {
+        // Scheduler has been shutdown
+        retryCount.decrementAndGet();
+        complete(result, status, ex);
+      }
+    });
+  }
+
+  /**
+   * Complete the result.
+   *
+   * @param result the result
+   * @param status the status
+   * @param ex the exception (may be null)
+   */
+  private static void complete(CompletableFuture<DispatchStatus> result, DispatchStatus status,
+      Throwable ex) {
+    if (ex == null) {
+      result.complete(status);
+    } else {
+      result.completeExceptionally(
+          ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+    }
+  }
+}
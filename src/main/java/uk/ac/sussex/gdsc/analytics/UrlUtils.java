@@ -39,6 +39,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import uk.ac.sussex.gdsc.analytics.parameters.UrlEncoderHelper;
 
 /**
  * Contains utility functions for URLs.
@@ -81,6 +82,29 @@ public final class UrlUtils {
    * <p>If this is not set then the value defaults to {@link #DEFAULT_GOOGLE_ANALYTICS_DEBUG_FILE}.
    */
   public static final String PROPERTY_GOOGLE_ANALYTICS_DEBUG_FILE = "gdsc.analytics.debug.file";
+  /**
+   * The system property constant for the Google Analytics file component of the URL for batch
+   * requests.
+   *
+   * <p>If this is not set then the value defaults to {@link #DEFAULT_GOOGLE_ANALYTICS_BATCH_FILE}.
+   */
+  public static final String PROPERTY_GOOGLE_ANALYTICS_BATCH_FILE = "gdsc.analytics.batch.file";
+
+  /**
+   * The system property constant for the Google Analytics file component of the URL for GA4
+   * Measurement Protocol requests.
+   *
+   * <p>If this is not set then the value defaults to {@link #DEFAULT_GA4_FILE}.
+   */
+  public static final String PROPERTY_GA4_FILE = "gdsc.analytics.ga4.file";
+
+  /**
+   * The system property constant for the Google Analytics file component of the URL for GA4
+   * Measurement Protocol validation requests.
+   *
+   * <p>If this is not set then the value defaults to {@link #DEFAULT_GA4_DEBUG_FILE}.
+   */
+  public static final String PROPERTY_GA4_DEBUG_FILE = "gdsc.analytics.ga4.debug.file";
 
   /** The protocol for the Google Analytics URL. */
   public static final String DEFAULT_GOOGLE_ANALYTICS_PROTOCOL = "http";
@@ -92,6 +116,12 @@ public final class UrlUtils {
   public static final String DEFAULT_GOOGLE_ANALYTICS_FILE = "/collect";
   /** The default debug file for the Google Analytics URL. */
   public static final String DEFAULT_GOOGLE_ANALYTICS_DEBUG_FILE = "/debug/collect";
+  /** The default batch file for the Google Analytics URL. */
+  public static final String DEFAULT_GOOGLE_ANALYTICS_BATCH_FILE = "/batch";
+  /** The default file for the GA4 Measurement Protocol URL. */
+  public static final String DEFAULT_GA4_FILE = "/mp/collect";
+  /** The default debug file for the GA4 Measurement Protocol URL. */
+  public static final String DEFAULT_GA4_DEBUG_FILE = "/debug/mp/collect";
 
   /** The protocol for the Google Analytics URL. */
   private static String protocol;
@@ -103,6 +133,12 @@ public final class UrlUtils {
   private static String file;
   /** The debug file for the Google Analytics URL. */
   private static String debugFile;
+  /** The batch file for the Google Analytics URL. */
+  private static String batchFile;
+  /** The file for the GA4 Measurement Protocol URL. */
+  private static String ga4File;
+  /** The debug file for the GA4 Measurement Protocol URL. */
+  private static String ga4DebugFile;
 
   static {
     refreshSystemProperties();
@@ -132,6 +168,10 @@ public final class UrlUtils {
     file = System.getProperty(PROPERTY_GOOGLE_ANALYTICS_FILE, DEFAULT_GOOGLE_ANALYTICS_FILE);
     debugFile = System.getProperty(PROPERTY_GOOGLE_ANALYTICS_DEBUG_FILE,
         DEFAULT_GOOGLE_ANALYTICS_DEBUG_FILE);
+    batchFile = System.getProperty(PROPERTY_GOOGLE_ANALYTICS_BATCH_FILE,
+        DEFAULT_GOOGLE_ANALYTICS_BATCH_FILE);
+    ga4File = System.getProperty(PROPERTY_GA4_FILE, DEFAULT_GA4_FILE);
+    ga4DebugFile = System.getProperty(PROPERTY_GA4_DEBUG_FILE, DEFAULT_GA4_DEBUG_FILE);
   }
 
   /**
@@ -166,6 +206,57 @@ public final class UrlUtils {
     }
   }
 
+  /**
+   * Gets the Google Analytics URL for batch requests. A batch request contains multiple hits
+   * separated by a new line character.
+   *
+   * <p>This may throw a wrapped {@link MalformedURLException} if the hostname and file have been
+   * changed from the defaults using System properties.
+   *
+   * @param secure Set to true to use HTTPS
+   * @return the url
+   * @throws MalformedUrlRuntimeException If the URL was malformed
+   * @see #PROPERTY_GOOGLE_ANALYTICS_HOSTNAME
+   * @see #PROPERTY_GOOGLE_ANALYTICS_BATCH_FILE
+   */
+  public static URL getGoogleAnalyticsBatchUrl(boolean secure) {
+    try {
+      return new URL((secure) ? secureProtocol : protocol, hostname, batchFile);
+    } catch (final MalformedURLException ex) {
+      logger.log(Level.SEVERE, () -> "Failed to create Google Analytics URL: " + ex.getMessage());
+      throw new MalformedUrlRuntimeException(ex);
+    }
+  }
+
+  /**
+   * Gets the Google Analytics URL for GA4 Measurement Protocol requests. This always uses the
+   * secure protocol.
+   *
+   * <p>The measurement id and API secret are URL encoded in the query of the URL.
+   *
+   * <p>This may throw a wrapped {@link MalformedURLException} if the hostname and file have been
+   * changed from the defaults using System properties.
+   *
+   * @param measurementId the measurement id
+   * @param apiSecret the API secret
+   * @param debug Set to true to use the validation server URL
+   * @return the url
+   * @throws MalformedUrlRuntimeException If the URL was malformed
+   * @see #PROPERTY_GOOGLE_ANALYTICS_HOSTNAME
+   * @see #PROPERTY_GA4_FILE
+   * @see #PROPERTY_GA4_DEBUG_FILE
+   */
+  public static URL getGa4Url(String measurementId, String apiSecret, boolean debug) {
+    final String query = "?measurement_id=" + UrlEncoderHelper.encode(measurementId)
+        + "&api_secret=" + UrlEncoderHelper.encode(apiSecret);
+    try {
+      return new URL(secureProtocol, hostname, (debug ? ga4DebugFile : ga4File) + query);
+    } catch (final MalformedURLException ex) {
+      logger.log(Level.SEVERE, () -> "Failed to create Google Analytics URL: " + ex.getMessage());
+      throw new MalformedUrlRuntimeException(ex);
+    }
+  }
+
   /**
    * Gets the protocol for the Google Analytics URL.
    *
@@ -211,6 +302,33 @@ public final class UrlUtils {
     return debugFile;
   }
 
+  /**
+   * Gets the batch file for the Google Analytics URL.
+   *
+   * @return the batch file
+   */
+  public static String getBatchFile() {
+    return batchFile;
+  }
+
+  /**
+   * Gets the file for the GA4 Measurement Protocol URL.
+   *
+   * @return the GA4 file
+   */
+  public static String getGa4File() {
+    return ga4File;
+  }
+
+  /**
+   * Gets the debug file for the GA4 Measurement Protocol URL.
+   *
+   * @return the GA4 debug file
+   */
+  public static String getGa4DebugFile() {
+    return ga4DebugFile;
+  }
+
   /**
    * Construct a proxy from an address.
    *
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Create an executor service that runs each task in a new virtual thread.
+ *
+ * <p>Virtual threads are provided in a multi-release jar for Java 21 or later. On earlier versions
+ * they are not available.
+ *
+ * <p>A virtual thread that blocks on I/O releases its carrier thread. This allows a large number
+ * of concurrent requests without a platform thread for each request.
+ */
+public final class VirtualThreads {
+
+  /** The name of the class that creates the executor service. */
+  private static final String FACTORY_CLASS_NAME =
+      "uk.ac.sussex.gdsc.analytics.VirtualThreadExecutorFactory";
+
+  /** The factory (or null). */
+  private static final Supplier<ExecutorService> FACTORY = createFactory(FACTORY_CLASS_NAME);
+
+  /**
+   * No public construction.
+   */
+  private VirtualThreads() {}
+
+  /**
+   * Creates the factory.
+   *
+   * @param className the class name of the factory
+   * @return the factory (or null)
+   */
+  @SuppressWarnings("unchecked")
+  static Supplier<ExecutorService> createFactory(String className) {
+    try {
+      return (Supplier<ExecutorService>) Class.forName(className).getDeclaredConstructor()
+          .newInstance();
+    } catch (final ReflectiveOperationException | LinkageError | RuntimeException ex) {
+      Logger.getLogger(VirtualThreads.class.getName()).log(Level.FINE,
+          () -> "Virtual threads are not available: " + ex);
+    }
+    return null;
+  }
+
+  /**
+   * Checks if virtual threads are available.
+   *
+   * @return true if available
+   */
+  public static boolean isAvailable() {
+    return FACTORY != null;
+  }
+
+  /**
+   * Creates an executor service that runs each task in a new virtual thread.
+   *
+   * @return the executor service
+   * @throws UnsupportedOperationException if virtual threads are not available
+   * @see #isAvailable()
+   */
+  public static ExecutorService newExecutorService() {
+    if (FACTORY == null) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21");
+    }
+    return FACTORY.get();
+  }
+}
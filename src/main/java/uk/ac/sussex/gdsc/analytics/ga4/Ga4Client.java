@@ -0,0 +1,509 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.ga4;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.GoogleAnalyticsClient;
+import uk.ac.sussex.gdsc.analytics.HitBatch;
+import uk.ac.sussex.gdsc.analytics.HitTransport;
+import uk.ac.sussex.gdsc.analytics.HttpUrlConnectionTransport;
+import uk.ac.sussex.gdsc.analytics.Session;
+import uk.ac.sussex.gdsc.analytics.UrlUtils;
+
+/**
+ * A client to send events to Google Analytics using the GA4 Measurement Protocol.
+ *
+ * <p>Events are sent in requests of up to {@value #MAX_EVENTS} events. Each request is written as
+ * JSON by a {@link JsonWriter} owned by the sending thread and the buffer is reused for the next
+ * request; no intermediate document is created. Requests are sent using an
+ * {@link ExecutorService} and a {@link HitTransport}. The executor service can be shared with a
+ * {@link GoogleAnalyticsClient}.
+ *
+ * <p>The client should be closed when no longer required. This waits for the pending requests and
+ * shuts down the default executor service.
+ *
+ * <p>The client maintains a {@link Session}. The session id is added to each event that does not
+ * have a {@link Ga4Event#SESSION_ID} parameter.
+ *
+ * @see <a href="https://developers.google.com/analytics/devguides/collection/protocol/ga4">GA4
+ *      Measurement Protocol</a>
+ */
+public final class Ga4Client {
+
+  /** The maximum number of events in a request. */
+  public static final int MAX_EVENTS = 25;
+
+  /** The maximum size of a request in bytes. */
+  public static final int MAX_REQUEST_BYTES = 130 * 1024;
+
+  /** The content type of a request. */
+  public static final String CONTENT_TYPE = "application/json";
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(Ga4Client.class.getName());
+
+  /** Milliseconds in a second. */
+  private static final long MILLIS_PER_SECOND = 1000;
+
+  /** Microseconds in a millisecond. */
+  private static final long MICROS_PER_MILLI = 1000;
+
+  /** The writer for the current thread. */
+  private static final ThreadLocal<JsonWriter> WRITER = ThreadLocal.withInitial(JsonWriter::new);
+
+  /** The client id. */
+  private final String clientId;
+
+  /** The user id. */
+  private final String userId;
+
+  /** The transport. */
+  private final HitTransport transport;
+
+  /** The executor service. */
+  private final ExecutorService executorService;
+
+  /** Set to true if the executor service was created by the client. */
+  private final boolean defaultExecutorService;
+
+  /** The results of the pending requests. */
+  private final Set<CompletableFuture<DispatchStatus>> pending = ConcurrentHashMap.newKeySet();
+
+  /** Set to true when closed. */
+  private volatile boolean closed;
+
+  /** The session. Used as the lock for the session id. */
+  private final Session session;
+
+  /** The session id (seconds since the epoch of the start of the session). */
+  private long sessionId;
+
+  /**
+   * A builder of {@link Ga4Client} instances.
+   */
+  public static final class Builder {
+    /** The measurement id. */
+    private final String measurementId;
+    /** The API secret. */
+    private final String apiSecret;
+    /** The client id. */
+    private String clientId;
+    /** The user id. */
+    private String userId;
+    /** Set to true to use the validation server. */
+    private boolean debug;
+    /** The transport. */
+    private HitTransport transport;
+    /** The executor service. */
+    private ExecutorService executorService;
+    /** The session timeout. */
+    private long sessionTimeout = Session.DEFAULT_TIMEOUT;
+
+    /**
+     * Create a new instance.
+     *
+     * @param measurementId the measurement id
+     * @param apiSecret the API secret
+     */
+    Builder(String measurementId, String apiSecret) {
+      this.measurementId = requireNotEmpty(measurementId, "Measurement id");
+      this.apiSecret = requireNotEmpty(apiSecret, "API secret");
+    }
+
+    /**
+     * Sets the client id. Defaults to a random UUID if {@code null}.
+     *
+     * <p>The client id should identify a single instance of an application. Use the same client id
+     * as the {@link GoogleAnalyticsClient} to join the activity of the two clients.
+     *
+     * @param clientId the client id
+     * @return the builder
+     */
+    public Builder setClientId(String clientId) {
+      this.clientId = clientId;
+      return this;
+    }
+
+    /**
+     * Sets the user id. Defaults to {@code null}.
+     *
+     * @param userId the user id
+     * @return the builder
+     */
+    public Builder setUserId(String userId) {
+      this.userId = userId;
+      return this;
+    }
+
+    /**
+     * Set to true to send events to the validation server. This is ignored if a transport is set.
+     *
+     * <p>The validation server does not record events.
+     *
+     * @param debug the debug flag
+     * @return the builder
+     * @see UrlUtils#getGa4Url(String, String, boolean)
+     */
+    public Builder setDebug(boolean debug) {
+      this.debug = debug;
+      return this;
+    }
+
+    /**
+     * Sets the transport. Defaults to {@code null}.
+     *
+     * <p>If {@code null} then a {@link HttpUrlConnectionTransport} is created using the GA4 URL for
+     * the measurement id and API secret. A custom transport must send the requests to a URL that
+     * contains the measurement id and API secret.
+     *
+     * @param transport the transport
+     * @return the builder
+     */
+    public Builder setTransport(HitTransport transport) {
+      this.transport = transport;
+      return this;
+    }
+
+    /**
+     * Sets the executor service. Defaults to {@code null}.
+     *
+     * <p>The executor service can be shared with other clients, e.g. using
+     * {@link GoogleAnalyticsClient#getExecutorService()}. If a custom service is used the caller is
+     * responsible for the shutdown of the service.
+     *
+     * <p>If {@code null} then a default executor service will be created that uses low priority
+     * Daemon threads. The default service is shutdown when the client is closed.
+     *
+     * @param executorService the executor service
+     * @return the builder
+     */
+    public Builder setExecutorService(ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+
+    /**
+     * Sets the session timeout in milliseconds. Defaults to {@link Session#DEFAULT_TIMEOUT}.
+     *
+     * @param sessionTimeout the session timeout
+     * @return the builder
+     */
+    public Builder setSessionTimeout(long sessionTimeout) {
+      this.sessionTimeout = sessionTimeout;
+      return this;
+    }
+
+    /**
+     * Builds the client.
+     *
+     * @return the client
+     */
+    public Ga4Client build() {
+      return new Ga4Client(this);
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param builder the builder
+   */
+  private Ga4Client(Builder builder) {
+    clientId = builder.clientId == null ? UUID.randomUUID().toString() : builder.clientId;
+    userId = builder.userId;
+    transport = builder.transport == null
+        ? new HttpUrlConnectionTransport(
+            UrlUtils.getGa4Url(builder.measurementId, builder.apiSecret, builder.debug))
+        : builder.transport;
+    defaultExecutorService = builder.executorService == null;
+    executorService = defaultExecutorService
+        ? Executors.newCachedThreadPool(Ga4Client::newThread)
+        : builder.executorService;
+    session = new Session(builder.sessionTimeout);
+  }
+
+  /**
+   * Create a new builder.
+   *
+   * @param measurementId the measurement id, e.g. {@code G-XXXXXXXXXX}
+   * @param apiSecret the API secret
+   * @return the builder
+   * @throws IllegalArgumentException if the measurement id or API secret are empty
+   */
+  public static Builder newBuilder(String measurementId, String apiSecret) {
+    return new Builder(measurementId, apiSecret);
+  }
+
+  /**
+   * Gets the client id.
+   *
+   * @return the client id
+   */
+  public String getClientId() {
+    return clientId;
+  }
+
+  /**
+   * Gets the user id.
+   *
+   * @return the user id
+   */
+  public String getUserId() {
+    return userId;
+  }
+
+  /**
+   * Gets the transport.
+   *
+   * @return the transport
+   */
+  public HitTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Gets the executor service.
+   *
+   * @return the executor service
+   */
+  public ExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  /**
+   * Send the event.
+   *
+   * @param event the event
+   * @return the dispatch status
+   * @see #send(Collection)
+   */
+  public CompletableFuture<DispatchStatus> send(Ga4Event event) {
+    return send(Collections.singletonList(Objects.requireNonNull(event, "Event")));
+  }
+
+  /**
+   * Send the events.
+   *
+   * <p>The events are sent in requests of up to {@value #MAX_EVENTS} events. A request is split
+   * if it exceeds {@value #MAX_REQUEST_BYTES} bytes.
+   *
+   * <p>The returned future completes with {@link DispatchStatus#COMPLETE} if all requests were
+   * accepted, otherwise the status of the first request that was not complete. If the executor
+   * service is shutdown, or the client is closed, the status is {@link DispatchStatus#SHUTDOWN}.
+   * If a request could not be sent the status is {@link DispatchStatus#ERROR}.
+   *
+   * @param events the events
+   * @return the dispatch status
+   */
+  public CompletableFuture<DispatchStatus> send(Collection<Ga4Event> events) {
+    final Ga4Event[] array = events.toArray(new Ga4Event[0]);
+    for (final Ga4Event event : array) {
+      Objects.requireNonNull(event, "Event");
+    }
+    if (closed) {
+      return CompletableFuture.completedFuture(DispatchStatus.SHUTDOWN);
+    }
+    if (array.length == 0) {
+      return CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+    }
+    final long timestamp;
+    final long id;
+    synchronized (session) {
+      if (session.refresh()) {
+        sessionId = session.getTimeStamp() / MILLIS_PER_SECOND;
+      }
+      timestamp = session.getTimeStamp();
+      id = sessionId;
+    }
+    CompletableFuture<DispatchStatus> result = null;
+    for (int from = 0; from < array.length; from += MAX_EVENTS) {
+      final int start = from;
+      final int end = Math.min(array.length, from + MAX_EVENTS);
+      CompletableFuture<DispatchStatus> future;
+      try {
+        future = CompletableFuture.supplyAsync(() -> send(array, start, end, timestamp, id),
+            executorService);
+      } catch (final RejectedExecutionException ex) {
+        logger.log(Level.FINE, "Failed to submit events", ex);
+        future = CompletableFuture.completedFuture(DispatchStatus.SHUTDOWN);
+      }
+      result = result == null ? future : result.thenCombine(future, Ga4Client::combine);
+    }
+    final CompletableFuture<DispatchStatus> request = result;
+    pending.add(request);
+    request.whenComplete((status, ex) -> pending.remove(request));
+    return request;
+  }
+
+  /**
+   * Close the client and wait for the pending requests to complete.
+   *
+   * <p>No further events are accepted. If the executor service was created by the client it is
+   * shutdown. A custom executor service is not shutdown as it may be shared with other clients.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @return true if all pending requests completed
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+    closed = true;
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    boolean complete = true;
+    try {
+      CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+          .get(timeout, unit);
+    } catch (final ExecutionException ex) {
+      // A request failed but is complete
+      logger.log(Level.FINE, "Pending request failed", ex);
+    } catch (final TimeoutException ex) {
+      complete = false;
+    }
+    if (defaultExecutorService) {
+      executorService.shutdown();
+      complete &= executorService.awaitTermination(
+          Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+    return complete;
+  }
+
+  /**
+   * Send the events in a single request using the writer of the current thread.
+   *
+   * <p>The request is split if the size is too large.
+   *
+   * @param events the events
+   * @param from the start index (inclusive)
+   * @param to the end index (exclusive)
+   * @param timestamp the timestamp (milliseconds since the epoch)
+   * @param id the session id
+   * @return the dispatch status
+   */
+  private DispatchStatus send(Ga4Event[] events, int from, int to, long timestamp, long id) {
+    final JsonWriter writer = writeRequest(WRITER.get().reset(), events, from, to, timestamp, id);
+    final int count = to - from;
+    if (writer.size() > MAX_REQUEST_BYTES && count > 1) {
+      final int mid = (from + to) >>> 1;
+      return combine(send(events, from, mid, timestamp, id),
+          send(events, mid, to, timestamp, id));
+    }
+    // The buffer is reused so wait for the transport
+    try {
+      return transport.send(writer.toByteBuffer(),
+          HitBatch.of(count).withContentType(CONTENT_TYPE)).join();
+    } catch (final CompletionException ex) {
+      final Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+      logger.log(Level.WARNING, () -> "Failed to send events: " + cause);
+      return DispatchStatus.ERROR;
+    }
+  }
+
+  /**
+   * Write the request for the events.
+   *
+   * @param writer the writer
+   * @param events the events
+   * @param from the start index (inclusive)
+   * @param to the end index (exclusive)
+   * @param timestamp the timestamp (milliseconds since the epoch)
+   * @param id the session id
+   * @return the writer
+   */
+  JsonWriter writeRequest(JsonWriter writer, Ga4Event[] events, int from, int to,
+      long timestamp, long id) {
+    writer.beginObject().name("client_id").value(clientId);
+    if (userId != null) {
+      writer.name("user_id").value(userId);
+    }
+    writer.name("timestamp_micros").value(timestamp * MICROS_PER_MILLI);
+    writer.name("events").beginArray();
+    for (int i = from; i < to; i++) {
+      events[i].writeTo(writer, id);
+    }
+    return writer.endArray().endObject();
+  }
+
+  /**
+   * Combine the dispatch status. Returns the first status that is not complete.
+   *
+   * @param s1 the first status
+   * @param s2 the second status
+   * @return the status
+   */
+  private static DispatchStatus combine(DispatchStatus s1, DispatchStatus s2) {
+    return s1 == DispatchStatus.COMPLETE ? s2 : s1;
+  }
+
+  /**
+   * Create a new low priority Daemon thread.
+   *
+   * @param runnable the runnable
+   * @return the thread
+   * @see ThreadFactory#newThread(Runnable)
+   */
+  private static Thread newThread(Runnable runnable) {
+    final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  }
+
+  /**
+   * Require the string is not null or empty.
+   *
+   * @param value the value
+   * @param name the name of the value
+   * @return the value
+   */
+  private static String requireNotEmpty(String value, String name) {
+    Objects.requireNonNull(value, name);
+    if (value.isEmpty()) {
+      throw new IllegalArgumentException(name + " is empty");
+    }
+    return value;
+  }
+}
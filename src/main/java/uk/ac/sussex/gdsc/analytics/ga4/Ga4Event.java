@@ -0,0 +1,395 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.ga4;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An event for the GA4 Measurement Protocol.
+ *
+ * <p>An event has a name and up to {@value #MAX_PARAMETERS} parameters. One parameter is reserved
+ * for the {@link #SESSION_ID} which is added by the {@link Ga4Client} if absent. Parameter values
+ * are strings, integers or floating-point numbers. Values are stored in typed arrays and written
+ * directly to a {@link JsonWriter}.
+ *
+ * <p>Names must start with a letter and contain only letters, digits and underscores. Names must
+ * not start with a reserved prefix. The length of names and string values is limited.
+ *
+ * <p>This class is immutable. Instances are created using a {@link Builder}.
+ *
+ * @see <a href="https://developers.google.com/analytics/devguides/collection/protocol/ga4">GA4
+ *      Measurement Protocol</a>
+ */
+public final class Ga4Event {
+
+  /** The maximum length of an event name. */
+  public static final int MAX_NAME_LENGTH = 40;
+
+  /** The maximum length of a parameter name. */
+  public static final int MAX_PARAMETER_NAME_LENGTH = 40;
+
+  /** The maximum length of a string parameter value. */
+  public static final int MAX_VALUE_LENGTH = 100;
+
+  /** The maximum number of parameters for an event. */
+  public static final int MAX_PARAMETERS = 25;
+
+  /** The name of the engagement time parameter. */
+  public static final String ENGAGEMENT_TIME = "engagement_time_msec";
+
+  /** The name of the session id parameter. */
+  public static final String SESSION_ID = "session_id";
+
+  /** The prefixes reserved by Google Analytics. */
+  private static final String[] RESERVED_PREFIXES = {"google_", "ga_", "firebase_"};
+
+  /** The type of a string value. */
+  private static final byte TYPE_STRING = 0;
+  /** The type of a long value. */
+  private static final byte TYPE_LONG = 1;
+  /** The type of a double value. */
+  private static final byte TYPE_DOUBLE = 2;
+
+  /** The name. */
+  private final String name;
+  /** The parameter names. */
+  private final String[] names;
+  /** The parameter types. */
+  private final byte[] types;
+  /** The parameter string values. */
+  private final String[] strings;
+  /** The parameter number values. Doubles are stored using the raw long bits. */
+  private final long[] numbers;
+
+  /**
+   * A builder of {@link Ga4Event} instances.
+   *
+   * <p>This class is not thread-safe.
+   */
+  public static final class Builder {
+    /** The name. */
+    private final String name;
+    /** The parameter names. */
+    private final String[] names = new String[MAX_PARAMETERS];
+    /** The parameter types. */
+    private final byte[] types = new byte[MAX_PARAMETERS];
+    /** The parameter string values. */
+    private final String[] strings = new String[MAX_PARAMETERS];
+    /** The parameter number values. */
+    private final long[] numbers = new long[MAX_PARAMETERS];
+    /** The number of parameters. */
+    private int count;
+
+    /**
+     * Create a new instance.
+     *
+     * @param name the event name
+     */
+    Builder(String name) {
+      this.name = validateName(name, MAX_NAME_LENGTH, "Event");
+    }
+
+    /**
+     * Adds a string parameter.
+     *
+     * @param name the name
+     * @param value the value
+     * @return the builder
+     * @throws IllegalArgumentException if the name is invalid, is already present, the value is
+     *         too long, or the maximum number of parameters has been reached
+     */
+    public Builder addParameter(String name, String value) {
+      Objects.requireNonNull(value, "Value");
+      if (value.length() > MAX_VALUE_LENGTH) {
+        throw new IllegalArgumentException(
+            "Value length is above " + MAX_VALUE_LENGTH + ": " + value.length());
+      }
+      strings[add(name, TYPE_STRING)] = value;
+      return this;
+    }
+
+    /**
+     * Adds an integer parameter.
+     *
+     * @param name the name
+     * @param value the value
+     * @return the builder
+     * @throws IllegalArgumentException if the name is invalid, is already present, or the maximum
+     *         number of parameters has been reached
+     */
+    public Builder addParameter(String name, long value) {
+      numbers[add(name, TYPE_LONG)] = value;
+      return this;
+    }
+
+    /**
+     * Adds a floating-point parameter.
+     *
+     * @param name the name
+     * @param value the value
+     * @return the builder
+     * @throws IllegalArgumentException if the name is invalid, is already present, the value is
+     *         not finite, or the maximum number of parameters has been reached
+     */
+    public Builder addParameter(String name, double value) {
+      if (!Double.isFinite(value)) {
+        throw new IllegalArgumentException("Value is not finite: " + value);
+      }
+      numbers[add(name, TYPE_DOUBLE)] = Double.doubleToRawLongBits(value);
+      return this;
+    }
+
+    /**
+     * Adds the engagement time parameter. This is required for the event to be counted as user
+     * activity.
+     *
+     * @param milliseconds the engagement time in milliseconds
+     * @return the builder
+     * @throws IllegalArgumentException if the time is negative, is already present, or the maximum
+     *         number of parameters has been reached
+     * @see #ENGAGEMENT_TIME
+     */
+    public Builder addEngagementTime(long milliseconds) {
+      if (milliseconds < 0) {
+        throw new IllegalArgumentException("Engagement time is negative: " + milliseconds);
+      }
+      return addParameter(ENGAGEMENT_TIME, milliseconds);
+    }
+
+    /**
+     * Gets the number of parameters.
+     *
+     * @return the parameter count
+     */
+    public int getParameterCount() {
+      return count;
+    }
+
+    /**
+     * Builds the event.
+     *
+     * @return the event
+     */
+    public Ga4Event build() {
+      return new Ga4Event(this);
+    }
+
+    /**
+     * Adds a parameter name.
+     *
+     * @param name the name
+     * @param type the type
+     * @return the index of the parameter
+     */
+    private int add(String name, byte type) {
+      validateName(name, MAX_PARAMETER_NAME_LENGTH, "Parameter");
+      // Reserve a parameter for the session id
+      final int max = SESSION_ID.equals(name) || indexOf(names, count, SESSION_ID) >= 0
+          ? MAX_PARAMETERS
+          : MAX_PARAMETERS - 1;
+      if (count == max) {
+        throw new IllegalArgumentException("Maximum parameters reached: " + max);
+      }
+      if (indexOf(names, count, name) >= 0) {
+        throw new IllegalArgumentException("Duplicate parameter: " + name);
+      }
+      names[count] = name;
+      types[count] = type;
+      return count++;
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param builder the builder
+   */
+  private Ga4Event(Builder builder) {
+    name = builder.name;
+    final int count = builder.count;
+    names = Arrays.copyOf(builder.names, count);
+    types = Arrays.copyOf(builder.types, count);
+    strings = Arrays.copyOf(builder.strings, count);
+    numbers = Arrays.copyOf(builder.numbers, count);
+  }
+
+  /**
+   * Create a new builder.
+   *
+   * @param name the event name
+   * @return the builder
+   * @throws IllegalArgumentException if the name is invalid
+   */
+  public static Builder newBuilder(String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the number of parameters.
+   *
+   * @return the parameter count
+   */
+  public int getParameterCount() {
+    return names.length;
+  }
+
+  /**
+   * Checks if the event has the named parameter.
+   *
+   * @param name the name
+   * @return true if present
+   */
+  public boolean hasParameter(String name) {
+    return indexOf(names, names.length, name) >= 0;
+  }
+
+  /**
+   * Write the event to the writer as a JSON object.
+   *
+   * @param writer the writer
+   * @return the writer
+   */
+  public JsonWriter writeTo(JsonWriter writer) {
+    return writeTo(writer, 0);
+  }
+
+  /**
+   * Write the event to the writer as a JSON object.
+   *
+   * <p>If the session id is positive it is added to the parameters if not already present.
+   *
+   * @param writer the writer
+   * @param sessionId the session id
+   * @return the writer
+   */
+  JsonWriter writeTo(JsonWriter writer, long sessionId) {
+    writer.beginObject().name("name").value(name);
+    final boolean addSession = sessionId > 0 && !hasParameter(SESSION_ID);
+    if (names.length != 0 || addSession) {
+      writer.name("params").beginObject();
+      for (int i = 0; i < names.length; i++) {
+        writer.name(names[i]);
+        if (types[i] == TYPE_STRING) {
+          writer.value(strings[i]);
+        } else if (types[i] == TYPE_LONG) {
+          writer.value(numbers[i]);
+        } else {
+          writer.value(Double.longBitsToDouble(numbers[i]));
+        }
+      }
+      if (addSession) {
+        writer.name(SESSION_ID).value(sessionId);
+      }
+      writer.endObject();
+    }
+    return writer.endObject();
+  }
+
+  /**
+   * Gets the event as a JSON object.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    return writeTo(new JsonWriter()).toString();
+  }
+
+  /**
+   * Validate the name. It must start with a letter and contain only ASCII letters, digits and
+   * underscores.
+   *
+   * @param name the name
+   * @param maxLength the maximum length
+   * @param type the type of the name (used for the error message)
+   * @return the name
+   * @throws IllegalArgumentException if the name is invalid
+   */
+  private static String validateName(String name, int maxLength, String type) {
+    Objects.requireNonNull(name, "Name");
+    final int length = name.length();
+    if (length == 0 || length > maxLength) {
+      throw new IllegalArgumentException(
+          type + " name length is not in [1, " + maxLength + "]: " + name);
+    }
+    if (!isLetter(name.charAt(0))) {
+      throw new IllegalArgumentException(type + " name does not start with a letter: " + name);
+    }
+    for (int i = 1; i < length; i++) {
+      final char ch = name.charAt(i);
+      if (!(isLetter(ch) || (ch >= '0' && ch <= '9') || ch == '_')) {
+        throw new IllegalArgumentException(type + " name has an invalid character: " + name);
+      }
+    }
+    for (final String prefix : RESERVED_PREFIXES) {
+      if (name.startsWith(prefix)) {
+        throw new IllegalArgumentException(type + " name has a reserved prefix: " + name);
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Checks if the character is an ASCII letter.
+   *
+   * @param ch the character
+   * @return true if a letter
+   */
+  private static boolean isLetter(char ch) {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+  }
+
+  /**
+   * Find the index of the name.
+   *
+   * @param names the names
+   * @param count the number of names
+   * @param name the name
+   * @return the index (or -1)
+   */
+  private static int indexOf(String[] names, int count, String name) {
+    for (int i = 0; i < count; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
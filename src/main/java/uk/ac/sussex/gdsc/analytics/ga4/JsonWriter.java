@@ -0,0 +1,515 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.ga4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import uk.ac.sussex.gdsc.analytics.parameters.ParameterUtils;
+
+/**
+ * Write JSON as UTF-8 bytes to a reusable buffer.
+ *
+ * <p>The writer streams tokens directly to the buffer. No intermediate document or string
+ * representation is created. The buffer grows as required and is retained when the writer is
+ * {@link #reset()} so a writer can be reused to write many documents without allocation.
+ *
+ * <p>The structure of the document is validated as it is written. A single top-level value may be
+ * written to the document.
+ *
+ * <p>This class is not thread-safe.
+ */
+public final class JsonWriter {
+
+  /** The default capacity of the buffer. */
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  /** The maximum nesting depth. */
+  private static final int MAX_DEPTH = 32;
+
+  /** The state of an empty document. */
+  private static final byte EMPTY_DOCUMENT = 0;
+  /** The state of a document with a top-level value. */
+  private static final byte NONEMPTY_DOCUMENT = 1;
+  /** The state of an object with no members. */
+  private static final byte EMPTY_OBJECT = 2;
+  /** The state of an object with members. */
+  private static final byte NONEMPTY_OBJECT = 3;
+  /** The state of an object after a member name. */
+  private static final byte NAME = 4;
+  /** The state of an array with no elements. */
+  private static final byte EMPTY_ARRAY = 5;
+  /** The state of an array with elements. */
+  private static final byte NONEMPTY_ARRAY = 6;
+
+  /** The hex digits. */
+  private static final byte[] HEX_DIGITS =
+      {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+  /** The bytes for true. */
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  /** The bytes for false. */
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+  /** The bytes for null. */
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+  /** The replacement for a malformed surrogate pair. */
+  private static final byte REPLACEMENT = '?';
+
+  /** The buffer. */
+  private byte[] buffer;
+
+  /** The size of the content in the buffer. */
+  private int size;
+
+  /** The stack of states. The current state is at the depth. */
+  private final byte[] stack = new byte[MAX_DEPTH + 1];
+
+  /** The current depth. */
+  private int depth;
+
+  /** The working buffer for numbers. */
+  private final StringBuilder numberBuffer = new StringBuilder();
+
+  /**
+   * Create a new instance.
+   */
+  public JsonWriter() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param capacity the initial capacity of the buffer
+   * @throws IllegalArgumentException if the capacity is not strictly positive
+   */
+  public JsonWriter(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity is not strictly positive: " + capacity);
+    }
+    buffer = new byte[capacity];
+  }
+
+  /**
+   * Reset the writer to an empty document. The buffer is retained.
+   *
+   * @return the writer
+   */
+  public JsonWriter reset() {
+    size = 0;
+    depth = 0;
+    stack[0] = EMPTY_DOCUMENT;
+    return this;
+  }
+
+  /**
+   * Gets the size of the content in bytes.
+   *
+   * @return the size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the document is complete, i.e. a top-level value has been written and all objects
+   * and arrays have been closed.
+   *
+   * @return true if complete
+   */
+  public boolean isComplete() {
+    return depth == 0 && stack[0] == NONEMPTY_DOCUMENT;
+  }
+
+  /**
+   * Gets a view of the content as a buffer.
+   *
+   * <p>The view shares the buffer of the writer and is only valid until the next write to the
+   * writer, or the writer is reset. The content must not be modified.
+   *
+   * @return the byte buffer
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buffer, 0, size);
+  }
+
+  /**
+   * Gets a copy of the content.
+   *
+   * @return the bytes
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size);
+  }
+
+  /**
+   * Gets the content as a string.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    return new String(buffer, 0, size, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Begin an object.
+   *
+   * @return the writer
+   * @throws IllegalStateException if a value cannot be written or the maximum depth is exceeded
+   */
+  public JsonWriter beginObject() {
+    return open(EMPTY_OBJECT, '{');
+  }
+
+  /**
+   * End the current object.
+   *
+   * @return the writer
+   * @throws IllegalStateException if the current structure is not an object with a complete member
+   */
+  public JsonWriter endObject() {
+    return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+  }
+
+  /**
+   * Begin an array.
+   *
+   * @return the writer
+   * @throws IllegalStateException if a value cannot be written or the maximum depth is exceeded
+   */
+  public JsonWriter beginArray() {
+    return open(EMPTY_ARRAY, '[');
+  }
+
+  /**
+   * End the current array.
+   *
+   * @return the writer
+   * @throws IllegalStateException if the current structure is not an array
+   */
+  public JsonWriter endArray() {
+    return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+  }
+
+  /**
+   * Write the name of an object member. This must be followed by a value.
+   *
+   * @param name the name
+   * @return the writer
+   * @throws IllegalStateException if the current structure is not an object expecting a name
+   */
+  public JsonWriter name(String name) {
+    final byte state = stack[depth];
+    if (state == NONEMPTY_OBJECT) {
+      write(',');
+    } else if (state != EMPTY_OBJECT) {
+      throw new IllegalStateException("Name is not expected");
+    }
+    stack[depth] = NAME;
+    writeString(name);
+    write(':');
+    return this;
+  }
+
+  /**
+   * Write a string value. A {@code null} value is written as a JSON null.
+   *
+   * @param value the value
+   * @return the writer
+   * @throws IllegalStateException if a value cannot be written
+   */
+  public JsonWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    writeString(value);
+    return this;
+  }
+
+  /**
+   * Write a long value.
+   *
+   * @param value the value
+   * @return the writer
+   * @throws IllegalStateException if a value cannot be written
+   */
+  public JsonWriter value(long value) {
+    beforeValue();
+    numberBuffer.setLength(0);
+    writeAscii(numberBuffer.append(value));
+    return this;
+  }
+
+  /**
+   * Write a double value.
+   *
+   * <p>The value is written using the shortest decimal representation that uniquely identifies
+   * the value.
+   *
+   * @param value the value
+   * @return the writer
+   * @throws IllegalArgumentException if the value is not finite
+   * @throws IllegalStateException if a value cannot be written
+   * @see ParameterUtils#appendNumberTo(StringBuilder, double)
+   */
+  public JsonWriter value(double value) {
+    if (!Double.isFinite(value)) {
+      throw new IllegalArgumentException("Value is not finite: " + value);
+    }
+    beforeValue();
+    numberBuffer.setLength(0);
+    writeAscii(ParameterUtils.appendNumberTo(numberBuffer, value));
+    return this;
+  }
+
+  /**
+   * Write a boolean value.
+   *
+   * @param value the value
+   * @return the writer
+   * @throws IllegalStateException if a value cannot be written
+   */
+  public JsonWriter value(boolean value) {
+    beforeValue();
+    write(value ? TRUE : FALSE);
+    return this;
+  }
+
+  /**
+   * Write a null value.
+   *
+   * @return the writer
+   * @throws IllegalStateException if a value cannot be written
+   */
+  public JsonWriter nullValue() {
+    beforeValue();
+    write(NULL);
+    return this;
+  }
+
+  /**
+   * Open a structure.
+   *
+   * @param state the empty state of the structure
+   * @param ch the opening character
+   * @return the writer
+   */
+  private JsonWriter open(byte state, char ch) {
+    if (depth == MAX_DEPTH) {
+      throw new IllegalStateException("Maximum depth exceeded: " + MAX_DEPTH);
+    }
+    beforeValue();
+    stack[++depth] = state;
+    write(ch);
+    return this;
+  }
+
+  /**
+   * Close a structure.
+   *
+   * @param empty the empty state of the structure
+   * @param nonempty the non-empty state of the structure
+   * @param ch the closing character
+   * @return the writer
+   */
+  private JsonWriter close(byte empty, byte nonempty, char ch) {
+    final byte state = stack[depth];
+    if (depth == 0 || state != empty && state != nonempty) {
+      throw new IllegalStateException("Structure is not open");
+    }
+    depth--;
+    write(ch);
+    return this;
+  }
+
+  /**
+   * Update the state before writing a value.
+   */
+  private void beforeValue() {
+    switch (stack[depth]) {
+      case EMPTY_DOCUMENT:
+        stack[depth] = NONEMPTY_DOCUMENT;
+        break;
+      case NAME:
+        stack[depth] = NONEMPTY_OBJECT;
+        break;
+      case EMPTY_ARRAY:
+        stack[depth] = NONEMPTY_ARRAY;
+        break;
+      case NONEMPTY_ARRAY:
+        write(',');
+        break;
+      case NONEMPTY_DOCUMENT:
+        throw new IllegalStateException("Document already has a value");
+      default:
+        throw new IllegalStateException("Value is not expected");
+    }
+  }
+
+  /**
+   * Write the string as a quoted and escaped JSON string encoded in UTF-8.
+   *
+   * <p>Malformed surrogate pairs are replaced with {@code '?'}.
+   *
+   * @param value the value
+   */
+  private void writeString(String value) {
+    final int length = value.length();
+    // Worst case: all escaped control characters (6 bytes) or 3-byte characters
+    ensureCapacity(length * 6 + 2);
+    final byte[] bytes = buffer;
+    int pos = size;
+    bytes[pos++] = '"';
+    for (int i = 0; i < length; i++) {
+      final char ch = value.charAt(i);
+      if (ch < 0x80) {
+        if (ch < 0x20 || ch == '"' || ch == '\\') {
+          pos = writeEscape(bytes, pos, ch);
+        } else {
+          bytes[pos++] = (byte) ch;
+        }
+      } else if (ch < 0x800) {
+        bytes[pos++] = (byte) (0xc0 | (ch >>> 6));
+        bytes[pos++] = (byte) (0x80 | (ch & 0x3f));
+      } else if (Character.isSurrogate(ch)) {
+        if (Character.isHighSurrogate(ch) && i + 1 < length
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(ch, value.charAt(++i));
+          bytes[pos++] = (byte) (0xf0 | (cp >>> 18));
+          bytes[pos++] = (byte) (0x80 | ((cp >>> 12) & 0x3f));
+          bytes[pos++] = (byte) (0x80 | ((cp >>> 6) & 0x3f));
+          bytes[pos++] = (byte) (0x80 | (cp & 0x3f));
+        } else {
+          bytes[pos++] = REPLACEMENT;
+        }
+      } else {
+        bytes[pos++] = (byte) (0xe0 | (ch >>> 12));
+        bytes[pos++] = (byte) (0x80 | ((ch >>> 6) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | (ch & 0x3f));
+      }
+    }
+    bytes[pos++] = '"';
+    size = pos;
+  }
+
+  /**
+   * Write the escape sequence for the ASCII character.
+   *
+   * @param bytes the bytes
+   * @param pos the position
+   * @param ch the character
+   * @return the new position
+   */
+  private static int writeEscape(byte[] bytes, int pos, char ch) {
+    int index = pos;
+    bytes[index++] = '\\';
+    switch (ch) {
+      case '"':
+      case '\\':
+        bytes[index++] = (byte) ch;
+        break;
+      case '\b':
+        bytes[index++] = 'b';
+        break;
+      case '\f':
+        bytes[index++] = 'f';
+        break;
+      case '\n':
+        bytes[index++] = 'n';
+        break;
+      case '\r':
+        bytes[index++] = 'r';
+        break;
+      case '\t':
+        bytes[index++] = 't';
+        break;
+      default:
+        bytes[index++] = 'u';
+        bytes[index++] = '0';
+        bytes[index++] = '0';
+        bytes[index++] = HEX_DIGITS[ch >>> 4];
+        bytes[index++] = HEX_DIGITS[ch & 0xf];
+        break;
+    }
+    return index;
+  }
+
+  /**
+   * Write the ASCII characters.
+   *
+   * @param chars the characters
+   */
+  private void writeAscii(CharSequence chars) {
+    final int length = chars.length();
+    ensureCapacity(length);
+    final byte[] bytes = buffer;
+    int pos = size;
+    for (int i = 0; i < length; i++) {
+      bytes[pos++] = (byte) chars.charAt(i);
+    }
+    size = pos;
+  }
+
+  /**
+   * Write the bytes.
+   *
+   * @param bytes the bytes
+   */
+  private void write(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+    size += bytes.length;
+  }
+
+  /**
+   * Write the ASCII character.
+   *
+   * @param ch the character
+   */
+  private void write(char ch) {
+    ensureCapacity(1);
+    buffer[size++] = (byte) ch;
+  }
+
+  /**
+   * Ensure the buffer can hold the additional number of bytes.
+   *
+   * @param additional the additional number of bytes
+   */
+  private void ensureCapacity(int additional) {
+    final int required = size + additional;
+    if (required > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+    }
+  }
+}
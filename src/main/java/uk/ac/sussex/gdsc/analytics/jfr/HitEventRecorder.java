@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jfr;
+
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+
+/**
+ * Record events of the hit pipeline.
+ *
+ * <p>Each event is started using a {@code begin} method that returns an event object, or null if
+ * the event is not enabled. The event is ended using the corresponding {@code commit} method which
+ * is only called with a non-null event.
+ *
+ * @see HitEvents
+ */
+interface HitEventRecorder {
+
+  /**
+   * Begin the build event.
+   *
+   * @return the event (or null)
+   */
+  Object beginBuild();
+
+  /**
+   * Commit the build event.
+   *
+   * @param event the event
+   * @param hitType the hit type
+   */
+  void commitBuild(Object event, HitType hitType);
+
+  /**
+   * Begin the encode event.
+   *
+   * @return the event (or null)
+   */
+  Object beginEncode();
+
+  /**
+   * Commit the encode event.
+   *
+   * @param event the event
+   * @param hit the encoded hit
+   */
+  void commitEncode(Object event, CharSequence hit);
+
+  /**
+   * Begin the enqueue event.
+   *
+   * @return the event (or null)
+   */
+  Object beginEnqueue();
+
+  /**
+   * Commit the enqueue event.
+   *
+   * @param event the event
+   * @param status the status if the hit was rejected (or null if accepted)
+   * @param pending the number of pending hits
+   */
+  void commitEnqueue(Object event, DispatchStatus status, int pending);
+
+  /**
+   * Begin the dispatch event.
+   *
+   * @return the event (or null)
+   */
+  Object beginDispatch();
+
+  /**
+   * Commit the dispatch event.
+   *
+   * @param event the event
+   * @param hit the hit
+   * @param status the status
+   */
+  void commitDispatch(Object event, CharSequence hit, DispatchStatus status);
+
+  /**
+   * Begin the spool event.
+   *
+   * @return the event (or null)
+   */
+  Object beginSpool();
+
+  /**
+   * Commit the spool event.
+   *
+   * @param event the event
+   * @param operation the operation
+   * @param hits the number of hits
+   * @param bytes the number of bytes
+   */
+  void commitSpool(Object event, String operation, int hits, long bytes);
+}
@@ -0,0 +1,227 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jfr;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+
+/**
+ * Record Java Flight Recorder (JFR) events for the hit pipeline.
+ *
+ * <p>Events are recorded for the build, encoding, enqueue, dispatch and spooling of hits. Each
+ * event has a duration and properties such as the size, hit type and {@link DispatchStatus}.
+ *
+ * <p>The JFR events are provided in a multi-release jar for Java 11 or later. On earlier versions
+ * all methods do nothing. When the events are not enabled in a recording the {@code begin}
+ * methods return null and the {@code commit} methods do nothing.
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ * final Object event = HitEvents.beginEncode();
+ * // ... encode the hit
+ * HitEvents.commitEncode(event, hit);
+ * </pre>
+ */
+public final class HitEvents {
+
+  /** The name of the class that records the events. */
+  private static final String RECORDER_CLASS_NAME =
+      "uk.ac.sussex.gdsc.analytics.jfr.JfrHitEventRecorder";
+
+  /** The recorder (or null). */
+  private static final HitEventRecorder RECORDER = createRecorder(RECORDER_CLASS_NAME);
+
+  /** Set to true if the recorder is available. */
+  private static final boolean AVAILABLE = RECORDER != null;
+
+  /**
+   * No public construction.
+   */
+  private HitEvents() {}
+
+  /**
+   * Creates the recorder.
+   *
+   * @param className the class name of the recorder
+   * @return the recorder (or null)
+   */
+  static HitEventRecorder createRecorder(String className) {
+    try {
+      return (HitEventRecorder) Class.forName(className).getDeclaredConstructor().newInstance();
+    } catch (final ReflectiveOperationException | LinkageError | RuntimeException ex) {
+      Logger.getLogger(HitEvents.class.getName()).log(Level.FINE,
+          () -> "JFR events are not available: " + ex);
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the JFR events are available.
+   *
+   * @return true if available
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Begin the event for building a hit.
+   *
+   * @return the event (or null)
+   */
+  public static Object beginBuild() {
+    return AVAILABLE ? RECORDER.beginBuild() : null;
+  }
+
+  /**
+   * Commit the event for building a hit.
+   *
+   * @param event the event
+   * @param hitType the hit type
+   */
+  public static void commitBuild(Object event, HitType hitType) {
+    if (event != null) {
+      RECORDER.commitBuild(event, hitType);
+    }
+  }
+
+  /**
+   * Begin the event for encoding a hit.
+   *
+   * @return the event (or null)
+   */
+  public static Object beginEncode() {
+    return AVAILABLE ? RECORDER.beginEncode() : null;
+  }
+
+  /**
+   * Commit the event for encoding a hit.
+   *
+   * @param event the event
+   * @param hit the encoded hit
+   */
+  public static void commitEncode(Object event, CharSequence hit) {
+    if (event != null) {
+      RECORDER.commitEncode(event, hit);
+    }
+  }
+
+  /**
+   * Begin the event for submitting a hit for dispatch.
+   *
+   * @return the event (or null)
+   */
+  public static Object beginEnqueue() {
+    return AVAILABLE ? RECORDER.beginEnqueue() : null;
+  }
+
+  /**
+   * Commit the event for submitting a hit for dispatch.
+   *
+   * @param event the event
+   * @param status the status if the hit was rejected (or null if accepted)
+   * @param pending the number of pending hits
+   */
+  public static void commitEnqueue(Object event, DispatchStatus status, int pending) {
+    if (event != null) {
+      RECORDER.commitEnqueue(event, status, pending);
+    }
+  }
+
+  /**
+   * Begin the event for dispatch of a hit.
+   *
+   * @return the event (or null)
+   */
+  public static Object beginDispatch() {
+    return AVAILABLE ? RECORDER.beginDispatch() : null;
+  }
+
+  /**
+   * Commit the event for dispatch of a hit.
+   *
+   * @param event the event
+   * @param hit the hit
+   * @param status the status
+   */
+  public static void commitDispatch(Object event, CharSequence hit, DispatchStatus status) {
+    if (event != null) {
+      RECORDER.commitDispatch(event, hit, status);
+    }
+  }
+
+  /**
+   * Begin the event for an operation on a spool of hits.
+   *
+   * @return the event (or null)
+   */
+  public static Object beginSpool() {
+    return AVAILABLE ? RECORDER.beginSpool() : null;
+  }
+
+  /**
+   * Commit the event for an operation on a spool of hits.
+   *
+   * @param event the event
+   * @param operation the operation
+   * @param hits the number of hits
+   * @param bytes the number of bytes
+   */
+  public static void commitSpool(Object event, String operation, int hits, long bytes) {
+    if (event != null) {
+      RECORDER.commitSpool(event, operation, hits, bytes);
+    }
+  }
+
+  /**
+   * Gets the value of the hit type parameter from the URL encoded hit.
+   *
+   * @param hit the hit
+   * @return the hit type (or null)
+   */
+  static String getHitType(CharSequence hit) {
+    final int length = hit.length();
+    int start = 0;
+    while (start < length) {
+      int end = start;
+      while (end < length && hit.charAt(end) != '&') {
+        end++;
+      }
+      if (end - start >= 2 && hit.charAt(start) == 't' && hit.charAt(start + 1) == '=') {
+        return hit.subSequence(start + 2, end).toString();
+      }
+      start = end + 1;
+    }
+    return null;
+  }
+}
@@ -75,6 +75,12 @@ final class Constants {
    */
   static final char[] EMPTY_CHARS = new char[0];
 
+  /**
+   * The maximum index for which the resolved parameter {@code name=} is cached for the defined
+   * protocol parameters, e.g. {@code cd1=} to {@code cd200=}.
+   */
+  static final int MAX_CACHED_INDEX = 200;
+
   /**
    * A set of all the hit types.
    */
@@ -0,0 +1,330 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats currency values for a locale.
+ *
+ * <p>Creation of a currency {@link NumberFormat} requires a look-up of the locale data and
+ * construction of a new {@link DecimalFormat}. The formatters are not thread-safe so this class
+ * caches a formatter for each locale per thread.
+ *
+ * <p>If the currency of the locale uses a fixed number of fraction digits (e.g. 2 for GBP, USD,
+ * EUR) then values are formatted using a fixed-point representation of the value rounded to the
+ * minor unit of the currency (e.g. pence). This does not allocate memory. The fixed-point format is
+ * only used for a locale if it has been verified to match the output of the {@link NumberFormat}.
+ * Values that cannot be rounded exactly using fixed-point (e.g. very large values or values close
+ * to a rounding tie) are formatted using the {@link NumberFormat}.
+ */
+final class CurrencyFormatter {
+
+  /** The maximum number of fraction digits supported by the fixed-point format. */
+  private static final int MAX_FRACTION_DIGITS = 3;
+
+  /** Powers of 10 for the supported fraction digits. */
+  private static final double[] SCALE = {1, 10, 100, 1000};
+
+  /**
+   * The limit for the value scaled to minor units. Values above this are not exact when scaled.
+   * This is below 2^53 (approximately 9.007e15).
+   */
+  private static final double SCALED_LIMIT = 1e15;
+
+  /** One half. */
+  private static final double HALF = 0.5;
+
+  /** Used to indicate the value cannot be converted to units. */
+  private static final long NO_UNITS = -1;
+
+  /** The size of the buffer used for the fixed-point digits. */
+  private static final int BUFFER_SIZE = 32;
+
+  /** The base used for decimal digits. */
+  private static final int BASE = 10;
+
+  /**
+   * Values used to verify the fixed-point format. The last value has more than 6 integer digits to
+   * check any grouping of digits.
+   */
+  private static final double[] PROBES = {0, 0.5, 1.25, 12.5, 999.75, 1234567.25, 98765432.5};
+
+  /** The per-thread cache of formatters. */
+  private static final ThreadLocal<Map<Locale, CurrencyFormatter>> FORMATTERS =
+      ThreadLocal.withInitial(HashMap::new);
+
+  /** The number format. */
+  private final NumberFormat format;
+
+  /** Set to true if the fixed-point format is supported. */
+  private final boolean fixedPoint;
+
+  /** The number of fraction digits for the fixed-point format. */
+  private int fractionDigits;
+  /** The positive prefix. */
+  private char[] positivePrefix;
+  /** The positive suffix. */
+  private char[] positiveSuffix;
+  /** The negative prefix. */
+  private char[] negativePrefix;
+  /** The negative suffix. */
+  private char[] negativeSuffix;
+  /** The zero digit. */
+  private char zeroDigit;
+  /** The decimal separator. */
+  private char decimalSeparator;
+  /** The grouping separator. */
+  private char groupingSeparator;
+  /** The grouping size (zero for no grouping). */
+  private int groupingSize;
+
+  /** The working buffer for the fixed-point digits. */
+  private final char[] buffer = new char[BUFFER_SIZE];
+
+  /**
+   * Create a new instance.
+   *
+   * @param locale the locale
+   */
+  private CurrencyFormatter(Locale locale) {
+    format = NumberFormat.getCurrencyInstance(locale);
+    fixedPoint = initialiseFixedPoint() && isFixedPointVerified();
+  }
+
+  /**
+   * Append the currency value to the {@link StringBuilder} using the currency format of the
+   * locale.
+   *
+   * <p>The output is the same as {@link NumberFormat#getCurrencyInstance(Locale)}.
+   *
+   * @param sb the string builder
+   * @param locale the locale
+   * @param value the value
+   * @return the string builder
+   */
+  static StringBuilder appendTo(StringBuilder sb, Locale locale, double value) {
+    return FORMATTERS.get().computeIfAbsent(locale, CurrencyFormatter::new).format(sb, value);
+  }
+
+  /**
+   * Checks if the fixed-point format is supported for the locale.
+   *
+   * @param locale the locale
+   * @return true if supported
+   */
+  static boolean isFixedPoint(Locale locale) {
+    return FORMATTERS.get().computeIfAbsent(locale, CurrencyFormatter::new).fixedPoint;
+  }
+
+  /**
+   * Initialise the properties of the fixed-point format.
+   *
+   * @return true if the fixed-point format can be used
+   */
+  private boolean initialiseFixedPoint() {
+    if (!(format instanceof DecimalFormat)) {
+      return false;
+    }
+    final DecimalFormat df = (DecimalFormat) format;
+    fractionDigits = df.getMaximumFractionDigits();
+    if (fractionDigits != df.getMinimumFractionDigits() || fractionDigits > MAX_FRACTION_DIGITS
+        || df.getMinimumIntegerDigits() != 1 || df.getMultiplier() != 1
+        || df.getRoundingMode() != RoundingMode.HALF_EVEN) {
+      return false;
+    }
+    positivePrefix = df.getPositivePrefix().toCharArray();
+    positiveSuffix = df.getPositiveSuffix().toCharArray();
+    negativePrefix = df.getNegativePrefix().toCharArray();
+    negativeSuffix = df.getNegativeSuffix().toCharArray();
+    zeroDigit = df.getDecimalFormatSymbols().getZeroDigit();
+    groupingSize = df.isGroupingUsed() ? df.getGroupingSize() : 0;
+
+    // The separators used for currency can be different from those for a number.
+    // Extract them from a formatted value that requires grouping and a decimal separator.
+    final String probe = df.format(PROBES[PROBES.length - 1]);
+    final int start = positivePrefix.length;
+    final int end = probe.length() - positiveSuffix.length;
+    int first = -1;
+    int last = -1;
+    for (int i = start; i < end; i++) {
+      if (!isDigit(probe.charAt(i))) {
+        if (first < 0) {
+          first = i;
+        }
+        last = i;
+      }
+    }
+    if (fractionDigits != 0) {
+      if (last < 0) {
+        return false;
+      }
+      decimalSeparator = probe.charAt(last);
+      if (first == last) {
+        // No grouping
+        return groupingSize == 0;
+      }
+    } else if (last < 0) {
+      // No grouping
+      return groupingSize == 0;
+    }
+    groupingSeparator = probe.charAt(first);
+    return true;
+  }
+
+  /**
+   * Checks if the character is a digit for the format.
+   *
+   * @param ch the character
+   * @return true if a digit
+   */
+  private boolean isDigit(char ch) {
+    final int digit = ch - zeroDigit;
+    return digit >= 0 && digit < BASE;
+  }
+
+  /**
+   * Checks the fixed-point format matches the number format.
+   *
+   * @return true if verified
+   */
+  private boolean isFixedPointVerified() {
+    final StringBuilder sb = new StringBuilder();
+    for (final double value : PROBES) {
+      final long units = toUnits(value);
+      if (units == NO_UNITS) {
+        continue;
+      }
+      sb.setLength(0);
+      appendFixedPoint(sb, false, units);
+      if (!sb.toString().equals(format.format(value))) {
+        return false;
+      }
+      if (units != 0) {
+        sb.setLength(0);
+        appendFixedPoint(sb, true, units);
+        if (!sb.toString().equals(format.format(-value))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Append the currency value to the {@link StringBuilder}.
+   *
+   * @param sb the string builder
+   * @param value the value
+   * @return the string builder
+   */
+  private StringBuilder format(StringBuilder sb, double value) {
+    if (fixedPoint) {
+      final long units = toUnits(Math.abs(value));
+      // Use the sign bit to detect -0.0.
+      final boolean negative = Double.doubleToRawLongBits(value) < 0;
+      // The number format may output a negative value that rounds to zero as "-0.00"
+      if (units > 0 || units == 0 && !negative) {
+        return appendFixedPoint(sb, negative, units);
+      }
+    }
+    return sb.append(format.format(value));
+  }
+
+  /**
+   * Convert the absolute value to units of the smallest fraction digit, rounding to the nearest
+   * unit.
+   *
+   * <p>Returns {@link #NO_UNITS} if the rounding cannot be performed exactly.
+   *
+   * @param absValue the absolute value
+   * @return the units
+   */
+  private long toUnits(double absValue) {
+    final double scaled = absValue * SCALE[fractionDigits];
+    // This is false for NaN
+    if (scaled < SCALED_LIMIT) {
+      final double floor = Math.floor(scaled);
+      // Exact subtraction
+      final double fraction = scaled - floor;
+      // The scaled value has a rounding error of 0.5 ulp. Ensure the rounding of the exact
+      // value is the same as the scaled value. The rounding mode is HALF_EVEN so ties
+      // require the exact value and are formatted with the number format.
+      if (Math.abs(fraction - HALF) > Math.ulp(scaled)) {
+        return fraction > HALF ? (long) floor + 1 : (long) floor;
+      }
+    }
+    return NO_UNITS;
+  }
+
+  /**
+   * Append the currency value to the {@link StringBuilder} using fixed-point.
+   *
+   * @param sb the string builder
+   * @param negative set to true if negative
+   * @param units the value in units of the smallest fraction digit
+   * @return the string builder
+   */
+  private StringBuilder appendFixedPoint(StringBuilder sb, boolean negative, long units) {
+    // Write in reverse order
+    final char[] chars = buffer;
+    int pos = chars.length;
+    long remaining = units;
+    if (fractionDigits != 0) {
+      for (int i = 0; i < fractionDigits; i++) {
+        chars[--pos] = (char) (zeroDigit + remaining % BASE);
+        remaining /= BASE;
+      }
+      chars[--pos] = decimalSeparator;
+    }
+    // Integer part has at least one digit
+    int count = 0;
+    do {
+      if (count == groupingSize && count != 0) {
+        chars[--pos] = groupingSeparator;
+        count = 0;
+      }
+      chars[--pos] = (char) (zeroDigit + remaining % BASE);
+      remaining /= BASE;
+      count++;
+    } while (remaining != 0);
+
+    if (negative) {
+      return sb.append(negativePrefix).append(chars, pos, chars.length - pos)
+          .append(negativeSuffix);
+    }
+    return sb.append(positivePrefix).append(chars, pos, chars.length - pos).append(positiveSuffix);
+  }
+}
@@ -118,4 +118,14 @@ public class CustomParameterSpecification implements ParameterSpecification {
   public EnumSet<HitType> getSupportedHitTypes() {
     return supportedHitTypes.clone();
   }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>This method checks the supported hit types without creating a copy of the set.
+   */
+  @Override
+  public boolean isSupported(HitType hitType) {
+    return hitType != null && supportedHitTypes.contains(hitType);
+  }
 }
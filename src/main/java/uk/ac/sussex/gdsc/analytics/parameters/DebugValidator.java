@@ -0,0 +1,460 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import uk.ac.sussex.gdsc.analytics.parameters.ParserMessage.MessageType;
+
+/**
+ * Validates URL encoded hits locally. This emulates the Google Analytics debug server.
+ *
+ * <p>The hit is parsed into {@code name=value} pairs using a {@link HitParser} and each name is
+ * resolved to a {@link ProtocolSpecification}. The following are reported as errors:
+ *
+ * <ul>
+ * <li>The payload is larger than {@value #MAX_PAYLOAD_SIZE} bytes
+ * <li>A name or value has an illegal URL encoding
+ * <li>A parameter index is not strictly positive
+ * <li>A value does not match the {@link ValueType} of the specification
+ * <li>A text value exceeds the maximum length of the specification (in UTF-8 bytes)
+ * <li>The protocol version, tracking Id, hit type or IP override is invalid
+ * <li>The protocol version, tracking Id, client Id (or user Id) or hit type is missing
+ * <li>A parameter required for the hit type is missing
+ * </ul>
+ *
+ * <p>Warnings are generated for duplicate parameters and parameters that are not supported by the
+ * hit type. Unknown parameters generate an information message. The message codes and
+ * descriptions are not identical to the debug server.
+ *
+ * <p>This class is thread-safe. A collection of hits can be validated in parallel.
+ *
+ * @see <a href="https://developers.google.com/analytics/devguides/collection/protocol/v1/validating-hits">Validating
+ *      Hits</a>
+ */
+public final class DebugValidator {
+
+  /** The maximum size of the payload in bytes. */
+  public static final int MAX_PAYLOAD_SIZE = 8192;
+
+  /** The message code for a missing value. */
+  public static final String VALUE_REQUIRED = "VALUE_REQUIRED";
+  /** The message code for an invalid value. */
+  public static final String VALUE_INVALID = "VALUE_INVALID";
+  /** The message code for a value that is too long. */
+  public static final String VALUE_TOO_LONG = "VALUE_TOO_LONG";
+  /** The message code for a payload that is too large. */
+  public static final String PAYLOAD_TOO_LARGE = "PAYLOAD_TOO_LARGE";
+  /** The message code for a duplicate parameter. */
+  public static final String DUPLICATE_PARAMETER = "DUPLICATE_PARAMETER";
+  /** The message code for a parameter that is not supported by the hit type. */
+  public static final String UNSUPPORTED_PARAMETER = "UNSUPPORTED_PARAMETER";
+  /** The message code for an unknown parameter. */
+  public static final String UNKNOWN_PARAMETER = "UNKNOWN_PARAMETER";
+
+  /** The query delimiter. Any hit content before this is ignored. */
+  private static final char QUERY = '?';
+  /** The length of the tracking Id prefix, e.g. {@code UA-}. */
+  private static final int TRACKING_ID_PREFIX = 3;
+  /** The dash character. */
+  private static final char DASH = '-';
+  /** The supported protocol version. */
+  private static final String PROTOCOL_VERSION = "1";
+
+  /** The required parameters for each hit type. */
+  private static final Map<HitType, List<ProtocolSpecification>> REQUIRED;
+
+  static {
+    REQUIRED = new EnumMap<>(HitType.class);
+    for (final HitType hitType : HitType.values()) {
+      final List<ProtocolSpecification> list = new ArrayList<>();
+      for (final ProtocolSpecification specification : ProtocolSpecification.values()) {
+        if (HitValidator.isRequired(hitType, specification)) {
+          list.add(specification);
+        }
+      }
+      REQUIRED.put(hitType, list);
+    }
+  }
+
+  /**
+   * Validate the hit.
+   *
+   * <p>The hit is the URL encoded parameters, e.g. {@code v=1&tid=UA-12345-6&...}. Any content up
+   * to and including the first {@code '?'} is ignored allowing the hit to be a URL.
+   *
+   * @param hit the hit
+   * @return the result
+   */
+  public HitParsingResult validate(String hit) {
+    return new Parser(hit).parse();
+  }
+
+  /**
+   * Validate the hits. The hits are validated in parallel. The order of the results matches the
+   * order of the collection iterator.
+   *
+   * @param hits the hits
+   * @return the results
+   */
+  public List<HitParsingResult> validate(Collection<String> hits) {
+    return hits.parallelStream().map(this::validate).collect(Collectors.toList());
+  }
+
+  /**
+   * Count the number of invalid hits. The hits are validated in parallel.
+   *
+   * @param hits the hits
+   * @return the count
+   */
+  public long countInvalid(Collection<String> hits) {
+    return hits.parallelStream().filter(hit -> !validate(hit).isValid()).count();
+  }
+
+  /**
+   * Parse and validate a single hit.
+   */
+  private static class Parser {
+    /** The hit. */
+    private final String hit;
+    /** The messages. */
+    private final List<ParserMessage> messages = new ArrayList<>();
+    /** The names of the parameters. */
+    private final Set<String> names = new HashSet<>();
+    /** The specifications of the parameters. */
+    private final EnumSet<ProtocolSpecification> present =
+        EnumSet.noneOf(ProtocolSpecification.class);
+    /** The indexes of the current parameter. */
+    private final int[] indexes = new int[ParameterNameResolver.MAX_INDEXES];
+    /** The hit type. */
+    private HitType hitType;
+
+    /**
+     * Create a new instance.
+     *
+     * @param hit the hit
+     */
+    Parser(String hit) {
+      this.hit = hit;
+    }
+
+    /**
+     * Parse the hit.
+     *
+     * @return the result
+     */
+    HitParsingResult parse() {
+      final int size = HitValidator.utf8Length(hit);
+      if (size > MAX_PAYLOAD_SIZE) {
+        add(MessageType.ERROR, PAYLOAD_TOO_LARGE,
+            "The payload size " + size + " exceeds " + MAX_PAYLOAD_SIZE + " bytes", null);
+      }
+      final HitParser parser = new HitParser().reset(hit, hit.indexOf(QUERY) + 1, hit.length());
+      while (parser.next()) {
+        parseParameter(parser);
+      }
+      checkRequired();
+      return new HitParsingResult(hit, messages);
+    }
+
+    /**
+     * Parse the current parameter.
+     *
+     * @param parser the parser
+     */
+    private void parseParameter(HitParser parser) {
+      final String name;
+      final String value;
+      try {
+        name = parser.getName();
+        value = parser.getValue();
+      } catch (final IllegalArgumentException ex) {
+        add(MessageType.ERROR, VALUE_INVALID, "Illegal URL encoding: "
+            + hit.substring(parser.getNameStart(), parser.getValueEnd()), null);
+        return;
+      }
+      if (!names.add(name)) {
+        add(MessageType.WARN, DUPLICATE_PARAMETER, "The parameter is duplicated", name);
+      }
+      final ProtocolSpecification specification = ParameterNameResolver.resolve(name, indexes);
+      if (specification == null) {
+        add(MessageType.INFO, UNKNOWN_PARAMETER, "Unknown parameter", name);
+        return;
+      }
+      for (int i = specification.getNumberOfIndexes(); i-- > 0;) {
+        if (indexes[i] <= 0) {
+          add(MessageType.ERROR, VALUE_INVALID, "The parameter index is invalid", name);
+        }
+      }
+      // Empty values are ignored. Missing required values are reported later.
+      if (!value.isEmpty()) {
+        present.add(specification);
+        checkValue(specification, name, value);
+      }
+    }
+
+    /**
+     * Check the value of the parameter.
+     *
+     * @param specification the specification
+     * @param name the name
+     * @param value the value
+     */
+    private void checkValue(ProtocolSpecification specification, String name, String value) {
+      switch (specification) {
+        case PROTOCOL_VERSION:
+          checkValid(PROTOCOL_VERSION.equals(value), name, value);
+          return;
+        case TRACKING_ID:
+          checkValid(isTrackingId(value), name, value);
+          return;
+        case HIT_TYPE:
+          hitType = HitValidator.getHitType(value);
+          checkValid(hitType != null, name, value);
+          return;
+        case IP_OVERRIDE:
+          checkValid(IpAddressUtils.isIpAddress(value), name, value);
+          return;
+        default:
+          break;
+      }
+      switch (specification.getValueType()) {
+        case BOOLEAN:
+          checkValid(value.length() == 1 && (value.charAt(0) == '0' || value.charAt(0) == '1'),
+              name, value);
+          break;
+        case INTEGER:
+          checkValid(isInteger(value), name, value);
+          break;
+        case NUMBER:
+          checkValid(isNumber(value), name, value);
+          break;
+        case CURRENCY:
+          // The currency may be formatted for a locale
+          checkValid(containsDigit(value), name, value);
+          break;
+        case TEXT:
+        default:
+          final int maxLength = specification.getMaxLength();
+          if (maxLength != 0 && HitValidator.utf8Length(value) > maxLength) {
+            add(MessageType.ERROR, VALUE_TOO_LONG,
+                "The value exceeds the maximum length of " + maxLength + " bytes", name);
+          }
+          break;
+      }
+    }
+
+    /**
+     * Check the value is valid. If invalid then an error message is added.
+     *
+     * @param valid the valid flag
+     * @param name the name
+     * @param value the value
+     */
+    private void checkValid(boolean valid, String name, String value) {
+      if (!valid) {
+        add(MessageType.ERROR, VALUE_INVALID, "The value is invalid: " + value, name);
+      }
+    }
+
+    /**
+     * Check the required parameters are present.
+     */
+    private void checkRequired() {
+      checkRequired(ProtocolSpecification.PROTOCOL_VERSION);
+      checkRequired(ProtocolSpecification.TRACKING_ID);
+      if (!present.contains(ProtocolSpecification.USER_ID)) {
+        checkRequired(ProtocolSpecification.CLIENT_ID);
+      }
+      checkRequired(ProtocolSpecification.HIT_TYPE);
+      if (hitType == null) {
+        return;
+      }
+      for (final ProtocolSpecification specification : REQUIRED.get(hitType)) {
+        checkRequired(specification);
+      }
+      if (hitType == HitType.PAGEVIEW
+          && !present.contains(ProtocolSpecification.DOCUMENT_LOCATION_URL)
+          && !(present.contains(ProtocolSpecification.DOCUMENT_HOST_NAME)
+              && present.contains(ProtocolSpecification.DOCUMENT_PATH))) {
+        add(MessageType.ERROR, VALUE_REQUIRED,
+            "A pageview requires a document location URL, or a document host name and path",
+            ProtocolSpecification.DOCUMENT_LOCATION_URL.getNameFormat());
+      }
+      for (final ProtocolSpecification specification : present) {
+        if (!specification.isSupported(hitType)) {
+          add(MessageType.WARN, UNSUPPORTED_PARAMETER,
+              "The parameter is not supported for the hit type " + hitType,
+              specification.getNameFormat());
+        }
+      }
+    }
+
+    /**
+     * Check the required parameter is present.
+     *
+     * @param specification the specification
+     */
+    private void checkRequired(ProtocolSpecification specification) {
+      if (!present.contains(specification)) {
+        add(MessageType.ERROR, VALUE_REQUIRED, "A value is required",
+            specification.getNameFormat());
+      }
+    }
+
+    /**
+     * Add a message.
+     *
+     * @param messageType the message type
+     * @param messageCode the message code
+     * @param description the description
+     * @param parameter the parameter
+     */
+    private void add(MessageType messageType, String messageCode, String description,
+        String parameter) {
+      messages.add(new ParserMessage(messageType, messageCode, description, parameter));
+    }
+  }
+
+  /**
+   * Checks if the value is a tracking Id of the form {@code UA-XXXX-Y}. The {@code UA} prefix can
+   * be any two upper case letters.
+   *
+   * @param value the value
+   * @return true if a tracking Id
+   */
+  static boolean isTrackingId(String value) {
+    // 2 letters + dash + digits + dash + digits
+    final int length = value.length();
+    if (length <= TRACKING_ID_PREFIX || !isUpperCase(value.charAt(0))
+        || !isUpperCase(value.charAt(1)) || value.charAt(TRACKING_ID_PREFIX - 1) != DASH) {
+      return false;
+    }
+    final int dash = value.indexOf(DASH, TRACKING_ID_PREFIX);
+    return dash > 0 && isDigits(value, TRACKING_ID_PREFIX, dash)
+        && isDigits(value, dash + 1, length);
+  }
+
+  /**
+   * Checks if the value is an integer.
+   *
+   * @param value the value
+   * @return true if an integer
+   */
+  static boolean isInteger(String value) {
+    final int start = value.charAt(0) == '-' ? 1 : 0;
+    return isDigits(value, start, value.length());
+  }
+
+  /**
+   * Checks if the value is a decimal number (with an optional exponent).
+   *
+   * @param value the value
+   * @return true if a number
+   */
+  static boolean isNumber(String value) {
+    // Restrict to the characters of a decimal number before parsing to exclude
+    // the Java specific forms, e.g. "NaN", "Infinity", "1d", "0x1p3"
+    for (int i = 0; i < value.length(); i++) {
+      final char ch = value.charAt(i);
+      if (!(isDigit(ch) || ch == '.' || ch == '-' || ch == '+' || ch == 'e' || ch == 'E')) {
+        return false;
+      }
+    }
+    try {
+      Double.parseDouble(value);
+      return true;
+    } catch (final NumberFormatException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks if the value contains a digit.
+   *
+   * @param value the value
+   * @return true if a digit is present
+   */
+  private static boolean containsDigit(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (isDigit(value.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if the range of the value is all digits. The range must not be empty.
+   *
+   * @param value the value
+   * @param start the start (inclusive)
+   * @param end the end (exclusive)
+   * @return true if all digits
+   */
+  private static boolean isDigits(String value, int start, int end) {
+    if (start >= end) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (!isDigit(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if the character is an ASCII digit.
+   *
+   * @param ch the character
+   * @return true if a digit
+   */
+  private static boolean isDigit(char ch) {
+    return ch >= '0' && ch <= '9';
+  }
+
+  /**
+   * Checks if the character is an ASCII upper case letter.
+   *
+   * @param ch the character
+   * @return true if upper case
+   */
+  private static boolean isUpperCase(char ch) {
+    return ch >= 'A' && ch <= 'Z';
+  }
+}
@@ -0,0 +1,416 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.math.BigInteger;
+
+/**
+ * Formats a double value using the shortest decimal representation that will round-trip to the
+ * same double.
+ *
+ * <p>The output is always plain decimal notation; exponent notation is never used. Values are
+ * converted using the Ryu algorithm:
+ *
+ * <blockquote>Adams, U. (2018). Ryu: fast float-to-string conversion. Proceedings of the 39th ACM
+ * SIGPLAN Conference on Programming Language Design and Implementation, pp 270-282.</blockquote>
+ *
+ * <p>The implementation uses only primitive arithmetic and does not allocate memory when appending
+ * to a {@link StringBuilder}. The lookup tables of powers of 5 are computed once when the class is
+ * initialised.
+ *
+ * @see <a href="https://doi.org/10.1145/3192366.3192369">Ryu</a>
+ */
+final class DoubleFormatter {
+
+  /** The number of explicit bits in the mantissa. */
+  private static final int MANTISSA_BITS = 52;
+  /** The mask for the mantissa. */
+  private static final long MANTISSA_MASK = (1L << MANTISSA_BITS) - 1;
+  /** The number of bits in the exponent. */
+  private static final int EXPONENT_BITS = 11;
+  /** The mask for the exponent. */
+  private static final int EXPONENT_MASK = (1 << EXPONENT_BITS) - 1;
+  /** The exponent bias. */
+  private static final int EXPONENT_BIAS = (1 << (EXPONENT_BITS - 1)) - 1;
+
+  /** The number of entries in the table of powers of 5. */
+  private static final int POS_TABLE_SIZE = 326;
+  /** The number of entries in the table of inverse powers of 5. */
+  private static final int NEG_TABLE_SIZE = 291;
+  /** The number of bits of each power of 5 stored in the table. */
+  private static final int POW5_BITCOUNT = 121;
+  /** The number of bits of each inverse power of 5 stored in the table. */
+  private static final int POW5_INV_BITCOUNT = 122;
+  /** The number of bits in each part of a split table entry. */
+  private static final int SPLIT_BITS = 31;
+  /** The mask for each part of a split table entry. */
+  private static final long SPLIT_MASK = (1L << SPLIT_BITS) - 1;
+  /** The number of parts of a split table entry. */
+  private static final int SPLIT_PARTS = 4;
+  /** The shift of the final part of the 128-bit product. */
+  private static final int FINAL_SHIFT = 21;
+
+  /**
+   * The most significant {@value #POW5_BITCOUNT} bits of 5^i, split into 4 parts of 31 bits (most
+   * significant first).
+   */
+  private static final int[][] POW5_SPLIT = new int[POS_TABLE_SIZE][SPLIT_PARTS];
+
+  /**
+   * The most significant {@value #POW5_INV_BITCOUNT} bits of the inverse of 5^i, split into 4 parts
+   * of 31 bits (most significant first).
+   */
+  private static final int[][] POW5_INV_SPLIT = new int[NEG_TABLE_SIZE][SPLIT_PARTS];
+
+  /** Powers of 10 that fit in a long. */
+  private static final long[] POW10 = new long[19];
+
+  /**
+   * The limit for the absolute value of integers that are written using a long. Below this limit
+   * all integers are representable and the exact value is the shortest representation.
+   */
+  private static final double INTEGER_LIMIT = 0x1.0p53;
+
+  static {
+    final BigInteger mask = BigInteger.valueOf(SPLIT_MASK);
+    final BigInteger five = BigInteger.valueOf(5);
+    // The table of powers is larger than the table of inverse powers
+    for (int i = 0; i < POS_TABLE_SIZE; i++) {
+      final BigInteger pow = five.pow(i);
+      final int pow5len = pow.bitLength();
+      for (int j = 0; j < SPLIT_PARTS; j++) {
+        POW5_SPLIT[i][j] = pow.shiftRight(
+            pow5len - POW5_BITCOUNT + (SPLIT_PARTS - 1 - j) * SPLIT_BITS).and(mask).intValue();
+      }
+      if (i < NEG_TABLE_SIZE) {
+        // floor(log2(5^i)) is pow5len - 1
+        final BigInteger inv = BigInteger.ONE.shiftLeft(pow5len - 1 + POW5_INV_BITCOUNT)
+            .divide(pow).add(BigInteger.ONE);
+        for (int j = 0; j < SPLIT_PARTS; j++) {
+          final BigInteger part = inv.shiftRight((SPLIT_PARTS - 1 - j) * SPLIT_BITS);
+          POW5_INV_SPLIT[i][j] = j == 0 ? part.intValue() : part.and(mask).intValue();
+        }
+      }
+    }
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10;
+    }
+  }
+
+  /** No public construction. */
+  private DoubleFormatter() {}
+
+  /**
+   * Append the value to the {@link StringBuilder} using the shortest plain decimal representation
+   * that will round-trip to the same value.
+   *
+   * <p>Integer values are written without a decimal point. Non-finite values are written using
+   * {@link StringBuilder#append(double)}.
+   *
+   * @param sb the string builder
+   * @param value the value
+   * @return the string builder
+   */
+  static StringBuilder appendTo(StringBuilder sb, double value) {
+    if (!Double.isFinite(value)) {
+      return sb.append(value);
+    }
+    final double abs = Math.abs(value);
+    if (abs < INTEGER_LIMIT && Math.floor(abs) == abs) {
+      // Integer. This will map -0.0 to zero.
+      return sb.append((long) value);
+    }
+
+    final long bits = Double.doubleToRawLongBits(value);
+    final int ieeeExponent = (int) ((bits >>> MANTISSA_BITS) & EXPONENT_MASK);
+    final long ieeeMantissa = bits & MANTISSA_MASK;
+    int e2;
+    final long m2;
+    if (ieeeExponent == 0) {
+      // Sub-normal number: no implicit leading 1 and the exponent is 1
+      e2 = 1 - EXPONENT_BIAS - MANTISSA_BITS;
+      m2 = ieeeMantissa;
+    } else {
+      e2 = ieeeExponent - EXPONENT_BIAS - MANTISSA_BITS;
+      m2 = ieeeMantissa | (1L << MANTISSA_BITS);
+    }
+
+    // Determine the interval of legal decimal representations.
+    // The bounds are included when the mantissa is even (round half-even parsing).
+    final boolean even = (m2 & 1) == 0;
+    final long mv = 4 * m2;
+    final long mp = 4 * m2 + 2;
+    final int mmShift = m2 != (1L << MANTISSA_BITS) || ieeeExponent <= 1 ? 1 : 0;
+    final long mm = 4 * m2 - 1 - mmShift;
+    e2 -= 2;
+
+    // Convert to a decimal power base using 128-bit arithmetic.
+    long dv;
+    long dp;
+    long dm;
+    final int e10;
+    boolean dmIsTrailingZeros = false;
+    boolean dvIsTrailingZeros = false;
+    if (e2 >= 0) {
+      final int q = Math.max(0, ((e2 * 78913) >>> 18) - 1);
+      final int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+      final int i = -e2 + q + k;
+      dv = mulPow5InvDivPow2(mv, q, i);
+      dp = mulPow5InvDivPow2(mp, q, i);
+      dm = mulPow5InvDivPow2(mm, q, i);
+      e10 = q;
+      if (q <= 21) {
+        if (mv % 5 == 0) {
+          dvIsTrailingZeros = multipleOfPowerOf5(mv, q);
+        } else if (even) {
+          dmIsTrailingZeros = multipleOfPowerOf5(mm, q);
+        } else if (multipleOfPowerOf5(mp, q)) {
+          dp--;
+        }
+      }
+    } else {
+      final int q = Math.max(0, ((-e2 * 732923) >>> 20) - 1);
+      final int i = -e2 - q;
+      final int k = pow5bits(i) - POW5_BITCOUNT;
+      final int j = q - k;
+      dv = mulPow5DivPow2(mv, i, j);
+      dp = mulPow5DivPow2(mp, i, j);
+      dm = mulPow5DivPow2(mm, i, j);
+      e10 = q + e2;
+      if (q <= 1) {
+        dvIsTrailingZeros = true;
+        if (even) {
+          dmIsTrailingZeros = mmShift == 1;
+        } else {
+          dp--;
+        }
+      } else if (q < 63) {
+        dvIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+      }
+    }
+
+    // Find the shortest decimal representation in the interval of legal representations.
+    int removed = 0;
+    int lastRemovedDigit = 0;
+    long output;
+    if (dmIsTrailingZeros || dvIsTrailingZeros) {
+      while (dp / 10 > dm / 10) {
+        dmIsTrailingZeros &= dm % 10 == 0;
+        dvIsTrailingZeros &= lastRemovedDigit == 0;
+        lastRemovedDigit = (int) (dv % 10);
+        dp /= 10;
+        dv /= 10;
+        dm /= 10;
+        removed++;
+      }
+      if (dmIsTrailingZeros && even) {
+        while (dm % 10 == 0) {
+          dvIsTrailingZeros &= lastRemovedDigit == 0;
+          lastRemovedDigit = (int) (dv % 10);
+          dp /= 10;
+          dv /= 10;
+          dm /= 10;
+          removed++;
+        }
+      }
+      if (dvIsTrailingZeros && lastRemovedDigit == 5 && dv % 2 == 0) {
+        // Round down not up if the number ends in X50000 and the number is even
+        lastRemovedDigit = 4;
+      }
+      output = dv
+          + ((dv == dm && !(dmIsTrailingZeros && even)) || lastRemovedDigit >= 5 ? 1 : 0);
+    } else {
+      // Common case
+      while (dp / 10 > dm / 10) {
+        lastRemovedDigit = (int) (dv % 10);
+        dp /= 10;
+        dv /= 10;
+        dm /= 10;
+        removed++;
+      }
+      output = dv + (dv == dm || lastRemovedDigit >= 5 ? 1 : 0);
+    }
+
+    // The value is output * 10^exp
+    int exp = e10 + removed;
+    while (output % 10 == 0) {
+      output /= 10;
+      exp++;
+    }
+
+    if (bits < 0) {
+      sb.append('-');
+    }
+    return appendPlain(sb, output, exp);
+  }
+
+  /**
+   * Append the value {@code digits * 10^exp} using plain decimal notation.
+   *
+   * @param sb the string builder
+   * @param digits the decimal digits (no trailing zeros)
+   * @param exp the decimal exponent
+   * @return the string builder
+   */
+  private static StringBuilder appendPlain(StringBuilder sb, long digits, int exp) {
+    if (exp >= 0) {
+      sb.append(digits);
+      for (int i = 0; i < exp; i++) {
+        sb.append('0');
+      }
+      return sb;
+    }
+    final int length = decimalLength(digits);
+    final int fractionLength = -exp;
+    if (fractionLength < length) {
+      final long scale = POW10[fractionLength];
+      final long fraction = digits % scale;
+      sb.append(digits / scale).append('.');
+      appendZeros(sb, fractionLength - decimalLength(fraction));
+      return sb.append(fraction);
+    }
+    sb.append("0.");
+    appendZeros(sb, fractionLength - length);
+    return sb.append(digits);
+  }
+
+  /**
+   * Append the number of zeros to the {@link StringBuilder}.
+   *
+   * @param sb the string builder
+   * @param count the count
+   */
+  private static void appendZeros(StringBuilder sb, int count) {
+    for (int i = 0; i < count; i++) {
+      sb.append('0');
+    }
+  }
+
+  /**
+   * Compute the number of bits of 5^e: {@code ceil(log2(5^e))} for {@code e > 0}.
+   *
+   * @param e the exponent
+   * @return the number of bits
+   */
+  private static int pow5bits(int e) {
+    return ((e * 1217359) >>> 19) + 1;
+  }
+
+  /**
+   * Get the number of decimal digits in the positive value.
+   *
+   * @param value the value
+   * @return the length
+   */
+  private static int decimalLength(long value) {
+    int length = 1;
+    while (length < POW10.length && value >= POW10[length]) {
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Checks if the value is a multiple of 5^q.
+   *
+   * @param value the value
+   * @param q the power
+   * @return true if a multiple
+   */
+  private static boolean multipleOfPowerOf5(long value, int q) {
+    return pow5Factor(value) >= q;
+  }
+
+  /**
+   * Compute the largest power of 5 that divides the positive value.
+   *
+   * @param value the value
+   * @return the power
+   */
+  private static int pow5Factor(long value) {
+    long v = value;
+    int count = 0;
+    while (v % 5 == 0) {
+      v /= 5;
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Compute {@code m * 5^i / 2^j} using the table of powers of 5.
+   *
+   * @param m the value (at most 55 bits)
+   * @param i the power of 5
+   * @param j the power of 2
+   * @return the result
+   */
+  private static long mulPow5DivPow2(long m, int i, int j) {
+    return mulShift(m, POW5_SPLIT[i], j);
+  }
+
+  /**
+   * Compute {@code m / 5^i / 2^j} using the table of inverse powers of 5.
+   *
+   * @param m the value (at most 55 bits)
+   * @param i the power of 5
+   * @param j the power of 2
+   * @return the result
+   */
+  private static long mulPow5InvDivPow2(long m, int i, int j) {
+    return mulShift(m, POW5_INV_SPLIT[i], j);
+  }
+
+  /**
+   * Compute the product of the value and the 124-bit factor, shifted right by {@code j} bits.
+   *
+   * @param m the value (at most 55 bits)
+   * @param factor the factor (split into 4 parts of 31 bits)
+   * @param j the shift
+   * @return the result
+   */
+  private static long mulShift(long m, int[] factor, int j) {
+    final long mhigh = m >>> SPLIT_BITS;
+    final long mlow = m & SPLIT_MASK;
+    final long bits13 = mhigh * factor[0];
+    final long bits03 = mlow * factor[0];
+    final long bits12 = mhigh * factor[1];
+    final long bits02 = mlow * factor[1];
+    final long bits11 = mhigh * factor[2];
+    final long bits01 = mlow * factor[2];
+    final long bits10 = mhigh * factor[3];
+    final long bits00 = mlow * factor[3];
+    final int actualShift = j - 3 * SPLIT_BITS - FINAL_SHIFT;
+    final long sum = ((((((bits00 >>> SPLIT_BITS) + bits01 + bits10) >>> SPLIT_BITS) + bits02
+        + bits11) >>> SPLIT_BITS) + bits03 + bits12) >>> FINAL_SHIFT;
+    return (sum + (bits13 << (SPLIT_BITS - FINAL_SHIFT))) >>> actualShift;
+  }
+}
@@ -0,0 +1,545 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Parses URL encoded hits, e.g. {@code v=1&tid=UA-12345-6&cid=...}.
+ *
+ * <p>The parser is a cursor over the {@code name=value} pairs of the hit. The hit is not copied.
+ * The position of the current name and value are available as offsets into the hit. The name and
+ * value are only decoded when requested. The name is resolved to a {@link ProtocolSpecification}
+ * and the parameter indexes without decoding, e.g. {@code cd12} is resolved to
+ * {@link ProtocolSpecification#CUSTOM_DIMENSION} with index 12.
+ *
+ * <pre>
+ * HitParser parser = new HitParser().reset(hit);
+ * while (parser.next()) {
+ *   ProtocolSpecification specification = parser.getSpecification();
+ *   // ...
+ * }
+ * </pre>
+ *
+ * <p>An instance is not thread-safe but can be reused by calling one of the {@code reset}
+ * methods.
+ */
+public final class HitParser {
+
+  /** The percent '%' character. This is the prefix for an encoded byte. */
+  private static final char PERCENT = '%';
+  /** The plus '+' character. This is an encoded space. */
+  private static final char PLUS = '+';
+  /** The space character. */
+  private static final char SPACE = ' ';
+  /** The length of an encoded byte. */
+  private static final int ENCODED_LENGTH = 3;
+  /** The radix for an encoded byte. */
+  private static final int HEX = 16;
+  /** The shift for the upper 4-bits of an encoded byte. */
+  private static final int SHIFT = 4;
+  /** The initial size of the decoding buffer. */
+  private static final int BUFFER_SIZE = 64;
+  /** The empty value. */
+  private static final String EMPTY = "";
+
+  /** The hit. */
+  private CharSequence hit = EMPTY;
+  /** The end of the hit. */
+  private int end;
+  /** The position of the next pair. */
+  private int position;
+  /** The start of the name (inclusive). */
+  private int nameStart;
+  /** The end of the name (exclusive). */
+  private int nameEnd;
+  /** The start of the value (inclusive). */
+  private int valueStart;
+  /** The end of the value (exclusive). */
+  private int valueEnd;
+  /** Set to true if the specification has been resolved. */
+  private boolean resolved;
+  /** The specification. */
+  private ProtocolSpecification specification;
+  /** The indexes. */
+  private final int[] indexes = new int[ParameterNameResolver.MAX_INDEXES];
+  /** The buffer for decoded bytes. */
+  private byte[] bytes = new byte[BUFFER_SIZE];
+  /** The buffer for decoded chars. */
+  private final StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+
+  /**
+   * A read-only view of bytes as US-ASCII characters.
+   */
+  private static final class AsciiCharSequence implements CharSequence {
+    /** The buffer. */
+    private final ByteBuffer buffer;
+    /** The start of the sequence in the buffer. */
+    private final int offset;
+    /** The length. */
+    private final int length;
+
+    /**
+     * Create a new instance.
+     *
+     * @param buffer the buffer
+     * @param offset the offset
+     * @param length the length
+     */
+    AsciiCharSequence(ByteBuffer buffer, int offset, int length) {
+      this.buffer = buffer;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      // Bytes are unsigned
+      return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new AsciiCharSequence(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      final char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = charAt(i);
+      }
+      return new String(chars);
+    }
+  }
+
+  /**
+   * Reset the parser to the start of the hit.
+   *
+   * @param hit the hit
+   * @return this instance
+   */
+  public HitParser reset(CharSequence hit) {
+    return reset(hit, 0, hit.length());
+  }
+
+  /**
+   * Reset the parser to the start of the range of the hit.
+   *
+   * @param hit the hit
+   * @param start the start (inclusive)
+   * @param end the end (exclusive)
+   * @return this instance
+   * @throws IndexOutOfBoundsException if the range is not within the hit
+   */
+  public HitParser reset(CharSequence hit, int start, int end) {
+    Objects.requireNonNull(hit, "Hit");
+    if (start < 0 || end > hit.length() || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + start + ", " + end + ") out of bounds for length " + hit.length());
+    }
+    this.hit = hit;
+    this.end = end;
+    position = start;
+    nameStart = nameEnd = valueStart = valueEnd = start;
+    resolved = false;
+    specification = null;
+    return this;
+  }
+
+  /**
+   * Reset the parser to the remaining bytes of the buffer. The bytes are parsed as US-ASCII
+   * characters. The buffer position is not modified.
+   *
+   * @param buffer the buffer
+   * @return this instance
+   */
+  public HitParser reset(ByteBuffer buffer) {
+    return reset(new AsciiCharSequence(buffer, buffer.position(), buffer.remaining()));
+  }
+
+  /**
+   * Move to the next {@code name=value} pair. Empty pairs are ignored.
+   *
+   * @return true if a pair is available
+   */
+  public boolean next() {
+    // Skip empty pairs
+    while (position < end && hit.charAt(position) == Constants.AND) {
+      position++;
+    }
+    if (position == end) {
+      return false;
+    }
+    nameStart = position;
+    nameEnd = -1;
+    int i = position;
+    for (; i < end; i++) {
+      final char ch = hit.charAt(i);
+      if (ch == Constants.AND) {
+        break;
+      }
+      if (ch == Constants.EQUAL && nameEnd < 0) {
+        nameEnd = i;
+      }
+    }
+    if (nameEnd < 0) {
+      // No value
+      nameEnd = valueStart = i;
+    } else {
+      valueStart = nameEnd + 1;
+    }
+    valueEnd = i;
+    position = i;
+    resolved = false;
+    return true;
+  }
+
+  /**
+   * Gets the hit.
+   *
+   * @return the hit
+   */
+  public CharSequence getHit() {
+    return hit;
+  }
+
+  /**
+   * Gets the start of the name (inclusive) in the hit.
+   *
+   * @return the name start
+   */
+  public int getNameStart() {
+    return nameStart;
+  }
+
+  /**
+   * Gets the end of the name (exclusive) in the hit.
+   *
+   * @return the name end
+   */
+  public int getNameEnd() {
+    return nameEnd;
+  }
+
+  /**
+   * Gets the start of the value (inclusive) in the hit.
+   *
+   * @return the value start
+   */
+  public int getValueStart() {
+    return valueStart;
+  }
+
+  /**
+   * Gets the end of the value (exclusive) in the hit. This is also the end of the current pair.
+   *
+   * @return the value end
+   */
+  public int getValueEnd() {
+    return valueEnd;
+  }
+
+  /**
+   * Gets the decoded name.
+   *
+   * @return the name
+   * @throws IllegalArgumentException If the name contains an illegal encoding
+   */
+  public String getName() {
+    return decode(nameStart, nameEnd);
+  }
+
+  /**
+   * Gets the decoded value.
+   *
+   * @return the value
+   * @throws IllegalArgumentException If the value contains an illegal encoding
+   */
+  public String getValue() {
+    return decode(valueStart, valueEnd);
+  }
+
+  /**
+   * Gets the specification of the name.
+   *
+   * <p>Note: Names with encoded characters are not resolved. The names of all the
+   * {@link ProtocolSpecification} values do not require encoding.
+   *
+   * @return the specification (or null)
+   */
+  public ProtocolSpecification getSpecification() {
+    if (!resolved) {
+      specification = ParameterNameResolver.resolve(hit, nameStart, nameEnd, indexes);
+      resolved = true;
+    }
+    return specification;
+  }
+
+  /**
+   * Gets the index of the name. The index is only valid if the specification is not null and
+   * {@code i} is less than the number of indexes of the specification.
+   *
+   * <p>An index that is too large to be represented as an integer is returned as -1.
+   *
+   * @param i the index position (zero-based)
+   * @return the index
+   */
+  public int getIndex(int i) {
+    getSpecification();
+    return indexes[i];
+  }
+
+  /**
+   * Create a {@link FormattedParameter} from the current pair.
+   *
+   * <p>If the name is resolved to a specification and the value can be parsed to the value type
+   * of the specification then a typed parameter is created. Otherwise a {@link CustomParameter}
+   * is created.
+   *
+   * <p>Currency values are always created as a {@link CustomParameter} as the locale of the
+   * value is unknown.
+   *
+   * @return the parameter
+   * @throws IllegalArgumentException If the name or value contains an illegal encoding
+   */
+  public FormattedParameter toParameter() {
+    final String value = getValue();
+    final ProtocolSpecification spec = getSpecification();
+    if (spec != null) {
+      final FormattedParameter parameter = createParameter(spec, value);
+      if (parameter != null) {
+        return parameter;
+      }
+    }
+    return new CustomParameter(getName(), value);
+  }
+
+  /**
+   * Parse the hit into parameters.
+   *
+   * @param hit the hit
+   * @return the parameters
+   * @throws IllegalArgumentException If a name or value contains an illegal encoding
+   * @see #toParameter()
+   */
+  public static Parameters parse(CharSequence hit) {
+    final Parameters.Builder builder = Parameters.newBuilder();
+    final HitParser parser = new HitParser().reset(hit);
+    while (parser.next()) {
+      builder.add(parser.toParameter());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Create a typed parameter for the specification.
+   *
+   * @param spec the specification
+   * @param value the value
+   * @return the parameter (or null)
+   */
+  private FormattedParameter createParameter(ProtocolSpecification spec, String value) {
+    switch (spec) {
+      case PROTOCOL_VERSION:
+        return Integer.toString(ProtocolVersion.V1.getVersion()).equals(value)
+            ? ProtocolVersionParameter.V1
+            : null;
+      case HIT_TYPE:
+        final HitType hitType = HitValidator.getHitType(value);
+        return hitType == null ? null : HitTypeParameter.create(hitType);
+      case SESSION_CONTROL:
+        for (final SessionControl sessionControl : SessionControl.values()) {
+          if (sessionControl.toString().equals(value)) {
+            return SessionControlParameter.create(sessionControl);
+          }
+        }
+        return null;
+      case PRODUCT_ACTION:
+        for (final ProductAction productAction : ProductAction.values()) {
+          if (productAction.toString().equals(value)) {
+            return ProductActionParameter.create(productAction);
+          }
+        }
+        return null;
+      default:
+        break;
+    }
+    final int count = spec.getNumberOfIndexes();
+    for (int i = 0; i < count; i++) {
+      if (indexes[i] <= 0) {
+        return null;
+      }
+    }
+    switch (spec.getValueType()) {
+      case TEXT:
+        return createTextParameter(spec, count, value);
+      case BOOLEAN:
+        if (count == 0 && value.length() == 1) {
+          final char ch = value.charAt(0);
+          if (ch == '0' || ch == '1') {
+            return new NoIndexBooleanParameter(spec, ch == '1');
+          }
+        }
+        return null;
+      case INTEGER:
+        return createIntegerParameter(spec, count, value);
+      case NUMBER:
+        if (count == 1 && DebugValidator.isNumber(value)) {
+          return new OneIndexNumberParameter(spec, indexes[0], Double.parseDouble(value));
+        }
+        return null;
+      case CURRENCY:
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Create a text parameter for the specification.
+   *
+   * @param spec the specification
+   * @param count the number of indexes
+   * @param value the value
+   * @return the parameter (or null)
+   */
+  private FormattedParameter createTextParameter(ProtocolSpecification spec, int count,
+      String value) {
+    switch (count) {
+      case 0:
+        return new NoIndexTextParameter(spec, value);
+      case 1:
+        return new OneIndexTextParameter(spec, indexes[0], value);
+      case 2:
+        return new TwoIndexTextParameter(spec, indexes[0], indexes[1], value);
+      case ParameterNameResolver.MAX_INDEXES:
+        return new ThreeIndexTextParameter(spec, indexes[0], indexes[1], indexes[2], value);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Create an integer parameter for the specification.
+   *
+   * @param spec the specification
+   * @param count the number of indexes
+   * @param value the value
+   * @return the parameter (or null)
+   */
+  private FormattedParameter createIntegerParameter(ProtocolSpecification spec, int count,
+      String value) {
+    if (!DebugValidator.isInteger(value)) {
+      return null;
+    }
+    final long longValue;
+    try {
+      longValue = Long.parseLong(value);
+    } catch (final NumberFormatException ex) {
+      return null;
+    }
+    final int intValue = (int) longValue;
+    if (intValue != longValue) {
+      return count == 0 ? new NoIndexLongParameter(spec, longValue) : null;
+    }
+    switch (count) {
+      case 0:
+        return new NoIndexIntParameter(spec, intValue);
+      case 1:
+        return new OneIndexIntParameter(spec, indexes[0], intValue);
+      case 2:
+        return new TwoIndexIntParameter(spec, indexes[0], indexes[1], intValue);
+      case ParameterNameResolver.MAX_INDEXES:
+        return new ThreeIndexIntParameter(spec, indexes[0], indexes[1], indexes[2], intValue);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Decode the range of the hit. Characters that are not encoded are used verbatim.
+   *
+   * @param start the start (inclusive)
+   * @param stop the end (exclusive)
+   * @return the decoded string
+   * @throws IllegalArgumentException If the range contains an illegal encoding
+   */
+  private String decode(int start, int stop) {
+    int i = start;
+    while (i < stop) {
+      final char ch = hit.charAt(i);
+      if (ch == PERCENT || ch == PLUS) {
+        break;
+      }
+      i++;
+    }
+    if (i == stop) {
+      // No decoding
+      return hit.subSequence(start, stop).toString();
+    }
+    sb.setLength(0);
+    sb.append(hit, start, i);
+    while (i < stop) {
+      final char ch = hit.charAt(i);
+      if (ch == PERCENT) {
+        // Decode a run of bytes as UTF-8
+        int count = 0;
+        while (i < stop && hit.charAt(i) == PERCENT) {
+          if (i + ENCODED_LENGTH > stop) {
+            throw new IllegalArgumentException("Incomplete trailing escape (%) pattern");
+          }
+          final int hi = Character.digit(hit.charAt(i + 1), HEX);
+          final int lo = Character.digit(hit.charAt(i + 2), HEX);
+          if ((hi | lo) < 0) {
+            throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern");
+          }
+          if (count == bytes.length) {
+            bytes = Arrays.copyOf(bytes, count * 2);
+          }
+          bytes[count++] = (byte) ((hi << SHIFT) | lo);
+          i += ENCODED_LENGTH;
+        }
+        sb.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+      } else {
+        sb.append(ch == PLUS ? SPACE : ch);
+        i++;
+      }
+    }
+    return sb.toString();
+  }
+}
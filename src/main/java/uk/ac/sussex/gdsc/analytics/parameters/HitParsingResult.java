@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import uk.ac.sussex.gdsc.analytics.parameters.ParserMessage.MessageType;
+
+/**
+ * The result of parsing a hit.
+ *
+ * <p>The fields are modelled on the {@code hitParsingResult} of the response from the Google
+ * Analytics debug server.
+ *
+ * @see <a href="https://developers.google.com/analytics/devguides/collection/protocol/v1/validating-hits">Validating
+ *      Hits</a>
+ */
+public final class HitParsingResult {
+
+  /** The hit. */
+  private final String hit;
+  /** The parser messages. */
+  private final List<ParserMessage> parserMessages;
+  /** The valid flag. */
+  private final boolean valid;
+
+  /**
+   * Create a new instance.
+   *
+   * <p>The hit is valid if there are no {@link MessageType#ERROR} messages.
+   *
+   * @param hit the hit
+   * @param parserMessages the parser messages
+   */
+  public HitParsingResult(String hit, List<ParserMessage> parserMessages) {
+    this.hit = Objects.requireNonNull(hit, "Hit");
+    this.parserMessages = Collections.unmodifiableList(parserMessages);
+    boolean error = false;
+    for (final ParserMessage message : parserMessages) {
+      if (message.getMessageType() == MessageType.ERROR) {
+        error = true;
+        break;
+      }
+    }
+    valid = !error;
+  }
+
+  /**
+   * Gets the hit.
+   *
+   * @return the hit
+   */
+  public String getHit() {
+    return hit;
+  }
+
+  /**
+   * Gets the parser messages.
+   *
+   * @return the parser messages (unmodifiable)
+   */
+  public List<ParserMessage> getParserMessages() {
+    return parserMessages;
+  }
+
+  /**
+   * Checks if the hit is valid.
+   *
+   * @return true if valid
+   */
+  public boolean isValid() {
+    return valid;
+  }
+
+  /**
+   * Append the result to the {@link StringBuilder} as a JSON object.
+   *
+   * @param sb the string builder
+   * @return the string builder
+   */
+  public StringBuilder formatJson(StringBuilder sb) {
+    sb.append("{\"valid\":").append(valid).append(",\"parserMessage\":[");
+    for (int i = 0; i < parserMessages.size(); i++) {
+      if (i != 0) {
+        sb.append(',');
+      }
+      parserMessages.get(i).formatJson(sb);
+    }
+    sb.append("],\"hit\":");
+    return ParserMessage.appendJsonString(sb, hit).append('}');
+  }
+
+  /**
+   * Create a JSON response for the results. The format is modelled on the response from the
+   * Google Analytics debug server.
+   *
+   * @param results the results
+   * @return the JSON
+   */
+  public static String toJson(List<HitParsingResult> results) {
+    final StringBuilder sb = new StringBuilder("{\"hitParsingResult\":[");
+    for (int i = 0; i < results.size(); i++) {
+      if (i != 0) {
+        sb.append(',');
+      }
+      results.get(i).formatJson(sb);
+    }
+    sb.append("],\"parserMessage\":[");
+    final int size = results.size();
+    new ParserMessage(MessageType.INFO, "INFO",
+        "Found " + size + (size == 1 ? " hit" : " hits") + " in the request.", null)
+            .formatJson(sb);
+    return sb.append("]}").toString();
+  }
+}
@@ -75,10 +75,14 @@ public final class HitTypeParameter implements FormattedParameter {
    */
   private final char[] chars;
 
+  /** The hit type. */
+  private final HitType hitType;
+
   /**
    * Creates a new instance.
    */
   private HitTypeParameter(HitType hitType) {
+    this.hitType = hitType;
     // @formatter:off
     final StringBuilder sb = new StringBuilder()
         .append(ProtocolSpecification.HIT_TYPE.getNameFormat())
@@ -93,6 +97,15 @@ public final class HitTypeParameter implements FormattedParameter {
     return sb.append(chars);
   }
 
+  /**
+   * Gets the hit type.
+   *
+   * @return the hit type
+   */
+  public HitType getHitType() {
+    return hitType;
+  }
+
   /**
    * Creates the hit type parameter.
    *
@@ -0,0 +1,453 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Validates the parameters of a hit against the rules of the Google Analytics Measurement Protocol.
+ *
+ * <p>The following rules are checked:
+ *
+ * <ul>
+ * <li>The protocol version, tracking Id, client Id (or user Id) and hit type are present
+ * <li>The parameters required for the hit type are present
+ * <li>All the {@link ProtocolSpecification} parameters support the hit type
+ * <li>Parameters without an index are not duplicated
+ * <li>Text values do not exceed the maximum length (in UTF-8 bytes)
+ * </ul>
+ *
+ * <p>The value type of a parameter is checked when it is created.
+ *
+ * <p>Parameters are identified using their {@link ProtocolSpecification}. A {@link CustomParameter}
+ * is identified if the name matches a specification without an index. Parameters with a
+ * {@link CustomParameterSpecification} are not checked.
+ *
+ * <p>Validation is performed in a single pass over the parameters using pre-computed bit masks of
+ * the supported and required specifications for each hit type. No objects are created. The result
+ * is a bit mask of the failed rules. An instance is not thread-safe but can be reused.
+ *
+ * @see <a href= "http://goo.gl/a8d4RP">Measurement Protocol Parameter Reference</a>
+ */
+public final class HitValidator {
+
+  /** The result for a valid hit. */
+  public static final int VALID = 0;
+  /** The protocol version is missing. */
+  public static final int MISSING_PROTOCOL_VERSION = 0x1;
+  /** The tracking Id is missing. */
+  public static final int MISSING_TRACKING_ID = 0x2;
+  /** The client Id and user Id are missing. */
+  public static final int MISSING_CLIENT_ID = 0x4;
+  /** The hit type is missing. */
+  public static final int MISSING_HIT_TYPE = 0x8;
+  /** A parameter required for the hit type is missing. */
+  public static final int MISSING_REQUIRED_PARAMETER = 0x10;
+  /** A parameter is not supported for the hit type. */
+  public static final int UNSUPPORTED_PARAMETER = 0x20;
+  /** A parameter without an index is duplicated. */
+  public static final int DUPLICATE_PARAMETER = 0x40;
+  /** A text value is longer than the maximum length. */
+  public static final int VALUE_TOO_LONG = 0x80;
+
+  /** The names of the failed rules. */
+  private static final String[] NAMES = {"MISSING_PROTOCOL_VERSION", "MISSING_TRACKING_ID",
+      "MISSING_CLIENT_ID", "MISSING_HIT_TYPE", "MISSING_REQUIRED_PARAMETER",
+      "UNSUPPORTED_PARAMETER", "DUPLICATE_PARAMETER", "VALUE_TOO_LONG"};
+
+  /** The number of bits in a word of the bit set (log2). */
+  private static final int LOG2_WORD_SIZE = 6;
+  /** The number of words required for a bit set of all the specifications. */
+  private static final int WORDS =
+      ((ProtocolSpecification.values().length - 1) >>> LOG2_WORD_SIZE) + 1;
+  /** The maximum number of UTF-8 bytes for a single char. */
+  private static final int MAX_BYTES_PER_CHAR = 3;
+  /** The limit of a 1-byte UTF-8 char. */
+  private static final char ONE_BYTE_LIMIT = 0x80;
+  /** The limit of a 2-byte UTF-8 char. */
+  private static final char TWO_BYTE_LIMIT = 0x800;
+
+  /** The supported specifications for each hit type. Indexed by the hit type ordinal. */
+  private static final long[][] SUPPORTED;
+  /** The required specifications for each hit type. Indexed by the hit type ordinal. */
+  private static final long[][] REQUIRED;
+  /** The specifications without an index identified by name. */
+  private static final Map<String, ProtocolSpecification> SPECIFICATIONS = new HashMap<>();
+  /** The hit types identified by name. */
+  private static final Map<String, HitType> HIT_TYPES = new HashMap<>();
+
+  static {
+    final HitType[] hitTypes = HitType.values();
+    SUPPORTED = new long[hitTypes.length][WORDS];
+    REQUIRED = new long[hitTypes.length][WORDS];
+    for (final ProtocolSpecification specification : ProtocolSpecification.values()) {
+      for (final HitType hitType : hitTypes) {
+        if (specification.isSupported(hitType)) {
+          set(SUPPORTED[hitType.ordinal()], specification);
+        }
+      }
+      if (specification.getNumberOfIndexes() == 0) {
+        SPECIFICATIONS.put(specification.getNameFormat(), specification);
+      }
+    }
+    for (final Map.Entry<HitType, ProtocolSpecification[]> entry : createRequired().entrySet()) {
+      for (final ProtocolSpecification specification : entry.getValue()) {
+        set(REQUIRED[entry.getKey().ordinal()], specification);
+      }
+    }
+    for (final HitType hitType : hitTypes) {
+      HIT_TYPES.put(hitType.toString(), hitType);
+    }
+  }
+
+  /** The specifications present in the hit. */
+  private final long[] present = new long[WORDS];
+  /** The hit type. */
+  private HitType hitType;
+  /** The result. */
+  private int result;
+
+  /**
+   * Create the required parameters for each hit type.
+   *
+   * @return the required parameters
+   */
+  private static Map<HitType, ProtocolSpecification[]> createRequired() {
+    final EnumMap<HitType, ProtocolSpecification[]> map = new EnumMap<>(HitType.class);
+    map.put(HitType.SCREENVIEW, new ProtocolSpecification[] {ProtocolSpecification.SCREEN_NAME});
+    map.put(HitType.EVENT, new ProtocolSpecification[] {ProtocolSpecification.EVENT_CATEGORY,
+        ProtocolSpecification.EVENT_ACTION});
+    map.put(HitType.TRANSACTION,
+        new ProtocolSpecification[] {ProtocolSpecification.TRANSACTION_ID});
+    map.put(HitType.ITEM, new ProtocolSpecification[] {ProtocolSpecification.TRANSACTION_ID,
+        ProtocolSpecification.ITEM_NAME});
+    map.put(HitType.SOCIAL, new ProtocolSpecification[] {ProtocolSpecification.SOCIAL_NETWORK,
+        ProtocolSpecification.SOCIAL_ACTION, ProtocolSpecification.SOCIAL_ACTION_TARGET});
+    map.put(HitType.TIMING,
+        new ProtocolSpecification[] {ProtocolSpecification.USER_TIMING_CATEGORY,
+            ProtocolSpecification.USER_TIMING_VARIABLE_NAME,
+            ProtocolSpecification.USER_TIMING_TIME});
+    return map;
+  }
+
+  /**
+   * Checks if the specification is required for the hit type.
+   *
+   * <p>Note: A pageview hit requires the document location URL, or the document host name and
+   * document path. This is not reported as required for any single specification.
+   *
+   * @param hitType the hit type
+   * @param specification the specification
+   * @return true if required
+   */
+  static boolean isRequired(HitType hitType, ProtocolSpecification specification) {
+    return isSet(REQUIRED[hitType.ordinal()], specification);
+  }
+
+  /**
+   * Gets the specification without an index that matches the name.
+   *
+   * @param name the name
+   * @return the specification (or null)
+   */
+  static ProtocolSpecification getSpecification(String name) {
+    return SPECIFICATIONS.get(name);
+  }
+
+  /**
+   * Gets the hit type that matches the name.
+   *
+   * @param name the name
+   * @return the hit type (or null)
+   */
+  static HitType getHitType(String name) {
+    return HIT_TYPES.get(name);
+  }
+
+  /**
+   * Validate the parameters.
+   *
+   * @param parameters the parameters
+   * @return the result
+   * @see #VALID
+   */
+  public int validate(FormattedParameter parameters) {
+    reset();
+    add(parameters);
+    return finish();
+  }
+
+  /**
+   * Validate the parameters. This can be used to validate a hit constructed from shared parameters
+   * and per-hit parameters.
+   *
+   * @param parameters1 the first parameters
+   * @param parameters2 the second parameters
+   * @return the result
+   * @see #VALID
+   */
+  public int validate(FormattedParameter parameters1, FormattedParameter parameters2) {
+    reset();
+    add(parameters1);
+    add(parameters2);
+    return finish();
+  }
+
+  /**
+   * Checks if the result is valid.
+   *
+   * @param result the result
+   * @return true if valid
+   */
+  public static boolean isValid(int result) {
+    return result == VALID;
+  }
+
+  /**
+   * Create a description of the result using the names of the failed rules, e.g.
+   * {@code "MISSING_TRACKING_ID|VALUE_TOO_LONG"}.
+   *
+   * @param result the result
+   * @return the description
+   */
+  public static String toString(int result) {
+    if (result == VALID) {
+      return "VALID";
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < NAMES.length; i++) {
+      if ((result & (1 << i)) != 0) {
+        if (sb.length() != 0) {
+          sb.append('|');
+        }
+        sb.append(NAMES[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Reset the state.
+   */
+  private void reset() {
+    for (int i = 0; i < WORDS; i++) {
+      present[i] = 0;
+    }
+    hitType = null;
+    result = VALID;
+  }
+
+  /**
+   * Add the parameter to the current state.
+   *
+   * @param parameter the parameter
+   */
+  private void add(FormattedParameter parameter) {
+    if (parameter instanceof Parameters) {
+      for (final FormattedParameter p : ((Parameters) parameter).getFormattedParameters()) {
+        add(p);
+      }
+    } else if (parameter instanceof BaseParameter) {
+      final BaseParameter p = (BaseParameter) parameter;
+      if (p.isProtocolSpecification()) {
+        add(p.protocolSpecification);
+        checkLength(p, p.protocolSpecification.getMaxLength());
+      }
+    } else if (parameter instanceof HitTypeParameter) {
+      add(ProtocolSpecification.HIT_TYPE);
+      hitType = ((HitTypeParameter) parameter).getHitType();
+    } else if (parameter instanceof ProtocolVersionParameter) {
+      add(ProtocolSpecification.PROTOCOL_VERSION);
+    } else if (parameter instanceof SessionControlParameter) {
+      add(ProtocolSpecification.SESSION_CONTROL);
+    } else if (parameter instanceof ProductActionParameter) {
+      add(ProtocolSpecification.PRODUCT_ACTION);
+    } else if (parameter instanceof CustomParameter) {
+      final CustomParameter p = (CustomParameter) parameter;
+      final ProtocolSpecification specification = SPECIFICATIONS.get(p.getName());
+      if (specification != null) {
+        add(specification);
+        if (specification == ProtocolSpecification.HIT_TYPE) {
+          hitType = HIT_TYPES.get(p.getValue());
+        }
+        if (specification.getValueType() == ValueType.TEXT) {
+          checkLength(p.getValue(), specification.getMaxLength());
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the specification to the current state.
+   *
+   * @param specification the specification
+   */
+  private void add(ProtocolSpecification specification) {
+    if (specification.getNumberOfIndexes() == 0 && isSet(present, specification)) {
+      result |= DUPLICATE_PARAMETER;
+    }
+    set(present, specification);
+  }
+
+  /**
+   * Check the length of the text value of the parameter.
+   *
+   * @param parameter the parameter
+   * @param maxLength the max length (zero for no limit)
+   */
+  private void checkLength(BaseParameter parameter, int maxLength) {
+    if (maxLength == 0) {
+      return;
+    }
+    if (parameter instanceof NoIndexTextParameter) {
+      checkLength(((NoIndexTextParameter) parameter).getValue(), maxLength);
+    } else if (parameter instanceof OneIndexTextParameter) {
+      checkLength(((OneIndexTextParameter) parameter).getValue(), maxLength);
+    } else if (parameter instanceof TwoIndexTextParameter) {
+      checkLength(((TwoIndexTextParameter) parameter).getValue(), maxLength);
+    } else if (parameter instanceof ThreeIndexTextParameter) {
+      checkLength(((ThreeIndexTextParameter) parameter).getValue(), maxLength);
+    }
+  }
+
+  /**
+   * Check the length of the text value in UTF-8 bytes.
+   *
+   * @param value the value
+   * @param maxLength the max length (zero for no limit)
+   */
+  private void checkLength(String value, int maxLength) {
+    if (maxLength == 0 || value == null) {
+      return;
+    }
+    // Avoid computing the UTF-8 length if the limit cannot be exceeded
+    if (value.length() > maxLength
+        || (long) value.length() * MAX_BYTES_PER_CHAR > maxLength
+            && utf8Length(value) > maxLength) {
+      result |= VALUE_TOO_LONG;
+    }
+  }
+
+  /**
+   * Compute the length of the value when encoded using UTF-8.
+   *
+   * <p>Equivalent to {@code value.getBytes(StandardCharsets.UTF_8).length} for well-formed
+   * strings without creating the bytes.
+   *
+   * @param value the value
+   * @return the length
+   * @see StandardCharsets#UTF_8
+   */
+  static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      final char ch = value.charAt(i);
+      if (ch < ONE_BYTE_LIMIT) {
+        length++;
+      } else if (ch < TWO_BYTE_LIMIT) {
+        length += 2;
+      } else if (Character.isHighSurrogate(ch) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        // Supplementary character (4 bytes)
+        length += 4;
+        i++;
+      } else {
+        length += MAX_BYTES_PER_CHAR;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Complete the validation.
+   *
+   * @return the result
+   */
+  private int finish() {
+    if (!isSet(present, ProtocolSpecification.PROTOCOL_VERSION)) {
+      result |= MISSING_PROTOCOL_VERSION;
+    }
+    if (!isSet(present, ProtocolSpecification.TRACKING_ID)) {
+      result |= MISSING_TRACKING_ID;
+    }
+    if (!isSet(present, ProtocolSpecification.CLIENT_ID)
+        && !isSet(present, ProtocolSpecification.USER_ID)) {
+      result |= MISSING_CLIENT_ID;
+    }
+    if (hitType == null) {
+      result |= MISSING_HIT_TYPE;
+    } else {
+      final long[] required = REQUIRED[hitType.ordinal()];
+      final long[] supported = SUPPORTED[hitType.ordinal()];
+      for (int i = 0; i < WORDS; i++) {
+        if ((required[i] & ~present[i]) != 0) {
+          result |= MISSING_REQUIRED_PARAMETER;
+        }
+        if ((present[i] & ~supported[i]) != 0) {
+          result |= UNSUPPORTED_PARAMETER;
+        }
+      }
+      // Pageview requires dl or (dh and dp)
+      if (hitType == HitType.PAGEVIEW
+          && !isSet(present, ProtocolSpecification.DOCUMENT_LOCATION_URL)
+          && !(isSet(present, ProtocolSpecification.DOCUMENT_HOST_NAME)
+              && isSet(present, ProtocolSpecification.DOCUMENT_PATH))) {
+        result |= MISSING_REQUIRED_PARAMETER;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Set the bit for the specification.
+   *
+   * @param bits the bits
+   * @param specification the specification
+   */
+  private static void set(long[] bits, ProtocolSpecification specification) {
+    final int index = specification.ordinal();
+    bits[index >>> LOG2_WORD_SIZE] |= 1L << index;
+  }
+
+  /**
+   * Checks if the bit for the specification is set.
+   *
+   * @param bits the bits
+   * @param specification the specification
+   * @return true if set
+   */
+  private static boolean isSet(long[] bits, ProtocolSpecification specification) {
+    final int index = specification.ordinal();
+    return (bits[index >>> LOG2_WORD_SIZE] & (1L << index)) != 0;
+  }
+}
@@ -29,8 +29,6 @@
 
 package uk.ac.sussex.gdsc.analytics.parameters;
 
-import java.util.EnumMap;
-
 /**
  * A factory for creating {@link IndexReplacer} objects.
  */
@@ -41,9 +39,16 @@ public final class IndexReplacerFactory {
   /** The constant 2. */
   private static final int TWO = 2;
 
-  /** Cache replacers for all the parameters. */
-  private static final EnumMap<ProtocolSpecification, IndexReplacer> CACHE =
-      new EnumMap<>(ProtocolSpecification.class);
+  /** Cache replacers for all the parameters. This is indexed by the specification ordinal. */
+  private static final IndexReplacer[] CACHE;
+
+  static {
+    final ProtocolSpecification[] specifications = ProtocolSpecification.values();
+    CACHE = new IndexReplacer[specifications.length];
+    for (final ProtocolSpecification specification : specifications) {
+      CACHE[specification.ordinal()] = newReplacer(specification);
+    }
+  }
 
   /**
    * No public creation.
@@ -66,7 +71,7 @@ public final class IndexReplacerFactory {
    * @see ThreeIndexReplacer
    */
   public static IndexReplacer createIndexReplacer(ProtocolSpecification specification) {
-    return CACHE.computeIfAbsent(specification, IndexReplacerFactory::newReplacer);
+    return CACHE[specification.ordinal()];
   }
 
   /**
@@ -29,11 +29,11 @@
 
 package uk.ac.sussex.gdsc.analytics.parameters;
 
-import java.util.Arrays;
-import java.util.regex.Pattern;
-
 /**
  * Contains utility functions for checking IP addresses.
+ *
+ * <p>Validation is performed using a single pass over the characters of the address. No objects
+ * are created.
  */
 public final class IpAddressUtils {
 
@@ -49,6 +49,9 @@ public final class IpAddressUtils {
    * The regular expression for an IPv4 address.
    *
    * <p>4 repeats of the 0-255 pattern separated by the '.' character.
+   *
+   * <p>Note: This is provided for reference. The validation performed by {@link #isIpV4(String)}
+   * is equivalent but does not use a regular expression.
    */
   //@formatter:off
   public static final String IPV4_REGEX = "^"
@@ -58,9 +61,6 @@ public final class IpAddressUtils {
       + IPV4_SINGLE_GROUP_REGEX + "$";
   //@formatter:on
 
-  /** The compiled pattern for an IPv4 address. */
-  private static final Pattern IPV4_PATTERN = Pattern.compile(IPV4_REGEX);
-
   /**
    * Maximum length of an unsigned short expressed using Hex (0xFFFF = 4 characters).
    *
@@ -68,6 +68,15 @@ public final class IpAddressUtils {
    */
   private static final int MAX_LENGTH_OF_UNSIGNED_SHORT = 4;
 
+  /** Maximum length of an IPv4 group (255 = 3 characters). */
+  private static final int MAX_LENGTH_OF_IPV4_GROUP = 3;
+
+  /** Maximum value of an IPv4 group. */
+  private static final int MAX_IPV4_GROUP = 255;
+
+  /** Number of groups (separated by .) in an IPv4 address. */
+  private static final int IPV4_PART_COUNT = 4;
+
   /**
    * The '<strong>{@code .}</strong>' (dot) character.
    */
@@ -77,37 +86,17 @@ public final class IpAddressUtils {
    */
   private static final char COLON = ':';
 
+  /** Base 10 constant. */
+  private static final int BASE_10 = 10;
+
   /** Base 16 constant. */
   private static final int BASE_16 = 16;
 
-  /**
-   * A fake entry for a valid IPv4 address as the last two parts of an IPv6 address.
-   *
-   * <p>This is used when validating IPv6 addresses that end in an IPv4 address, e.g. ::192.168.0.1
-   * would be changed to ::0:0 for validation as an IPv6 address.
-   */
-  private static final String VALID_IPV4_ADDRESS_AS_HEXTETS = "0:0";
-
-  /** Min number of hex groups (separated by :) in an IPV6 address. */
-  private static final int IPV6_MIN_PART_COUNT = 3;
-
   /** Max number of hex groups (separated by :) in an IPV6 address. */
   private static final int IPV6_PART_COUNT = 8;
 
-  /**
-   * Use to indicate a bad index. Set to -2.
-   */
-  private static final int BAD_INDEX = -2;
-
-  /**
-   * Use to indicate no index. Set to -1.
-   */
-  private static final int NO_INDEX = -1;
-
-  /**
-   * Use to indicate one part. Set to 1.
-   */
-  private static final int ONE_PART = 1;
+  /** The number of hex groups represented by an IPv4 address at the end of an IPv6 address. */
+  private static final int IPV4_AS_IPV6_PART_COUNT = 2;
 
   /**
    * No public construction.
@@ -134,38 +123,16 @@ public final class IpAddressUtils {
    */
   //@formatter:on
   public static boolean isIpAddress(String ipAddress) {
-    // Based upon Guava:
-    // com.google.common.net.InetAddresses#ipStringToBytes
-    // Altered to use a regular expression for IPv4 address.
-    // Altered to refactor the check for IPv6 address into methods.
-    // Also changed to not allow parts longer than 4 hex characters
-    // in an IPv6 address. For example Guava allows "::01000"
-    // but it should be "::1000".
-    // This is a known bug: https://github.com/google/guava/issues/1604
-
-    // The string must contain only . : or hex digits
-    boolean hasColon = false;
-    boolean hasDot = false;
+    // The type of address is determined by the first separator
     for (int i = 0; i < ipAddress.length(); i++) {
       final char ch = ipAddress.charAt(i);
+      if (ch == COLON) {
+        return isIpV6(ipAddress);
+      }
       if (ch == DOT) {
-        hasDot = true;
-      } else if (ch == COLON) {
-        if (hasDot) {
-          return false; // Colons must not appear after dots.
-        }
-        hasColon = true;
-      } else if (Character.digit(ch, BASE_16) == -1) {
-        return false; // Everything else must be a decimal or hex digit.
+        return isIpV4(ipAddress, 0);
       }
     }
-
-    if (hasColon) {
-      return isAnyIpV6(ipAddress, hasDot);
-    }
-    if (hasDot) {
-      return isIpV4(ipAddress);
-    }
     return false;
   }
 
@@ -176,272 +143,158 @@ public final class IpAddressUtils {
    * 0-255 . 0-255 . 0-255 . 0-255
    * </pre>
    *
+   * <p>Leading zeros are not allowed.
+   *
    * @param ipAddress the IP address
    * @return true if valid
+   * @see #IPV4_REGEX
    */
   public static boolean isIpV4(String ipAddress) {
-    return IPV4_PATTERN.matcher(ipAddress).matches();
+    return isIpV4(ipAddress, 0);
   }
 
-  //@formatter:off
   /**
-   * Checks if the IP address is a valid IPv6 address including those ending with a IPv4 address.
-   * For example:
-   *
-   * <ul>
-   * <li>FFFF:FFFF:FFFF:FFFF:FFFF:FFFF:FFFF:FFFF (IPv6)
-   * <li>::1 (IPv6 loopback address)
-   * <li>2001:db8::1 (IPv6 reserved documentation prefix)
-   * <li>::192.168.0.1 (IPv6 "IPv4 compatible" (or "compat") address)
-   * <li>::ffff:192.168.0.1 (IPv6 "IPv4 mapped" address)
-   * </ul>
+   * Checks if the IP address is a valid IPv4 address from the given start position to the end of
+   * the string.
    *
    * @param ipAddress the IP address
-   * @param withIpV4 True if the last entry is potentially an IPv4 address
-   * @return true, if valid
+   * @param start the start
+   * @return true if valid
    */
-  //@formatter:on
-  private static boolean isAnyIpV6(String ipAddress, boolean withIpV4) {
-    // IPv6
-    if (withIpV4) {
-      // Contains IPv4 as the last entry:
-      // :::::x.x.x.x
-      final int lastColon = ipAddress.lastIndexOf(COLON);
-      // Check for a valid IPv4 address
-      if (!isIpV4(ipAddress.substring(lastColon + 1))) {
+  private static boolean isIpV4(String ipAddress, int start) {
+    final int end = ipAddress.length();
+    int pos = start;
+    int groups = 0;
+    for (;;) {
+      // Parse a group of 1-3 decimal digits
+      if (pos == end) {
+        return false;
+      }
+      int value = decimalDigit(ipAddress.charAt(pos++));
+      if (value < 0) {
+        return false;
+      }
+      // Leading zeros are not allowed so zero is a complete group
+      if (value != 0) {
+        for (int i = 1; i < MAX_LENGTH_OF_IPV4_GROUP && pos < end; i++) {
+          final int digit = decimalDigit(ipAddress.charAt(pos));
+          if (digit < 0) {
+            break;
+          }
+          value = value * BASE_10 + digit;
+          pos++;
+        }
+        if (value > MAX_IPV4_GROUP) {
+          return false;
+        }
+      }
+      groups++;
+      if (pos == end) {
+        return groups == IPV4_PART_COUNT;
+      }
+      // Expect a separator
+      if (groups == IPV4_PART_COUNT || ipAddress.charAt(pos++) != DOT) {
         return false;
       }
-      // Since the IP v4 address is valid just add a valid
-      // hex entry to the initial IPv6 section and test
-      // (i.e. the value of the IP v4 address it irrelevant).
-      return isIpV6(ipAddress.substring(0, lastColon + 1) + VALID_IPV4_ADDRESS_AS_HEXTETS);
     }
-    return isIpV6(ipAddress);
+  }
+
+  /**
+   * Get the value of the ASCII decimal digit.
+   *
+   * @param ch the character
+   * @return the value (or -1 if not a digit)
+   */
+  private static int decimalDigit(char ch) {
+    final int digit = ch - '0';
+    return digit >= 0 && digit < BASE_10 ? digit : -1;
   }
 
   //@formatter:off
   /**
-   * Checks if the IP address is a valid IPv6 address not including those ending with a IPv4
-   * address. For example:
+   * Checks if the IP address is a valid IPv6 address including those ending with a IPv4 address.
+   * For example:
    *
    * <ul>
-   * <li>FFFF:FFFF:FFFF:FFFF:FFFF:FFFF:FFFF:FFFF
+   * <li>FFFF:FFFF:FFFF:FFFF:FFFF:FFFF:FFFF:FFFF (IPv6)
    * <li>::1 (IPv6 loopback address)
    * <li>2001:db8::1 (IPv6 reserved documentation prefix)
+   * <li>::192.168.0.1 (IPv6 "IPv4 compatible" (or "compat") address)
+   * <li>::ffff:192.168.0.1 (IPv6 "IPv4 mapped" address)
    * </ul>
    *
-   * <p>This does not support checking for IPv4 address as the last entry.
-   *
-   * <p>This is a conversion of the Google method
-   * {@code com.google.common.net.InetAddresses#textToNumericFormatV6(string)}
-   * to remove dependencies and return a simple true or false.
+   * <p>Each hex group must have 1 to 4 hex digits. This does not allow e.g. 0FFFF in contrast to
+   * Guava's {@code com.google.common.net.InetAddresses} which checks the value is at most 0xFFFF. Many
+   * online web validators and Apache Commons Validator agree that "0FFFF" should not be allowed.
+   * This is a known bug: https://github.com/google/guava/issues/1604
    *
    * @param ipAddress the IP address
    * @return true, if valid
    */
   //@formatter:on
   private static boolean isIpV6(String ipAddress) {
-    // Based upon:
-    // com.google.common.net.InetAddresses#textToNumericFormatV6
-    // The code has been refactored to reduce complexity.
-    // This involved moving nested statements to functions.
-
-    // An address can have [2..8] colons, and N colons make N+1 parts.
-    // Note 8 colons only occurs when "::" is at the start or end to
-    // denote a skip sequence.
-    // Less than 7 colons occurs when there is a skip sequence "::".
-    // Otherwise there should be 7 colons.
-    // There should only be 1 skip sequence.
-    final String[] parts = splitIpV6(ipAddress);
-    if (parts.length < IPV6_MIN_PART_COUNT || parts.length > IPV6_PART_COUNT + 1) {
-      return false;
-    }
-
-    // Find the skip control sequence "::".
-    // This indicates that a run of zeroes has been skipped.
-    final int skipIndex = getSkipIndex(parts);
-    if (skipIndex == BAD_INDEX) {
-      // More than one skip control sequence
-      return false;
-    }
-
-    if (skipIndex == NO_INDEX) {
-      return isValidCompleteIpV6(parts);
-    }
-
-    final int partsBefore = getPartsBefore(parts, skipIndex);
-    if (partsBefore == BAD_INDEX) {
-      return false;
-    }
-
-    final int partsAfter = getPartsAfter(parts, skipIndex);
-    if (partsAfter == BAD_INDEX) {
-      return false;
-    }
-
-    // If we found a ::, then we must have skipped at least one part.
-    final int partsSkipped = IPV6_PART_COUNT - (partsBefore + partsAfter);
-    if (partsSkipped < ONE_PART) {
-      return false;
-    }
-
-    // Now check the hextets in the parts before & after the skip ::
-    return isValidCountUp(parts, partsBefore) && isValidCountDown(parts, partsAfter);
-  }
-
-  /**
-   * Split the IP address using the colon character.
-   *
-   * <p>This is preferred over {@link String#split(String, int)} as that drops ending empty
-   * segments.
-   *
-   * @param ipAddress the IP address
-   * @return the string parts
-   */
-  private static String[] splitIpV6(String ipAddress) {
-    // At an extra 2 since the validity test uses parts.length > IPV6_PART_COUNT + 1
-    final String[] parts = new String[IPV6_PART_COUNT + 2];
-    int count = 0;
-    int start = 0;
-    int end = ipAddress.indexOf(COLON);
-    while (end >= 0) {
-      parts[count++] = ipAddress.substring(start, end);
-      // Check capacity
-      if (count == parts.length) {
-        return parts;
+    // An address has 8 groups, or fewer than 8 groups if a single skip sequence "::"
+    // is used to denote a run of zeros. A single ':' is not allowed at the start or end.
+    final int end = ipAddress.length();
+    int pos = 0;
+    int groups = 0;
+    boolean skip = false;
+    if (ipAddress.charAt(0) == COLON) {
+      // ^: requires ^::
+      if (end == 1 || ipAddress.charAt(1) != COLON) {
+        return false;
       }
-      start = end + 1;
-      end = ipAddress.indexOf(COLON, start);
+      skip = true;
+      pos = 2;
     }
-    parts[count++] = ipAddress.substring(start);
-    return Arrays.copyOf(parts, count);
-  }
-
-  /**
-   * Gets the skip index "::", the location in the parts array which is empty.
-   *
-   * <p>This ignores empty parts so the index is in the range 1 to parts.length - 2.
-   *
-   * <p>If multiple parts are empty this returns {@link #BAD_INDEX}.
-   *
-   * @param parts the parts
-   * @return the skip index
-   */
-  private static int getSkipIndex(String[] parts) {
-    int skipIndex = NO_INDEX;
-    // Disregarding the endpoints, find "::" with nothing in between.
-    // This indicates that a run of zeroes has been skipped.
-    for (int i = 1; i < parts.length - 1; i++) {
-      if (parts[i].length() == 0) {
-        if (skipIndex != NO_INDEX) {
-          return BAD_INDEX; // Can't have more than one ::
+    while (pos < end) {
+      // Parse a group of hex digits
+      final int start = pos;
+      char ch;
+      while (pos < end && (ch = ipAddress.charAt(pos)) != COLON) {
+        if (ch == DOT) {
+          // The remaining characters must be an IPv4 address representing 2 groups
+          return isValidGroupCount(groups + IPV4_AS_IPV6_PART_COUNT, skip)
+              && isIpV4(ipAddress, start);
         }
-        skipIndex = i;
+        if (Character.digit(ch, BASE_16) < 0) {
+          return false;
+        }
+        pos++;
       }
-    }
-    return skipIndex;
-  }
-
-  /**
-   * Checks all the parts are valid for a complete IPv6 address.
-   *
-   * @param parts the parts
-   * @return true if valid
-   */
-  private static boolean isValidCompleteIpV6(final String[] parts) {
-    // We must have exactly the right number of parts.
-    if (parts.length != IPV6_PART_COUNT) {
-      return false;
-    }
-    return isValidCountUp(parts, IPV6_PART_COUNT);
-  }
-
-  /**
-   * Checks all the parts are valid for {@code 0 <= i < count}.
-   *
-   * @param parts the parts
-   * @param count the count
-   * @return true if valid
-   */
-  private static boolean isValidCountUp(final String[] parts, int count) {
-    for (int i = 0; i < count; i++) {
-      if (isInvalidHextet(parts[i])) {
+      final int length = pos - start;
+      if (length == 0 || length > MAX_LENGTH_OF_UNSIGNED_SHORT || ++groups > IPV6_PART_COUNT) {
         return false;
       }
-    }
-    return true;
-  }
-
-  /**
-   * Checks all the parts are valid for {@code parts.length - count <= i < parts.length}.
-   *
-   * @param parts the parts
-   * @param count the count
-   * @return true if valid
-   */
-  private static boolean isValidCountDown(final String[] parts, int count) {
-    for (int i = count; i > 0; i--) {
-      if (isInvalidHextet(parts[parts.length - i])) {
+      if (pos == end) {
+        break;
+      }
+      // Skip the separator
+      if (++pos == end) {
+        // :$ requires ::$
         return false;
       }
+      if (ipAddress.charAt(pos) == COLON) {
+        if (skip) {
+          // Can't have more than one ::
+          return false;
+        }
+        skip = true;
+        pos++;
+      }
     }
-    return true;
-  }
-
-  /**
-   * Check if the the hextet is above the maximum value for an unsigned short (0xFFFF).
-   *
-   * @param ipPart the IP part
-   * @return True if invalid
-   */
-  private static boolean isInvalidHextet(String ipPart) {
-    // Note: we already verified that this string contains only hex digits.
-    // If it is empty then it is invalid (it should be '0').
-    // If it is above the length of FFFF it is invalid.
-    // Otherwise it must be in the range 0 to FFFF.
-    //
-    // Note that this does not allow e.g. 0FFFF in contrast to the original
-    // Guava code which just parsed it using Integer.parseInt and checked
-    // it was <= 0xFFFF. Many online web validators and Apache Commons Validator
-    // agree that "0FFFF" should not be allowed.
-    // This is a known bug: https://github.com/google/guava/issues/1604
-    return (ipPart.length() == 0 || ipPart.length() > MAX_LENGTH_OF_UNSIGNED_SHORT);
+    return isValidGroupCount(groups, skip);
   }
 
   /**
-   * Gets the number of parts before the ::.
+   * Checks if the number of groups is valid for an IPv6 address.
    *
-   * @param parts the parts
-   * @param skipIndex the skip index
-   * @return the parts before
+   * @param groups the number of groups
+   * @param skip true if the address contains the skip sequence "::"
+   * @return true if valid
    */
-  private static int getPartsBefore(String[] parts, int skipIndex) {
-    int partsBefore = skipIndex;
-    // Check for a : at the start
-    if (parts[0].length() == 0) {
-      // ^: requires ^::
-      // Check there is only one part before the skip
-      if (partsBefore != ONE_PART) {
-        return BAD_INDEX;
-      }
-      // No need to check before
-      partsBefore = 0;
-    }
-    return partsBefore;
-  }
-
-  private static int getPartsAfter(String[] parts, int skipIndex) {
-    int partsAfter = parts.length - skipIndex - 1;
-    // Check for a : at the end
-    if (parts[parts.length - 1].length() == 0) {
-      // :$ requires ::$
-      // Check there is only one part after the skip
-      if (partsAfter != ONE_PART) {
-        return BAD_INDEX;
-      }
-      // No need to check after
-      partsAfter = 0;
-    }
-    return partsAfter;
+  private static boolean isValidGroupCount(int groups, boolean skip) {
+    // If we found a ::, then we must have skipped at least one group.
+    return skip ? groups < IPV6_PART_COUNT : groups == IPV6_PART_COUNT;
   }
 }
@@ -99,6 +99,6 @@ abstract class OneIndexParameter extends BaseParameter {
       }
       indexReplacer = replacer;
     }
-    return replacer.replaceTo(sb, index).append(Constants.EQUAL);
+    return replacer.replaceEqualsTo(sb, index);
   }
 }
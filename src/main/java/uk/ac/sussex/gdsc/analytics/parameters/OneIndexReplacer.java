@@ -37,6 +37,12 @@ public class OneIndexReplacer extends IndexReplacer {
   /** The expected number of indexes. */
   private static final int EXPECTED = 1;
 
+  /**
+   * Cache of the resolved {@code name=} for each index. This is null if the replacer is not for a
+   * defined protocol parameter.
+   */
+  private final String[] nameEquals;
+
   /**
    * Create a new instance.
    *
@@ -46,6 +52,7 @@ public class OneIndexReplacer extends IndexReplacer {
   public OneIndexReplacer(CharSequence nameFormat) {
     super(nameFormat);
     ParameterUtils.validateCount(EXPECTED, getNumberOfIndexes());
+    nameEquals = null;
   }
 
   /**
@@ -59,6 +66,7 @@ public class OneIndexReplacer extends IndexReplacer {
   OneIndexReplacer(ProtocolSpecification specification) {
     super(specification);
     ParameterUtils.validateCount(EXPECTED, specification);
+    nameEquals = new String[Constants.MAX_CACHED_INDEX + 1];
   }
 
   /**
@@ -82,4 +90,31 @@ public class OneIndexReplacer extends IndexReplacer {
     }
     return sb;
   }
+
+  /**
+   * Replace the index marker character in the format string with the given index and write the
+   * result to the {@link StringBuilder} followed by the {@code '='} character.
+   *
+   * <p>E.g. replace {@code cd_} with {@code cd2=} for index 2.
+   *
+   * <p>If the replacer is for a defined protocol parameter then the result for an index up to
+   * {@value Constants#MAX_CACHED_INDEX} is cached on first use. Concurrent creation of the same
+   * entry is allowed as the cached value is immutable.
+   *
+   * @param sb the string builder
+   * @param index the index
+   * @return the string builder
+   */
+  StringBuilder replaceEqualsTo(StringBuilder sb, int index) {
+    final String[] cache = nameEquals;
+    if (cache != null && index >= 0 && index < cache.length) {
+      String name = cache[index];
+      if (name == null) {
+        name = replaceTo(new StringBuilder(), index).append(Constants.EQUAL).toString();
+        cache[index] = name;
+      }
+      return sb.append(name);
+    }
+    return replaceTo(sb, index).append(Constants.EQUAL);
+  }
 }
@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the name of a parameter to a {@link ProtocolSpecification} and the parameter indexes.
+ *
+ * <p>The name is matched against the name format of the specification where each run of digits
+ * matches the index character {@code '_'}, e.g. {@code cd12} is resolved to the custom dimension
+ * {@code cd_} with index 12 and {@code pr3cm4} is resolved to the product custom metric
+ * {@code pr_cm_} with indexes 3 and 4.
+ *
+ * <p>The name formats are compiled into a trie with a transition for each lower case letter and
+ * the index. Resolution is a single pass over the characters of the name without creating
+ * objects.
+ */
+final class ParameterNameResolver {
+
+  /** The maximum number of indexes. */
+  static final int MAX_INDEXES = 3;
+
+  /** Value for an index that cannot be represented as an integer. */
+  static final int INVALID_INDEX = -1;
+
+  /** The base used for decimal digits. */
+  private static final int BASE = 10;
+
+  /** The number of letters in the alphabet. */
+  private static final int LETTERS = 26;
+  /** The transition for an index. */
+  private static final int INDEX = LETTERS;
+  /** The number of transitions from each node. */
+  private static final int TRANSITIONS = LETTERS + 1;
+  /** Value for no transition. */
+  private static final int NONE = 0;
+
+  /**
+   * The trie transitions. The transition for node {@code n} and symbol {@code s} is at index
+   * {@code n * TRANSITIONS + s}. The root node is 0 and is never a target so 0 is used for no
+   * transition.
+   */
+  private static final int[] TRIE;
+  /** The specification at each node of the trie (or null). */
+  private static final ProtocolSpecification[] TERMINALS;
+
+  static {
+    final List<int[]> nodes = new ArrayList<>();
+    final List<ProtocolSpecification> terminals = new ArrayList<>();
+    nodes.add(new int[TRANSITIONS]);
+    terminals.add(null);
+    for (final ProtocolSpecification specification : ProtocolSpecification.values()) {
+      final String nameFormat = specification.getNameFormat();
+      int node = 0;
+      for (int i = 0; i < nameFormat.length(); i++) {
+        final int symbol = getSymbol(nameFormat.charAt(i));
+        if (symbol < 0) {
+          throw new IllegalStateException("Unsupported name format: " + nameFormat);
+        }
+        int next = nodes.get(node)[symbol];
+        if (next == NONE) {
+          next = nodes.size();
+          nodes.get(node)[symbol] = next;
+          nodes.add(new int[TRANSITIONS]);
+          terminals.add(null);
+        }
+        node = next;
+      }
+      terminals.set(node, specification);
+    }
+    TRIE = new int[nodes.size() * TRANSITIONS];
+    for (int i = 0; i < nodes.size(); i++) {
+      System.arraycopy(nodes.get(i), 0, TRIE, i * TRANSITIONS, TRANSITIONS);
+    }
+    TERMINALS = terminals.toArray(new ProtocolSpecification[0]);
+  }
+
+  /**
+   * No public instances.
+   */
+  private ParameterNameResolver() {
+    // Do nothing
+  }
+
+  /**
+   * Gets the trie symbol for the character of a name format.
+   *
+   * @param ch the character
+   * @return the symbol (or -1)
+   */
+  private static int getSymbol(char ch) {
+    if (ch >= 'a' && ch <= 'z') {
+      return ch - 'a';
+    }
+    return ch == Constants.UNDERSCORE ? INDEX : -1;
+  }
+
+  /**
+   * Resolve the name to a specification.
+   *
+   * @param name the name
+   * @param indexes the indexes
+   * @return the specification (or null)
+   * @see #resolve(CharSequence, int, int, int[])
+   */
+  static ProtocolSpecification resolve(String name, int[] indexes) {
+    return resolve(name, 0, name.length(), indexes);
+  }
+
+  /**
+   * Resolve the name to a specification.
+   *
+   * <p>The indexes of the name are written to the provided array which must have a length of at
+   * least {@link #MAX_INDEXES}. An index that is too large to be represented as an integer is set
+   * to {@link #INVALID_INDEX}. The index is not checked to be strictly positive.
+   *
+   * @param name the name
+   * @param start the start of the name (inclusive)
+   * @param end the end of the name (exclusive)
+   * @param indexes the indexes
+   * @return the specification (or null)
+   */
+  static ProtocolSpecification resolve(CharSequence name, int start, int end, int[] indexes) {
+    int node = 0;
+    int count = 0;
+    int index = 0;
+    boolean digits = false;
+    for (int i = start; i < end; i++) {
+      final char ch = name.charAt(i);
+      if (ch >= '0' && ch <= '9') {
+        if (!digits) {
+          node = TRIE[node * TRANSITIONS + INDEX];
+          if (node == NONE) {
+            return null;
+          }
+          digits = true;
+          index = 0;
+        }
+        if (index != INVALID_INDEX) {
+          final long value = (long) index * BASE + (ch - '0');
+          index = value > Integer.MAX_VALUE ? INVALID_INDEX : (int) value;
+        }
+      } else {
+        if (digits) {
+          indexes[count++] = index;
+          digits = false;
+        }
+        // The '_' character is not valid in the name
+        final int symbol = ch == Constants.UNDERSCORE ? -1 : getSymbol(ch);
+        if (symbol < 0) {
+          return null;
+        }
+        node = TRIE[node * TRANSITIONS + symbol];
+        if (node == NONE) {
+          return null;
+        }
+      }
+    }
+    if (digits) {
+      indexes[count] = index;
+    }
+    return TERMINALS[node];
+  }
+}
@@ -306,27 +306,24 @@ public final class ParameterUtils {
   /**
    * Append the number value to the {@link StringBuilder}.
    *
-   * <p>If the number has an integer representation then this is used instead.
+   * <p>If the number has an integer representation then this is used instead. Otherwise the
+   * number is written using the shortest plain decimal representation that will round-trip to the
+   * same value; exponent notation is not used.
    *
    * @param sb the string builder
    * @param value the value
    * @return the string builder
    */
   public static StringBuilder appendNumberTo(StringBuilder sb, double value) {
-    final double floor = Math.floor(value);
-    if (floor == value) {
-      sb.append((long) floor);
-    } else {
-      sb.append(value);
-    }
-    return sb;
+    return DoubleFormatter.appendTo(sb, value);
   }
 
   /**
    * Append the currency value to the {@link StringBuilder}.
    *
    * <p>Note: The format expected for Google Analytics is unknown. This uses
-   * {@link NumberFormat#getCurrencyInstance(Locale)}.
+   * {@link NumberFormat#getCurrencyInstance(Locale)}. The formatter is cached per thread for each
+   * locale.
    *
    * @param sb the string builder
    * @param locale the locale
@@ -334,8 +331,7 @@ public final class ParameterUtils {
    * @return the string builder
    */
   public static StringBuilder appendCurrencyTo(StringBuilder sb, Locale locale, double value) {
-    final NumberFormat formatter = NumberFormat.getCurrencyInstance(locale);
-    return sb.append(formatter.format(value));
+    return CurrencyFormatter.appendTo(sb, locale, value);
   }
 
   /**
@@ -57,6 +57,64 @@ public class Parameters implements FormattedParameter {
     this.formattedParameters = formattedParameters;
   }
 
+  /**
+   * Gets the formatted parameters. The array is not copied and must not be modified.
+   *
+   * <p>Package scope for use in validation.
+   *
+   * @return the formatted parameters
+   */
+  FormattedParameter[] getFormattedParameters() {
+    return formattedParameters;
+  }
+
+  /**
+   * Gets the hit type.
+   *
+   * <p>Only a hit type added using a {@link HitTypeParameter} is detected. Nested parameters are
+   * searched.
+   *
+   * @return the hit type (or null)
+   */
+  public HitType getHitType() {
+    for (final FormattedParameter parameter : formattedParameters) {
+      if (parameter instanceof HitTypeParameter) {
+        return ((HitTypeParameter) parameter).getHitType();
+      }
+      if (parameter instanceof Parameters) {
+        final HitType hitType = ((Parameters) parameter).getHitType();
+        if (hitType != null) {
+          return hitType;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks if the boolean parameter is present and true.
+   *
+   * <p>Only a value added using a {@link NoIndexBooleanParameter} is detected. Nested parameters
+   * are searched.
+   *
+   * @param specification the specification
+   * @return true if the parameter is true
+   */
+  public boolean isTrue(ProtocolSpecification specification) {
+    for (final FormattedParameter parameter : formattedParameters) {
+      if (parameter instanceof NoIndexBooleanParameter) {
+        final NoIndexBooleanParameter p = (NoIndexBooleanParameter) parameter;
+        if (p.protocolSpecification == specification && p.getValue()) {
+          return true;
+        }
+      } else if (parameter instanceof Parameters
+          && ((Parameters) parameter).isTrue(specification)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public StringBuilder formatTo(StringBuilder sb) {
     if (formattedParameters.length != 0) {
@@ -199,14 +257,31 @@ public class Parameters implements FormattedParameter {
     /** The size of the list. */
     private int size;
 
+    /** Set to true to discard all parameters. */
+    private final boolean discard;
+
     /**
      * Create a new builder.
      *
      * @param selfType the self type
      */
-    @SuppressWarnings("unchecked")
     protected ParametersBuilder(Class<?> selfType) {
+      this(selfType, false);
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * <p>If the discard flag is set then all parameters are ignored and the builder creates empty
+     * parameters. A discarding builder has no mutable state and can be reused.
+     *
+     * @param selfType the self type
+     * @param discard Set to true to discard all parameters
+     */
+    @SuppressWarnings("unchecked")
+    protected ParametersBuilder(Class<?> selfType, boolean discard) {
       self = (B) selfType.cast(this);
+      this.discard = discard;
     }
 
     /**
@@ -216,6 +291,9 @@ public class Parameters implements FormattedParameter {
      * @return the builder
      */
     private B addParameter(FormattedParameter parameter) {
+      if (discard) {
+        return self;
+      }
       if (list.length == size) {
         list = copyList(list, size, size * 2);
       }
@@ -1346,7 +1424,27 @@ public class Parameters implements FormattedParameter {
      */
     protected HitBuilder(FormattedParameter formattedParameter, HitTypeParameter hitType,
         long timestamp) {
-      super(HitBuilder.class);
+      this(formattedParameter, hitType, timestamp, false);
+    }
+
+    /**
+     * Creates a new hit builder.
+     *
+     * <p>The provided formatted parameter is added as the first parameter if it is not null. It can
+     * be used to specify parameters that are required for each hit.
+     *
+     * <p>If the discard flag is set then all parameters are ignored, including the formatted
+     * parameter and hit type, and the builder creates empty parameters. This is intended for a hit
+     * that will not be sent. A discarding builder has no mutable state and can be reused.
+     *
+     * @param formattedParameter the formatted parameter
+     * @param hitType the hit type
+     * @param timestamp the timestamp
+     * @param discard Set to true to discard all parameters
+     */
+    protected HitBuilder(FormattedParameter formattedParameter, HitTypeParameter hitType,
+        long timestamp, boolean discard) {
+      super(HitBuilder.class, discard);
       this.timestamp = timestamp;
       if (formattedParameter != null) {
         add(formattedParameter);
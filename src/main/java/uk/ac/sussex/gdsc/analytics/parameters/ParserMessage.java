@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.Objects;
+
+/**
+ * A message from parsing a hit.
+ *
+ * <p>The fields are modelled on the {@code parserMessage} of the response from the Google
+ * Analytics debug server.
+ *
+ * @see <a href="https://developers.google.com/analytics/devguides/collection/protocol/v1/validating-hits">Validating
+ *      Hits</a>
+ */
+public final class ParserMessage {
+
+  /**
+   * The message type.
+   */
+  public enum MessageType {
+    /** An information message. */
+    INFO,
+    /** A warning message. The hit is valid. */
+    WARN,
+    /** An error message. The hit is invalid. */
+    ERROR;
+  }
+
+  /** The message type. */
+  private final MessageType messageType;
+  /** The message code. */
+  private final String messageCode;
+  /** The description. */
+  private final String description;
+  /** The parameter. */
+  private final String parameter;
+
+  /**
+   * Create a new instance.
+   *
+   * @param messageType the message type
+   * @param messageCode the message code
+   * @param description the description
+   * @param parameter the parameter name (can be null)
+   */
+  public ParserMessage(MessageType messageType, String messageCode, String description,
+      String parameter) {
+    this.messageType = Objects.requireNonNull(messageType, "Message type");
+    this.messageCode = Objects.requireNonNull(messageCode, "Message code");
+    this.description = Objects.requireNonNull(description, "Description");
+    this.parameter = parameter;
+  }
+
+  /**
+   * Gets the message type.
+   *
+   * @return the message type
+   */
+  public MessageType getMessageType() {
+    return messageType;
+  }
+
+  /**
+   * Gets the message code, e.g. {@code VALUE_REQUIRED}.
+   *
+   * @return the message code
+   */
+  public String getMessageCode() {
+    return messageCode;
+  }
+
+  /**
+   * Gets the description.
+   *
+   * @return the description
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Gets the name of the parameter that generated the message.
+   *
+   * @return the parameter (or null)
+   */
+  public String getParameter() {
+    return parameter;
+  }
+
+  /**
+   * Append the message to the {@link StringBuilder} as a JSON object.
+   *
+   * @param sb the string builder
+   * @return the string builder
+   */
+  public StringBuilder formatJson(StringBuilder sb) {
+    sb.append("{\"messageType\":\"").append(messageType).append("\",\"description\":");
+    appendJsonString(sb, description);
+    sb.append(",\"messageCode\":");
+    appendJsonString(sb, messageCode);
+    if (parameter != null) {
+      sb.append(",\"parameter\":");
+      appendJsonString(sb, parameter);
+    }
+    return sb.append('}');
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder().append(messageType).append(' ')
+        .append(messageCode);
+    if (parameter != null) {
+      sb.append(" [").append(parameter).append(']');
+    }
+    return sb.append(": ").append(description).toString();
+  }
+
+  /**
+   * Append the value to the {@link StringBuilder} as a quoted JSON string.
+   *
+   * @param sb the string builder
+   * @param value the value
+   * @return the string builder
+   */
+  static StringBuilder appendJsonString(StringBuilder sb, String value) {
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char ch = value.charAt(i);
+      switch (ch) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (ch < ' ') {
+            sb.append(String.format("\\u%04x", (int) ch));
+          } else {
+            sb.append(ch);
+          }
+          break;
+      }
+    }
+    return sb.append('"');
+  }
+}
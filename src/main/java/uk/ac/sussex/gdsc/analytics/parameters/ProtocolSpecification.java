@@ -1997,6 +1997,11 @@ public enum ProtocolSpecification implements ParameterSpecification {
    */
   private final EnumSet<HitType> supportedHitTypes;
 
+  /**
+   * The supported hit types as a bit mask using the {@link HitType#ordinal()}.
+   */
+  private final int supportedHitTypesMask;
+
   /**
    * Creates a new instance.
    *
@@ -2019,6 +2024,11 @@ public enum ProtocolSpecification implements ParameterSpecification {
       this.supportedHitTypes = EnumSet.of(supportedHitTypes[0], supportedHitTypes);
     }
     this.numberOfIndexes = ParameterUtils.countIndexes(nameFormat);
+    int mask = 0;
+    for (final HitType hitType : this.supportedHitTypes) {
+      mask |= 1 << hitType.ordinal();
+    }
+    this.supportedHitTypesMask = mask;
   }
 
   @Override
@@ -2058,4 +2068,14 @@ public enum ProtocolSpecification implements ParameterSpecification {
     // This will not be null
     return supportedHitTypes.clone();
   }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>This method uses a pre-computed bit mask of the supported hit types.
+   */
+  @Override
+  public boolean isSupported(HitType hitType) {
+    return hitType != null && (supportedHitTypesMask & (1 << hitType.ordinal())) != 0;
+  }
 }
@@ -114,6 +114,6 @@ abstract class TwoIndexParameter extends BaseParameter {
       }
       indexReplacer = replacer;
     }
-    return replacer.replaceTo(sb, index1, index2).append(Constants.EQUAL);
+    return replacer.replaceEqualsTo(sb, index1, index2);
   }
 }
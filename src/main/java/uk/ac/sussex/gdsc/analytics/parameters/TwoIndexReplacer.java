@@ -37,6 +37,13 @@ public class TwoIndexReplacer extends IndexReplacer {
   /** The expected number of indexes. */
   private static final int EXPECTED = 2;
 
+  /**
+   * Cache of the resolved {@code name=} for each pair of indexes. The cache is a table indexed by
+   * the first index; each row is created on demand. This is null if the replacer is not for a
+   * defined protocol parameter.
+   */
+  private final String[][] nameEquals;
+
   /**
    * Create a new instance.
    *
@@ -46,6 +53,7 @@ public class TwoIndexReplacer extends IndexReplacer {
   public TwoIndexReplacer(CharSequence nameFormat) {
     super(nameFormat);
     ParameterUtils.validateCount(EXPECTED, getNumberOfIndexes());
+    nameEquals = null;
   }
 
   /**
@@ -59,6 +67,7 @@ public class TwoIndexReplacer extends IndexReplacer {
   TwoIndexReplacer(ProtocolSpecification specification) {
     super(specification);
     ParameterUtils.validateCount(EXPECTED, specification);
+    nameEquals = new String[Constants.MAX_CACHED_INDEX + 1][];
   }
 
   /**
@@ -84,4 +93,38 @@ public class TwoIndexReplacer extends IndexReplacer {
     }
     return sb;
   }
+
+  /**
+   * Replace the index marker character in the format string with the given indexes and write the
+   * result to the {@link StringBuilder} followed by the {@code '='} character.
+   *
+   * <p>E.g. replace {@code il_pi_} with {@code il2pi5=} for indexes 2 and 5.
+   *
+   * <p>If the replacer is for a defined protocol parameter then the result for indexes up to
+   * {@value Constants#MAX_CACHED_INDEX} is cached on first use. Concurrent creation of the same
+   * entry is allowed as the cached value is immutable.
+   *
+   * @param sb the string builder
+   * @param index1 the first index
+   * @param index2 the second index
+   * @return the string builder
+   */
+  StringBuilder replaceEqualsTo(StringBuilder sb, int index1, int index2) {
+    final String[][] cache = nameEquals;
+    if (cache != null && index1 >= 0 && index1 < cache.length && index2 >= 0
+        && index2 < cache.length) {
+      String[] row = cache[index1];
+      if (row == null) {
+        row = new String[cache.length];
+        cache[index1] = row;
+      }
+      String name = row[index2];
+      if (name == null) {
+        name = replaceTo(new StringBuilder(), index1, index2).append(Constants.EQUAL).toString();
+        row[index2] = name;
+      }
+      return sb.append(name);
+    }
+    return replaceTo(sb, index1, index2).append(Constants.EQUAL);
+  }
 }
@@ -0,0 +1,313 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of URL encoded values.
+ *
+ * <p>The cache can be shared across threads. Lookup of a cached value is lock-free. Addition of a
+ * new value is synchronized.
+ *
+ * <p>Eviction uses the CLOCK algorithm: each cached value has a reference flag that is set when it
+ * is used. When the cache is full the clock hand sweeps the entries, clearing the reference flag,
+ * until it finds an entry that has not been used since the last sweep. This approximates a least
+ * recently used (LRU) policy.
+ *
+ * <p>Values longer than the admission length (e.g. a document location or user agent) are only
+ * added to the cache if they have been seen before. The frequency of these values is estimated
+ * using a count-min sketch of 4-bit counters that are periodically halved (as used in TinyLFU).
+ * This prevents one-off values from evicting frequently used values.
+ *
+ * @see UrlEncoderHelper#setCache(UrlEncoderCache)
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission
+ *      Policy</a>
+ */
+public final class UrlEncoderCache {
+
+  /** The default length above which a value must be seen before it is admitted to the cache. */
+  public static final int DEFAULT_ADMISSION_LENGTH = 64;
+
+  /** The number of counters in the frequency sketch for each cache entry. */
+  private static final int SKETCH_FACTOR = 4;
+  /** The minimum number of counters in the frequency sketch. */
+  private static final int MIN_SKETCH_SIZE = 64;
+  /** The number of frequency increments (per cache entry) before the counters are halved. */
+  private static final int SAMPLE_FACTOR = 10;
+  /** The maximum frequency count. */
+  private static final int MAX_FREQUENCY = 15;
+  /** The frequency required to admit a value longer than the admission length. */
+  private static final int ADMISSION_FREQUENCY = 2;
+  /** The seeds for the hash functions of the frequency sketch. */
+  private static final int[] SEEDS = {0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f};
+
+  /** The cached values. */
+  private final ConcurrentHashMap<String, Node> map;
+  /** The entries in the clock. */
+  private final Node[] clock;
+  /** The length above which a value must be seen before it is admitted to the cache. */
+  private final int admissionLength;
+  /** The frequency sketch. */
+  private final byte[] sketch;
+  /** The number of frequency increments before the counters are halved. */
+  private final int sampleSize;
+  /** The cache hit count. */
+  private final LongAdder hits = new LongAdder();
+  /** The cache miss count. */
+  private final LongAdder misses = new LongAdder();
+
+  /** The clock hand. Guarded by this. */
+  private int hand;
+  /** The number of frequency increments since the counters were halved. Guarded by this. */
+  private int increments;
+
+  /**
+   * A cached value.
+   */
+  private static final class Node {
+    /** The value. */
+    final String value;
+    /** The encoded value. */
+    final String encoded;
+    /** Set to true when the value is used. */
+    volatile boolean referenced;
+
+    /**
+     * Create a new instance.
+     *
+     * @param value the value
+     * @param encoded the encoded value
+     */
+    Node(String value, String encoded) {
+      this.value = value;
+      this.encoded = encoded;
+    }
+  }
+
+  /**
+   * Create a new instance with the default admission length.
+   *
+   * @param maximumSize the maximum size
+   * @throws IllegalArgumentException If the maximum size is not strictly positive
+   * @see #DEFAULT_ADMISSION_LENGTH
+   */
+  public UrlEncoderCache(int maximumSize) {
+    this(maximumSize, DEFAULT_ADMISSION_LENGTH);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * <p>Values longer than the admission length are only added to the cache if they have been seen
+   * before.
+   *
+   * @param maximumSize the maximum size
+   * @param admissionLength the admission length
+   * @throws IllegalArgumentException If the maximum size is not strictly positive or the admission
+   *         length is negative
+   */
+  public UrlEncoderCache(int maximumSize, int admissionLength) {
+    ParameterUtils.requireStrictlyPositive(maximumSize, "Maximum size");
+    this.admissionLength = ParameterUtils.requirePositive(admissionLength, "Admission length");
+    map = new ConcurrentHashMap<>(maximumSize);
+    clock = new Node[maximumSize];
+    // Power of 2 size
+    final int size = Math.max(MIN_SKETCH_SIZE, maximumSize * SKETCH_FACTOR);
+    sketch = new byte[Integer.highestOneBit(size - 1) << 1];
+    sampleSize = (int) Math.min(Integer.MAX_VALUE, (long) maximumSize * SAMPLE_FACTOR);
+  }
+
+  /**
+   * Gets the maximum size.
+   *
+   * @return the maximum size
+   */
+  public int getMaximumSize() {
+    return clock.length;
+  }
+
+  /**
+   * Gets the length above which a value must be seen before it is admitted to the cache.
+   *
+   * @return the admission length
+   */
+  public int getAdmissionLength() {
+    return admissionLength;
+  }
+
+  /**
+   * Gets the number of cached values.
+   *
+   * @return the size
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * Gets the number of times a value was found in the cache.
+   *
+   * @return the hit count
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of times a value was not found in the cache.
+   *
+   * @return the miss count
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Remove all the cached values and reset the hit and miss counts.
+   */
+  public synchronized void clear() {
+    map.clear();
+    Arrays.fill(clock, null);
+    Arrays.fill(sketch, (byte) 0);
+    hand = 0;
+    increments = 0;
+    hits.reset();
+    misses.reset();
+  }
+
+  /**
+   * Encode the string using UTF-8. The result is obtained from the cache if present.
+   *
+   * @param string the string
+   * @return the encoded string
+   * @see UrlEncoderHelper#encode(String)
+   */
+  String encode(String string) {
+    Objects.requireNonNull(string, "The string is null");
+    final Node node = map.get(string);
+    if (node != null) {
+      // Avoid a write if already set
+      if (!node.referenced) {
+        node.referenced = true;
+      }
+      hits.increment();
+      return node.encoded;
+    }
+    misses.increment();
+    final String encoded = UrlEncoderHelper.encodeValue(string);
+    add(string, encoded);
+    return encoded;
+  }
+
+  /**
+   * Add the value to the cache. Long values are only admitted if they have been seen before.
+   *
+   * @param value the value
+   * @param encoded the encoded value
+   */
+  private synchronized void add(String value, String encoded) {
+    if ((value.length() > admissionLength && incrementFrequency(value) < ADMISSION_FREQUENCY)
+        || map.containsKey(value)) {
+      return;
+    }
+    // Sweep the clock for an entry that has not been used
+    final Node[] entries = clock;
+    int index = hand;
+    Node victim = entries[index];
+    while (victim != null && victim.referenced) {
+      victim.referenced = false;
+      index = next(index);
+      victim = entries[index];
+    }
+    if (victim != null) {
+      map.remove(victim.value);
+    }
+    final Node node = new Node(value, encoded);
+    entries[index] = node;
+    map.put(value, node);
+    hand = next(index);
+  }
+
+  /**
+   * Get the next position of the clock hand.
+   *
+   * @param index the index
+   * @return the next index
+   */
+  private int next(int index) {
+    final int next = index + 1;
+    return next == clock.length ? 0 : next;
+  }
+
+  /**
+   * Increment the frequency of the value in the sketch and return the estimated frequency.
+   *
+   * <p>Must be called when holding the lock.
+   *
+   * @param value the value
+   * @return the frequency
+   */
+  private int incrementFrequency(String value) {
+    final byte[] counters = sketch;
+    final int mask = counters.length - 1;
+    final int hash = value.hashCode();
+    int frequency = MAX_FREQUENCY;
+    for (final int seed : SEEDS) {
+      final int index = spread(hash * seed) & mask;
+      int count = counters[index];
+      if (count < MAX_FREQUENCY) {
+        counters[index] = (byte) ++count;
+      }
+      frequency = Math.min(frequency, count);
+    }
+    if (++increments == sampleSize) {
+      // Age the frequencies
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = (byte) (counters[i] >>> 1);
+      }
+      increments >>>= 1;
+    }
+    return frequency;
+  }
+
+  /**
+   * Spread the bits of the hash code.
+   *
+   * @param hash the hash
+   * @return the spread hash
+   */
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
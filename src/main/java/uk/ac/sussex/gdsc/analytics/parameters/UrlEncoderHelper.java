@@ -30,6 +30,7 @@
 package uk.ac.sussex.gdsc.analytics.parameters;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Objects;
 import java.util.logging.Logger;
@@ -41,6 +42,9 @@ import java.util.logging.Logger;
  * (space) to '+'. Otherwise tÏhe actual encoding is performed by
  * {@link URLEncoder#encode(String, String)}.
  *
+ * <p>An optional cache of encoded values can be used to avoid repeat encoding of the same values
+ * across hits.
+ *
  * @see <a href="https://www.ietf.org/rfc/rfc2396.txt">RFC 2396: Uniform Resource Identifiers (URI):
  *      Generic Syntax</a>
  */
@@ -52,6 +56,8 @@ public final class UrlEncoderHelper {
   private static final char SPACE = ' ';
   /** The plus '+' character. */
   private static final char PLUS = '+';
+  /** The percent '%' character. This is the prefix for an encoded byte. */
+  private static final char PERCENT = '%';
   /** The size required for the lower 7-bits of the ASCII table. */
   private static final int ASCII_SIZE = 128;
   /**
@@ -59,6 +65,9 @@ public final class UrlEncoderHelper {
    */
   private static final int NO_INDEX = -1;
 
+  /** The cache of encoded values. */
+  private static volatile UrlEncoderCache cache;
+
   static {
 
     // Note:
@@ -110,10 +119,28 @@ public final class UrlEncoderHelper {
    *
    * <p>Otherwise the actual encoding is performed by {@link URLEncoder#encode(String, String)}.
    *
+   * <p>If a cache has been set then the encoded value is obtained from the cache.
+   *
    * @param string The string
    * @return The encoded string
+   * @see #setCache(UrlEncoderCache)
    */
   public static String encode(String string) {
+    final UrlEncoderCache encoderCache = cache;
+    return (encoderCache == null) ? encodeValue(string) : encoderCache.encode(string);
+  }
+
+  /**
+   * Encode the string using UTF-8. The cache is not used.
+   *
+   * <p>This should be used for values that are not expected to repeat so that the cache is not
+   * filled with values that are not reused.
+   *
+   * @param string The string
+   * @return The encoded string
+   * @see #encode(String)
+   */
+  public static String encodeValue(String string) {
     return (noEncodingRequired(string))
         // Handle special case of space character
         ? spaceEncode(string)
@@ -121,6 +148,49 @@ public final class UrlEncoderHelper {
         : urlEncode(string, "UTF-8");
   }
 
+  /**
+   * Decode the string using UTF-8.
+   *
+   * <p>A check is made for any characters that require decoding ('%' or '+'). If {@code false}
+   * the same string is returned.
+   *
+   * <p>Otherwise the actual decoding is performed by {@link URLDecoder#decode(String, String)}.
+   *
+   * @param string The string
+   * @return The decoded string
+   * @throws IllegalArgumentException If the string contains an illegal encoding
+   */
+  public static String decode(String string) {
+    for (int i = 0; i < string.length(); i++) {
+      final char ch = string.charAt(i);
+      if (ch == PERCENT || ch == PLUS) {
+        return urlDecode(string, "UTF-8");
+      }
+    }
+    return string;
+  }
+
+  /**
+   * Sets the cache of encoded values used by {@link #encode(String)}. Use {@code null} to disable
+   * the cache.
+   *
+   * <p>The cache is disabled by default.
+   *
+   * @param cache the new cache
+   */
+  public static void setCache(UrlEncoderCache cache) {
+    UrlEncoderHelper.cache = cache;
+  }
+
+  /**
+   * Gets the cache of encoded values used by {@link #encode(String)}.
+   *
+   * @return the cache (or null)
+   */
+  public static UrlEncoderCache getCache() {
+    return cache;
+  }
+
   /**
    * Encode the string substituting the space character for '+'.
    *
@@ -161,6 +231,26 @@ public final class UrlEncoderHelper {
     }
   }
 
+  /**
+   * Decode the string using the given encoding.
+   *
+   * @param string The string
+   * @param encoding The encoding (UTF-8 is recommended)
+   * @return The decoded string
+   * @throws UnsupportedEncodingRuntimeException If the encoding is not supported
+   * @throws IllegalArgumentException If the string contains an illegal encoding
+   */
+  static String urlDecode(String string, String encoding) {
+    try {
+      return URLDecoder.decode(string, encoding);
+    } catch (final UnsupportedEncodingException ex) {
+      // UTF-8 is required by the Java platform so this should not happen
+      Logger.getLogger(UrlEncoderHelper.class.getName())
+          .severe("Unsupported encoding: " + ex.getMessage());
+      throw new UnsupportedEncodingRuntimeException(ex);
+    }
+  }
+
   /**
    * Check if the string contains only characters that will not be encoded.
    *
@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
+
+/**
+ * Constants for the binary hit format.
+ *
+ * <p>A stream contains a header followed by hit records:
+ *
+ * <pre>
+ * stream  = magic version specs checksum hit*
+ * magic   = 'G' 'A' 'H' 'B'
+ * version = byte
+ * specs   = varint                  ; Number of protocol specifications
+ * checksum= 4 bytes (big-endian)    ; CRC32 of the specification name formats
+ * hit     = varint entry*           ; Number of entries
+ * entry   = name value
+ * name    = varint(0) string        ; Custom name (URL encoded)
+ *         | varint(ordinal + 1) varint*   ; Specification and indexes
+ * value   = NONE                    ; No '=' separator
+ *         | INTEGER zigzag-varlong  ; Canonical decimal integer
+ *         | TEXT string             ; Decoded text; URL encoded on output
+ *         | RAW string              ; Raw URL encoded text
+ * string  = varint(0) varint(length) utf8-bytes   ; Literal
+ *         | varint(n)               ; Dictionary entry n - 1
+ * </pre>
+ *
+ * <p>Literal strings up to {@link #MAX_DICTIONARY_STRING_LENGTH} chars are added to the
+ * dictionary of the stream until it contains {@link #MAX_DICTIONARY_SIZE} entries.
+ *
+ * <p>The specification checksum ensures the ordinals of the {@link ProtocolSpecification} used to
+ * write the stream match those used to read it.
+ */
+final class BinaryHitFormat {
+
+  /** The magic bytes at the start of the stream. */
+  static final byte[] MAGIC = "GAHB".getBytes(StandardCharsets.US_ASCII);
+  /** The format version. */
+  static final int VERSION = 1;
+  /** The number of protocol specifications. */
+  static final int SPECIFICATIONS = ProtocolSpecification.values().length;
+  /** The checksum of the protocol specifications. */
+  static final int CHECKSUM;
+
+  /** Value tag: No value. */
+  static final int NONE = 0;
+  /** Value tag: Integer value. */
+  static final int INTEGER = 1;
+  /** Value tag: Text value. */
+  static final int TEXT = 2;
+  /** Value tag: Raw URL encoded value. */
+  static final int RAW = 3;
+
+  /** Name code for a custom name. */
+  static final int CUSTOM_NAME = 0;
+  /** String code for a literal. */
+  static final int LITERAL = 0;
+
+  /** The maximum number of entries in the dictionary. */
+  static final int MAX_DICTIONARY_SIZE = 4096;
+  /** The maximum length of a string added to the dictionary. */
+  static final int MAX_DICTIONARY_STRING_LENGTH = 1024;
+
+  /** The maximum number of indexes of a specification. */
+  static final int MAX_INDEXES = 3;
+
+  /** The maximum number of digits for an integer value. This ensures it fits in a long. */
+  static final int MAX_INTEGER_DIGITS = 18;
+
+  static {
+    final CRC32 crc = new CRC32();
+    for (final ProtocolSpecification specification : ProtocolSpecification.values()) {
+      final byte[] bytes = specification.getNameFormat().getBytes(StandardCharsets.US_ASCII);
+      crc.update(bytes, 0, bytes.length);
+      crc.update('&');
+    }
+    CHECKSUM = (int) crc.getValue();
+  }
+
+  /**
+   * No public instances.
+   */
+  private BinaryHitFormat() {
+    // Do nothing
+  }
+
+  /**
+   * Append the name of the specification to the {@link StringBuilder} replacing the index
+   * characters with the indexes.
+   *
+   * @param sb the string builder
+   * @param specification the specification
+   * @param indexes the indexes
+   * @return the string builder
+   */
+  static StringBuilder appendName(StringBuilder sb, ProtocolSpecification specification,
+      int[] indexes) {
+    final String nameFormat = specification.getNameFormat();
+    int count = 0;
+    for (int i = 0; i < nameFormat.length(); i++) {
+      final char ch = nameFormat.charAt(i);
+      if (ch == '_') {
+        sb.append(indexes[count++]);
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb;
+  }
+
+  /**
+   * Checks if a string can be added to the dictionary.
+   *
+   * @param size the current size of the dictionary
+   * @param string the string
+   * @return true if the string can be added
+   */
+  static boolean isDictionaryCandidate(int size, String string) {
+    return size < MAX_DICTIONARY_SIZE && string.length() <= MAX_DICTIONARY_STRING_LENGTH;
+  }
+}
@@ -0,0 +1,331 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
+import uk.ac.sussex.gdsc.analytics.parameters.UrlEncoderHelper;
+
+/**
+ * Reads URL encoded hits from a stream written by a {@link HitEncoder}.
+ *
+ * <p>The input is buffered. This class is not thread-safe.
+ *
+ * @see HitEncoder
+ */
+public final class HitDecoder implements Closeable {
+
+  /** The size of the buffer. */
+  private static final int BUFFER_SIZE = 8192;
+  /** The mask for the lower 7 bits of a variable length integer. */
+  private static final int SEVEN_BITS = 0x7f;
+  /** The continuation bit of a variable length integer. */
+  private static final int CONTINUATION = 0x80;
+  /** The shift for 7 bits. */
+  private static final int SHIFT = 7;
+  /** The maximum shift for a variable length long. */
+  private static final int MAX_SHIFT = 63;
+  /** The mask for a byte. */
+  private static final int BYTE_MASK = 0xff;
+  /** The number of bytes in the checksum. */
+  private static final int CHECKSUM_BYTES = 4;
+  /** The number of bits in a byte. */
+  private static final int BITS_PER_BYTE = 8;
+
+  /** The specifications. */
+  private static final ProtocolSpecification[] SPECIFICATIONS = ProtocolSpecification.values();
+
+  /** The input. */
+  private final InputStream in;
+  /** The buffer. */
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  /** The position in the buffer. */
+  private int position;
+  /** The limit of the data in the buffer. */
+  private int limit;
+  /** The dictionary. */
+  private final List<String> dictionary = new ArrayList<>();
+  /** The indexes of the current name. */
+  private final int[] indexes = new int[BinaryHitFormat.MAX_INDEXES];
+  /** Set to true when the header has been read. */
+  private boolean header;
+
+  /**
+   * Create a new instance. The stream header is read when the first hit is read.
+   *
+   * @param in the input
+   */
+  public HitDecoder(InputStream in) {
+    this.in = Objects.requireNonNull(in, "Input");
+  }
+
+  /**
+   * Read the next hit.
+   *
+   * @return the hit (or null if the end of the stream has been reached)
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   */
+  public String read() throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    return read(sb) ? sb.toString() : null;
+  }
+
+  /**
+   * Read the next hit and append it to the {@link StringBuilder}.
+   *
+   * @param sb the string builder
+   * @return true if a hit was read; false if the end of the stream has been reached
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   * @throws EOFException If the stream ends within a hit.
+   */
+  public boolean read(StringBuilder sb) throws IOException {
+    if (position == limit && !fill()) {
+      return false;
+    }
+    if (!header) {
+      readHeader();
+      header = true;
+      if (position == limit && !fill()) {
+        return false;
+      }
+    }
+    final int count = readVarint();
+    for (int i = 0; i < count; i++) {
+      if (i != 0) {
+        sb.append('&');
+      }
+      readName(sb);
+      readValue(sb);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the number of entries in the dictionary.
+   *
+   * @return the dictionary size
+   */
+  public int getDictionarySize() {
+    return dictionary.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Read the stream header.
+   *
+   * @throws IOException Signals that an I/O exception has occurred or the header is invalid.
+   */
+  private void readHeader() throws IOException {
+    for (final byte b : BinaryHitFormat.MAGIC) {
+      if (readByte() != (b & BYTE_MASK)) {
+        throw new IOException("Not a binary hit stream");
+      }
+    }
+    final int version = readByte();
+    if (version != BinaryHitFormat.VERSION) {
+      throw new IOException("Unsupported version: " + version);
+    }
+    final int specifications = readVarint();
+    int checksum = 0;
+    for (int i = 0; i < CHECKSUM_BYTES; i++) {
+      checksum = (checksum << BITS_PER_BYTE) | readByte();
+    }
+    if (specifications != BinaryHitFormat.SPECIFICATIONS
+        || checksum != BinaryHitFormat.CHECKSUM) {
+      throw new IOException("Incompatible protocol specifications");
+    }
+  }
+
+  /**
+   * Read the name and append it to the {@link StringBuilder}.
+   *
+   * @param sb the string builder
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   */
+  private void readName(StringBuilder sb) throws IOException {
+    final int code = readVarint();
+    if (code == BinaryHitFormat.CUSTOM_NAME) {
+      sb.append(readString());
+      return;
+    }
+    if (code > SPECIFICATIONS.length) {
+      throw new IOException("Invalid specification: " + code);
+    }
+    final ProtocolSpecification specification = SPECIFICATIONS[code - 1];
+    for (int i = 0; i < specification.getNumberOfIndexes(); i++) {
+      indexes[i] = readVarint();
+    }
+    BinaryHitFormat.appendName(sb, specification, indexes);
+  }
+
+  /**
+   * Read the value and append it to the {@link StringBuilder} including the {@code '='}
+   * separator.
+   *
+   * @param sb the string builder
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   */
+  private void readValue(StringBuilder sb) throws IOException {
+    final int tag = readByte();
+    switch (tag) {
+      case BinaryHitFormat.NONE:
+        break;
+      case BinaryHitFormat.INTEGER:
+        final long zigzag = readVarlong();
+        sb.append('=').append((zigzag >>> 1) ^ -(zigzag & 1));
+        break;
+      case BinaryHitFormat.TEXT:
+        sb.append('=').append(UrlEncoderHelper.encodeValue(readString()));
+        break;
+      case BinaryHitFormat.RAW:
+        sb.append('=').append(readString());
+        break;
+      default:
+        throw new IOException("Invalid value tag: " + tag);
+    }
+  }
+
+  /**
+   * Read a string.
+   *
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   */
+  private String readString() throws IOException {
+    final int code = readVarint();
+    if (code != BinaryHitFormat.LITERAL) {
+      if (code > dictionary.size()) {
+        throw new IOException("Invalid dictionary reference: " + code);
+      }
+      return dictionary.get(code - 1);
+    }
+    final int length = readVarint();
+    final String string;
+    if (limit - position >= length) {
+      string = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+    } else {
+      // The length may be corrupt. Grow the bytes as data arrives.
+      byte[] bytes = new byte[BUFFER_SIZE];
+      int count = 0;
+      while (count < length) {
+        if (position == limit && !fill()) {
+          throw new EOFException();
+        }
+        if (count == bytes.length) {
+          bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * count));
+        }
+        final int n = Math.min(Math.min(length, bytes.length) - count, limit - position);
+        System.arraycopy(buffer, position, bytes, count, n);
+        position += n;
+        count += n;
+      }
+      string = new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+    if (BinaryHitFormat.isDictionaryCandidate(dictionary.size(), string)) {
+      dictionary.add(string);
+    }
+    return string;
+  }
+
+  /**
+   * Read an unsigned variable length integer.
+   *
+   * @return the value
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   */
+  private int readVarint() throws IOException {
+    final long value = readVarlong();
+    if (value > Integer.MAX_VALUE) {
+      throw new IOException("Invalid integer: " + value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Read an unsigned variable length long.
+   *
+   * @return the value
+   * @throws IOException Signals that an I/O exception has occurred or the data is corrupt.
+   */
+  private long readVarlong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift <= MAX_SHIFT; shift += SHIFT) {
+      final int b = readByte();
+      value |= (long) (b & SEVEN_BITS) << shift;
+      if ((b & CONTINUATION) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Invalid variable length integer");
+  }
+
+  /**
+   * Read a byte.
+   *
+   * @return the byte (unsigned)
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws EOFException If the end of the stream has been reached.
+   */
+  private int readByte() throws IOException {
+    if (position == limit && !fill()) {
+      throw new EOFException();
+    }
+    return buffer[position++] & BYTE_MASK;
+  }
+
+  /**
+   * Fill the buffer.
+   *
+   * @return true if data was read
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean fill() throws IOException {
+    final int n = in.read(buffer, 0, buffer.length);
+    if (n <= 0) {
+      return false;
+    }
+    position = 0;
+    limit = n;
+    return true;
+  }
+}
@@ -0,0 +1,506 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import uk.ac.sussex.gdsc.analytics.parameters.HitParser;
+import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
+import uk.ac.sussex.gdsc.analytics.parameters.UrlEncoderHelper;
+
+/**
+ * Writes URL encoded hits to a stream using a compact binary format.
+ *
+ * <p>Parameter names are written using the ordinal of the {@link ProtocolSpecification} and the
+ * indexes. Integer values are written as variable length integers. Text is written as UTF-8 and
+ * repeated strings are written as a reference to a dictionary of the stream.
+ *
+ * <p>The hit can be recovered exactly using a {@link HitDecoder} with the exception that empty
+ * pairs (e.g. {@code a=1&&b=2}) are removed.
+ *
+ * <p>The output is buffered. This class is not thread-safe.
+ *
+ * @see HitDecoder
+ */
+public final class HitEncoder implements Flushable, Closeable {
+
+  /** The size of the buffer. */
+  private static final int BUFFER_SIZE = 8192;
+  /** The maximum number of bytes for a variable length long. */
+  private static final int MAX_VARLONG_BYTES = 10;
+  /** The mask for the lower 7 bits of a variable length integer. */
+  private static final int SEVEN_BITS = 0x7f;
+  /** The continuation bit of a variable length integer. */
+  private static final int CONTINUATION = 0x80;
+  /** The shift for 7 bits. */
+  private static final int SHIFT = 7;
+  /** The shift for the sign bit of a long. */
+  private static final int SIGN_SHIFT = 63;
+  /** The maximum bytes for a UTF-8 char. */
+  private static final int MAX_UTF8_BYTES = 3;
+  /** The limit of a 1-byte UTF-8 char. */
+  private static final char ONE_BYTE_LIMIT = 0x80;
+  /** The limit of a 2-byte UTF-8 char. */
+  private static final char TWO_BYTE_LIMIT = 0x800;
+  /** Bit shift for UTF-8 encoding. */
+  private static final int UTF8_SHIFT = 6;
+  /** Mask for the lower 6 bits of UTF-8 continuation byte. */
+  private static final int SIX_BITS = 0x3f;
+  /** The prefix of a 2-byte UTF-8 char. */
+  private static final int TWO_BYTE_PREFIX = 0xc0;
+  /** The prefix of a 3-byte UTF-8 char. */
+  private static final int THREE_BYTE_PREFIX = 0xe0;
+  /** The prefix of a 4-byte UTF-8 char. */
+  private static final int FOUR_BYTE_PREFIX = 0xf0;
+  /** The prefix of a UTF-8 continuation byte. */
+  private static final int CONTINUATION_PREFIX = 0x80;
+  /** The replacement for a malformed char. */
+  private static final char REPLACEMENT = '?';
+
+  /** The output. */
+  private final OutputStream out;
+  /** The buffer. */
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  /** The position in the buffer. */
+  private int position;
+  /** The dictionary. */
+  private final Map<String, Integer> dictionary = new HashMap<>();
+  /** The parser. */
+  private final HitParser parser = new HitParser();
+  /** The indexes of the current name. */
+  private final int[] indexes = new int[BinaryHitFormat.MAX_INDEXES];
+  /** The working space to build names. */
+  private final StringBuilder sb = new StringBuilder();
+  /** Set to true when closed. */
+  private boolean closed;
+
+  /**
+   * Create a new instance. The stream header is written to the buffer.
+   *
+   * @param out the output
+   */
+  public HitEncoder(OutputStream out) {
+    this.out = Objects.requireNonNull(out, "Output");
+    writeHeader();
+  }
+
+  /**
+   * Reset the encoder to start a new stream on the same output. The dictionary is cleared and the
+   * stream header is written to the buffer. Output that has not been flushed is discarded.
+   *
+   * <p>This allows the encoder and its buffer to be reused for independent streams, e.g. a
+   * separate record for each hit.
+   *
+   * @throws IOException if closed
+   */
+  void reset() throws IOException {
+    if (closed) {
+      throw new IOException("Closed");
+    }
+    dictionary.clear();
+    position = 0;
+    writeHeader();
+  }
+
+  /**
+   * Write the stream header to the buffer.
+   */
+  private void writeHeader() {
+    System.arraycopy(BinaryHitFormat.MAGIC, 0, buffer, 0, BinaryHitFormat.MAGIC.length);
+    position = BinaryHitFormat.MAGIC.length;
+    buffer[position++] = (byte) BinaryHitFormat.VERSION;
+    putVarlong(BinaryHitFormat.SPECIFICATIONS);
+    final int checksum = BinaryHitFormat.CHECKSUM;
+    buffer[position++] = (byte) (checksum >>> 24);
+    buffer[position++] = (byte) (checksum >>> 16);
+    buffer[position++] = (byte) (checksum >>> 8);
+    buffer[position++] = (byte) checksum;
+  }
+
+  /**
+   * Write the URL encoded hit.
+   *
+   * @param hit the hit
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void write(CharSequence hit) throws IOException {
+    if (closed) {
+      throw new IOException("Closed");
+    }
+    parser.reset(hit);
+    int count = 0;
+    while (parser.next()) {
+      count++;
+    }
+    writeVarint(count);
+    parser.reset(hit);
+    while (parser.next()) {
+      writeName(hit);
+      writeValue(hit);
+    }
+  }
+
+  /**
+   * Gets the number of entries in the dictionary.
+   *
+   * @return the dictionary size
+   */
+  public int getDictionarySize() {
+    return dictionary.size();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        flushBuffer();
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Write the name of the current pair.
+   *
+   * @param hit the hit
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeName(CharSequence hit) throws IOException {
+    final int start = parser.getNameStart();
+    final int end = parser.getNameEnd();
+    final ProtocolSpecification specification = parser.getSpecification();
+    if (specification != null && isCanonical(specification, hit, start, end)) {
+      writeVarint(specification.ordinal() + 1);
+      for (int i = 0; i < specification.getNumberOfIndexes(); i++) {
+        writeVarint(parser.getIndex(i));
+      }
+    } else {
+      writeVarint(BinaryHitFormat.CUSTOM_NAME);
+      writeString(hit.subSequence(start, end).toString());
+    }
+  }
+
+  /**
+   * Checks if the name is the canonical form of the specification and indexes.
+   *
+   * @param specification the specification
+   * @param hit the hit
+   * @param start the start of the name
+   * @param end the end of the name
+   * @return true if canonical
+   */
+  private boolean isCanonical(ProtocolSpecification specification, CharSequence hit, int start,
+      int end) {
+    if (specification.getNumberOfIndexes() == 0) {
+      // Resolution requires an exact match
+      return true;
+    }
+    // Detect invalid indexes and leading zeros
+    final int count = specification.getNumberOfIndexes();
+    for (int i = 0; i < count; i++) {
+      indexes[i] = parser.getIndex(i);
+    }
+    sb.setLength(0);
+    BinaryHitFormat.appendName(sb, specification, indexes);
+    if (sb.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < sb.length(); i++) {
+      if (sb.charAt(i) != hit.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write the value of the current pair.
+   *
+   * @param hit the hit
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeValue(CharSequence hit) throws IOException {
+    final int start = parser.getValueStart();
+    final int end = parser.getValueEnd();
+    if (start == parser.getNameEnd()) {
+      // No '=' separator
+      writeByte(BinaryHitFormat.NONE);
+      return;
+    }
+    if (isCanonicalInteger(hit, start, end)) {
+      writeByte(BinaryHitFormat.INTEGER);
+      writeZigZag(parseLong(hit, start, end));
+      return;
+    }
+    final String raw = hit.subSequence(start, end).toString();
+    if (requiresDecoding(raw)) {
+      // Decoded text is smaller if it can be encoded back to the same value.
+      // Do not use the global cache for the arbitrary values of stored hits.
+      try {
+        final String text = parser.getValue();
+        if (raw.equals(UrlEncoderHelper.encodeValue(text))) {
+          writeByte(BinaryHitFormat.TEXT);
+          writeString(text);
+          return;
+        }
+      } catch (final IllegalArgumentException ex) {
+        // Illegal encoding. Store the raw value.
+      }
+    }
+    writeByte(BinaryHitFormat.RAW);
+    writeString(raw);
+  }
+
+  /**
+   * Checks if the value contains encoded characters.
+   *
+   * @param value the value
+   * @return true if decoding is required
+   */
+  private static boolean requiresDecoding(String value) {
+    return value.indexOf('%') >= 0 || value.indexOf('+') >= 0;
+  }
+
+  /**
+   * Checks if the range is a canonical decimal integer that fits in a long. Canonical integers
+   * have no leading zeros or plus sign and zero is unsigned.
+   *
+   * @param hit the hit
+   * @param start the start (inclusive)
+   * @param end the end (exclusive)
+   * @return true if a canonical integer
+   */
+  private static boolean isCanonicalInteger(CharSequence hit, int start, int end) {
+    int i = start;
+    if (i < end && hit.charAt(i) == '-') {
+      i++;
+    }
+    final int digits = end - i;
+    if (digits == 0 || digits > BinaryHitFormat.MAX_INTEGER_DIGITS) {
+      return false;
+    }
+    if (hit.charAt(i) == '0') {
+      // Only "0" is canonical
+      return i == start && digits == 1;
+    }
+    for (; i < end; i++) {
+      final char ch = hit.charAt(i);
+      if (ch < '0' || ch > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the canonical integer.
+   *
+   * @param hit the hit
+   * @param start the start (inclusive)
+   * @param end the end (exclusive)
+   * @return the value
+   */
+  private static long parseLong(CharSequence hit, int start, int end) {
+    final boolean negative = hit.charAt(start) == '-';
+    long value = 0;
+    for (int i = negative ? start + 1 : start; i < end; i++) {
+      value = value * 10 + (hit.charAt(i) - '0');
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Write the string. Repeated strings are written as a reference to the dictionary.
+   *
+   * @param string the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeString(String string) throws IOException {
+    final Integer id = dictionary.get(string);
+    if (id != null) {
+      writeVarint(id + 1);
+      return;
+    }
+    if (BinaryHitFormat.isDictionaryCandidate(dictionary.size(), string)) {
+      dictionary.put(string, dictionary.size());
+    }
+    writeVarint(BinaryHitFormat.LITERAL);
+    writeVarint(utf8Length(string));
+    for (int i = 0; i < string.length(); i++) {
+      ensureCapacity(MAX_UTF8_BYTES + 1);
+      final char ch = string.charAt(i);
+      if (ch < ONE_BYTE_LIMIT) {
+        buffer[position++] = (byte) ch;
+      } else if (ch < TWO_BYTE_LIMIT) {
+        buffer[position++] = (byte) (TWO_BYTE_PREFIX | (ch >>> UTF8_SHIFT));
+        buffer[position++] = (byte) (CONTINUATION_PREFIX | (ch & SIX_BITS));
+      } else if (Character.isSurrogate(ch)) {
+        if (Character.isHighSurrogate(ch) && i + 1 < string.length()
+            && Character.isLowSurrogate(string.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(ch, string.charAt(++i));
+          buffer[position++] = (byte) (FOUR_BYTE_PREFIX | (cp >>> (3 * UTF8_SHIFT)));
+          buffer[position++] =
+              (byte) (CONTINUATION_PREFIX | ((cp >>> (2 * UTF8_SHIFT)) & SIX_BITS));
+          buffer[position++] = (byte) (CONTINUATION_PREFIX | ((cp >>> UTF8_SHIFT) & SIX_BITS));
+          buffer[position++] = (byte) (CONTINUATION_PREFIX | (cp & SIX_BITS));
+        } else {
+          buffer[position++] = REPLACEMENT;
+        }
+      } else {
+        buffer[position++] = (byte) (THREE_BYTE_PREFIX | (ch >>> (2 * UTF8_SHIFT)));
+        buffer[position++] = (byte) (CONTINUATION_PREFIX | ((ch >>> UTF8_SHIFT) & SIX_BITS));
+        buffer[position++] = (byte) (CONTINUATION_PREFIX | (ch & SIX_BITS));
+      }
+    }
+  }
+
+  /**
+   * Compute the length of the string encoded as UTF-8. Malformed surrogates are encoded as a
+   * single byte.
+   *
+   * @param string the string
+   * @return the length
+   */
+  private static int utf8Length(String string) {
+    int length = 0;
+    for (int i = 0; i < string.length(); i++) {
+      final char ch = string.charAt(i);
+      if (ch < ONE_BYTE_LIMIT) {
+        length++;
+      } else if (ch < TWO_BYTE_LIMIT) {
+        length += 2;
+      } else if (Character.isSurrogate(ch)) {
+        if (Character.isHighSurrogate(ch) && i + 1 < string.length()
+            && Character.isLowSurrogate(string.charAt(i + 1))) {
+          length += MAX_UTF8_BYTES + 1;
+          i++;
+        } else {
+          length++;
+        }
+      } else {
+        length += MAX_UTF8_BYTES;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Write a byte.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeByte(int value) throws IOException {
+    ensureCapacity(1);
+    buffer[position++] = (byte) value;
+  }
+
+  /**
+   * Write an unsigned variable length integer.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeVarint(int value) throws IOException {
+    writeVarlong(value & 0xffffffffL);
+  }
+
+  /**
+   * Write a signed variable length long using zig-zag encoding.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeZigZag(long value) throws IOException {
+    writeVarlong((value << 1) ^ (value >> SIGN_SHIFT));
+  }
+
+  /**
+   * Write an unsigned variable length long.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeVarlong(long value) throws IOException {
+    ensureCapacity(MAX_VARLONG_BYTES);
+    putVarlong(value);
+  }
+
+  /**
+   * Put an unsigned variable length long in the buffer. The buffer must have capacity.
+   *
+   * @param value the value
+   */
+  private void putVarlong(long value) {
+    long v = value;
+    while ((v & ~SEVEN_BITS) != 0) {
+      buffer[position++] = (byte) ((v & SEVEN_BITS) | CONTINUATION);
+      v >>>= SHIFT;
+    }
+    buffer[position++] = (byte) v;
+  }
+
+  /**
+   * Ensure the buffer has capacity for the specified number of bytes.
+   *
+   * @param size the size
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void ensureCapacity(int size) throws IOException {
+    if (position + size > buffer.length) {
+      flushBuffer();
+    }
+  }
+
+  /**
+   * Flush the buffer to the output.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void flushBuffer() throws IOException {
+    if (position != 0) {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+}
@@ -0,0 +1,670 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.HitDispatcher;
+import uk.ac.sussex.gdsc.analytics.jfr.HitEvents;
+
+/**
+ * A ring buffer of hits stored in a memory-mapped file that can be shared by multiple processes.
+ *
+ * <p>Any process can append hits to the spool. Hits are removed from the spool and sent using a
+ * {@link HitDispatcher} by the process that holds the lease. The lease is an exclusive
+ * {@link FileLock} that is held until released or the process terminates; the operating system
+ * then releases the lock and the lease can be acquired by another process. This allows a single
+ * process to send the hits of all processes.
+ *
+ * <p>Each hit is stored with the timestamp when it occurred using the {@link HitEncoder} binary
+ * format. When the spool is full new hits are dropped.
+ *
+ * <p>Hits are removed from the spool after they have been sent. If the sending process terminates
+ * before the removal the hit will be sent again by the next lease holder (at-least-once
+ * delivery). A hit that fails to send {@link #MAX_ATTEMPTS} times in succession is moved to the
+ * end of the spool so that it does not block the other hits.
+ *
+ * <p>Changes to the spool are protected by a lock on a region of the file. File locks are
+ * advisory on some platforms and the spool file should only be accessed using this class.
+ *
+ * <p>This class is thread-safe. Instances in the same JVM that use the same file share the
+ * same lock.
+ */
+public final class SharedSpool implements Closeable {
+
+  /** The default capacity of the ring buffer (in bytes). */
+  public static final int DEFAULT_CAPACITY = 1 << 20;
+  /** The minimum capacity of the ring buffer (in bytes). */
+  public static final int MIN_CAPACITY = 1024;
+
+  /** The number of failed attempts to send a hit before it is moved to the end of the spool. */
+  public static final int MAX_ATTEMPTS = 3;
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(SharedSpool.class.getName());
+
+  /** The magic number of the file: "GASP". */
+  private static final int MAGIC = 0x47415350;
+  /** The file version. */
+  private static final int VERSION = 1;
+  /** The size of the file header. */
+  private static final int HEADER_SIZE = 64;
+  /** The maximum capacity of the ring buffer (in bytes). */
+  private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) & ~3;
+  /** The offset of the magic number. */
+  private static final int MAGIC_OFFSET = 0;
+  /** The offset of the version. */
+  private static final int VERSION_OFFSET = 4;
+  /** The offset of the capacity. */
+  private static final int CAPACITY_OFFSET = 8;
+  /** The offset of the head position. */
+  private static final int HEAD_OFFSET = 16;
+  /** The offset of the tail position. */
+  private static final int TAIL_OFFSET = 24;
+  /** The offset of the count of hits. */
+  private static final int COUNT_OFFSET = 32;
+  /** The offset of the count of dropped hits. */
+  private static final int DROPPED_OFFSET = 40;
+  /** The alignment of records. */
+  private static final int ALIGNMENT = 4;
+  /** The size of the record length. */
+  private static final int LENGTH_SIZE = 4;
+  /** The size of the record timestamp. */
+  private static final int TIMESTAMP_SIZE = 8;
+  /** The record length used to mark that the next record is at the start of the ring. */
+  private static final int WRAP = -1;
+  /** The position of the lock used to protect changes to the file. */
+  private static final long MUTEX_POSITION = Long.MAX_VALUE - 2;
+  /** The position of the lock used for the lease. */
+  private static final long LEASE_POSITION = Long.MAX_VALUE - 1;
+
+  /** The lock objects used within this JVM for each file. */
+  private static final ConcurrentHashMap<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+  /** The record encoder for the current thread. */
+  private static final ThreadLocal<RecordEncoder> ENCODER =
+      ThreadLocal.withInitial(RecordEncoder::new);
+
+  /** The file channel. */
+  private final FileChannel channel;
+  /** The mapped file. */
+  private final MappedByteBuffer buffer;
+  /** The capacity of the ring buffer. */
+  private final int capacity;
+  /** The lock object used for all changes to the file within this JVM. */
+  private final Object monitor;
+  /** The lock object used to send the hits one thread at a time. */
+  private final Object drainLock = new Object();
+  /** The lease (or null). */
+  private FileLock lease;
+  /** Set to true when closed. */
+  private boolean closed;
+  /** The head position after the last record that failed to send (or -1). */
+  private long failedRecord = -1;
+  /** The number of successive failed attempts to send the last record that failed. */
+  private int failedAttempts;
+
+  /**
+   * Action performed while holding the lock on the file.
+   *
+   * @param <T> the result type
+   */
+  @FunctionalInterface
+  private interface LockedAction<T> {
+    /**
+     * Run the action.
+     *
+     * @return the result
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    T run() throws IOException;
+  }
+
+  /**
+   * Encode a hit as a record. The instance is reused.
+   */
+  private static final class RecordEncoder {
+    /** The output. */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    /** The encoder. */
+    private final HitEncoder encoder = new HitEncoder(out);
+
+    /**
+     * Encode the hit and timestamp as the payload of a record.
+     *
+     * @param hit the hit
+     * @param timestamp the timestamp
+     * @return the payload
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    byte[] encode(CharSequence hit, long timestamp) throws IOException {
+      out.reset();
+      for (int i = TIMESTAMP_SIZE; i-- > 0;) {
+        out.write((int) (timestamp >>> (i * Byte.SIZE)));
+      }
+      // Each record is an independent stream
+      encoder.reset();
+      encoder.write(hit);
+      encoder.flush();
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * A record read from the spool.
+   */
+  private static final class SpoolRecord {
+    /** The payload. */
+    final byte[] payload;
+    /** The head position after the record. */
+    final long next;
+
+    /**
+     * Create a new instance.
+     *
+     * @param payload the payload
+     * @param next the head position after the record
+     */
+    SpoolRecord(byte[] payload, long next) {
+      this.payload = payload;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * <p>If the file exists it must be a spool file and the stored capacity is used.
+   *
+   * @param path the path of the file
+   * @param capacity the capacity of the ring buffer for a new file (in bytes)
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws IllegalArgumentException if the capacity is below the {@link #MIN_CAPACITY}
+   */
+  private SharedSpool(Path path, int capacity) throws IOException {
+    final Path realPath = path.toAbsolutePath().normalize();
+    monitor = MONITORS.computeIfAbsent(realPath, p -> new Object());
+    channel = FileChannel.open(realPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      synchronized (monitor) {
+        final FileLock lock = channel.lock(MUTEX_POSITION, 1, false);
+        try {
+          int size;
+          if (channel.size() == 0) {
+            size = capacity;
+            buffer = channel.map(MapMode.READ_WRITE, 0, (long) HEADER_SIZE + size);
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, size);
+          } else {
+            size = readCapacity(channel);
+            buffer = channel.map(MapMode.READ_WRITE, 0, (long) HEADER_SIZE + size);
+          }
+          this.capacity = size;
+        } finally {
+          lock.release();
+        }
+      }
+    } catch (final IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Open the spool file using the {@link #DEFAULT_CAPACITY}.
+   *
+   * @param path the path of the file
+   * @return the spool
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @see #open(Path, int)
+   */
+  public static SharedSpool open(Path path) throws IOException {
+    return open(path, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Open the spool file. The file is created if it does not exist.
+   *
+   * <p>If the file exists it must be a spool file and the stored capacity is used. The capacity
+   * is rounded up to a multiple of 4.
+   *
+   * @param path the path of the file
+   * @param capacity the capacity of the ring buffer for a new file (in bytes)
+   * @return the spool
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws IllegalArgumentException if the capacity is below the {@link #MIN_CAPACITY}
+   */
+  public static SharedSpool open(Path path, int capacity) throws IOException {
+    Objects.requireNonNull(path, "Path");
+    if (capacity < MIN_CAPACITY) {
+      throw new IllegalArgumentException("Capacity is below the minimum: " + capacity);
+    }
+    return new SharedSpool(path, align(Math.min(MAX_CAPACITY, capacity)));
+  }
+
+  /**
+   * Read the capacity from the header of an existing file.
+   *
+   * @param channel the channel
+   * @return the capacity
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static int readCapacity(FileChannel channel) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new IOException("Not a spool file");
+      }
+    }
+    if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+      throw new IOException("Not a spool file");
+    }
+    if (header.getInt(VERSION_OFFSET) != VERSION) {
+      throw new IOException("Unsupported spool version: " + header.getInt(VERSION_OFFSET));
+    }
+    final int capacity = header.getInt(CAPACITY_OFFSET);
+    if (capacity < MIN_CAPACITY || capacity > MAX_CAPACITY || capacity % ALIGNMENT != 0) {
+      throw new IOException("Invalid spool capacity: " + capacity);
+    }
+    return capacity;
+  }
+
+  /**
+   * Round up the size to the record alignment.
+   *
+   * @param size the size
+   * @return the aligned size
+   */
+  private static int align(int size) {
+    return (size + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+
+  /**
+   * Gets the capacity of the ring buffer (in bytes).
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the number of hits in the spool.
+   *
+   * @return the size
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long size() throws IOException {
+    return locked(() -> buffer.getLong(COUNT_OFFSET));
+  }
+
+  /**
+   * Gets the number of hits that were dropped because the spool was full.
+   *
+   * @return the dropped count
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long getDroppedCount() throws IOException {
+    return locked(() -> buffer.getLong(DROPPED_OFFSET));
+  }
+
+  /**
+   * Append the hit to the spool.
+   *
+   * <p>If there is not enough space the hit is dropped.
+   *
+   * @param hit the hit
+   * @param timestamp the timestamp when the hit occurred
+   * @return true if the hit was added
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public boolean append(CharSequence hit, long timestamp) throws IOException {
+    Objects.requireNonNull(hit, "Hit");
+    final Object event = HitEvents.beginSpool();
+    // Encode outside the lock
+    final byte[] payload = ENCODER.get().encode(hit, timestamp);
+    final int recordSize = payload.length > capacity ? Integer.MAX_VALUE
+        : align(LENGTH_SIZE + payload.length);
+
+    final boolean added = locked(() -> {
+      final long head = buffer.getLong(HEAD_OFFSET);
+      long tail = buffer.getLong(TAIL_OFFSET);
+      int position = (int) (tail % capacity);
+      // Records are written contiguously. Skip to the start if there is not enough space.
+      final int padding = capacity - position < recordSize ? capacity - position : 0;
+      if ((long) padding + recordSize > capacity - (tail - head)) {
+        buffer.putLong(DROPPED_OFFSET, buffer.getLong(DROPPED_OFFSET) + 1);
+        return Boolean.FALSE;
+      }
+      if (padding != 0) {
+        buffer.putInt(HEADER_SIZE + position, WRAP);
+        tail += padding;
+        position = 0;
+      }
+      final ByteBuffer data = buffer.duplicate();
+      data.position(HEADER_SIZE + position);
+      data.putInt(payload.length);
+      data.put(payload);
+      // Publish the record
+      buffer.putLong(TAIL_OFFSET, tail + recordSize);
+      buffer.putLong(COUNT_OFFSET, buffer.getLong(COUNT_OFFSET) + 1);
+      return Boolean.TRUE;
+    });
+    HitEvents.commitSpool(event, "append", added ? 1 : 0, payload.length);
+    return added;
+  }
+
+  /**
+   * Try and acquire the lease to send the hits in the spool. Returns immediately if the lease is
+   * held by another process.
+   *
+   * @return true if this instance holds the lease
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public boolean tryAcquireLease() throws IOException {
+    synchronized (monitor) {
+      checkOpen();
+      if (lease == null) {
+        try {
+          lease = channel.tryLock(LEASE_POSITION, 1, false);
+        } catch (final OverlappingFileLockException ex) {
+          // Held by another instance in this JVM
+          logger.log(Level.FINEST, "Lease held within this JVM");
+        }
+      }
+      return lease != null;
+    }
+  }
+
+  /**
+   * Checks if this instance holds the lease.
+   *
+   * @return true if the lease holder
+   */
+  public boolean isLeaseHolder() {
+    synchronized (monitor) {
+      return lease != null && lease.isValid();
+    }
+  }
+
+  /**
+   * Release the lease.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void releaseLease() throws IOException {
+    synchronized (monitor) {
+      if (lease != null) {
+        try {
+          lease.release();
+        } finally {
+          lease = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Send the hits in the spool using the dispatcher.
+   *
+   * <p>Each hit is removed after it has been processed by the dispatcher. Sending stops if the
+   * dispatcher is disabled or fails to send a hit; the failed hit remains in the spool. After
+   * {@link #MAX_ATTEMPTS} successive failures the hit is moved to the end of the spool. The hit is
+   * dropped if there is no space to move it.
+   *
+   * <p>Concurrent calls send the hits one thread at a time so that each hit is sent once.
+   *
+   * @param dispatcher the dispatcher
+   * @param maxHits the maximum number of hits to send
+   * @return the number of hits removed from the spool
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws IllegalStateException if this instance does not hold the lease
+   */
+  public int drain(HitDispatcher dispatcher, int maxHits) throws IOException {
+    Objects.requireNonNull(dispatcher, "Dispatcher");
+    if (!isLeaseHolder()) {
+      throw new IllegalStateException("Lease is not held");
+    }
+    synchronized (drainLock) {
+      return drainHits(dispatcher, maxHits);
+    }
+  }
+
+  /**
+   * Send the hits in the spool using the dispatcher. Must be called while holding the drain lock.
+   *
+   * @param dispatcher the dispatcher
+   * @param maxHits the maximum number of hits to send
+   * @return the number of hits removed from the spool
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int drainHits(HitDispatcher dispatcher, int maxHits) throws IOException {
+    final Object event = HitEvents.beginSpool();
+    int count = 0;
+    long bytes = 0;
+    while (count < maxHits && !dispatcher.isDisabled()) {
+      final SpoolRecord record = locked(this::readRecord);
+      if (record == null) {
+        break;
+      }
+      final byte[] payload = record.payload;
+      bytes += payload.length;
+      long timestamp = 0;
+      for (int i = 0; i < TIMESTAMP_SIZE; i++) {
+        timestamp = (timestamp << Byte.SIZE) | (payload[i] & 0xff);
+      }
+      String hit;
+      try (HitDecoder decoder = new HitDecoder(
+          new ByteArrayInputStream(payload, TIMESTAMP_SIZE, payload.length - TIMESTAMP_SIZE))) {
+        hit = decoder.read();
+      } catch (final IOException ex) {
+        logger.log(Level.WARNING, () -> "Discarding corrupt hit: " + ex.getMessage());
+        hit = null;
+      }
+      if (hit != null) {
+        final DispatchStatus status = dispatcher.send(hit, timestamp);
+        if (status != DispatchStatus.COMPLETE && status != DispatchStatus.IGNORED) {
+          if (failed(record)) {
+            removeHead(record);
+            if (!append(hit, timestamp)) {
+              logger.log(Level.WARNING, "Dropped hit after {0} failed attempts", MAX_ATTEMPTS);
+            }
+          }
+          break;
+        }
+        count++;
+      }
+      removeHead(record);
+    }
+    HitEvents.commitSpool(event, "drain", count, bytes);
+    return count;
+  }
+
+  /**
+   * Record a failed attempt to send the record.
+   *
+   * @param record the record
+   * @return true if the maximum number of attempts has been reached
+   */
+  private boolean failed(SpoolRecord record) {
+    synchronized (monitor) {
+      if (failedRecord != record.next) {
+        failedRecord = record.next;
+        failedAttempts = 0;
+      }
+      if (++failedAttempts < MAX_ATTEMPTS) {
+        return false;
+      }
+      failedRecord = -1;
+      return true;
+    }
+  }
+
+  /**
+   * Remove the record from the head of the spool.
+   *
+   * @param record the record
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void removeHead(SpoolRecord record) throws IOException {
+    locked(() -> {
+      buffer.putLong(HEAD_OFFSET, record.next);
+      buffer.putLong(COUNT_OFFSET, buffer.getLong(COUNT_OFFSET) - 1);
+      return null;
+    });
+  }
+
+  /**
+   * Start a task to periodically acquire the lease and send the hits in the spool.
+   *
+   * @param dispatcher the dispatcher
+   * @param executor the executor
+   * @param period the period between runs
+   * @param unit the time unit of the period
+   * @return the scheduled task
+   */
+  public ScheduledFuture<?> startSender(HitDispatcher dispatcher,
+      ScheduledExecutorService executor, long period, TimeUnit unit) {
+    Objects.requireNonNull(dispatcher, "Dispatcher");
+    return executor.scheduleWithFixedDelay(() -> {
+      try {
+        if (tryAcquireLease()) {
+          drain(dispatcher, Integer.MAX_VALUE);
+        }
+      } catch (final IOException ex) {
+        logger.log(Level.WARNING, () -> "Failed to send spooled hits: " + ex.getMessage());
+      }
+    }, 0, period, unit);
+  }
+
+  /**
+   * Read the record at the head of the spool. Must be called while holding the lock.
+   *
+   * @return the record (or null if empty)
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private SpoolRecord readRecord() throws IOException {
+    long head = buffer.getLong(HEAD_OFFSET);
+    final long tail = buffer.getLong(TAIL_OFFSET);
+    if (head == tail) {
+      return null;
+    }
+    int position = (int) (head % capacity);
+    int length = buffer.getInt(HEADER_SIZE + position);
+    if (length == WRAP) {
+      head += capacity - position;
+      position = 0;
+      length = buffer.getInt(HEADER_SIZE);
+    }
+    if (length < TIMESTAMP_SIZE || length > capacity - position - LENGTH_SIZE
+        || head + align(LENGTH_SIZE + length) > tail) {
+      // Discard the contents
+      buffer.putLong(HEAD_OFFSET, tail);
+      buffer.putLong(COUNT_OFFSET, 0);
+      throw new IOException("Corrupt spool record");
+    }
+    final byte[] payload = new byte[length];
+    final ByteBuffer data = buffer.duplicate();
+    data.position(HEADER_SIZE + position + LENGTH_SIZE);
+    data.get(payload);
+    return new SpoolRecord(payload, head + align(LENGTH_SIZE + length));
+  }
+
+  /**
+   * Run the action while holding the lock on the file.
+   *
+   * @param <T> the result type
+   * @param action the action
+   * @return the result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private <T> T locked(LockedAction<T> action) throws IOException {
+    synchronized (monitor) {
+      checkOpen();
+      final FileLock lock = channel.lock(MUTEX_POSITION, 1, false);
+      try {
+        return action.run();
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /**
+   * Check the spool is open.
+   *
+   * @throws IOException if closed
+   */
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Closed");
+    }
+  }
+
+  /**
+   * Close the spool. The lease is released.
+   *
+   * <p>The file mapping is released when the instance is garbage collected.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (monitor) {
+      if (!closed) {
+        closed = true;
+        try {
+          releaseLease();
+        } finally {
+          buffer.force();
+          channel.close();
+        }
+      }
+    }
+  }
+}
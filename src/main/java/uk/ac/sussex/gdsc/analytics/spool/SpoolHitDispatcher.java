@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.HitDispatcher;
+import uk.ac.sussex.gdsc.analytics.HttpUrlConnectionCallback;
+
+/**
+ * Dispatch hits to a {@link SharedSpool}.
+ *
+ * <p>Hits are appended to the spool and sent later by the process that holds the lease of the
+ * spool. The status {@link DispatchStatus#COMPLETE} indicates the hit was stored. If the spool is
+ * full the hit is dropped and the status is {@link DispatchStatus#ERROR}.
+ *
+ * <p>The hit is not sent so the {@link HttpUrlConnectionCallback} is never called.
+ */
+public class SpoolHitDispatcher implements HitDispatcher {
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(SpoolHitDispatcher.class.getName());
+
+  /** The spool. */
+  private final SharedSpool spool;
+
+  /** Set to true if disabled. */
+  private volatile boolean disabled;
+
+  /** The last IO exception. */
+  private final AtomicReference<IOException> lastIoException = new AtomicReference<>();
+
+  /**
+   * Create a new instance.
+   *
+   * @param spool the spool
+   */
+  public SpoolHitDispatcher(SharedSpool spool) {
+    this.spool = Objects.requireNonNull(spool, "Spool");
+  }
+
+  /**
+   * Gets the spool.
+   *
+   * @return the spool
+   */
+  public SharedSpool getSpool() {
+    return spool;
+  }
+
+  @Override
+  public DispatchStatus send(CharSequence hit, long timestamp, HttpUrlConnectionCallback callback) {
+    // Do nothing if disabled
+    if (isDisabled()) {
+      return DispatchStatus.DISABLED;
+    }
+    Objects.requireNonNull(hit, "Hit was null");
+    try {
+      if (spool.append(hit, timestamp)) {
+        return DispatchStatus.COMPLETE;
+      }
+      logger.log(Level.WARNING, "Spool is full");
+    } catch (final IOException ex) {
+      lastIoException.set(ex);
+      logger.log(Level.SEVERE, () -> String.format("Spool error: %s : %s",
+          ex.getClass().getSimpleName(), ex.getMessage()));
+    }
+    return DispatchStatus.ERROR;
+  }
+
+  @Override
+  public IOException getLastIoException() {
+    return lastIoException.get();
+  }
+
+  @Override
+  public boolean isDisabled() {
+    return disabled || lastIoException.get() != null;
+  }
+
+  @Override
+  public boolean start() {
+    lastIoException.set(null);
+    disabled = false;
+    return true;
+  }
+
+  @Override
+  public boolean stop() {
+    disabled = true;
+    return true;
+  }
+}
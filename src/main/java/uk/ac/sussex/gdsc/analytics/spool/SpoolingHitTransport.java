@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.HitBatch;
+import uk.ac.sussex.gdsc.analytics.HitTransport;
+import uk.ac.sussex.gdsc.analytics.parameters.HitParser;
+
+/**
+ * Decorate a {@link HitTransport} to store hits in a {@link SharedSpool} when they cannot be sent.
+ *
+ * <p>If the delegate transport completes exceptionally with an {@link IOException}, for example
+ * when there is no connection to the server, the hits in the payload are appended to the spool
+ * and the status is {@link DispatchStatus#COMPLETE}. If any hit does not fit in the spool the
+ * status is {@link DispatchStatus#ERROR}. Hits rejected by the server are not stored. Payloads
+ * that do not use the {@link HitBatch#DEFAULT_CONTENT_TYPE}, or that have a content encoding, are
+ * not stored and the exception is passed to the caller. This transport should decorate a
+ * {@link uk.ac.sussex.gdsc.analytics.GzipHitTransport GzipHitTransport} so that the hits are
+ * stored before they are compressed.
+ *
+ * <p>The queue time parameter of each hit is removed and converted to the timestamp stored in the
+ * spool. A hit without a valid queue time is stored with the current time. The queue time is added
+ * again when the hit is sent from the spool.
+ */
+public final class SpoolingHitTransport implements HitTransport {
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(SpoolingHitTransport.class.getName());
+
+  /** The separator between hits. */
+  private static final char NEW_LINE = '\n';
+
+  /** The separator between parameters. */
+  private static final char AND = '&';
+
+  /** The name of the queue time parameter. */
+  private static final String QUEUE_TIME = "qt";
+
+  /** The delegate transport. */
+  private final HitTransport delegate;
+
+  /** The spool. */
+  private final SharedSpool spool;
+
+  /**
+   * Create a new instance.
+   *
+   * @param delegate the delegate transport
+   * @param spool the spool
+   */
+  public SpoolingHitTransport(HitTransport delegate, SharedSpool spool) {
+    this.delegate = Objects.requireNonNull(delegate, "Transport");
+    this.spool = Objects.requireNonNull(spool, "Spool");
+  }
+
+  /**
+   * Gets the spool.
+   *
+   * @return the spool
+   */
+  public SharedSpool getSpool() {
+    return spool;
+  }
+
+  @Override
+  public CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch) {
+    final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+    // The payload is owned by the caller until the result is complete
+    delegate.send(payload.duplicate(), batch).whenComplete((status, ex) -> {
+      if (ex == null) {
+        result.complete(status);
+        return;
+      }
+      final Throwable cause =
+          ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+      // Only URL encoded hits can be stored
+      if (!(cause instanceof IOException) || !batch.isDefaultContentType()
+          || batch.getContentEncoding() != null) {
+        result.completeExceptionally(cause);
+        return;
+      }
+      try {
+        result.complete(store(payload) ? DispatchStatus.COMPLETE : DispatchStatus.ERROR);
+      } catch (final IOException ioe) {
+        ioe.addSuppressed(cause);
+        result.completeExceptionally(ioe);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Store the hits in the payload in the spool.
+   *
+   * @param payload the payload
+   * @return true if all the hits were added
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean store(ByteBuffer payload) throws IOException {
+    final long now = System.currentTimeMillis();
+    // URL encoded hits are ASCII
+    final String hits = StandardCharsets.US_ASCII.decode(payload.duplicate()).toString();
+    final HitParser parser = new HitParser();
+    final StringBuilder sb = new StringBuilder(hits.length());
+    int count = 0;
+    int added = 0;
+    int start = 0;
+    while (start < hits.length()) {
+      int end = hits.indexOf(NEW_LINE, start);
+      if (end < 0) {
+        end = hits.length();
+      }
+      // Copy all parameters except the queue time.
+      // The hit occurred now unless it has a queue time.
+      long timestamp = now;
+      sb.setLength(0);
+      parser.reset(hits, start, end);
+      while (parser.next()) {
+        if (QUEUE_TIME.equals(parser.getName())) {
+          final long queueTime = parseQueueTime(parser.getValue());
+          if (queueTime >= 0) {
+            timestamp = now - queueTime;
+          }
+        } else {
+          if (sb.length() != 0) {
+            sb.append(AND);
+          }
+          sb.append(hits, parser.getNameStart(), parser.getValueEnd());
+        }
+      }
+      if (sb.length() != 0) {
+        count++;
+        if (spool.append(sb, timestamp)) {
+          added++;
+        }
+      }
+      start = end + 1;
+    }
+    logger.log(Level.FINE, "Spooled hits after transport failure: hits={0}, added={1}",
+        new Object[] {count, added});
+    return added == count;
+  }
+
+  /**
+   * Parses the queue time.
+   *
+   * @param value the value
+   * @return the queue time (or -1 if invalid)
+   */
+  private static long parseQueueTime(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (final NumberFormatException ex) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+/**
+ * Adapt a {@link HitSubscriber} to a {@link Flow.Subscriber}.
+ *
+ * <p>This allows hits to be sent from any {@link Flow.Publisher}, e.g. a
+ * {@link java.util.concurrent.SubmissionPublisher}, with demand-based back-pressure. The publisher
+ * is limited to the number of hits buffered by the hit subscriber. The timestamp of each hit is
+ * the time it is received; a publisher of hits that occurred earlier should use
+ * {@link HitSubscriber#onNext(Parameters, long)}.
+ *
+ * <p>This class is provided in a multi-release jar for Java 11 or later.
+ *
+ * @see GoogleAnalyticsClient#newHitSubscriber(int, int)
+ */
+public final class FlowHitSubscriber implements Flow.Subscriber<Parameters> {
+
+  /** The delegate. */
+  private final HitSubscriber delegate;
+
+  /**
+   * Create a new instance.
+   *
+   * @param delegate the hit subscriber
+   */
+  public FlowHitSubscriber(HitSubscriber delegate) {
+    this.delegate = Objects.requireNonNull(delegate, "Hit subscriber");
+  }
+
+  /**
+   * Create a new instance using a hit subscriber with the default batch size and maximum batches.
+   *
+   * @param client the client
+   * @return the subscriber
+   * @see GoogleAnalyticsClient#newHitSubscriber()
+   */
+  public static FlowHitSubscriber of(GoogleAnalyticsClient client) {
+    return new FlowHitSubscriber(client.newHitSubscriber());
+  }
+
+  /**
+   * Gets the result. This is completed when all the hits have been sent after the publisher has
+   * terminated.
+   *
+   * @return the result
+   * @see HitSubscriber#getResult()
+   */
+  public CompletableFuture<BulkResult> getResult() {
+    return delegate.getResult();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription, "Subscription");
+    delegate.onSubscribe(subscription::request, subscription::cancel);
+  }
+
+  @Override
+  public void onNext(Parameters item) {
+    delegate.onNext(item);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    delegate.onError(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    delegate.onComplete();
+  }
+}
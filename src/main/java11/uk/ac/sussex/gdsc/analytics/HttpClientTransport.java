@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport hits to a URL using a {@link HttpClient}.
+ *
+ * <p>The client prefers HTTP/2. Concurrent requests to the same host are multiplexed as streams
+ * over a single connection. If the server does not support HTTP/2 then the client uses HTTP/1.1
+ * with a pool of persistent connections. Any 2xx response code is a success.
+ */
+final class HttpClientTransport implements HitTransport {
+
+  /** The logger. */
+  private static final Logger logger = Logger.getLogger(HttpClientTransport.class.getName());
+
+  /** The logger for errors. Repeated errors are suppressed. */
+  private static final RateLimitedLogger errorLogger = RateLimitedLogger.newErrorLogger(logger);
+
+  /** The client. */
+  private final HttpClient client;
+
+  /** The uri used for requests. */
+  private final URI uri;
+
+  /**
+   * Create a new instance.
+   *
+   * @param client the client
+   * @param url the url
+   * @throws IllegalArgumentException if the URL is not a valid URI
+   */
+  HttpClientTransport(HttpClient client, URL url) {
+    this.client = Objects.requireNonNull(client, "Client is null");
+    try {
+      this.uri = Objects.requireNonNull(url, "URL is null").toURI();
+    } catch (final URISyntaxException ex) {
+      throw new IllegalArgumentException("URL is not a valid URI: " + url, ex);
+    }
+  }
+
+  @Override
+  public CompletableFuture<DispatchStatus> send(ByteBuffer payload, HitBatch batch) {
+    Objects.requireNonNull(payload, "Payload was null");
+    final int length = payload.remaining();
+    final HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+        .header("Content-Type", batch.getContentType());
+    if (batch.getContentEncoding() != null) {
+      builder.header("Content-Encoding", batch.getContentEncoding());
+    }
+    final HttpRequest request = builder.POST(createBody(payload)).build();
+    return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+        .thenApply(response -> getStatus(response, batch, length));
+  }
+
+  /**
+   * Create the body of the request from the remaining bytes of the payload.
+   *
+   * @param payload the payload
+   * @return the body publisher
+   */
+  private static BodyPublisher createBody(ByteBuffer payload) {
+    if (payload.hasArray()) {
+      return HttpRequest.BodyPublishers.ofByteArray(payload.array(),
+          payload.arrayOffset() + payload.position(), payload.remaining());
+    }
+    final byte[] bytes = new byte[payload.remaining()];
+    payload.duplicate().get(bytes);
+    return HttpRequest.BodyPublishers.ofByteArray(bytes);
+  }
+
+  /**
+   * Gets the dispatch status from the response.
+   *
+   * @param response the response
+   * @param batch the batch
+   * @param bytes the number of bytes sent
+   * @return the dispatch status
+   */
+  private static DispatchStatus getStatus(HttpResponse<?> response, HitBatch batch, int bytes) {
+    final int responseCode = response.statusCode();
+    if (HttpStatusCodes.isSuccess(responseCode)) {
+      if (logger.isLoggable(Level.FINEST)) {
+        logger.log(Level.FINEST, "Response: version={0}", response.version());
+      }
+      return DispatchStatus.COMPLETE;
+    }
+    // Log structured fields and not the payload which may be large
+    if (errorLogger.isLoggable(Level.WARNING)) {
+      errorLogger.log(Level.WARNING, "response",
+          "Failed to send hits: hits={0}, bytes={1}, responseCode={2}", batch.getHitCount(),
+          bytes, responseCode);
+    }
+    return DispatchStatus.ERROR;
+  }
+}
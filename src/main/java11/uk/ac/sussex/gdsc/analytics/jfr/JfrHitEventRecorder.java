@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jfr;
+
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+
+/**
+ * Record events of the hit pipeline using Java Flight Recorder.
+ *
+ * <p>An event is only created if the event type is enabled.
+ */
+final class JfrHitEventRecorder implements HitEventRecorder {
+
+  /** Used to check if the build event is enabled. */
+  private static final HitBuildEvent BUILD = new HitBuildEvent();
+  /** Used to check if the encode event is enabled. */
+  private static final HitEncodeEvent ENCODE = new HitEncodeEvent();
+  /** Used to check if the enqueue event is enabled. */
+  private static final HitEnqueueEvent ENQUEUE = new HitEnqueueEvent();
+  /** Used to check if the dispatch event is enabled. */
+  private static final HitDispatchEvent DISPATCH = new HitDispatchEvent();
+  /** Used to check if the spool event is enabled. */
+  private static final HitSpoolEvent SPOOL = new HitSpoolEvent();
+
+  @Override
+  public Object beginBuild() {
+    if (!BUILD.isEnabled()) {
+      return null;
+    }
+    final HitBuildEvent event = new HitBuildEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void commitBuild(Object event, HitType hitType) {
+    final HitBuildEvent e = (HitBuildEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.hitType = hitType == null ? null : hitType.toString();
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginEncode() {
+    if (!ENCODE.isEnabled()) {
+      return null;
+    }
+    final HitEncodeEvent event = new HitEncodeEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void commitEncode(Object event, CharSequence hit) {
+    final HitEncodeEvent e = (HitEncodeEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.hitType = HitEvents.getHitType(hit);
+      e.size = hit.length();
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginEnqueue() {
+    if (!ENQUEUE.isEnabled()) {
+      return null;
+    }
+    final HitEnqueueEvent event = new HitEnqueueEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void commitEnqueue(Object event, DispatchStatus status, int pending) {
+    final HitEnqueueEvent e = (HitEnqueueEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.accepted = status == null;
+      e.status = status == null ? null : status.name();
+      e.pending = pending;
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginDispatch() {
+    if (!DISPATCH.isEnabled()) {
+      return null;
+    }
+    final HitDispatchEvent event = new HitDispatchEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void commitDispatch(Object event, CharSequence hit, DispatchStatus status) {
+    final HitDispatchEvent e = (HitDispatchEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      if (hit != null) {
+        e.hitType = HitEvents.getHitType(hit);
+        e.size = hit.length();
+      }
+      e.status = status == null ? null : status.name();
+      e.commit();
+    }
+  }
+
+  @Override
+  public Object beginSpool() {
+    if (!SPOOL.isEnabled()) {
+      return null;
+    }
+    final HitSpoolEvent event = new HitSpoolEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void commitSpool(Object event, String operation, int hits, long bytes) {
+    final HitSpoolEvent e = (HitSpoolEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.operation = operation;
+      e.hits = hits;
+      e.size = bytes;
+      e.commit();
+    }
+  }
+}
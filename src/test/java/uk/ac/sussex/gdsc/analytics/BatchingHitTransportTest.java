@@ -0,0 +1,206 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class BatchingHitTransportTest {
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * A transport that records the payloads. The result of each send is completed by the test.
+   */
+  private static class RecordingTransport implements HitTransport {
+    final List<String> payloads = new ArrayList<>();
+    final List<Integer> counts = new ArrayList<>();
+    final List<CompletableFuture<DispatchStatus>> results = new ArrayList<>();
+
+    @Override
+    public synchronized CompletableFuture<DispatchStatus> send(ByteBuffer payload,
+        HitBatch batch) {
+      payloads.add(StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+      counts.add(batch.getHitCount());
+      final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+      results.add(result);
+      notifyAll();
+      return result;
+    }
+
+    synchronized void await(int size) throws InterruptedException {
+      while (payloads.size() < size) {
+        wait();
+      }
+    }
+  }
+
+  private static ByteBuffer encode(String hit) {
+    return ByteBuffer.wrap(hit.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @BeforeEach
+  void setup() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void testConstructor() {
+    final HitTransport delegate = new RecordingTransport();
+    final BatchingHitTransport transport =
+        new BatchingHitTransport(delegate, scheduler, 20, 1, TimeUnit.SECONDS);
+    Assertions.assertEquals(20, transport.getMaxHits());
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new BatchingHitTransport(null, scheduler, 20, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new BatchingHitTransport(delegate, null, 20, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new BatchingHitTransport(delegate, scheduler, 0, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new BatchingHitTransport(delegate, scheduler, 21, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new BatchingHitTransport(delegate, scheduler, 20, -1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testSendFullBatch() {
+    final RecordingTransport delegate = new RecordingTransport();
+    final BatchingHitTransport transport =
+        new BatchingHitTransport(delegate, scheduler, 3, 1, TimeUnit.HOURS);
+    final ByteBuffer payload = encode("v=1&t=event");
+    final CompletableFuture<DispatchStatus> r1 = transport.send(payload, HitBatch.single());
+    // The payload is copied
+    Assertions.assertEquals(0, payload.position());
+    final CompletableFuture<DispatchStatus> r2 =
+        transport.send(encode("v=1&t=pageview"), HitBatch.single());
+    Assertions.assertTrue(delegate.payloads.isEmpty());
+    final CompletableFuture<DispatchStatus> r3 =
+        transport.send(encode("v=1&t=item"), HitBatch.single());
+    Assertions.assertEquals(Arrays.asList("v=1&t=event\nv=1&t=pageview\nv=1&t=item"),
+        delegate.payloads);
+    Assertions.assertEquals(Arrays.asList(3), delegate.counts);
+    Assertions.assertFalse(r1.isDone());
+    delegate.results.get(0).complete(DispatchStatus.COMPLETE);
+    Assertions.assertEquals(DispatchStatus.COMPLETE, r1.join());
+    Assertions.assertEquals(DispatchStatus.COMPLETE, r2.join());
+    Assertions.assertEquals(DispatchStatus.COMPLETE, r3.join());
+
+    // Flush a partial batch
+    final CompletableFuture<DispatchStatus> r4 = transport.send(encode("a"), HitBatch.single());
+    transport.flush();
+    // Nothing to flush
+    transport.flush();
+    Assertions.assertEquals(Arrays.asList(3, 1), delegate.counts);
+    Assertions.assertEquals("a", delegate.payloads.get(1));
+    final IOException exception = new IOException("No connection");
+    delegate.results.get(1).completeExceptionally(exception);
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class, r4::join);
+    Assertions.assertSame(exception, ex.getCause());
+  }
+
+  @Test
+  void testSendAfterLinger() throws InterruptedException {
+    final RecordingTransport delegate = new RecordingTransport();
+    final BatchingHitTransport transport =
+        new BatchingHitTransport(delegate, scheduler, 20, 10, TimeUnit.MILLISECONDS);
+    transport.send(encode("a"), HitBatch.single());
+    transport.send(encode("b"), HitBatch.single());
+    delegate.await(1);
+    Assertions.assertEquals(Arrays.asList("a\nb"), delegate.payloads);
+
+    // Linger when the scheduler is shutdown sends immediately
+    scheduler.shutdown();
+    transport.send(encode("c"), HitBatch.single());
+    Assertions.assertEquals(Arrays.asList("a\nb", "c"), delegate.payloads);
+  }
+
+  @Test
+  void testSendLargePayloads() {
+    final RecordingTransport delegate = new RecordingTransport();
+    final BatchingHitTransport transport =
+        new BatchingHitTransport(delegate, scheduler, 20, 1, TimeUnit.HOURS);
+
+    // Already a batch
+    transport.send(encode("a\nb"), HitBatch.of(2));
+    // Encoded
+    transport.send(encode("a"), HitBatch.single().withContentEncoding("gzip"));
+    // Not URL encoded hits
+    transport.send(encode("{}"), HitBatch.single().withContentType("application/json"));
+    // Hit too large
+    final char[] chars = new char[BatchingHitTransport.MAX_HIT_BYTES + 1];
+    Arrays.fill(chars, 'x');
+    transport.send(encode(new String(chars)), HitBatch.single());
+    Assertions.assertEquals(Arrays.asList(2, 1, 1, 1), delegate.counts);
+
+    // Overflow the batch bytes
+    // Two hits with the separator fit in a batch
+    final String hit = new String(chars, 0, (BatchingHitTransport.MAX_BATCH_BYTES - 1) / 2);
+    transport.send(encode(hit), HitBatch.single());
+    transport.send(encode(hit), HitBatch.single());
+    Assertions.assertEquals(4, delegate.counts.size());
+    transport.send(encode(hit), HitBatch.single());
+    Assertions.assertEquals(Arrays.asList(2, 1, 1, 1, 2), delegate.counts);
+    Assertions.assertEquals(hit + "\n" + hit, delegate.payloads.get(4));
+    transport.flush();
+    Assertions.assertEquals(Arrays.asList(2, 1, 1, 1, 2, 1), delegate.counts);
+    Assertions.assertEquals(hit, delegate.payloads.get(5));
+  }
+
+  @Test
+  void testSendWithRuntimeException() {
+    final IllegalStateException exception = new IllegalStateException();
+    final BatchingHitTransport transport = new BatchingHitTransport((payload, batch) -> {
+      throw exception;
+    }, scheduler, 1, 1, TimeUnit.HOURS);
+    final CompletableFuture<DispatchStatus> result =
+        transport.send(encode("a"), HitBatch.single());
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class, result::join);
+    Assertions.assertSame(exception, ex.getCause());
+  }
+}
@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class ClientSamplerTest {
+
+  @Test
+  void testRate() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ClientSampler(-0.1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ClientSampler(1.1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ClientSampler(Double.NaN));
+    final ClientSampler sampler = new ClientSampler(0.5);
+    Assertions.assertEquals(0.5, sampler.getRate());
+    Assertions.assertEquals(0.5, sampler.getEffectiveRate());
+    Assertions.assertTrue(sampler.isSampled(0.49));
+    Assertions.assertFalse(sampler.isSampled(0.5));
+    sampler.setRate(0);
+    Assertions.assertFalse(sampler.isSampled(0));
+    sampler.setRate(1);
+    Assertions.assertTrue(sampler.isSampled(Math.nextDown(1.0)));
+  }
+
+  @Test
+  void testSamplePoint() {
+    final String key = "35009a79-1a05-49d7-b876-2b884d0f825b";
+    final double point = ClientSampler.getSamplePoint(key);
+    Assertions.assertEquals(point, ClientSampler.getSamplePoint(new String(key.toCharArray())));
+    // Points should be uniform
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    final int n = 10000;
+    final int[] counts = new int[10];
+    for (int i = 0; i < n; i++) {
+      final double p = ClientSampler.getSamplePoint(Long.toString(rng.nextLong()));
+      Assertions.assertTrue(p >= 0 && p < 1);
+      counts[(int) (p * counts.length)]++;
+    }
+    // Each bin has an expected count of 1000 and standard deviation of 30
+    for (final int count : counts) {
+      Assertions.assertTrue(count > 850 && count < 1150, () -> "Count " + count);
+    }
+  }
+
+  @Test
+  void testQueueLimits() {
+    final ClientSampler sampler = new ClientSampler(0.8);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> sampler.setQueueLimit(0, 0.5));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> sampler.setQueueLimit(1, 2));
+    sampler.setQueueLimit(10, 0.5);
+    sampler.setQueueLimit(5, 0.6);
+    sampler.setQueueLimit(20, 0.1);
+    Assertions.assertEquals(0, sampler.getQueueDepth());
+    Assertions.assertEquals(0.8, sampler.getEffectiveRate());
+    assertEffectiveRate(sampler, 4, 0.8);
+    assertEffectiveRate(sampler, 5, 0.6);
+    assertEffectiveRate(sampler, 9, 0.6);
+    assertEffectiveRate(sampler, 10, 0.5);
+    assertEffectiveRate(sampler, 25, 0.1);
+    // Rate is lower than the limit
+    sampler.setRate(0.05);
+    assertEffectiveRate(sampler, 25, 0.05);
+    sampler.setRate(0.8);
+    // Update
+    sampler.setQueueLimit(10, 0.4);
+    assertEffectiveRate(sampler, 10, 0.4);
+    // Remove
+    sampler.setQueueLimit(10, 1);
+    assertEffectiveRate(sampler, 10, 0.6);
+    sampler.setQueueLimit(5, 1);
+    assertEffectiveRate(sampler, 10, 0.8);
+    assertEffectiveRate(sampler, 20, 0.1);
+    // Remove a missing limit
+    sampler.setQueueLimit(7, 1);
+    assertEffectiveRate(sampler, 20, 0.1);
+    // A higher threshold does not increase the rate
+    sampler.setQueueLimit(30, 0.5);
+    assertEffectiveRate(sampler, 30, 0.1);
+  }
+
+  private static void assertEffectiveRate(ClientSampler sampler, int depth, double expected) {
+    while (sampler.getQueueDepth() < depth) {
+      sampler.queued();
+    }
+    while (sampler.getQueueDepth() > depth) {
+      sampler.dequeued();
+    }
+    Assertions.assertEquals(expected, sampler.getEffectiveRate());
+  }
+}
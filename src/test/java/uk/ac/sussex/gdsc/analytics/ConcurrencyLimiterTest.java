@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class ConcurrencyLimiterTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  void testConstructorThrows() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(0, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(2, 1));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new ConcurrencyLimiter(1, 2, 1, 0.5));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new ConcurrencyLimiter(1, 2, Double.NaN, 0.5));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new ConcurrencyLimiter(1, 2, 2, 0));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new ConcurrencyLimiter(1, 2, 2, 1));
+  }
+
+  @Test
+  void testDefaults() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+    Assertions.assertEquals(ConcurrencyLimiter.DEFAULT_MIN_LIMIT, limiter.getMinLimit());
+    Assertions.assertEquals(ConcurrencyLimiter.DEFAULT_MAX_LIMIT, limiter.getMaxLimit());
+    Assertions.assertEquals(4, limiter.getLimit());
+    Assertions.assertEquals(0, limiter.getInFlight());
+    Assertions.assertEquals(Long.MAX_VALUE, limiter.getBaseline());
+    // Initial limit is clipped to the range
+    Assertions.assertEquals(2, new ConcurrencyLimiter(1, 2).getLimit());
+    Assertions.assertEquals(8, new ConcurrencyLimiter(8, 16).getLimit());
+  }
+
+  @Test
+  void testTryAcquire() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2);
+    Assertions.assertTrue(limiter.tryAcquire());
+    Assertions.assertTrue(limiter.tryAcquire());
+    Assertions.assertFalse(limiter.tryAcquire());
+    Assertions.assertEquals(2, limiter.getInFlight());
+    limiter.release();
+    Assertions.assertEquals(1, limiter.getInFlight());
+    Assertions.assertTrue(limiter.tryAcquire());
+  }
+
+  @Test
+  void testIncreaseWhenLatencyIsStable() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10);
+    for (int i = 0; i < 1000; i++) {
+      // Saturate the limit
+      while (limiter.tryAcquire()) {
+        // Acquire all
+      }
+      limiter.release(10 * MS, false);
+      // Release the remaining without a sample
+      while (limiter.getInFlight() != 0) {
+        limiter.release();
+      }
+    }
+    Assertions.assertEquals(10, limiter.getLimit());
+    Assertions.assertEquals(10 * MS, limiter.getBaseline());
+  }
+
+  @Test
+  void testNoIncreaseWhenUnderUsed() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10);
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertTrue(limiter.tryAcquire());
+      limiter.release(10 * MS, false);
+    }
+    Assertions.assertEquals(4, limiter.getLimit());
+  }
+
+  @Test
+  void testDecreaseOnLatencyAndDrops() {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10);
+    Assertions.assertTrue(limiter.tryAcquire());
+    limiter.release(10 * MS, false);
+    Assertions.assertEquals(4, limiter.getLimit());
+    // Latency above the tolerance
+    Assertions.assertTrue(limiter.tryAcquire());
+    limiter.release(21 * MS, false);
+    Assertions.assertEquals(3, limiter.getLimit());
+    // Latency within the tolerance
+    Assertions.assertTrue(limiter.tryAcquire());
+    limiter.release(19 * MS, false);
+    Assertions.assertEquals(3, limiter.getLimit());
+    // Dropped
+    for (int i = 0; i < 20; i++) {
+      Assertions.assertTrue(limiter.tryAcquire());
+      limiter.release(MS, true);
+    }
+    Assertions.assertEquals(2, limiter.getLimit());
+    // Dropped requests are not used for the baseline
+    Assertions.assertEquals(10 * MS, limiter.getBaseline());
+  }
+
+  @Test
+  void testDecreaseOncePerWindow() throws InterruptedException {
+    final int n = 8;
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, n, 2, 0.5);
+    for (int i = 0; i < n; i++) {
+      limiter.acquire();
+      limiter.release(10 * MS, false);
+    }
+    Assertions.assertEquals(4, limiter.getLimit());
+    // Raise the limit using concurrent requests
+    while (limiter.getLimit() < n) {
+      while (limiter.tryAcquire()) {
+        // Acquire all
+      }
+      while (limiter.getInFlight() != 0) {
+        limiter.release(10 * MS, false);
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      Assertions.assertTrue(limiter.tryAcquire());
+    }
+    // Concurrent slow responses
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] threads = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      final boolean dropped = i % 2 == 0;
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+          limiter.release(100 * MS, dropped);
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    Assertions.assertEquals(0, limiter.getInFlight());
+    Assertions.assertEquals(n / 2, limiter.getLimit());
+    // The next window can decrease the limit
+    Assertions.assertTrue(limiter.tryAcquire());
+    limiter.release(100 * MS, false);
+    Assertions.assertEquals(n / 4, limiter.getLimit());
+  }
+
+  @Test
+  void testAcquireWaits() throws InterruptedException {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1);
+    limiter.acquire();
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final Thread thread = new Thread(() -> {
+      try {
+        limiter.acquire();
+        acquired.countDown();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    thread.start();
+    Assertions.assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+    limiter.release(MS, false);
+    Assertions.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, limiter.getInFlight());
+    thread.join();
+  }
+}
@@ -37,6 +37,10 @@ import java.net.Proxy;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.assertj.core.api.Assertions;
@@ -226,4 +230,46 @@ class DefaultHitDispatcherTest {
     Assertions.assertThat(hitDispatcher.isDisabled()).isTrue();
     Assertions.assertThat(hitDispatcher.getLastIoException()).isSameAs(exception);
   }
+
+  @Test
+  void testSendWithTransport() {
+    final List<String> hits = new ArrayList<>();
+    final AtomicReference<CompletableFuture<DispatchStatus>> result = new AtomicReference<>(
+        CompletableFuture.completedFuture(DispatchStatus.COMPLETE));
+    final HitTransport transport = (payload, batch) -> {
+      Assertions.assertThat(batch.getHitCount()).isEqualTo(1);
+      hits.add(StandardCharsets.UTF_8.decode(payload).toString());
+      return result.get();
+    };
+    final DefaultHitDispatcher hitDispatcher = new DefaultHitDispatcher(transport);
+    Assertions.assertThat(hitDispatcher.getTransport()).isSameAs(transport);
+
+    Assertions.assertThat(hitDispatcher.send("dummy", 0)).isEqualTo(DispatchStatus.COMPLETE);
+    Assertions.assertThat(hitDispatcher.send("dummy", System.currentTimeMillis()))
+        .isEqualTo(DispatchStatus.COMPLETE);
+    Assertions.assertThat(hits).hasSize(2);
+    Assertions.assertThat(hits.get(0)).isEqualTo("dummy");
+    Assertions.assertThat(hits.get(1)).startsWith("dummy&qt=");
+
+    // Rejected by the server
+    result.set(CompletableFuture.completedFuture(DispatchStatus.ERROR));
+    Assertions.assertThat(hitDispatcher.send("dummy", 0)).isEqualTo(DispatchStatus.ERROR);
+    Assertions.assertThat(hitDispatcher.isDisabled()).isFalse();
+
+    // Unexpected failure
+    CompletableFuture<DispatchStatus> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("Test failed transport"));
+    result.set(failed);
+    Assertions.assertThat(hitDispatcher.send("dummy", 0)).isEqualTo(DispatchStatus.ERROR);
+    Assertions.assertThat(hitDispatcher.isDisabled()).isFalse();
+
+    // Transport failure
+    final IOException exception = new IOException("Test failed transport");
+    failed = new CompletableFuture<>();
+    failed.completeExceptionally(exception);
+    result.set(failed);
+    Assertions.assertThat(hitDispatcher.send("dummy", 0)).isEqualTo(DispatchStatus.ERROR);
+    Assertions.assertThat(hitDispatcher.isDisabled()).isTrue();
+    Assertions.assertThat(hitDispatcher.getLastIoException()).isSameAs(exception);
+  }
 }
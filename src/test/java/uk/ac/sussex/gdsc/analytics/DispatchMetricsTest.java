@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class DispatchMetricsTest {
+
+  @Test
+  void testRecord() {
+    final DispatchMetrics metrics = new DispatchMetrics();
+    metrics.recordStatus(DispatchStatus.IGNORED);
+    metrics.recordStatus(DispatchStatus.DISABLED);
+    metrics.recordSubmitted();
+    metrics.recordSubmitted();
+    metrics.recordSubmitted();
+    Assertions.assertEquals(3, metrics.getQueuedCount());
+    metrics.recordCancelled();
+    metrics.recordStarted(100);
+    metrics.recordStarted(300);
+    Assertions.assertEquals(0, metrics.getQueuedCount());
+    Assertions.assertEquals(2, metrics.getInFlightCount());
+    metrics.recordCompleted(DispatchStatus.COMPLETE, 42, 1000);
+    metrics.recordCompleted(DispatchStatus.ERROR, 13, 3000);
+    Assertions.assertEquals(0, metrics.getInFlightCount());
+
+    Assertions.assertEquals(1, metrics.getCompleteCount());
+    Assertions.assertEquals(1, metrics.getErrorCount());
+    Assertions.assertEquals(1, metrics.getIgnoredCount());
+    Assertions.assertEquals(1, metrics.getShutdownCount());
+    Assertions.assertEquals(1, metrics.getDisabledCount());
+    Assertions.assertEquals(42, metrics.getBytesSent());
+    Assertions.assertEquals(200, metrics.getQueueTimeMean());
+    Assertions.assertEquals(300, metrics.getQueueTimeMax());
+    Assertions.assertTrue(metrics.getQueueTimeP50() >= 100);
+    Assertions.assertEquals(300, metrics.getQueueTimeP99());
+    Assertions.assertEquals(2000, metrics.getSendTimeMean());
+    Assertions.assertEquals(3000, metrics.getSendTimeMax());
+    Assertions.assertTrue(metrics.getSendTimeP50() >= 1000);
+    Assertions.assertEquals(3000, metrics.getSendTimeP99());
+    Assertions.assertEquals(2, metrics.getQueueTime().getCount());
+    Assertions.assertEquals(2, metrics.getSendTime().getCount());
+
+    metrics.reset();
+    for (final DispatchStatus status : DispatchStatus.values()) {
+      Assertions.assertEquals(0, metrics.getCount(status));
+    }
+    Assertions.assertEquals(0, metrics.getBytesSent());
+    Assertions.assertEquals(0, metrics.getQueueTime().getCount());
+    Assertions.assertEquals(0, metrics.getSendTime().getCount());
+  }
+
+  @Test
+  void testRegister() throws JMException {
+    final DispatchMetrics metrics = new DispatchMetrics();
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = metrics.register();
+    try {
+      Assertions.assertEquals(DispatchMetrics.DEFAULT_OBJECT_NAME, name.toString());
+      metrics.recordStatus(DispatchStatus.COMPLETE);
+      Assertions.assertEquals(1L, server.getAttribute(name, "CompleteCount"));
+      server.invoke(name, "reset", null, null);
+      Assertions.assertEquals(0L, server.getAttribute(name, "CompleteCount"));
+    } finally {
+      DispatchMetrics.unregister(name);
+    }
+    Assertions.assertFalse(server.isRegistered(name));
+
+    final ObjectName name2 = new ObjectName("test:type=DispatchMetrics,name=custom");
+    Assertions.assertEquals(name2, metrics.register(name2));
+    Assertions.assertTrue(server.isRegistered(name2));
+    DispatchMetrics.unregister(name2);
+  }
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+/**
+ * Test the Flow subscriber. The Flow API requires Java 9 so the test uses reflection to allow
+ * compilation on Java 8.
+ */
+@SuppressWarnings("javadoc")
+class FlowHitSubscriberTest {
+
+  private static Class<?> forName(String name) {
+    try {
+      return Class.forName(name);
+    } catch (final ClassNotFoundException ex) {
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  void testSubmissionPublisher() throws ReflectiveOperationException {
+    final Class<?> subscriberClass = forName("uk.ac.sussex.gdsc.analytics.FlowHitSubscriber");
+    final Class<?> publisherClass = forName("java.util.concurrent.SubmissionPublisher");
+    Assumptions.assumeTrue(subscriberClass != null && publisherClass != null);
+
+    final AtomicInteger count = new AtomicInteger();
+    final HitDispatcher dispatcher = new HitDispatcher() {
+      @Override
+      public DispatchStatus send(CharSequence hit, long timestamp,
+          HttpUrlConnectionCallback callback) {
+        count.getAndIncrement();
+        return DispatchStatus.COMPLETE;
+      }
+
+      @Override
+      public IOException getLastIoException() {
+        return null;
+      }
+
+      @Override
+      public boolean isDisabled() {
+        return false;
+      }
+
+      @Override
+      public boolean start() {
+        return true;
+      }
+
+      @Override
+      public boolean stop() {
+        return true;
+      }
+    };
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder("UA-12345-6")
+          .setHitDispatcher(dispatcher).setExecutorService(executor).build();
+      final Object subscriber = subscriberClass.getMethod("of", GoogleAnalyticsClient.class)
+          .invoke(null, ga);
+      // A small buffer to exercise back-pressure of the publisher
+      try (AutoCloseable publisher = (AutoCloseable) publisherClass
+          .getConstructor(Executor.class, int.class).newInstance(executor, 4)) {
+        publisherClass.getMethod("subscribe", forName("java.util.concurrent.Flow$Subscriber"))
+            .invoke(publisher, subscriber);
+        for (int i = 0; i < 500; i++) {
+          publisherClass.getMethod("submit", Object.class).invoke(publisher,
+              Parameters.newBuilder().addEventValue(i).build());
+        }
+      } catch (final Exception ex) {
+        throw new AssertionError(ex);
+      }
+      final CompletableFuture<BulkResult> result =
+          (CompletableFuture<BulkResult>) subscriberClass.getMethod("getResult").invoke(subscriber);
+      Assertions.assertEquals(500, result.join().getSent());
+      Assertions.assertEquals(500, count.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -32,20 +32,26 @@ package uk.ac.sussex.gdsc.analytics;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import uk.ac.sussex.gdsc.analytics.GoogleAnalyticsClient.Builder;
 import uk.ac.sussex.gdsc.analytics.parameters.CustomParameterSpecification;
 import uk.ac.sussex.gdsc.analytics.parameters.HitType;
@@ -60,6 +66,7 @@ import uk.ac.sussex.gdsc.analytics.parameters.ProtocolVersionParameter;
 import uk.ac.sussex.gdsc.analytics.parameters.SessionControlParameter;
 import uk.ac.sussex.gdsc.analytics.parameters.UrlEncoderHelper;
 import uk.ac.sussex.gdsc.analytics.parameters.ValueType;
+import uk.ac.sussex.gdsc.analytics.spool.SharedSpool;
 
 @SuppressWarnings("javadoc")
 class GoogleAnalyticsClientTest {
@@ -486,6 +493,496 @@ class GoogleAnalyticsClientTest {
         content.getResponseCode(), content.getBytesAsText()));
   }
 
+  /**
+   * Dispatcher that waits for a gate to open before sending.
+   */
+  private static class GatedHitDispatcher implements HitDispatcher {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    final List<String> hits = new ArrayList<>();
+    final List<Long> timestamps = new ArrayList<>();
+
+    @Override
+    public DispatchStatus send(CharSequence hit, long timestamp,
+        HttpUrlConnectionCallback callback) {
+      started.countDown();
+      try {
+        gate.await();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return DispatchStatus.ERROR;
+      }
+      synchronized (this) {
+        hits.add(hit.toString());
+        timestamps.add(timestamp);
+      }
+      return DispatchStatus.COMPLETE;
+    }
+
+    @Override
+    public IOException getLastIoException() {
+      return null;
+    }
+
+    @Override
+    public boolean isDisabled() {
+      return false;
+    }
+
+    @Override
+    public boolean start() {
+      return true;
+    }
+
+    @Override
+    public boolean stop() {
+      return true;
+    }
+
+    synchronized int size() {
+      return hits.size();
+    }
+  }
+
+  @Test
+  void testFlush() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    try {
+      final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService).build();
+      Assertions.assertEquals(0, ga.flush(0, TimeUnit.SECONDS).getTotal());
+      ga.exception().send();
+      ga.exception().send();
+      Assertions.assertEquals(2, ga.getPendingCount());
+      FlushResult result = ga.flush(10, TimeUnit.MILLISECONDS);
+      Assertions.assertEquals(2, result.getPending());
+      Assertions.assertEquals(2, result.getTotal());
+      // Open the gate after the flush has started
+      final Thread opener = new Thread(() -> {
+        try {
+          Thread.sleep(50);
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        hitDispatcher.gate.countDown();
+      });
+      opener.start();
+      result = ga.flush(10, TimeUnit.SECONDS);
+      opener.join();
+      Assertions.assertEquals(2, result.getSent());
+      Assertions.assertEquals(0, result.getDropped());
+      Assertions.assertEquals(0, result.getPersisted());
+      Assertions.assertEquals(0, result.getPending());
+      Assertions.assertEquals("sent=2, dropped=0, persisted=0, pending=0", result.toString());
+      Assertions.assertEquals(0, ga.getPendingCount());
+      // Still accepts hits
+      Assertions.assertFalse(ga.isClosed());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, ga.exception().send().get());
+      Assertions.assertEquals(0, ga.getPendingCount());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testClose() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    try {
+      final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService).build();
+      final Future<DispatchStatus> f1 = ga.exception().send();
+      final Future<DispatchStatus> f2 = ga.exception().send();
+      final Future<DispatchStatus> f3 = ga.exception().send();
+      // Wait for the first hit to start
+      Assertions.assertTrue(hitDispatcher.started.await(5, TimeUnit.SECONDS));
+      final FlushResult result = ga.close(10, TimeUnit.MILLISECONDS);
+      Assertions.assertTrue(ga.isClosed());
+      Assertions.assertTrue(ga.isShutdown());
+      // The first hit is running, the others are dropped
+      Assertions.assertEquals(0, result.getSent());
+      Assertions.assertEquals(2, result.getDropped());
+      Assertions.assertEquals(1, result.getPending());
+      Assertions.assertEquals(DispatchStatus.SHUTDOWN, ga.exception().send().get());
+      hitDispatcher.gate.countDown();
+      Assertions.assertEquals(DispatchStatus.COMPLETE, f1.get());
+      Assertions.assertEquals(DispatchStatus.SHUTDOWN, f2.get());
+      Assertions.assertEquals(DispatchStatus.SHUTDOWN, f3.get());
+      Assertions.assertEquals(1, hitDispatcher.size());
+      // Repeat close
+      Assertions.assertEquals(0, ga.close(0, TimeUnit.SECONDS).getTotal());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSendWhenRejected() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    // A single thread with no queue rejects tasks while busy
+    final ExecutorService executorService =
+        new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+    final DispatchMetrics metrics = new DispatchMetrics();
+    try {
+      final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService).setMetrics(metrics)
+          .build();
+      final Future<DispatchStatus> first = ga.exception().send();
+      Assertions.assertTrue(hitDispatcher.started.await(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(DispatchStatus.SHUTDOWN, ga.exception().send().get());
+      // The rejected hit is not pending
+      Assertions.assertEquals(1, ga.getPendingCount());
+      hitDispatcher.gate.countDown();
+      Assertions.assertEquals(DispatchStatus.COMPLETE, first.get());
+      final FlushResult result = ga.flush(10, TimeUnit.SECONDS);
+      Assertions.assertEquals(0, result.getPending());
+      Assertions.assertEquals(0, ga.getPendingCount());
+      Assertions.assertEquals(0, metrics.getQueuedCount());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSendWhenRejectedWithPriorityLanes() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    // A single thread with no queue rejects tasks while busy
+    final ExecutorService executorService =
+        new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+    final PriorityLanes lanes = PriorityLanes.newBuilder().build();
+    try {
+      final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService)
+          .setPriorityLanes(lanes).build();
+      final Future<DispatchStatus> first = ga.exception().send();
+      Assertions.assertTrue(hitDispatcher.started.await(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(DispatchStatus.SHUTDOWN, ga.exception().send().get());
+      // The rejected hit is not queued or pending
+      Assertions.assertEquals(0, lanes.size());
+      Assertions.assertEquals(1, ga.getPendingCount());
+      hitDispatcher.gate.countDown();
+      Assertions.assertEquals(DispatchStatus.COMPLETE, first.get());
+      Assertions.assertEquals(0, ga.flush(10, TimeUnit.SECONDS).getPending());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testCloseStopsSendingSpooledHits(@TempDir Path dir)
+      throws InterruptedException, IOException {
+    final Path path = dir.resolve("spool");
+    try (SharedSpool spool = SharedSpool.open(path)) {
+      for (int i = 1; i <= 3; i++) {
+        Assertions.assertTrue(spool.append("v=1&t=event&ev=" + i, i));
+      }
+    }
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    try {
+      final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService)
+          .setSpoolPath(path).build();
+      Assertions.assertTrue(hitDispatcher.started.await(5, TimeUnit.SECONDS));
+      // Open the gate after the close has started
+      final Thread opener = new Thread(() -> {
+        try {
+          Thread.sleep(50);
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        hitDispatcher.gate.countDown();
+      });
+      opener.start();
+      ga.close(10, TimeUnit.MILLISECONDS);
+      opener.join();
+      // The hit being sent is removed; the rest remain for the next client
+      Assertions.assertEquals(1, hitDispatcher.size());
+      try (SharedSpool spool = SharedSpool.open(path)) {
+        Assertions.assertEquals(2, spool.size());
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSpoolWithShutdownExecutorService(@TempDir Path dir) throws InterruptedException {
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    executorService.shutdown();
+    final GoogleAnalyticsClient ga = GoogleAnalyticsClient.newBuilder(trackingId)
+        .setHitDispatcher(new GatedHitDispatcher()).setExecutorService(executorService)
+        .setSpoolPath(dir.resolve("spool")).build();
+    Assertions.assertEquals(0, ga.close(1, TimeUnit.SECONDS).getTotal());
+  }
+
+  @Test
+  void testCloseWithSpool(@TempDir Path dir) throws InterruptedException, IOException {
+    final Path path = dir.resolve("spool");
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    // Block the executor so all hits are pending
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    executorService.submit(() -> {
+      blocked.await();
+      return null;
+    });
+    try {
+      final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService)
+          .setSpoolPath(path).setShutdownTimeout(50);
+      Assertions.assertSame(path, builder.getSpoolPath());
+      Assertions.assertEquals(50, builder.getShutdownTimeout());
+      Assertions.assertThrows(IllegalArgumentException.class,
+          () -> builder.setShutdownTimeout(-1));
+      final GoogleAnalyticsClient ga = builder.build();
+      ga.exception().addExceptionDescription("1").send();
+      ga.exception().addExceptionDescription("2").send();
+      final FlushResult result = ga.close(10, TimeUnit.MILLISECONDS);
+      Assertions.assertEquals(2, result.getPersisted());
+      Assertions.assertEquals(2, result.getTotal());
+      try (SharedSpool spool = SharedSpool.open(path)) {
+        Assertions.assertEquals(2, spool.size());
+      }
+      blocked.countDown();
+      hitDispatcher.gate.countDown();
+
+      // A new client sends the spooled hits
+      final GoogleAnalyticsClient ga2 = builder.build();
+      final long end = System.currentTimeMillis() + 5000;
+      while (hitDispatcher.size() < 2 && System.currentTimeMillis() < end) {
+        Thread.sleep(10);
+      }
+      Assertions.assertEquals(2, hitDispatcher.size());
+      testContains(hitDispatcher.hits.get(0), "&exd=1");
+      testContains(hitDispatcher.hits.get(1), "&exd=2");
+      Assertions.assertNotEquals(0L, hitDispatcher.timestamps.get(0));
+      ga2.close(1, TimeUnit.SECONDS);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testMetrics() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    hitDispatcher.gate.countDown();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    final DispatchMetrics metrics = new DispatchMetrics();
+    try {
+      final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService)
+          .setMetrics(metrics);
+      Assertions.assertSame(metrics, builder.getMetrics());
+      final GoogleAnalyticsClient ga = builder.build();
+      Assertions.assertSame(metrics, ga.getMetrics());
+      ga.exception().send().get();
+      ga.exception().send().get();
+      ga.setIgnore(true);
+      ga.exception().send();
+      Assertions.assertEquals(2, metrics.getCompleteCount());
+      Assertions.assertEquals(1, metrics.getIgnoredCount());
+      Assertions.assertEquals(0, metrics.getQueuedCount());
+      Assertions.assertEquals(0, metrics.getInFlightCount());
+      Assertions.assertEquals(hitDispatcher.hits.get(0).length() + hitDispatcher.hits.get(1).length(),
+          metrics.getBytesSent());
+      Assertions.assertEquals(2, metrics.getQueueTime().getCount());
+      Assertions.assertEquals(2, metrics.getSendTime().getCount());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testQuotaManager() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    hitDispatcher.gate.countDown();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    final DispatchMetrics metrics = new DispatchMetrics();
+    final QuotaManager quotaManager = new QuotaManager(2, 1e-3, 100);
+    try {
+      final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService).setMetrics(metrics)
+          .setQuotaManager(quotaManager).setUserId("abc");
+      Assertions.assertSame(quotaManager, builder.getQuotaManager());
+      final GoogleAnalyticsClient ga = builder.build();
+      Assertions.assertSame(quotaManager, ga.getQuotaManager());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, ga.exception().send().get());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, ga.exception().send().get());
+      Assertions.assertEquals(DispatchStatus.QUOTA_EXCEEDED, ga.exception().send().get());
+      Assertions.assertEquals(2, hitDispatcher.hits.size());
+      Assertions.assertEquals(1, metrics.getQuotaExceededCount());
+
+      // A different client has a separate limit
+      final GoogleAnalyticsClient ga2 = builder.setUserId("xyz").build();
+      Assertions.assertEquals(DispatchStatus.COMPLETE, ga2.exception().send().get());
+
+      final QuotaUsage usage = quotaManager.getUsage(trackingId);
+      Assertions.assertEquals(3, usage.getMonthlyCount());
+      Assertions.assertEquals(1, usage.getClientLimitedCount());
+      Assertions.assertEquals(2, usage.getClientCount());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSampler() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    final DispatchMetrics metrics = new DispatchMetrics();
+    final ClientSampler sampler = new ClientSampler(0);
+    try {
+      final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService).setMetrics(metrics)
+          .setSampler(sampler);
+      Assertions.assertSame(sampler, builder.getSampler());
+      final GoogleAnalyticsClient ga = builder.build();
+      Assertions.assertSame(sampler, ga.getSampler());
+      Assertions.assertFalse(ga.isSampled());
+      Assertions.assertEquals(DispatchStatus.SAMPLED, ga.exception().send().get());
+      Assertions.assertEquals(DispatchStatus.SAMPLED,
+          ga.send(Parameters.newBuilder().build(), 0).get());
+      Assertions.assertEquals(2, metrics.getSampledCount());
+
+      sampler.setRate(1);
+      Assertions.assertTrue(ga.isSampled());
+      final Future<DispatchStatus> future = ga.exception().send();
+      hitDispatcher.started.await();
+      Assertions.assertEquals(1, sampler.getQueueDepth());
+      // Shed load when the queue is full
+      sampler.setQueueLimit(1, 0);
+      Assertions.assertEquals(DispatchStatus.SAMPLED, ga.exception().send().get());
+      hitDispatcher.gate.countDown();
+      Assertions.assertEquals(DispatchStatus.COMPLETE, future.get());
+      Assertions.assertEquals(0, sampler.getQueueDepth());
+      Assertions.assertTrue(ga.isSampled());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, ga.exception().send().get());
+      Assertions.assertEquals(2, hitDispatcher.hits.size());
+      Assertions.assertEquals(3, metrics.getSampledCount());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testPriorityLanes() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    final DispatchMetrics metrics = new DispatchMetrics();
+    final PriorityLanes lanes = PriorityLanes.newBuilder().setTotalCapacity(3).build();
+    try {
+      final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+          .setHitDispatcher(hitDispatcher).setExecutorService(executorService).setMetrics(metrics)
+          .setPriorityLanes(lanes);
+      Assertions.assertSame(lanes, builder.getPriorityLanes());
+      final GoogleAnalyticsClient ga = builder.build();
+      Assertions.assertSame(lanes, ga.getPriorityLanes());
+      // Block the dispatch thread
+      final Future<DispatchStatus> first = ga.pageview("/first").send();
+      hitDispatcher.started.await();
+      final Future<DispatchStatus> low1 =
+          ga.event("low", "1").addNonInteractionHit(true).send();
+      final Future<DispatchStatus> low2 =
+          ga.event("low", "2").addNonInteractionHit(true).send();
+      final Future<DispatchStatus> normal = ga.pageview("/normal").send();
+      // Overloaded: shed the most recent low priority hit
+      final Future<DispatchStatus> fatal = ga.exception().addIsExceptionFatal(true).send();
+      Assertions.assertEquals(DispatchStatus.OVERLOADED, low2.get());
+      // Nothing lower to shed
+      Assertions.assertEquals(DispatchStatus.OVERLOADED,
+          ga.event("low", "3").addNonInteractionHit(true).send().get());
+      Assertions.assertEquals(3, lanes.size());
+      hitDispatcher.gate.countDown();
+      Assertions.assertEquals(DispatchStatus.COMPLETE, first.get());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, fatal.get());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, normal.get());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, low1.get());
+      Assertions.assertEquals(4, hitDispatcher.hits.size());
+      Assertions.assertTrue(hitDispatcher.hits.get(1).contains("t=exception"));
+      Assertions.assertTrue(hitDispatcher.hits.get(2).contains("t=pageview"));
+      Assertions.assertTrue(hitDispatcher.hits.get(3).contains("t=event"));
+      Assertions.assertEquals(2, metrics.getOverloadedCount());
+      Assertions.assertEquals(0, metrics.getQueuedCount());
+      Assertions.assertEquals(0, ga.getPendingCount());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testPriorityLanesWithOrderedThrows() {
+    final PriorityLanes lanes = PriorityLanes.newBuilder().build();
+    final Builder builder =
+        GoogleAnalyticsClient.newBuilder(trackingId).setPriorityLanes(lanes).setOrdered(true);
+    Assertions.assertThrows(IllegalStateException.class, builder::build);
+    final KeyedExecutor keyedExecutor = new KeyedExecutor(2);
+    final ExecutorService executorService = Executors.newFixedThreadPool(1);
+    try {
+      builder.setOrdered(false).setExecutorService(keyedExecutor);
+      Assertions.assertThrows(IllegalStateException.class, builder::build);
+      // Ordered is ignored when the executor service is provided
+      builder.setOrdered(true).setExecutorService(executorService);
+      Assertions.assertSame(lanes, builder.build().getPriorityLanes());
+    } finally {
+      keyedExecutor.shutdownNow();
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  void testOrdered() throws InterruptedException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    hitDispatcher.gate.countDown();
+    final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+        .setHitDispatcher(hitDispatcher).setThreadCount(4).setOrdered(true);
+    Assertions.assertTrue(builder.isOrdered());
+    final ExecutorService executorService = builder.getOrCreateExecutorService();
+    try {
+      Assertions.assertTrue(executorService instanceof KeyedExecutor);
+      Assertions.assertEquals(4, ((KeyedExecutor) executorService).getLaneCount());
+      final GoogleAnalyticsClient ga = builder.build();
+      final int size = 50;
+      for (int i = 0; i < size; i++) {
+        ga.pageview("/page" + i).send();
+      }
+      ga.flush(10, TimeUnit.SECONDS);
+      Assertions.assertEquals(size, hitDispatcher.hits.size());
+      for (int i = 0; i < size; i++) {
+        Assertions.assertTrue(hitDispatcher.hits.get(i).endsWith("dl=%2Fpage" + i),
+            hitDispatcher.hits.get(i));
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    // Single thread is already ordered
+    Assertions.assertFalse(GoogleAnalyticsClient.newBuilder(trackingId).setOrdered(true)
+        .getOrCreateExecutorService() instanceof KeyedExecutor);
+  }
+
+  @Test
+  void testConcurrencyLimiter() throws InterruptedException, ExecutionException {
+    final GatedHitDispatcher hitDispatcher = new GatedHitDispatcher();
+    hitDispatcher.gate.countDown();
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 3);
+    final Builder builder = GoogleAnalyticsClient.newBuilder(trackingId)
+        .setHitDispatcher(hitDispatcher).setThreadCount(0).setConcurrencyLimiter(limiter);
+    Assertions.assertSame(limiter, builder.getConcurrencyLimiter());
+    final ExecutorService executorService = builder.getOrCreateExecutorService();
+    try {
+      Assertions.assertTrue(executorService instanceof ThreadPoolExecutor);
+      Assertions.assertEquals(3, ((ThreadPoolExecutor) executorService).getMaximumPoolSize());
+      final GoogleAnalyticsClient ga = builder.build();
+      Assertions.assertSame(limiter, ga.getConcurrencyLimiter());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, ga.exception().send().get());
+      Assertions.assertEquals(0, limiter.getInFlight());
+      Assertions.assertNotEquals(Long.MAX_VALUE, limiter.getBaseline());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   @Test
   void testDemos() throws InterruptedException {
     final HitDispatcher hitDispatcher = new HitDispatcher() {
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class GzipHitTransportTest {
+
+  private static String decompress(byte[] bytes) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[256];
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String createBatch(int hits) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < hits; i++) {
+      if (i != 0) {
+        sb.append('\n');
+      }
+      sb.append("v=1&tid=UA-12345-6&cid=7a3c5b9e-0d2f-4e61-8a1b-2c3d4e5f6a7b&t=pageview&dp=%2Fpage")
+          .append(i);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  void testConstructor() {
+    final HitTransport delegate =
+        (payload, batch) -> CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+    Assertions.assertEquals(Deflater.DEFAULT_COMPRESSION,
+        new GzipHitTransport(delegate).getLevel());
+    Assertions.assertEquals(Deflater.BEST_SPEED,
+        new GzipHitTransport(delegate, Deflater.BEST_SPEED).getLevel());
+    Assertions.assertThrows(NullPointerException.class, () -> new GzipHitTransport(null));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new GzipHitTransport(delegate, -2));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new GzipHitTransport(delegate, 10));
+  }
+
+  @Test
+  void testSend() throws IOException {
+    final List<byte[]> payloads = new ArrayList<>();
+    final List<HitBatch> batches = new ArrayList<>();
+    final HitTransport delegate = (payload, batch) -> {
+      final byte[] bytes = new byte[payload.remaining()];
+      payload.get(bytes);
+      payloads.add(bytes);
+      batches.add(batch);
+      return CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+    };
+    final GzipHitTransport transport = new GzipHitTransport(delegate);
+
+    final String hits = createBatch(20);
+    final byte[] bytes = hits.getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer payload = ByteBuffer.wrap(bytes);
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        transport.send(payload, HitBatch.of(20)).join());
+    Assertions.assertEquals(0, payload.position());
+    Assertions.assertEquals(20, batches.get(0).getHitCount());
+    Assertions.assertEquals(GzipHitTransport.CONTENT_ENCODING,
+        batches.get(0).getContentEncoding());
+    Assertions.assertEquals(hits, decompress(payloads.get(0)));
+    // Repeated parameters compress well
+    Assertions.assertTrue(payloads.get(0).length * 4 < bytes.length,
+        () -> payloads.get(0).length + " vs " + bytes.length);
+
+    // Already encoded
+    final ByteBuffer encoded = ByteBuffer.wrap(payloads.get(0));
+    transport.send(encoded, HitBatch.of(20).withContentEncoding("gzip"));
+    Assertions.assertArrayEquals(payloads.get(0), payloads.get(1));
+  }
+
+  @Test
+  void testCompress() throws IOException {
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    final HitTransport delegate =
+        (payload, batch) -> CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+    for (final int level : new int[] {Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION,
+        Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+      final GzipHitTransport transport = new GzipHitTransport(delegate, level);
+      // The compressor is reused. Use random data that does not compress to grow the buffer.
+      for (final int size : new int[] {0, 10, 5000, 100, 20000}) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+          bytes[i] = (byte) ('a' + rng.nextInt(26));
+        }
+        final String expected = new String(bytes, StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected, decompress(transport.compress(ByteBuffer.wrap(bytes))));
+
+        // Direct buffer within a larger buffer
+        final ByteBuffer direct = ByteBuffer.allocateDirect(size + 2);
+        direct.put((byte) 'x').put(bytes).put((byte) 'x');
+        direct.position(1).limit(size + 1);
+        Assertions.assertEquals(expected, decompress(transport.compress(direct)));
+        Assertions.assertEquals(1, direct.position());
+      }
+    }
+  }
+
+  @Test
+  void testCompressorPool() throws Exception {
+    final HitTransport delegate =
+        (payload, batch) -> CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+    final GzipHitTransport transport = new GzipHitTransport(delegate);
+    final String expected = createBatch(10);
+    final byte[] bytes = expected.getBytes(StandardCharsets.UTF_8);
+    Assertions.assertEquals(0, transport.getIdleCount());
+    // The compressor is reused by a new thread
+    for (int i = 0; i < 3; i++) {
+      final Thread thread = new Thread(() -> transport.compress(ByteBuffer.wrap(bytes)));
+      thread.start();
+      thread.join();
+      Assertions.assertEquals(1, transport.getIdleCount());
+    }
+    // The pool is bounded
+    final int threads = Runtime.getRuntime().availableProcessors() + 4;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<byte[]>> futures = new ArrayList<>();
+      for (int i = 0; i < threads * 10; i++) {
+        futures.add(executor.submit(() -> transport.compress(ByteBuffer.wrap(bytes))));
+      }
+      for (final Future<byte[]> future : futures) {
+        Assertions.assertEquals(expected, decompress(future.get()));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    final int idle = transport.getIdleCount();
+    Assertions.assertTrue(idle >= 1 && idle <= Runtime.getRuntime().availableProcessors(),
+        () -> "Idle: " + idle);
+    // Closed: The pool is emptied and the transport can still be used
+    transport.close();
+    Assertions.assertEquals(0, transport.getIdleCount());
+    Assertions.assertEquals(expected, decompress(transport.compress(ByteBuffer.wrap(bytes))));
+    Assertions.assertEquals(0, transport.getIdleCount());
+    transport.close();
+  }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class HitBatchTest {
+
+  @Test
+  void testOf() {
+    Assertions.assertSame(HitBatch.single(), HitBatch.of(1));
+    Assertions.assertEquals(1, HitBatch.single().getHitCount());
+    Assertions.assertEquals(20, HitBatch.of(20).getHitCount());
+    Assertions.assertTrue(HitBatch.of(3).toString().contains("3"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> HitBatch.of(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> HitBatch.of(-1));
+  }
+
+  @Test
+  void testWithContentEncoding() {
+    final HitBatch batch = HitBatch.of(3);
+    Assertions.assertNull(batch.getContentEncoding());
+    Assertions.assertSame(batch, batch.withContentEncoding(null));
+    final HitBatch gzip = batch.withContentEncoding("gzip");
+    Assertions.assertEquals("gzip", gzip.getContentEncoding());
+    Assertions.assertEquals(3, gzip.getHitCount());
+    Assertions.assertSame(gzip, gzip.withContentEncoding("gzip"));
+    Assertions.assertTrue(gzip.toString().contains("gzip"));
+    Assertions.assertNull(gzip.withContentEncoding(null).getContentEncoding());
+    Assertions.assertNull(HitBatch.single().getContentEncoding());
+  }
+
+  @Test
+  void testWithContentType() {
+    final HitBatch batch = HitBatch.of(3).withContentEncoding("gzip");
+    Assertions.assertEquals(HitBatch.DEFAULT_CONTENT_TYPE, batch.getContentType());
+    Assertions.assertTrue(batch.isDefaultContentType());
+    Assertions.assertSame(batch, batch.withContentType(HitBatch.DEFAULT_CONTENT_TYPE));
+    final HitBatch json = batch.withContentType("application/json");
+    Assertions.assertEquals("application/json", json.getContentType());
+    Assertions.assertFalse(json.isDefaultContentType());
+    Assertions.assertEquals(3, json.getHitCount());
+    Assertions.assertEquals("gzip", json.getContentEncoding());
+    Assertions.assertSame(json, json.withContentType("application/json"));
+    Assertions.assertTrue(json.toString().contains("application/json"));
+    // Encoding preserves the content type
+    Assertions.assertEquals("application/json",
+        json.withContentEncoding(null).getContentType());
+    Assertions.assertThrows(NullPointerException.class, () -> batch.withContentType(null));
+  }
+}
@@ -0,0 +1,294 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+@SuppressWarnings("javadoc")
+class HitSubscriberTest {
+
+  private ExecutorService executor;
+
+  /**
+   * A dispatcher that counts the hits and waits for the gate to open.
+   */
+  private static class CountingHitDispatcher implements HitDispatcher {
+    final AtomicInteger count = new AtomicInteger();
+    final CountDownLatch gate;
+
+    CountingHitDispatcher(int gate) {
+      this.gate = new CountDownLatch(gate);
+    }
+
+    @Override
+    public DispatchStatus send(CharSequence hit, long timestamp,
+        HttpUrlConnectionCallback callback) {
+      try {
+        gate.await();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return DispatchStatus.ERROR;
+      }
+      count.getAndIncrement();
+      return DispatchStatus.COMPLETE;
+    }
+
+    @Override
+    public IOException getLastIoException() {
+      return null;
+    }
+
+    @Override
+    public boolean isDisabled() {
+      return false;
+    }
+
+    @Override
+    public boolean start() {
+      return true;
+    }
+
+    @Override
+    public boolean stop() {
+      return true;
+    }
+  }
+
+  private static List<Parameters> createHits(int count) {
+    final List<Parameters> hits = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      hits.add(Parameters.newBuilder().addEventValue(i).build());
+    }
+    return hits;
+  }
+
+  private GoogleAnalyticsClient createClient(HitDispatcher dispatcher) {
+    return GoogleAnalyticsClient.newBuilder("UA-12345-6").setHitDispatcher(dispatcher)
+        .setExecutorService(executor).build();
+  }
+
+  @BeforeEach
+  void setup() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testConstructor() {
+    final GoogleAnalyticsClient ga = createClient(new CountingHitDispatcher(0));
+    final HitSubscriber subscriber = ga.newHitSubscriber();
+    Assertions.assertEquals(HitSubscriber.DEFAULT_BATCH_SIZE, subscriber.getBatchSize());
+    Assertions.assertEquals(HitSubscriber.DEFAULT_MAX_BATCHES, subscriber.getMaxBatches());
+    Assertions.assertEquals(3, ga.newHitSubscriber(3, 2).getBatchSize());
+    Assertions.assertEquals(2, ga.newHitSubscriber(3, 2).getMaxBatches());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ga.newHitSubscriber(0, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ga.newHitSubscriber(1, 0));
+  }
+
+  @Test
+  void testSendIterable() {
+    final CountingHitDispatcher dispatcher = new CountingHitDispatcher(0);
+    final GoogleAnalyticsClient ga = createClient(dispatcher);
+    final BulkResult result = ga.send(createHits(1003)).join();
+    Assertions.assertEquals(1003, result.getTotal());
+    Assertions.assertEquals(1003, result.getSent());
+    Assertions.assertEquals(1003, dispatcher.count.get());
+
+    // Empty
+    Assertions.assertEquals(0, ga.send(Collections.emptyList()).join().getTotal());
+  }
+
+  @Test
+  void testSendIterableWithTimestamp() {
+    final List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+    final CountingHitDispatcher dispatcher = new CountingHitDispatcher(0) {
+      @Override
+      public DispatchStatus send(CharSequence hit, long timestamp,
+          HttpUrlConnectionCallback callback) {
+        timestamps.add(timestamp);
+        return super.send(hit, timestamp, callback);
+      }
+    };
+    final GoogleAnalyticsClient ga = createClient(dispatcher);
+    Assertions.assertThrows(NullPointerException.class, () -> ga.send(createHits(1), null));
+    final BulkResult result = ga.send(createHits(50), hit -> 12345L).join();
+    Assertions.assertEquals(50, result.getSent());
+    Assertions.assertEquals(50, timestamps.size());
+    for (final Long timestamp : timestamps) {
+      Assertions.assertEquals(12345L, timestamp);
+    }
+
+    // Error from the function
+    final IllegalStateException exception = new IllegalStateException();
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class,
+        () -> ga.send(createHits(5), hit -> {
+          throw exception;
+        }).join());
+    Assertions.assertSame(exception, ex.getCause());
+  }
+
+  @Test
+  void testSendStream() {
+    final CountingHitDispatcher dispatcher = new CountingHitDispatcher(0);
+    final GoogleAnalyticsClient ga = createClient(dispatcher);
+    final AtomicBoolean closed = new AtomicBoolean();
+    final BulkResult result = ga.send(IntStream.range(0, 100)
+        .mapToObj(i -> Parameters.newBuilder().addEventValue(i).build())
+        .onClose(() -> closed.set(true))).join();
+    Assertions.assertEquals(100, result.getSent());
+    Assertions.assertTrue(closed.get());
+  }
+
+  @Test
+  void testSendWithIteratorError() {
+    final GoogleAnalyticsClient ga = createClient(new CountingHitDispatcher(0));
+    final IllegalStateException exception = new IllegalStateException();
+    final Iterator<Parameters> hits = createHits(5).iterator();
+    final Iterable<Parameters> iterable = () -> new Iterator<Parameters>() {
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Parameters next() {
+        if (hits.hasNext()) {
+          return hits.next();
+        }
+        throw exception;
+      }
+    };
+    final CompletionException ex =
+        Assertions.assertThrows(CompletionException.class, () -> ga.send(iterable).join());
+    Assertions.assertSame(exception, ex.getCause());
+
+    // Null hits are an error
+    final CompletionException ex2 = Assertions.assertThrows(CompletionException.class,
+        () -> ga.send(Collections.singletonList((Parameters) null)).join());
+    Assertions.assertTrue(ex2.getCause() instanceof NullPointerException);
+  }
+
+  @Test
+  void testSendWhenRejected() {
+    final CountingHitDispatcher dispatcher = new CountingHitDispatcher(0);
+    final GoogleAnalyticsClient ga = createClient(dispatcher);
+    ga.setIgnore(true);
+    BulkResult result = ga.send(createHits(50)).join();
+    Assertions.assertEquals(50, result.getCount(DispatchStatus.IGNORED));
+    ga.setIgnore(false);
+
+    executor.shutdown();
+    result = ga.send(createHits(50)).join();
+    Assertions.assertEquals(50, result.getCount(DispatchStatus.SHUTDOWN));
+    Assertions.assertEquals(0, dispatcher.count.get());
+  }
+
+  @Test
+  void testBackPressure() throws InterruptedException {
+    final CountingHitDispatcher dispatcher = new CountingHitDispatcher(1);
+    final GoogleAnalyticsClient ga = createClient(dispatcher);
+    final HitSubscriber subscriber = ga.newHitSubscriber(5, 2);
+    final List<Long> requests = Collections.synchronizedList(new ArrayList<>());
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    subscriber.onSubscribe(requests::add, () -> cancelled.set(true));
+    Assertions.assertEquals(Collections.singletonList(10L), requests);
+
+    // A second subscription is cancelled
+    subscriber.onSubscribe(requests::add, () -> cancelled.set(true));
+    Assertions.assertTrue(cancelled.get());
+    Assertions.assertEquals(1, requests.size());
+
+    // Fill the demand. No more is requested while the dispatcher is blocked.
+    for (final Parameters hit : createHits(10)) {
+      subscriber.onNext(hit);
+    }
+    Thread.sleep(50);
+    Assertions.assertEquals(1, requests.size());
+    Assertions.assertFalse(subscriber.getResult().isDone());
+
+    // Each completed batch requests another batch
+    dispatcher.gate.countDown();
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (requests.size() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    Assertions.assertEquals(3, requests.size());
+    Assertions.assertEquals(5L, requests.get(1));
+    Assertions.assertEquals(5L, requests.get(2));
+
+    // A partial batch is sent on completion
+    for (final Parameters hit : createHits(3)) {
+      subscriber.onNext(hit);
+    }
+    subscriber.onComplete();
+    final BulkResult result = subscriber.getResult().join();
+    Assertions.assertEquals(13, result.getSent());
+    Assertions.assertEquals(13, dispatcher.count.get());
+  }
+
+  @Test
+  void testOnError() {
+    final CountingHitDispatcher dispatcher = new CountingHitDispatcher(0);
+    final GoogleAnalyticsClient ga = createClient(dispatcher);
+    final HitSubscriber subscriber = ga.newHitSubscriber(5, 2);
+    subscriber.onSubscribe(n -> { }, () -> { });
+    for (final Parameters hit : createHits(3)) {
+      subscriber.onNext(hit);
+    }
+    final IOException exception = new IOException();
+    subscriber.onError(exception);
+    final CompletableFuture<BulkResult> result = subscriber.getResult();
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class, result::join);
+    Assertions.assertSame(exception, ex.getCause());
+    // Received hits are sent before the result is complete
+    Assertions.assertEquals(3, dispatcher.count.get());
+  }
+}
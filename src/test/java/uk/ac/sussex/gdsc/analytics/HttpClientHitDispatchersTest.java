@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class HttpClientHitDispatchersTest {
+
+  @Test
+  void testCreateFactoryWithMissingClass() {
+    Assertions.assertNull(
+        HttpClientHitDispatchers.createFactory("uk.ac.sussex.gdsc.analytics.NoSuchClass"));
+    // Wrong type
+    Assertions.assertNull(HttpClientHitDispatchers.createFactory(Object.class.getName()));
+  }
+
+  @Test
+  void testNotAvailable() {
+    Assumptions.assumeFalse(HttpClientHitDispatchers.isAvailable());
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        () -> HttpClientHitDispatchers.newHitDispatcher(false, false));
+  }
+
+  @Test
+  void testSend() throws IOException {
+    Assumptions.assumeTrue(HttpClientHitDispatchers.isAvailable());
+    final List<String> hits = new CopyOnWriteArrayList<>();
+    final AtomicInteger responseCode = new AtomicInteger(200);
+    final HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/collect", exchange -> {
+      try (InputStream in = exchange.getRequestBody()) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[256];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+          out.write(buffer, 0, read);
+        }
+        hits.add(new String(out.toByteArray(), StandardCharsets.UTF_8));
+      }
+      exchange.sendResponseHeaders(responseCode.get(), -1);
+      exchange.close();
+    });
+    server.start();
+    final URL url =
+        new URL("http", "localhost", server.getAddress().getPort(), "/collect");
+    final HitDispatcher dispatcher = HttpClientHitDispatchers.newHitDispatcher(url);
+    try {
+      Assertions.assertFalse(dispatcher.isDisabled());
+      Assertions.assertEquals(DispatchStatus.COMPLETE, dispatcher.send("v=1&t=pageview", 0));
+      Assertions.assertEquals("v=1&t=pageview", hits.get(0));
+
+      // Queue time is added
+      final long timestamp = System.currentTimeMillis() - 1000;
+      Assertions.assertEquals(DispatchStatus.COMPLETE,
+          dispatcher.send("v=1&t=event", timestamp, null));
+      Assertions.assertTrue(hits.get(1).startsWith("v=1&t=event&qt="), hits.get(1));
+
+      // Any 2xx is a success
+      responseCode.set(204);
+      Assertions.assertEquals(DispatchStatus.COMPLETE, dispatcher.send("v=1&t=pageview", 0));
+
+      // Error response does not disable
+      responseCode.set(500);
+      Assertions.assertEquals(DispatchStatus.ERROR, dispatcher.send("v=1&t=pageview", 0));
+      Assertions.assertFalse(dispatcher.isDisabled());
+      Assertions.assertNull(dispatcher.getLastIoException());
+
+      Assertions.assertTrue(dispatcher.stop());
+      Assertions.assertEquals(DispatchStatus.DISABLED, dispatcher.send("v=1&t=pageview", 0));
+      Assertions.assertTrue(dispatcher.start());
+      Assertions.assertEquals(4, hits.size());
+    } finally {
+      server.stop(0);
+    }
+
+    // Connection failure disables
+    Assertions.assertEquals(DispatchStatus.ERROR, dispatcher.send("v=1&t=pageview", 0));
+    Assertions.assertTrue(dispatcher.isDisabled());
+    Assertions.assertNotNull(dispatcher.getLastIoException());
+    Assertions.assertEquals(DispatchStatus.DISABLED, dispatcher.send("v=1&t=pageview", 0));
+    Assertions.assertTrue(dispatcher.start());
+    Assertions.assertFalse(dispatcher.isDisabled());
+  }
+}
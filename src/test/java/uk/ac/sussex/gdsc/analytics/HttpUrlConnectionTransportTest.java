@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+@SuppressWarnings("javadoc")
+class HttpUrlConnectionTransportTest {
+
+  private static URL createUrl() throws MalformedURLException {
+    return new URL("http", "localhost", "/batch");
+  }
+
+  private static HttpURLConnection createHttpUrlConnection(int responseCode,
+      ByteArrayOutputStream out) throws IOException {
+    final HttpURLConnection urlConnection = Mockito.mock(HttpURLConnection.class);
+    Mockito.when(urlConnection.getResponseCode()).thenReturn(responseCode);
+    Mockito.when(urlConnection.getOutputStream()).thenReturn(out);
+    return urlConnection;
+  }
+
+  private static HttpConnectionProvider createProvider(HttpURLConnection connection,
+      IOException exception) {
+    return new HttpConnectionProvider() {
+      @Override
+      public HttpURLConnection openConnection(URL url, Proxy proxy) throws IOException {
+        if (exception != null) {
+          throw exception;
+        }
+        return connection;
+      }
+    };
+  }
+
+  @Test
+  void testConstructor() throws MalformedURLException {
+    final URL url = createUrl();
+    Assertions.assertSame(url, new HttpUrlConnectionTransport(url).getUrl());
+    Assertions.assertSame(url, new HttpUrlConnectionTransport(url, Proxy.NO_PROXY).getUrl());
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new HttpUrlConnectionTransport(null));
+  }
+
+  @Test
+  void testSend() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final HttpURLConnection connection = createHttpUrlConnection(HttpURLConnection.HTTP_OK, out);
+    final HttpUrlConnectionTransport transport =
+        new HttpUrlConnectionTransport(createUrl(), createProvider(connection, null), null);
+
+    // Payload within a larger array
+    final byte[] bytes = "__v=1&t=event\nv=1&t=pageview__".getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer payload = ByteBuffer.wrap(bytes, 2, bytes.length - 4);
+    final CompletableFuture<DispatchStatus> result = transport.send(payload, HitBatch.of(2));
+    Assertions.assertTrue(result.isDone());
+    Assertions.assertEquals(DispatchStatus.COMPLETE, result.join());
+    Assertions.assertEquals("v=1&t=event\nv=1&t=pageview",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+    // Not consumed
+    Assertions.assertEquals(2, payload.position());
+    Mockito.verify(connection, Mockito.times(1)).setRequestMethod("POST");
+    Mockito.verify(connection, Mockito.times(1)).setFixedLengthStreamingMode(bytes.length - 4);
+    Mockito.verify(connection, Mockito.times(1)).disconnect();
+    Mockito.verify(connection, Mockito.never()).setRequestProperty(
+        Mockito.eq("Content-Encoding"), Mockito.anyString());
+    Mockito.verify(connection, Mockito.times(1)).setRequestProperty("Content-Type",
+        HitBatch.DEFAULT_CONTENT_TYPE);
+
+    // Encoded
+    out.reset();
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        transport.send(payload, HitBatch.of(2).withContentEncoding("gzip")).join());
+    Mockito.verify(connection, Mockito.times(1)).setRequestProperty("Content-Encoding", "gzip");
+
+    // Direct buffer
+    out.reset();
+    final ByteBuffer direct = ByteBuffer.allocateDirect(10);
+    direct.put("v=1&t=item".getBytes(StandardCharsets.UTF_8)).flip();
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        transport.send(direct, HitBatch.single()).join());
+    Assertions.assertEquals("v=1&t=item", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    Assertions.assertEquals(0, direct.position());
+  }
+
+  @Test
+  void testSendWithNoContentResponseCode() throws IOException {
+    final HttpURLConnection connection = createHttpUrlConnection(
+        HttpURLConnection.HTTP_NO_CONTENT, new ByteArrayOutputStream());
+    final HttpUrlConnectionTransport transport =
+        new HttpUrlConnectionTransport(createUrl(), createProvider(connection, null), null);
+    Assertions.assertEquals(DispatchStatus.COMPLETE, transport.send(ByteBuffer.wrap(new byte[1]),
+        HitBatch.single().withContentType("application/json")).join());
+    Mockito.verify(connection, Mockito.times(1)).setRequestProperty("Content-Type",
+        "application/json");
+  }
+
+  @Test
+  void testSendWithBadResponseCode() throws IOException {
+    final HttpURLConnection connection = createHttpUrlConnection(
+        HttpURLConnection.HTTP_INTERNAL_ERROR, new ByteArrayOutputStream());
+    final HttpUrlConnectionTransport transport =
+        new HttpUrlConnectionTransport(createUrl(), createProvider(connection, null), null);
+    Assertions.assertEquals(DispatchStatus.ERROR,
+        transport.send(ByteBuffer.wrap(new byte[1]), HitBatch.single()).join());
+  }
+
+  @Test
+  void testSendWithIoException() throws IOException {
+    final IOException exception = new IOException("Test failed openConnection");
+    final HttpUrlConnectionTransport transport =
+        new HttpUrlConnectionTransport(createUrl(), createProvider(null, exception), null);
+    final CompletableFuture<DispatchStatus> result =
+        transport.send(ByteBuffer.wrap(new byte[1]), HitBatch.single());
+    Assertions.assertTrue(result.isCompletedExceptionally());
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class, result::join);
+    Assertions.assertSame(exception, ex.getCause());
+  }
+}
@@ -0,0 +1,172 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class KeyedExecutorTest {
+
+  @Test
+  void testConstructorThrows() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new KeyedExecutor(0));
+  }
+
+  @Test
+  void testGetLane() {
+    for (int i = 0; i < 10; i++) {
+      Assertions.assertEquals(i % 3, KeyedExecutor.getLane(i, 3));
+    }
+    final int lane = KeyedExecutor.getLane(-1, 7);
+    Assertions.assertTrue(lane >= 0 && lane < 7);
+  }
+
+  @Test
+  void testOrderPerKey() throws InterruptedException {
+    final KeyedExecutor executor = new KeyedExecutor(4);
+    Assertions.assertEquals(4, executor.getLaneCount());
+    final int keys = 10;
+    final int tasks = 200;
+    final List<List<Integer>> results = new ArrayList<>();
+    for (int k = 0; k < keys; k++) {
+      results.add(new ArrayList<>());
+    }
+    for (int i = 0; i < tasks; i++) {
+      for (int k = 0; k < keys; k++) {
+        final List<Integer> list = results.get(k);
+        final int value = i;
+        // Lists are only modified by the serial lane for the key
+        executor.execute("key" + k, () -> list.add(value));
+      }
+    }
+    executor.shutdown();
+    Assertions.assertTrue(executor.isShutdown());
+    Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    Assertions.assertTrue(executor.isTerminated());
+    for (final List<Integer> list : results) {
+      Assertions.assertEquals(tasks, list.size());
+      for (int i = 0; i < tasks; i++) {
+        Assertions.assertEquals(i, list.get(i));
+      }
+    }
+  }
+
+  @Test
+  void testHotKeyDoesNotBlockOtherLanes()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final KeyedExecutor executor = new KeyedExecutor(2);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    try {
+      // Integer keys 0 and 1 map to lanes 0 and 1
+      final Future<Boolean> blocked = executor.submit(0, () -> {
+        started.countDown();
+        return gate.await(10, TimeUnit.SECONDS);
+      });
+      final Future<String> queued = executor.submit(0, () -> "queued");
+      started.await();
+      Assertions.assertEquals("other", executor.submit(1, () -> "other").get(10, TimeUnit.SECONDS));
+      Assertions.assertFalse(queued.isDone());
+      gate.countDown();
+      Assertions.assertTrue(blocked.get());
+      Assertions.assertEquals("queued", queued.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testTaskExceptionDoesNotStopLane() throws InterruptedException, ExecutionException {
+    final KeyedExecutor executor = new KeyedExecutor(1);
+    try {
+      executor.execute("a", () -> {
+        throw new IllegalStateException("Expected");
+      });
+      Assertions.assertEquals(1, executor.submit("a", () -> 1).get());
+      // Without a key
+      Assertions.assertEquals(2, executor.submit(() -> 2).get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testShutdown() throws InterruptedException {
+    final KeyedExecutor executor = new KeyedExecutor(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    final List<Integer> list = new ArrayList<>();
+    executor.execute("a", () -> {
+      try {
+        gate.await();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    executor.execute("a", () -> list.add(1));
+    executor.shutdown();
+    Assertions.assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+    Assertions.assertFalse(executor.awaitTermination(10, TimeUnit.MILLISECONDS));
+    Assertions.assertFalse(executor.isTerminated());
+    gate.countDown();
+    Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, list.size());
+  }
+
+  @Test
+  void testShutdownNow() throws InterruptedException {
+    final KeyedExecutor executor = new KeyedExecutor(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    executor.execute("a", () -> {
+      started.countDown();
+      try {
+        gate.await();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    final Runnable task = () -> { };
+    executor.execute("a", task);
+    started.await();
+    final List<Runnable> list = executor.shutdownNow();
+    Assertions.assertEquals(1, list.size());
+    Assertions.assertSame(task, list.get(0));
+    Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.Arrays;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class LatencyHistogramTest {
+
+  @Test
+  void testIndex() {
+    for (int i = 0; i < 32; i++) {
+      Assertions.assertEquals(i, LatencyHistogram.index(i));
+    }
+    Assertions.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    // Buckets are contiguous
+    for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+      final long low = LatencyHistogram.lowestValue(i);
+      Assertions.assertEquals(LatencyHistogram.highestValue(i - 1) + 1, low);
+      Assertions.assertEquals(i, LatencyHistogram.index(low));
+      Assertions.assertEquals(i, LatencyHistogram.index(LatencyHistogram.highestValue(i)));
+    }
+    Assertions.assertEquals(Long.MAX_VALUE,
+        LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+  }
+
+  @Test
+  void testRelativePrecision() {
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    for (int i = 0; i < 1000; i++) {
+      final long value = rng.nextLong() >>> (1 + rng.nextInt(63));
+      final int index = LatencyHistogram.index(value);
+      final long low = LatencyHistogram.lowestValue(index);
+      final long high = LatencyHistogram.highestValue(index);
+      Assertions.assertTrue(low <= value && value <= high);
+      Assertions.assertTrue((double) (high - low) / Math.max(1, low) <= 1.0 / 16);
+    }
+  }
+
+  @Test
+  void testRecord() {
+    final LatencyHistogram h = new LatencyHistogram();
+    Assertions.assertEquals(0, h.getCount());
+    Assertions.assertEquals(0, h.getMean());
+    Assertions.assertEquals(0, h.getMax());
+    Assertions.assertEquals(0, h.getValueAtPercentile(50));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> h.getValueAtPercentile(-1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> h.getValueAtPercentile(101));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> h.getValueAtPercentile(Double.NaN));
+
+    final long[] values = new long[100];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i + 1) * 1000L;
+      h.record(values[i]);
+    }
+    h.record(-1);
+    Assertions.assertEquals(101, h.getCount());
+    Assertions.assertEquals(Arrays.stream(values).sum() / 101.0, h.getMean(), 1e-10);
+    Assertions.assertEquals(100000, h.getMax());
+    Assertions.assertEquals(0, h.getValueAtPercentile(0));
+    Assertions.assertEquals(100000, h.getValueAtPercentile(100));
+    final long p50 = h.getValueAtPercentile(50);
+    Assertions.assertTrue(p50 >= 50000 && p50 <= 50000 * 17 / 16, () -> "p50 = " + p50);
+    final long p99 = h.getValueAtPercentile(99);
+    Assertions.assertTrue(p99 >= 99000 && p99 <= 100000, () -> "p99 = " + p99);
+
+    h.reset();
+    Assertions.assertEquals(0, h.getCount());
+    Assertions.assertEquals(0, h.getMax());
+    Assertions.assertEquals(0, h.getValueAtPercentile(100));
+  }
+}
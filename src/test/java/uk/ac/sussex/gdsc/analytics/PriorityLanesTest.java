@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+
+@SuppressWarnings("javadoc")
+class PriorityLanesTest {
+
+  private static class NamedTask implements PriorityLanes.Task {
+    final String name;
+    final List<String> ran;
+    final List<String> shed;
+
+    NamedTask(String name, List<String> ran, List<String> shed) {
+      this.name = name;
+      this.ran = ran;
+      this.shed = shed;
+    }
+
+    @Override
+    public void run() {
+      ran.add(name);
+    }
+
+    @Override
+    public void shed() {
+      shed.add(name);
+    }
+  }
+
+  @Test
+  void testBuilderThrows() {
+    final PriorityLanes.Builder builder = PriorityLanes.newBuilder();
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> builder.setWeight(HitPriority.LOW, 0));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> builder.setCapacity(HitPriority.LOW, 0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.setTotalCapacity(0));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> builder.setPriority(null, HitPriority.LOW));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> builder.setPriority(HitType.EVENT, null));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> builder.setNonInteractionPriority(null));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> builder.setFatalExceptionPriority(null));
+  }
+
+  @Test
+  void testGetPriority() {
+    final PriorityLanes lanes = PriorityLanes.newBuilder().build();
+    Assertions.assertEquals(HitPriority.NORMAL,
+        lanes.getPriority(Parameters.newBuilder().build()));
+    Assertions.assertEquals(HitPriority.NORMAL,
+        lanes.getPriority(Parameters.newBuilder().addHitType(HitType.PAGEVIEW).build()));
+    Assertions.assertEquals(HitPriority.NORMAL,
+        lanes.getPriority(Parameters.newBuilder().addHitType(HitType.EXCEPTION).build()));
+    Assertions.assertEquals(HitPriority.HIGH,
+        lanes.getPriority(Parameters.newBuilder().addHitType(HitType.TRANSACTION).build()));
+    Assertions.assertEquals(HitPriority.HIGH,
+        lanes.getPriority(Parameters.newBuilder().addHitType(HitType.ITEM).build()));
+    Assertions.assertEquals(HitPriority.LOW, lanes.getPriority(
+        Parameters.newBuilder().addHitType(HitType.EVENT).addNonInteractionHit(true).build()));
+    Assertions.assertEquals(HitPriority.HIGH,
+        lanes.getPriority(Parameters.newBuilder().addHitType(HitType.EXCEPTION)
+            .addNonInteractionHit(true).addIsExceptionFatal(true).build()));
+
+    final PriorityLanes lanes2 = PriorityLanes.newBuilder()
+        .setPriority(HitType.EVENT, HitPriority.LOW)
+        .setNonInteractionPriority(HitPriority.NORMAL)
+        .setFatalExceptionPriority(HitPriority.NORMAL).build();
+    Assertions.assertEquals(HitPriority.LOW,
+        lanes2.getPriority(Parameters.newBuilder().addHitType(HitType.EVENT).build()));
+    Assertions.assertEquals(HitPriority.NORMAL, lanes2.getPriority(
+        Parameters.newBuilder().addHitType(HitType.EVENT).addNonInteractionHit(true).build()));
+    Assertions.assertEquals(HitPriority.NORMAL, lanes2.getPriority(
+        Parameters.newBuilder().addHitType(HitType.EXCEPTION).addIsExceptionFatal(true).build()));
+  }
+
+  @Test
+  void testWeightedFairScheduling() {
+    final PriorityLanes lanes = PriorityLanes.newBuilder().setWeight(HitPriority.HIGH, 3)
+        .setWeight(HitPriority.NORMAL, 2).setWeight(HitPriority.LOW, 1).build();
+    final List<String> ran = new ArrayList<>();
+    final List<String> shed = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      for (final HitPriority priority : HitPriority.values()) {
+        Assertions.assertTrue(
+            lanes.offer(priority, new NamedTask(priority.name().substring(0, 1), ran, shed)));
+      }
+    }
+    Assertions.assertEquals(18, lanes.size());
+    Assertions.assertEquals(6, lanes.size(HitPriority.LOW));
+    for (int i = 0; i < 6; i++) {
+      lanes.runNext();
+    }
+    // Smooth weighted round-robin with weights 3:2:1
+    Assertions.assertEquals("HNHLNH", String.join("", ran));
+    ran.clear();
+    while (lanes.size() != 0) {
+      lanes.runNext();
+    }
+    Assertions.assertEquals(12, ran.size());
+    // No-op when empty
+    lanes.runNext();
+    Assertions.assertEquals(12, ran.size());
+    Assertions.assertTrue(shed.isEmpty());
+  }
+
+  @Test
+  void testShedding() {
+    final PriorityLanes lanes = PriorityLanes.newBuilder().setCapacity(HitPriority.LOW, 2)
+        .setTotalCapacity(3).build();
+    final List<String> ran = new ArrayList<>();
+    final List<String> shed = new ArrayList<>();
+    Assertions.assertTrue(lanes.offer(HitPriority.LOW, new NamedTask("L1", ran, shed)));
+    Assertions.assertTrue(lanes.offer(HitPriority.LOW, new NamedTask("L2", ran, shed)));
+    // Lane is full
+    Assertions.assertFalse(lanes.offer(HitPriority.LOW, new NamedTask("L3", ran, shed)));
+    Assertions.assertEquals(1, lanes.getShedCount(HitPriority.LOW));
+    Assertions.assertTrue(lanes.offer(HitPriority.NORMAL, new NamedTask("N1", ran, shed)));
+    // Overloaded: shed the most recent low priority task
+    Assertions.assertTrue(lanes.offer(HitPriority.HIGH, new NamedTask("H1", ran, shed)));
+    Assertions.assertEquals(2, lanes.getShedCount(HitPriority.LOW));
+    Assertions.assertTrue(lanes.offer(HitPriority.HIGH, new NamedTask("H2", ran, shed)));
+    Assertions.assertEquals(3, lanes.getShedCount(HitPriority.LOW));
+    Assertions.assertTrue(lanes.offer(HitPriority.HIGH, new NamedTask("H3", ran, shed)));
+    Assertions.assertEquals(1, lanes.getShedCount(HitPriority.NORMAL));
+    // Nothing lower to shed
+    Assertions.assertFalse(lanes.offer(HitPriority.HIGH, new NamedTask("H4", ran, shed)));
+    Assertions.assertFalse(lanes.offer(HitPriority.LOW, new NamedTask("L4", ran, shed)));
+    Assertions.assertEquals(1, lanes.getShedCount(HitPriority.HIGH));
+    Assertions.assertEquals(4, lanes.getShedCount(HitPriority.LOW));
+    Assertions.assertEquals(3, lanes.size(HitPriority.HIGH));
+    Assertions.assertEquals("[L2, L1, N1]", shed.toString());
+    while (lanes.size() != 0) {
+      lanes.runNext();
+    }
+    Assertions.assertEquals("[H1, H2, H3]", ran.toString());
+  }
+
+  @Test
+  void testRemove() {
+    final PriorityLanes lanes = PriorityLanes.newBuilder().build();
+    final List<String> ran = new ArrayList<>();
+    final List<String> shed = new ArrayList<>();
+    final NamedTask task = new NamedTask("N1", ran, shed);
+    Assertions.assertFalse(lanes.remove(task));
+    Assertions.assertTrue(lanes.offer(HitPriority.NORMAL, task));
+    Assertions.assertTrue(lanes.offer(HitPriority.NORMAL, new NamedTask("N2", ran, shed)));
+    Assertions.assertTrue(lanes.remove(task));
+    Assertions.assertFalse(lanes.remove(task));
+    Assertions.assertEquals(1, lanes.size());
+    lanes.runNext();
+    Assertions.assertEquals("[N2]", ran.toString());
+    Assertions.assertEquals("[]", shed.toString());
+  }
+}
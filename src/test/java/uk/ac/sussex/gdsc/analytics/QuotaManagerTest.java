@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class QuotaManagerTest {
+
+  private static final String TID = "UA-1234-5";
+
+  private static long toMillis(int year, int month, int day) {
+    return LocalDateTime.of(year, month, day, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  @Test
+  void testConstructorThrows() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new QuotaManager(0, 1, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new QuotaManager(1 << 16, 1, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new QuotaManager(1, 0, 1));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new QuotaManager(1, Double.NaN, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new QuotaManager(1, 1, 0));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new QuotaManager(1, 1, 1, 0, System::currentTimeMillis, Math::random));
+  }
+
+  @Test
+  void testDefaults() {
+    final QuotaManager qm = new QuotaManager();
+    Assertions.assertEquals(1, qm.getSampleThreshold());
+    for (int i = 0; i < QuotaManager.DEFAULT_CLIENT_BURST; i++) {
+      Assertions.assertTrue(qm.tryAcquire(TID, "a"));
+    }
+    // Time may have elapsed to allow a refill so test the usage
+    final QuotaUsage usage = qm.getUsage(TID);
+    Assertions.assertEquals(TID, usage.getTrackingId());
+    Assertions.assertEquals(QuotaManager.DEFAULT_CLIENT_BURST, usage.getMonthlyCount());
+    Assertions.assertNull(qm.getUsage("UA-0000-1"));
+    Assertions.assertThrows(NullPointerException.class, () -> qm.tryAcquire(null, "a"));
+  }
+
+  @Test
+  void testClientBurstAndRefill() {
+    final AtomicLong time = new AtomicLong(toMillis(2020, 3, 10));
+    final QuotaManager qm = new QuotaManager(3, 2, 1000, 10, time::get, () -> 0.5);
+    for (int i = 0; i < 3; i++) {
+      Assertions.assertTrue(qm.tryAcquire(TID, "a"));
+    }
+    Assertions.assertFalse(qm.tryAcquire(TID, "a"));
+    // Other clients are independent
+    Assertions.assertTrue(qm.tryAcquire(TID, "b"));
+    // Null client is not limited
+    Assertions.assertTrue(qm.tryAcquire(TID, null));
+
+    // 2 per second is 1 token every 500ms
+    time.addAndGet(499);
+    Assertions.assertFalse(qm.tryAcquire(TID, "a"));
+    time.addAndGet(1);
+    Assertions.assertTrue(qm.tryAcquire(TID, "a"));
+    Assertions.assertFalse(qm.tryAcquire(TID, "a"));
+    // Refill is capped at the burst
+    time.addAndGet(10000);
+    for (int i = 0; i < 3; i++) {
+      Assertions.assertTrue(qm.tryAcquire(TID, "a"));
+    }
+    Assertions.assertFalse(qm.tryAcquire(TID, "a"));
+
+    final QuotaUsage usage = qm.getUsage(TID);
+    Assertions.assertEquals(9, usage.getMonthlyCount());
+    Assertions.assertEquals(9, usage.getAllowedCount());
+    Assertions.assertEquals(4, usage.getClientLimitedCount());
+    Assertions.assertEquals(0, usage.getMonthlyLimitedCount());
+    Assertions.assertEquals(2, usage.getClientCount());
+    Assertions.assertEquals(
+        TID + ": monthly=9, allowed=9, clientLimited=4, monthlyLimited=0, clients=2",
+        usage.toString());
+  }
+
+  @Test
+  void testMonthlyLimitAndRollover() {
+    final AtomicLong time = new AtomicLong(toMillis(2020, 12, 31));
+    final QuotaManager qm = new QuotaManager(100, 1, 5, 10, time::get, () -> 0.5);
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertTrue(qm.tryAcquire(TID, null));
+    }
+    Assertions.assertFalse(qm.tryAcquire(TID, null));
+    Assertions.assertFalse(qm.tryAcquire(TID, "a"));
+    // Different property
+    Assertions.assertTrue(qm.tryAcquire("UA-1234-6", null));
+
+    time.set(toMillis(2021, 1, 1) - 1);
+    Assertions.assertFalse(qm.tryAcquire(TID, null));
+    Assertions.assertEquals(5, qm.getUsage(TID).getMonthlyCount());
+    time.set(toMillis(2021, 1, 1));
+    Assertions.assertEquals(0, qm.getUsage(TID).getMonthlyCount());
+    Assertions.assertTrue(qm.tryAcquire(TID, null));
+
+    final QuotaUsage usage = qm.getUsage(TID);
+    Assertions.assertEquals(1, usage.getMonthlyCount());
+    Assertions.assertEquals(6, usage.getAllowedCount());
+    Assertions.assertEquals(3, usage.getMonthlyLimitedCount());
+    final List<QuotaUsage> list = qm.getUsage();
+    Assertions.assertEquals(2, list.size());
+  }
+
+  @Test
+  void testGetMonthEnd() {
+    Assertions.assertEquals(toMillis(2020, 3, 1), QuotaManager.getMonthEnd(toMillis(2020, 2, 29)));
+    Assertions.assertEquals(toMillis(2020, 3, 1), QuotaManager.getMonthEnd(toMillis(2020, 2, 1)));
+    Assertions.assertEquals(toMillis(2021, 1, 1),
+        QuotaManager.getMonthEnd(toMillis(2021, 1, 1) - 1));
+  }
+
+  @Test
+  void testSampleThreshold() {
+    final AtomicLong time = new AtomicLong(toMillis(2020, 6, 15));
+    final double[] random = {0.0};
+    final QuotaManager qm = new QuotaManager(100, 1, 10, 10, time::get, () -> random[0]);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> qm.setSampleThreshold(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> qm.setSampleThreshold(1.5));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> qm.setSampleThreshold(Double.NaN));
+    qm.setSampleThreshold(0.5);
+    Assertions.assertEquals(0.5, qm.getSampleThreshold());
+    // Below the threshold all hits are accepted
+    random[0] = 0.99;
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertTrue(qm.tryAcquire(TID, null));
+    }
+    // Count 5: probability (10 - 5) / (10 - 5) = 1
+    Assertions.assertTrue(qm.tryAcquire(TID, null));
+    // Count 6: probability 4 / 5 = 0.8
+    random[0] = 0.81;
+    Assertions.assertFalse(qm.tryAcquire(TID, null));
+    random[0] = 0.79;
+    Assertions.assertTrue(qm.tryAcquire(TID, null));
+    // Count 7: probability 3 / 5 = 0.6
+    random[0] = 0.61;
+    Assertions.assertFalse(qm.tryAcquire(TID, null));
+    random[0] = 0;
+    for (int i = 7; i < 10; i++) {
+      Assertions.assertTrue(qm.tryAcquire(TID, null));
+    }
+    Assertions.assertFalse(qm.tryAcquire(TID, null));
+    Assertions.assertEquals(3, qm.getUsage(TID).getMonthlyLimitedCount());
+  }
+
+  @Test
+  void testMaxClients() {
+    final AtomicLong time = new AtomicLong(toMillis(2020, 6, 15));
+    final QuotaManager qm = new QuotaManager(1, 1, 1000, 2, time::get, () -> 0.5);
+    Assertions.assertTrue(qm.tryAcquire(TID, "a"));
+    Assertions.assertTrue(qm.tryAcquire(TID, "b"));
+    Assertions.assertFalse(qm.tryAcquire(TID, "a"));
+    // Too many clients: new client is not limited
+    Assertions.assertTrue(qm.tryAcquire(TID, "c"));
+    Assertions.assertTrue(qm.tryAcquire(TID, "c"));
+    Assertions.assertEquals(2, qm.getUsage(TID).getClientCount());
+    // After a refill the idle buckets are removed
+    time.addAndGet(1000);
+    Assertions.assertTrue(qm.tryAcquire(TID, "c"));
+    Assertions.assertFalse(qm.tryAcquire(TID, "c"));
+    Assertions.assertEquals(1, qm.getUsage(TID).getClientCount());
+  }
+}
@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class RateLimitedLoggerTest {
+
+  private final Logger logger = Logger.getLogger(RateLimitedLoggerTest.class.getName());
+  private final List<LogRecord> records = new ArrayList<>();
+  private final Handler handler = new Handler() {
+    @Override
+    public void publish(LogRecord record) {
+      records.add(record);
+    }
+
+    @Override
+    public void flush() {
+      // Do nothing
+    }
+
+    @Override
+    public void close() {
+      // Do nothing
+    }
+  };
+
+  @BeforeEach
+  void setUp() {
+    logger.setUseParentHandlers(false);
+    logger.addHandler(handler);
+    logger.setLevel(Level.INFO);
+  }
+
+  @AfterEach
+  void tearDown() {
+    logger.removeHandler(handler);
+    logger.setUseParentHandlers(true);
+    logger.setLevel(null);
+  }
+
+  @Test
+  void testConstructorThrows() {
+    Assertions.assertThatIllegalArgumentException()
+        .isThrownBy(() -> new RateLimitedLogger(logger, 0, 1, TimeUnit.SECONDS));
+    Assertions.assertThatIllegalArgumentException()
+        .isThrownBy(() -> new RateLimitedLogger(logger, 1, 0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testRateLimit() {
+    final AtomicLong time = new AtomicLong();
+    final RateLimitedLogger log =
+        new RateLimitedLogger(logger, 2, 10, TimeUnit.NANOSECONDS, time::get, null);
+    // Burst
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 1)).isTrue();
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 2)).isTrue();
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 3)).isFalse();
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 4)).isFalse();
+    // Keys are independent
+    Assertions.assertThat(log.log(Level.WARNING, "b", "message={0}", 5)).isTrue();
+    Assertions.assertThat(records).hasSize(3);
+    final LogRecord r = records.get(0);
+    Assertions.assertThat(r.getLevel()).isEqualTo(Level.WARNING);
+    Assertions.assertThat(r.getMessage()).isEqualTo("message={0}");
+    Assertions.assertThat(r.getParameters()).containsExactly(1);
+    Assertions.assertThat(r.getLoggerName()).isEqualTo(logger.getName());
+
+    // Refill
+    time.set(9);
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 6)).isFalse();
+    time.set(10);
+    records.clear();
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 7)).isTrue();
+    Assertions.assertThat(records).hasSize(2);
+    // Summary of suppressed
+    Assertions.assertThat(records.get(0).getParameters()).containsExactly(3L, "a");
+    Assertions.assertThat(records.get(1).getParameters()).containsExactly(7);
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 8)).isFalse();
+
+    // Refill is limited to the burst
+    time.set(1000);
+    records.clear();
+    for (int i = 0; i < 5; i++) {
+      log.log(Level.WARNING, "a", "message={0}", i);
+    }
+    Assertions.assertThat(records).hasSize(3);
+  }
+
+  @Test
+  void testLogSuppressed() {
+    final RateLimitedLogger log =
+        new RateLimitedLogger(logger, 1, 1, TimeUnit.HOURS, () -> 0, null);
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message")).isTrue();
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message")).isFalse();
+    Assertions.assertThat(log.log(Level.SEVERE, "a", "message")).isFalse();
+    Assertions.assertThat(log.log(Level.INFO, "b", "message")).isTrue();
+    records.clear();
+    log.logSuppressed();
+    Assertions.assertThat(records).hasSize(1);
+    Assertions.assertThat(records.get(0).getLevel()).isEqualTo(Level.SEVERE);
+    Assertions.assertThat(records.get(0).getParameters()).containsExactly(2L, "a");
+    // Count is reset
+    records.clear();
+    log.logSuppressed();
+    Assertions.assertThat(records).isEmpty();
+  }
+
+  @Test
+  void testPeriodicSummary() throws InterruptedException {
+    final CountDownLatch summary = new CountDownLatch(1);
+    final Handler summaryHandler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        if (record.getParameters().length == 2) {
+          summary.countDown();
+        }
+      }
+
+      @Override
+      public void flush() {
+        // Do nothing
+      }
+
+      @Override
+      public void close() {
+        // Do nothing
+      }
+    };
+    logger.removeHandler(handler);
+    logger.addHandler(summaryHandler);
+    try {
+      final RateLimitedLogger log = new RateLimitedLogger(logger, 1, 20, TimeUnit.MILLISECONDS);
+      Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 1)).isTrue();
+      Assertions.assertThat(log.log(Level.WARNING, "a", "message={0}", 2)).isFalse();
+      // The summary is logged without a further message
+      Assertions.assertThat(summary.await(10, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      logger.removeHandler(summaryHandler);
+    }
+  }
+
+  @Test
+  void testNewErrorLogger() {
+    final RateLimitedLogger log = RateLimitedLogger.newErrorLogger(logger);
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertThat(log.log(Level.WARNING, "a", "message")).isTrue();
+    }
+    Assertions.assertThat(log.log(Level.WARNING, "a", "message")).isFalse();
+  }
+
+  @Test
+  void testLevelDisabled() {
+    final RateLimitedLogger log = new RateLimitedLogger(logger, 1, 1, TimeUnit.SECONDS);
+    Assertions.assertThat(log.isLoggable(Level.FINE)).isFalse();
+    Assertions.assertThat(log.isLoggable(Level.INFO)).isTrue();
+    // Does not consume a token
+    Assertions.assertThat(log.log(Level.FINE, "a", "message")).isFalse();
+    Assertions.assertThat(log.log(Level.INFO, "a", "message")).isTrue();
+    Assertions.assertThat(records).hasSize(1);
+  }
+
+  @Test
+  void testMaxKeys() {
+    final RateLimitedLogger log =
+        new RateLimitedLogger(logger, 1, 1, TimeUnit.HOURS, () -> 0, null);
+    for (int i = 0; i < 64; i++) {
+      Assertions.assertThat(log.log(Level.INFO, "key" + i, "message")).isTrue();
+    }
+    // Overflow keys share a bucket
+    Assertions.assertThat(log.log(Level.INFO, "x", "message")).isTrue();
+    Assertions.assertThat(log.log(Level.INFO, "y", "message")).isFalse();
+  }
+}
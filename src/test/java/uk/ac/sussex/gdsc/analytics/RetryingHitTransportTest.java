@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class RetryingHitTransportTest {
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * A transport that returns a sequence of outcomes. An outcome is a {@link DispatchStatus} or an
+   * exception.
+   */
+  private static class SequenceTransport implements HitTransport {
+    final Deque<Object> outcomes;
+    final AtomicInteger count = new AtomicInteger();
+
+    SequenceTransport(Object... outcomes) {
+      this.outcomes = new ArrayDeque<>(Arrays.asList(outcomes));
+    }
+
+    @Override
+    public synchronized CompletableFuture<DispatchStatus> send(ByteBuffer payload,
+        HitBatch batch) {
+      count.incrementAndGet();
+      // Consume the payload to check each attempt uses an independent position
+      payload.position(payload.limit());
+      final Object outcome = outcomes.size() == 1 ? outcomes.peek() : outcomes.poll();
+      final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+      if (outcome instanceof DispatchStatus) {
+        result.complete((DispatchStatus) outcome);
+      } else {
+        result.completeExceptionally((Throwable) outcome);
+      }
+      return result;
+    }
+  }
+
+  @BeforeEach
+  void setup() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void testConstructor() {
+    final HitTransport delegate = new SequenceTransport(DispatchStatus.COMPLETE);
+    final RetryingHitTransport transport = new RetryingHitTransport(delegate, scheduler);
+    Assertions.assertEquals(RetryingHitTransport.DEFAULT_MAX_ATTEMPTS, transport.getMaxAttempts());
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new RetryingHitTransport(null, scheduler));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new RetryingHitTransport(delegate, null));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new RetryingHitTransport(delegate, scheduler, 0, 1, TimeUnit.MILLISECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new RetryingHitTransport(delegate, scheduler, 1, -1, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void testSendWithoutRetry() {
+    final SequenceTransport delegate = new SequenceTransport(DispatchStatus.COMPLETE);
+    final RetryingHitTransport transport =
+        new RetryingHitTransport(delegate, scheduler, 3, 1, TimeUnit.MILLISECONDS);
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        transport.send(ByteBuffer.wrap(new byte[10]), HitBatch.single()).join());
+    Assertions.assertEquals(1, delegate.count.get());
+    Assertions.assertEquals(0, transport.getRetryCount());
+  }
+
+  @Test
+  void testSendWithRetry() {
+    final SequenceTransport delegate = new SequenceTransport(DispatchStatus.ERROR,
+        new IOException("No connection"), DispatchStatus.COMPLETE);
+    final RetryingHitTransport transport =
+        new RetryingHitTransport(delegate, scheduler, 3, 1, TimeUnit.MILLISECONDS);
+    final ByteBuffer payload = ByteBuffer.wrap(new byte[10]);
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        transport.send(payload, HitBatch.single()).join());
+    Assertions.assertEquals(3, delegate.count.get());
+    Assertions.assertEquals(2, transport.getRetryCount());
+    Assertions.assertEquals(0, payload.position());
+  }
+
+  @Test
+  void testSendFailsAfterMaxAttempts() {
+    final IOException exception = new IOException("No connection");
+    final SequenceTransport delegate = new SequenceTransport(exception);
+    final RetryingHitTransport transport =
+        new RetryingHitTransport(delegate, scheduler, 2, 1, TimeUnit.MILLISECONDS);
+    final CompletableFuture<DispatchStatus> result =
+        transport.send(ByteBuffer.wrap(new byte[10]), HitBatch.single());
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class, result::join);
+    Assertions.assertSame(exception, ex.getCause());
+    Assertions.assertEquals(2, delegate.count.get());
+
+    // Error status is returned
+    final SequenceTransport delegate2 = new SequenceTransport(DispatchStatus.ERROR);
+    final RetryingHitTransport transport2 =
+        new RetryingHitTransport(delegate2, scheduler, 3, 1, TimeUnit.MILLISECONDS);
+    Assertions.assertEquals(DispatchStatus.ERROR,
+        transport2.send(ByteBuffer.wrap(new byte[10]), HitBatch.single()).join());
+    Assertions.assertEquals(3, delegate2.count.get());
+  }
+
+  @Test
+  void testSendWithShutdownScheduler() {
+    scheduler.shutdown();
+    final SequenceTransport delegate = new SequenceTransport(DispatchStatus.ERROR);
+    final RetryingHitTransport transport =
+        new RetryingHitTransport(delegate, scheduler, 3, 1, TimeUnit.MILLISECONDS);
+    Assertions.assertEquals(DispatchStatus.ERROR,
+        transport.send(ByteBuffer.wrap(new byte[10]), HitBatch.single()).join());
+    Assertions.assertEquals(1, delegate.count.get());
+    Assertions.assertEquals(0, transport.getRetryCount());
+  }
+
+  @Test
+  void testSendWithRuntimeException() {
+    final IllegalStateException exception = new IllegalStateException();
+    final RetryingHitTransport transport = new RetryingHitTransport((payload, batch) -> {
+      throw exception;
+    }, scheduler);
+    final CompletableFuture<DispatchStatus> result =
+        transport.send(ByteBuffer.wrap(new byte[10]), HitBatch.single());
+    final CompletionException ex = Assertions.assertThrows(CompletionException.class, result::join);
+    Assertions.assertSame(exception, ex.getCause());
+  }
+}
@@ -59,13 +59,22 @@ class UrlUtilsTest {
     Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_HOSTNAME, UrlUtils.getHostname());
     Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_FILE, UrlUtils.getFile());
     Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_DEBUG_FILE, UrlUtils.getDebugFile());
+    Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_BATCH_FILE, UrlUtils.getBatchFile());
+    Assertions.assertEquals(UrlUtils.DEFAULT_GA4_FILE, UrlUtils.getGa4File());
+    Assertions.assertEquals(UrlUtils.DEFAULT_GA4_DEBUG_FILE, UrlUtils.getGa4DebugFile());
 
     final String hostname = "hostname";
     final String file = "/file";
     final String debugFile = "/debugFile";
+    final String batchFile = "/batchFile";
+    final String ga4File = "/ga4File";
+    final String ga4DebugFile = "/ga4DebugFile";
     System.setProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_HOSTNAME, hostname);
     System.setProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_FILE, file);
     System.setProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_DEBUG_FILE, debugFile);
+    System.setProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_BATCH_FILE, batchFile);
+    System.setProperty(UrlUtils.PROPERTY_GA4_FILE, ga4File);
+    System.setProperty(UrlUtils.PROPERTY_GA4_DEBUG_FILE, ga4DebugFile);
 
     UrlUtils.refreshSystemProperties();
 
@@ -85,6 +94,20 @@ class UrlUtilsTest {
     Assertions.assertEquals("https://" + hostname + debugFile,
         UrlUtils.getGoogleAnalyticsUrl(true, true).toString());
 
+    // batch
+    Assertions.assertEquals("http://" + hostname + batchFile,
+        UrlUtils.getGoogleAnalyticsBatchUrl(false).toString());
+    Assertions.assertEquals("https://" + hostname + batchFile,
+        UrlUtils.getGoogleAnalyticsBatchUrl(true).toString());
+
+    // GA4 - Always uses https. The query is URL encoded.
+    Assertions.assertEquals(
+        "https://" + hostname + ga4File + "?measurement_id=G-123&api_secret=a%26b",
+        UrlUtils.getGa4Url("G-123", "a&b", false).toString());
+    Assertions.assertEquals(
+        "https://" + hostname + ga4DebugFile + "?measurement_id=G-123&api_secret=secret",
+        UrlUtils.getGa4Url("G-123", "secret", true).toString());
+
     // Test throws an exception with bad format
     System.setProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_PROTOCOL, "foo");
     System.setProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_SECURE_PROTOCOL, "bar");
@@ -102,6 +125,14 @@ class UrlUtilsTest {
       UrlUtils.getGoogleAnalyticsUrl(true, false);
     });
     Assertions.assertTrue(ex.getMessage().contains("unknown protocol: bar"));
+    ex = Assertions.assertThrows(MalformedUrlRuntimeException.class, () -> {
+      UrlUtils.getGoogleAnalyticsBatchUrl(true);
+    });
+    Assertions.assertTrue(ex.getMessage().contains("unknown protocol: bar"));
+    ex = Assertions.assertThrows(MalformedUrlRuntimeException.class, () -> {
+      UrlUtils.getGa4Url("G-123", "secret", false);
+    });
+    Assertions.assertTrue(ex.getMessage().contains("unknown protocol: bar"));
 
     // Reset
     System.clearProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_PROTOCOL);
@@ -109,6 +140,9 @@ class UrlUtilsTest {
     System.clearProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_HOSTNAME);
     System.clearProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_FILE);
     System.clearProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_DEBUG_FILE);
+    System.clearProperty(UrlUtils.PROPERTY_GOOGLE_ANALYTICS_BATCH_FILE);
+    System.clearProperty(UrlUtils.PROPERTY_GA4_FILE);
+    System.clearProperty(UrlUtils.PROPERTY_GA4_DEBUG_FILE);
 
     UrlUtils.refreshSystemProperties();
 
@@ -118,5 +152,8 @@ class UrlUtilsTest {
     Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_HOSTNAME, UrlUtils.getHostname());
     Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_FILE, UrlUtils.getFile());
     Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_DEBUG_FILE, UrlUtils.getDebugFile());
+    Assertions.assertEquals(UrlUtils.DEFAULT_GOOGLE_ANALYTICS_BATCH_FILE, UrlUtils.getBatchFile());
+    Assertions.assertEquals(UrlUtils.DEFAULT_GA4_FILE, UrlUtils.getGa4File());
+    Assertions.assertEquals(UrlUtils.DEFAULT_GA4_DEBUG_FILE, UrlUtils.getGa4DebugFile());
   }
 }
@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class VirtualThreadsTest {
+
+  @Test
+  void testCreateFactoryWithMissingClass() {
+    Assertions.assertNull(VirtualThreads.createFactory("uk.ac.sussex.gdsc.analytics.NoSuchClass"));
+    // Wrong type
+    Assertions.assertNull(VirtualThreads.createFactory(Object.class.getName()));
+  }
+
+  @Test
+  void testNotAvailable() {
+    Assumptions.assumeFalse(VirtualThreads.isAvailable());
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        VirtualThreads::newExecutorService);
+    // Falls back to a platform thread executor
+    final ExecutorService es = GoogleAnalyticsClient.newBuilder("UA-12345-6")
+        .setVirtualThreads(true).getOrCreateExecutorService();
+    es.shutdown();
+    Assertions.assertNotNull(es);
+  }
+
+  @Test
+  void testAvailable() throws InterruptedException, ExecutionException {
+    Assumptions.assumeTrue(VirtualThreads.isAvailable());
+    final ExecutorService es = GoogleAnalyticsClient.newBuilder("UA-12345-6")
+        .setVirtualThreads(true).getOrCreateExecutorService();
+    try {
+      final Object virtual = es.submit(() -> Thread.class.getMethod("isVirtual")
+          .invoke(Thread.currentThread())).get();
+      Assertions.assertEquals(Boolean.TRUE, virtual);
+    } finally {
+      es.shutdown();
+    }
+  }
+
+  @Test
+  void testOrderedIgnoresVirtualThreads() {
+    // A single ordered thread uses a FIFO pool
+    ExecutorService es = GoogleAnalyticsClient.newBuilder("UA-12345-6").setOrdered(true)
+        .setThreadCount(1).setVirtualThreads(true).getOrCreateExecutorService();
+    es.shutdown();
+    Assertions.assertTrue(es instanceof ThreadPoolExecutor);
+    Assertions.assertEquals(1, ((ThreadPoolExecutor) es).getMaximumPoolSize());
+    es = GoogleAnalyticsClient.newBuilder("UA-12345-6").setOrdered(true).setThreadCount(2)
+        .setVirtualThreads(true).getOrCreateExecutorService();
+    es.shutdown();
+    Assertions.assertTrue(es instanceof KeyedExecutor);
+  }
+}
@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.ga4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.HitBatch;
+import uk.ac.sussex.gdsc.analytics.HitTransport;
+import uk.ac.sussex.gdsc.analytics.HttpUrlConnectionTransport;
+
+@SuppressWarnings("javadoc")
+class Ga4ClientTest {
+
+  private ExecutorService executor;
+
+  /**
+   * A transport that records the payloads. The status of each send is created by a function of
+   * the send count.
+   */
+  private static class RecordingTransport implements HitTransport {
+    final List<String> payloads = new ArrayList<>();
+    final List<HitBatch> batches = new ArrayList<>();
+    final IntFunction<CompletableFuture<DispatchStatus>> status;
+
+    RecordingTransport() {
+      this(i -> CompletableFuture.completedFuture(DispatchStatus.COMPLETE));
+    }
+
+    RecordingTransport(IntFunction<CompletableFuture<DispatchStatus>> status) {
+      this.status = status;
+    }
+
+    @Override
+    public synchronized CompletableFuture<DispatchStatus> send(ByteBuffer payload,
+        HitBatch batch) {
+      payloads.add(StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+      batches.add(batch);
+      return status.apply(batches.size());
+    }
+  }
+
+  private static List<Ga4Event> createEvents(int count) {
+    final List<Ga4Event> events = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      events.add(Ga4Event.newBuilder("event").addParameter("index", i).build());
+    }
+    return events;
+  }
+
+  private static int count(String text, String pattern) {
+    final Matcher matcher = Pattern.compile(pattern).matcher(text);
+    int count = 0;
+    while (matcher.find()) {
+      count++;
+    }
+    return count;
+  }
+
+  @BeforeEach
+  void setup() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testBuilder() {
+    Assertions.assertThrows(NullPointerException.class, () -> Ga4Client.newBuilder(null, "s"));
+    Assertions.assertThrows(NullPointerException.class, () -> Ga4Client.newBuilder("G-1", null));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Ga4Client.newBuilder("", "s"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Ga4Client.newBuilder("G-1", ""));
+
+    final Ga4Client client = Ga4Client.newBuilder("G-123", "secret").build();
+    Assertions.assertNotNull(client.getClientId());
+    Assertions.assertNull(client.getUserId());
+    Assertions.assertNotNull(client.getExecutorService());
+    final HttpUrlConnectionTransport transport =
+        (HttpUrlConnectionTransport) client.getTransport();
+    Assertions.assertTrue(transport.getUrl().toString()
+        .endsWith("/mp/collect?measurement_id=G-123&api_secret=secret"));
+    Assertions.assertTrue(transport.getUrl().toString().startsWith("https://"));
+    client.getExecutorService().shutdown();
+
+    final HitTransport transport2 = new RecordingTransport();
+    final Ga4Client client2 = Ga4Client.newBuilder("G-123", "secret").setClientId("cid")
+        .setUserId("uid").setTransport(transport2).setExecutorService(executor).build();
+    Assertions.assertEquals("cid", client2.getClientId());
+    Assertions.assertEquals("uid", client2.getUserId());
+    Assertions.assertSame(transport2, client2.getTransport());
+    Assertions.assertSame(executor, client2.getExecutorService());
+
+    final Ga4Client client3 = Ga4Client.newBuilder("G-123", "secret").setDebug(true)
+        .setExecutorService(executor).build();
+    Assertions.assertTrue(((HttpUrlConnectionTransport) client3.getTransport()).getUrl()
+        .toString().contains("/debug/mp/collect?"));
+  }
+
+  @Test
+  void testSend() {
+    final RecordingTransport transport = new RecordingTransport();
+    final Ga4Client client = Ga4Client.newBuilder("G-123", "secret").setClientId("cid")
+        .setUserId("uid").setTransport(transport).setExecutorService(executor).build();
+
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        client.send(Collections.emptyList()).join());
+    Assertions.assertTrue(transport.payloads.isEmpty());
+    Assertions.assertThrows(NullPointerException.class, () -> client.send((Ga4Event) null));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> client.send(Arrays.asList(Ga4Event.newBuilder("a").build(), null)));
+
+    final long start = System.currentTimeMillis();
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        client.send(Ga4Event.newBuilder("login").build()).join());
+    Assertions.assertEquals(1, transport.payloads.size());
+    final String payload = transport.payloads.get(0);
+    final Matcher matcher = Pattern.compile("\\{\"client_id\":\"cid\",\"user_id\":\"uid\","
+        + "\"timestamp_micros\":(\\d+),\"events\":\\[\\{\"name\":\"login\","
+        + "\"params\":\\{\"session_id\":(\\d+)\\}\\}\\]\\}").matcher(payload);
+    Assertions.assertTrue(matcher.matches(), payload);
+    final long timestamp = Long.parseLong(matcher.group(1));
+    Assertions.assertTrue(timestamp >= start * 1000, payload);
+    final long sessionId = Long.parseLong(matcher.group(2));
+    Assertions.assertTrue(sessionId >= start / 1000, payload);
+    final HitBatch batch = transport.batches.get(0);
+    Assertions.assertEquals(1, batch.getHitCount());
+    Assertions.assertEquals(Ga4Client.CONTENT_TYPE, batch.getContentType());
+
+    // Batches of the maximum events. The session is the same.
+    Assertions.assertEquals(DispatchStatus.COMPLETE, client.send(createEvents(60)).join());
+    Assertions.assertEquals(4, transport.payloads.size());
+    for (int i = 1; i < 4; i++) {
+      Assertions.assertEquals(i == 3 ? 10 : Ga4Client.MAX_EVENTS,
+          transport.batches.get(i).getHitCount());
+      final String text = transport.payloads.get(i);
+      Assertions.assertEquals(transport.batches.get(i).getHitCount(),
+          count(text, "\"session_id\":" + sessionId + "\\b"));
+    }
+    Assertions.assertTrue(transport.payloads.get(3).contains("\"index\":59"));
+  }
+
+  @Test
+  void testSendSplitsLargeRequest() {
+    final RecordingTransport transport = new RecordingTransport();
+    final Ga4Client client = Ga4Client.newBuilder("G-123", "secret").setTransport(transport)
+        .setExecutorService(executor).build();
+    // Values of 3-byte UTF-8 characters
+    final char[] chars = new char[Ga4Event.MAX_VALUE_LENGTH];
+    Arrays.fill(chars, '\u20ac');
+    final String value = new String(chars);
+    final Ga4Event.Builder builder = Ga4Event.newBuilder("event");
+    for (int i = 1; i < Ga4Event.MAX_PARAMETERS; i++) {
+      builder.addParameter("p" + i, value);
+    }
+    final Ga4Event event = builder.build();
+    Assertions.assertEquals(DispatchStatus.COMPLETE,
+        client.send(Collections.nCopies(Ga4Client.MAX_EVENTS, event)).join());
+    Assertions.assertEquals(2, transport.payloads.size());
+    Assertions.assertEquals(Ga4Client.MAX_EVENTS,
+        transport.batches.get(0).getHitCount() + transport.batches.get(1).getHitCount());
+    for (final String payload : transport.payloads) {
+      Assertions.assertTrue(
+          payload.getBytes(StandardCharsets.UTF_8).length <= Ga4Client.MAX_REQUEST_BYTES);
+    }
+  }
+
+  @Test
+  void testSendWithErrors() {
+    // Second request is an error
+    final RecordingTransport transport = new RecordingTransport(
+        i -> CompletableFuture.completedFuture(i == 2 ? DispatchStatus.ERROR
+            : DispatchStatus.COMPLETE));
+    final Ga4Client client = Ga4Client.newBuilder("G-123", "secret").setTransport(transport)
+        .setExecutorService(executor).build();
+    Assertions.assertEquals(DispatchStatus.ERROR, client.send(createEvents(75)).join());
+    Assertions.assertEquals(3, transport.payloads.size());
+
+    // Failed transport
+    final IOException exception = new IOException("No connection");
+    final RecordingTransport transport2 = new RecordingTransport(i -> {
+      final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+      result.completeExceptionally(exception);
+      return result;
+    });
+    final Ga4Client client2 = Ga4Client.newBuilder("G-123", "secret").setTransport(transport2)
+        .setExecutorService(executor).build();
+    Assertions.assertEquals(DispatchStatus.ERROR, client2.send(createEvents(1)).join());
+    // All requests are sent
+    Assertions.assertEquals(DispatchStatus.ERROR, client2.send(createEvents(50)).join());
+    Assertions.assertEquals(3, transport2.payloads.size());
+
+    // Shutdown
+    executor.shutdown();
+    Assertions.assertEquals(DispatchStatus.SHUTDOWN, client.send(createEvents(1)).join());
+  }
+
+  @Test
+  void testClose() throws InterruptedException {
+    final CompletableFuture<DispatchStatus> gate = new CompletableFuture<>();
+    final RecordingTransport transport = new RecordingTransport(i -> gate);
+    final Ga4Client client = Ga4Client.newBuilder("G-123", "secret").setTransport(transport)
+        .setExecutorService(executor).build();
+    final CompletableFuture<DispatchStatus> result = client.send(createEvents(1));
+    Assertions.assertFalse(client.close(50, TimeUnit.MILLISECONDS));
+    // A custom executor service is not shutdown
+    Assertions.assertFalse(executor.isShutdown());
+    Assertions.assertEquals(DispatchStatus.SHUTDOWN, client.send(createEvents(1)).join());
+    gate.complete(DispatchStatus.COMPLETE);
+    Assertions.assertEquals(DispatchStatus.COMPLETE, result.join());
+    Assertions.assertTrue(client.close(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, transport.payloads.size());
+
+    // The default executor service is shutdown
+    final Ga4Client client2 =
+        Ga4Client.newBuilder("G-123", "secret").setTransport(new RecordingTransport()).build();
+    Assertions.assertEquals(DispatchStatus.COMPLETE, client2.send(createEvents(1)).join());
+    Assertions.assertTrue(client2.close(10, TimeUnit.SECONDS));
+    Assertions.assertTrue(client2.getExecutorService().isShutdown());
+  }
+}
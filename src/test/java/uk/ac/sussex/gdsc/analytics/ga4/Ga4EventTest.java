@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.ga4;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class Ga4EventTest {
+
+  @Test
+  void testBuild() {
+    final Ga4Event event = Ga4Event.newBuilder("select_item").addParameter("item_id", "abc")
+        .addParameter("count", 3L).addParameter("value", 2.25).addEngagementTime(100).build();
+    Assertions.assertEquals("select_item", event.getName());
+    Assertions.assertEquals(4, event.getParameterCount());
+    Assertions.assertTrue(event.hasParameter("count"));
+    Assertions.assertTrue(event.hasParameter(Ga4Event.ENGAGEMENT_TIME));
+    Assertions.assertFalse(event.hasParameter(Ga4Event.SESSION_ID));
+    final String expected = "{\"name\":\"select_item\",\"params\":{\"item_id\":\"abc\","
+        + "\"count\":3,\"value\":2.25,\"engagement_time_msec\":100}}";
+    Assertions.assertEquals(expected, event.toString());
+    Assertions.assertEquals(expected, event.writeTo(new JsonWriter()).toString());
+
+    // Session id is added if absent
+    Assertions.assertEquals(
+        "{\"name\":\"select_item\",\"params\":{\"item_id\":\"abc\",\"count\":3,\"value\":2.25,"
+            + "\"engagement_time_msec\":100,\"session_id\":123}}",
+        event.writeTo(new JsonWriter(), 123).toString());
+    final Ga4Event event2 = Ga4Event.newBuilder("login").build();
+    Assertions.assertEquals(0, event2.getParameterCount());
+    Assertions.assertEquals("{\"name\":\"login\"}", event2.toString());
+    Assertions.assertEquals("{\"name\":\"login\",\"params\":{\"session_id\":123}}",
+        event2.writeTo(new JsonWriter(), 123).toString());
+    final Ga4Event event3 = Ga4Event.newBuilder("login").addParameter("session_id", 7L).build();
+    Assertions.assertEquals("{\"name\":\"login\",\"params\":{\"session_id\":7}}",
+        event3.writeTo(new JsonWriter(), 123).toString());
+  }
+
+  @Test
+  void testInvalidNames() {
+    Assertions.assertThrows(NullPointerException.class, () -> Ga4Event.newBuilder(null));
+    for (final String name : new String[] {"", "1abc", "_abc", "a-b", "a b", "google_x", "ga_x",
+        "firebase_x", "a2345678901234567890123456789012345678901"}) {
+      Assertions.assertThrows(IllegalArgumentException.class, () -> Ga4Event.newBuilder(name),
+          name);
+      final Ga4Event.Builder builder = Ga4Event.newBuilder("event");
+      Assertions.assertThrows(IllegalArgumentException.class,
+          () -> builder.addParameter(name, 1L), name);
+    }
+    // Maximum length
+    Assertions.assertEquals(Ga4Event.MAX_NAME_LENGTH,
+        Ga4Event.newBuilder("a234567890123456789012345678901234567890").build().getName()
+            .length());
+  }
+
+  @Test
+  void testInvalidParameters() {
+    final Ga4Event.Builder builder = Ga4Event.newBuilder("event");
+    Assertions.assertThrows(NullPointerException.class,
+        () -> builder.addParameter("a", (String) null));
+    final char[] chars = new char[Ga4Event.MAX_VALUE_LENGTH + 1];
+    Arrays.fill(chars, 'x');
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> builder.addParameter("a", new String(chars)));
+    builder.addParameter("a", new String(chars, 1, Ga4Event.MAX_VALUE_LENGTH));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> builder.addParameter("b", Double.NaN));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.addEngagementTime(-1));
+    // Duplicate
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.addParameter("a", 1L));
+    Assertions.assertEquals(1, builder.getParameterCount());
+
+    // Maximum: one parameter is reserved for the session id
+    for (int i = 2; i < Ga4Event.MAX_PARAMETERS; i++) {
+      builder.addParameter("p" + i, i);
+    }
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.addParameter("z", 1L));
+    Assertions.assertEquals(Ga4Event.MAX_PARAMETERS - 1, builder.getParameterCount());
+    builder.addParameter(Ga4Event.SESSION_ID, 123L);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> builder.addParameter("z", 1L));
+    Assertions.assertEquals(Ga4Event.MAX_PARAMETERS, builder.build().getParameterCount());
+  }
+}
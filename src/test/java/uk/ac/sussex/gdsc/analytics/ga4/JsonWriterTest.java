@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.ga4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class JsonWriterTest {
+
+  @Test
+  void testConstructor() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new JsonWriter(0));
+    final JsonWriter writer = new JsonWriter(1);
+    Assertions.assertEquals(0, writer.size());
+    Assertions.assertFalse(writer.isComplete());
+    Assertions.assertEquals("", writer.toString());
+  }
+
+  @Test
+  void testWriteDocument() {
+    // Small capacity to test growth
+    final JsonWriter writer = new JsonWriter(2);
+    writer.beginObject().name("s").value("text").name("l").value(-42L).name("d").value(1.5)
+        .name("t").value(true).name("f").value(false).name("n").value((String) null)
+        .name("a").beginArray().value(1L).beginObject().endObject().beginArray().endArray()
+        .nullValue().endArray().endObject();
+    final String expected =
+        "{\"s\":\"text\",\"l\":-42,\"d\":1.5,\"t\":true,\"f\":false,\"n\":null,"
+            + "\"a\":[1,{},[],null]}";
+    Assertions.assertEquals(expected, writer.toString());
+    Assertions.assertTrue(writer.isComplete());
+    Assertions.assertEquals(expected.length(), writer.size());
+    Assertions.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), writer.toByteArray());
+    final ByteBuffer bb = writer.toByteBuffer();
+    Assertions.assertEquals(expected, StandardCharsets.UTF_8.decode(bb).toString());
+
+    // Reuse
+    writer.reset();
+    Assertions.assertEquals(0, writer.size());
+    Assertions.assertFalse(writer.isComplete());
+    writer.value(Long.MIN_VALUE);
+    Assertions.assertEquals(Long.toString(Long.MIN_VALUE), writer.toString());
+    Assertions.assertTrue(writer.isComplete());
+  }
+
+  @Test
+  void testWriteDouble() {
+    final JsonWriter writer = new JsonWriter();
+    for (final double value : new double[] {0, 1, -1, 0.1, 1.0 / 3, 123456.789, 1e-10, 1e20,
+        Double.MAX_VALUE, Double.MIN_VALUE}) {
+      writer.reset().value(value);
+      Assertions.assertEquals(value, Double.parseDouble(writer.toString()));
+      Assertions.assertTrue(writer.toString().matches("-?[0-9]+(\\.[0-9]+)?"), writer::toString);
+    }
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> writer.reset().value(Double.NaN));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> writer.reset().value(Double.POSITIVE_INFINITY));
+  }
+
+  @Test
+  void testWriteString() {
+    final JsonWriter writer = new JsonWriter();
+    final String text = "q\"b\\s/\b\f\n\r\t\u0001\u001f é€😀";
+    writer.value(text);
+    Assertions.assertEquals(
+        "\"q\\\"b\\\\s/\\b\\f\\n\\r\\t\\u0001\\u001f é€😀\"",
+        writer.toString());
+    // Encoded as UTF-8
+    Assertions.assertArrayEquals(writer.toString().getBytes(StandardCharsets.UTF_8),
+        writer.toByteArray());
+
+    // Malformed surrogates
+    writer.reset().value("a\ud83db\ude00c\ud83d");
+    Assertions.assertEquals("\"a?b?c?\"", writer.toString());
+  }
+
+  @Test
+  void testInvalidStructure() {
+    final JsonWriter writer = new JsonWriter();
+    // Name outside of an object
+    Assertions.assertThrows(IllegalStateException.class, () -> writer.name("a"));
+    // Close structures that are not open
+    Assertions.assertThrows(IllegalStateException.class, writer::endObject);
+    Assertions.assertThrows(IllegalStateException.class, writer::endArray);
+    writer.beginObject();
+    // Value without a name
+    Assertions.assertThrows(IllegalStateException.class, () -> writer.value(1L));
+    Assertions.assertThrows(IllegalStateException.class, writer::endArray);
+    writer.name("a");
+    // Name without a value
+    Assertions.assertThrows(IllegalStateException.class, () -> writer.name("b"));
+    Assertions.assertThrows(IllegalStateException.class, writer::endObject);
+    writer.value(1L).endObject();
+    // A single top-level value
+    Assertions.assertThrows(IllegalStateException.class, () -> writer.value(1L));
+    Assertions.assertEquals("{\"a\":1}", writer.toString());
+
+    // Maximum depth
+    writer.reset();
+    Assertions.assertThrows(IllegalStateException.class, () -> {
+      for (;;) {
+        writer.beginArray();
+      }
+    });
+  }
+}
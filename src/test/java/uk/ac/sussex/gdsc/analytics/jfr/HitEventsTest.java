@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.jfr;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+
+@SuppressWarnings("javadoc")
+class HitEventsTest {
+
+  @Test
+  void testGetHitType() {
+    Assertions.assertNull(HitEvents.getHitType(""));
+    Assertions.assertNull(HitEvents.getHitType("v=1&tid=UA-1-2"));
+    Assertions.assertEquals("event", HitEvents.getHitType("t=event"));
+    Assertions.assertEquals("event", HitEvents.getHitType("v=1&t=event&ec=a"));
+    Assertions.assertEquals("", HitEvents.getHitType("v=1&t=&ec=a"));
+    Assertions.assertEquals("pageview", HitEvents.getHitType("tid=t=x&&t=pageview"));
+  }
+
+  @Test
+  void testCreateRecorder() {
+    Assertions.assertNull(HitEvents.createRecorder("uk.ac.sussex.gdsc.analytics.jfr.NoSuchClass"));
+    Assertions.assertNull(HitEvents.createRecorder(HitEvents.class.getName()));
+  }
+
+  @Test
+  void testIsAvailable() {
+    final String version = System.getProperty("java.specification.version");
+    Assumptions.assumeFalse(version.startsWith("1."), "Requires Java 11+");
+    Assumptions.assumeFalse(version.equals("9") || version.equals("10"), "Requires Java 11+");
+    Assertions.assertTrue(HitEvents.isAvailable());
+  }
+
+  @Test
+  void testNotRecording() {
+    Assertions.assertNull(HitEvents.beginBuild());
+    Assertions.assertNull(HitEvents.beginEncode());
+    Assertions.assertNull(HitEvents.beginEnqueue());
+    Assertions.assertNull(HitEvents.beginDispatch());
+    Assertions.assertNull(HitEvents.beginSpool());
+    // Commit of a null event is ignored
+    HitEvents.commitBuild(null, HitType.EVENT);
+    HitEvents.commitEncode(null, "t=event");
+    HitEvents.commitEnqueue(null, null, 0);
+    HitEvents.commitDispatch(null, "t=event", DispatchStatus.COMPLETE);
+    HitEvents.commitSpool(null, "append", 1, 10);
+  }
+
+  @Test
+  void testRecording(@TempDir Path dir) throws Exception {
+    Assumptions.assumeTrue(HitEvents.isAvailable());
+    // Use reflection to support compilation on Java 8
+    final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+    final Object recording = recordingClass.getConstructor().newInstance();
+    final Method enable = recordingClass.getMethod("enable", String.class);
+    final String[] names = {"HitBuild", "HitEncode", "HitEnqueue", "HitDispatch", "HitSpool"};
+    for (final String name : names) {
+      enable.invoke(recording, "uk.ac.sussex.gdsc.analytics." + name);
+    }
+    final Path file = dir.resolve("test.jfr");
+    try (AutoCloseable closeable = (AutoCloseable) recording) {
+      recordingClass.getMethod("start").invoke(recording);
+      HitEvents.commitBuild(HitEvents.beginBuild(), HitType.EVENT);
+      HitEvents.commitEncode(HitEvents.beginEncode(), "v=1&t=event");
+      HitEvents.commitEnqueue(HitEvents.beginEnqueue(), null, 1);
+      HitEvents.commitDispatch(HitEvents.beginDispatch(), "v=1&t=event", DispatchStatus.COMPLETE);
+      HitEvents.commitSpool(HitEvents.beginSpool(), "append", 1, 10);
+      recordingClass.getMethod("stop").invoke(recording);
+      recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+    }
+
+    final Class<?> fileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+    final List<?> events = (List<?>) fileClass.getMethod("readAllEvents", Path.class).invoke(null,
+        file);
+    final List<String> recorded = events.stream().map(e -> {
+      try {
+        final Object type = e.getClass().getMethod("getEventType").invoke(e);
+        return (String) type.getClass().getMethod("getName").invoke(type);
+      } catch (final ReflectiveOperationException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }).collect(Collectors.toList());
+    for (final String name : names) {
+      Assertions.assertTrue(recorded.contains("uk.ac.sussex.gdsc.analytics." + name),
+          () -> name + " not in " + recorded);
+    }
+  }
+}
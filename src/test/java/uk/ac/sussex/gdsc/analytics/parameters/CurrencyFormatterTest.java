@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class CurrencyFormatterTest {
+
+  @Test
+  void testIsFixedPoint() {
+    Assertions.assertTrue(CurrencyFormatter.isFixedPoint(Locale.UK));
+    Assertions.assertTrue(CurrencyFormatter.isFixedPoint(Locale.US));
+    Assertions.assertTrue(CurrencyFormatter.isFixedPoint(Locale.GERMANY));
+  }
+
+  @Test
+  void testAppendTo() {
+    final double[] values = {0, -0.0, 0.001, -0.001, 0.005, -0.005, 0.015, 0.025, 1.5, 1.995, -1.99,
+        Math.PI, 12345.675, 1e10, -1e10, 1e14, 1e15, 1e20, Double.MAX_VALUE, Double.MIN_VALUE,
+        Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    for (final Locale locale : Locale.getAvailableLocales()) {
+      final NumberFormat format = NumberFormat.getCurrencyInstance(locale);
+      for (final double value : values) {
+        assertAppendTo(format, locale, value);
+      }
+      for (int i = 0; i < 50; i++) {
+        // Random values with up to 3 decimal places, some at rounding ties
+        final double units = rng.nextLong() % 100000000L;
+        assertAppendTo(format, locale, units / 1000);
+        assertAppendTo(format, locale, (units + 0.5) / 100);
+        assertAppendTo(format, locale, (rng.nextDouble() - 0.5) * 1e6);
+      }
+    }
+  }
+
+  private static void assertAppendTo(NumberFormat format, Locale locale, double value) {
+    final String expected = format.format(value);
+    final StringBuilder sb = new StringBuilder("x");
+    Assertions.assertSame(sb, CurrencyFormatter.appendTo(sb, locale, value));
+    Assertions.assertEquals("x" + expected, sb.toString(), () -> locale + " " + value);
+  }
+}
@@ -76,5 +76,10 @@ class CustomParameterSpecificationTest {
         ValueType.TEXT, 0, HitType.EVENT, HitType.EXCEPTION);
     Assertions.assertEquals(EnumSet.of(HitType.EVENT, HitType.EXCEPTION),
         spec.getSupportedHitTypes());
+    Assertions.assertFalse(spec.isSupported(null));
+    for (final HitType ht : HitType.values()) {
+      Assertions.assertEquals(ht == HitType.EVENT || ht == HitType.EXCEPTION,
+          spec.isSupported(ht));
+    }
   }
 }
@@ -0,0 +1,212 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters.Builder;
+import uk.ac.sussex.gdsc.analytics.parameters.ParserMessage.MessageType;
+
+@SuppressWarnings("javadoc")
+class DebugValidatorTest {
+
+  private final String trackingId = "UA-12345-6";
+  private final String clientId = "123e4567-e89b-12d3-a456-426655440000";
+  private final String required = "v=1&tid=" + trackingId + "&cid=" + clientId;
+
+  private Builder newBuilder() {
+    return Parameters.newBuilder().addVersion().addTrackingId(trackingId).addClientId(clientId);
+  }
+
+  @Test
+  void testValidHits() {
+    final DebugValidator validator = new DebugValidator();
+    assertValid(validator, newBuilder().addHitType(HitType.PAGEVIEW)
+        .addDocumentLocationUrl("http://www.example.com/index.html?a=b&c=d")
+        .addDocumentTitle("Complex ἀ Ģ ↛ title").addCustomDimension(1, "a")
+        .addCustomMetric(2, 42).addNonInteractionHit(true).addCacheBuster()
+        .addIpOverride("192.168.0.1").addQueueTime(System.currentTimeMillis() - 10).build()
+        .format());
+    assertValid(validator, newBuilder().addHitType(HitType.EVENT).addEventCategory("Video")
+        .addEventAction("Play").addEventValue(3).build().format());
+    assertValid(validator, newBuilder().addHitType(HitType.TIMING)
+        .addUserTimingCategory("category").addUserTimingVariableName("lookup")
+        .addUserTimingTime(123).build().format());
+    // A URL prefix is ignored
+    final HitParsingResult result = validator.validate(
+        "https://www.google-analytics.com/debug/collect?" + required + "&t=exception");
+    Assertions.assertTrue(result.isValid());
+    Assertions.assertTrue(result.getParserMessages().isEmpty());
+    // User Id can replace the client Id
+    assertValid(validator, "v=1&tid=" + trackingId + "&uid=Mr.+Test&t=exception");
+    // Empty pairs are ignored
+    assertValid(validator, "&&" + required + "&&t=exception&");
+  }
+
+  @Test
+  void testMissingRequired() {
+    final DebugValidator validator = new DebugValidator();
+    assertMessages(validator.validate(""), MessageType.ERROR, DebugValidator.VALUE_REQUIRED, "v",
+        "tid", "cid", "t");
+    assertMessages(validator.validate(required + "&t=pageview"), MessageType.ERROR,
+        DebugValidator.VALUE_REQUIRED, "dl");
+    assertMessages(validator.validate(required + "&t=pageview&dh=example.com"),
+        MessageType.ERROR, DebugValidator.VALUE_REQUIRED, "dl");
+    assertValid(validator, required + "&t=pageview&dh=example.com&dp=%2Findex.html");
+    assertMessages(validator.validate(required + "&t=event&ea=Play"), MessageType.ERROR,
+        DebugValidator.VALUE_REQUIRED, "ec");
+    assertMessages(validator.validate(required + "&t=item&ti=1234"), MessageType.ERROR,
+        DebugValidator.VALUE_REQUIRED, "in");
+    // Empty values are missing
+    assertMessages(validator.validate(required + "&t=event&ea=Play&ec="), MessageType.ERROR,
+        DebugValidator.VALUE_REQUIRED, "ec");
+    assertMessages(validator.validate(required + "&t=event&ea=Play&ec"), MessageType.ERROR,
+        DebugValidator.VALUE_REQUIRED, "ec");
+  }
+
+  @Test
+  void testInvalidValues() {
+    final DebugValidator validator = new DebugValidator();
+    final String hit = required + "&t=exception&";
+    assertMessages(validator.validate("v=2&tid=" + trackingId + "&cid=" + clientId
+        + "&t=exception"), MessageType.ERROR, DebugValidator.VALUE_INVALID, "v");
+    for (final String tid : new String[] {"UA-1234", "UA-1234-", "UA--1", "ua-1-1", "UA_1-1",
+        "UA-1a-1"}) {
+      assertMessages(validator.validate("v=1&tid=" + tid + "&cid=" + clientId + "&t=exception"),
+          MessageType.ERROR, DebugValidator.VALUE_INVALID, "tid");
+    }
+    assertValid(validator, "v=1&tid=UA-1-2&cid=" + clientId + "&t=exception");
+    assertMessages(validator.validate(required + "&t=unknown"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "t");
+    assertMessages(validator.validate(hit + "uip=1.2.3"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "uip");
+    assertMessages(validator.validate(hit + "ni=2"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "ni");
+    assertMessages(validator.validate(hit + "qt=1.5"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "qt");
+    assertMessages(validator.validate(hit + "cm1=x"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "cm1");
+    assertMessages(validator.validate(hit + "cd0=x"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "cd0");
+    assertMessages(validator.validate(hit + "exd=x%zz"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, (String) null);
+    assertMessages(validator.validate(hit + "il1pi2pr=NaN"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "il1pi2pr");
+    assertMessages(validator.validate(hit + "cm2=NaN"), MessageType.ERROR,
+        DebugValidator.VALUE_INVALID, "cm2");
+    assertValid(validator, hit + "cm2=-1.5e3");
+    // Currency may be formatted for a locale
+    assertValid(validator, hit + "il1pi2pr=%C2%A31%2C234.50");
+  }
+
+  @Test
+  void testValueTooLong() {
+    final DebugValidator validator = new DebugValidator();
+    final int max = ProtocolSpecification.EXCEPTION_DESCRIPTION.getMaxLength();
+    final StringBuilder sb = new StringBuilder(required).append("&t=exception&exd=");
+    for (int i = 0; i < max; i++) {
+      sb.append('a');
+    }
+    assertValid(validator, sb.toString());
+    sb.append('a');
+    assertMessages(validator.validate(sb.toString()), MessageType.ERROR,
+        DebugValidator.VALUE_TOO_LONG, "exd");
+    while (sb.length() <= DebugValidator.MAX_PAYLOAD_SIZE) {
+      sb.append("&cd1=a");
+    }
+    final HitParsingResult result = validator.validate(sb.toString());
+    Assertions.assertFalse(result.isValid());
+    Assertions.assertEquals(DebugValidator.PAYLOAD_TOO_LARGE,
+        result.getParserMessages().get(0).getMessageCode());
+  }
+
+  @Test
+  void testWarnings() {
+    final DebugValidator validator = new DebugValidator();
+    final String hit = required + "&t=exception&";
+    assertMessages(validator.validate(hit + "ec=Video"), MessageType.WARN,
+        DebugValidator.UNSUPPORTED_PARAMETER, "ec");
+    assertMessages(validator.validate(hit + "cd1=a&cd1=b"), MessageType.WARN,
+        DebugValidator.DUPLICATE_PARAMETER, "cd1");
+    assertMessages(validator.validate(hit + "foo=bar"), MessageType.INFO,
+        DebugValidator.UNKNOWN_PARAMETER, "foo");
+  }
+
+  @Test
+  void testValidateCollection() {
+    final DebugValidator validator = new DebugValidator();
+    final List<String> hits = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      hits.add(required + "&t=exception&cd1=" + i + ((i % 3 == 0) ? "&cm1=x" : ""));
+    }
+    final List<HitParsingResult> results = validator.validate(hits);
+    Assertions.assertEquals(hits.size(), results.size());
+    for (int i = 0; i < hits.size(); i++) {
+      Assertions.assertEquals(hits.get(i), results.get(i).getHit());
+      Assertions.assertEquals(i % 3 != 0, results.get(i).isValid());
+    }
+    Assertions.assertEquals(334, validator.countInvalid(hits));
+  }
+
+  @Test
+  void testIsNumber() {
+    for (final String value : new String[] {"0", "1.5", "-1", "+2", "1e10", "1.5E-3", ".5"}) {
+      Assertions.assertTrue(DebugValidator.isNumber(value), value);
+    }
+    for (final String value : new String[] {"", "NaN", "Infinity", "1d", "0x1p3", "1..2", "e",
+        "1,5"}) {
+      Assertions.assertFalse(DebugValidator.isNumber(value), value);
+    }
+  }
+
+  private static void assertValid(DebugValidator validator, String hit) {
+    final HitParsingResult result = validator.validate(hit);
+    Assertions.assertTrue(result.isValid(), () -> hit + " : " + result.getParserMessages());
+    Assertions.assertSame(hit, result.getHit());
+  }
+
+  private static void assertMessages(HitParsingResult result, MessageType messageType,
+      String messageCode, String... parameters) {
+    final List<String> actual = new ArrayList<>();
+    for (final ParserMessage message : result.getParserMessages()) {
+      if (message.getMessageType() == messageType && message.getMessageCode().equals(messageCode)) {
+        actual.add(message.getParameter());
+      }
+    }
+    final List<String> expected = new ArrayList<>();
+    for (final String parameter : parameters) {
+      expected.add(parameter);
+    }
+    Assertions.assertEquals(expected, actual, () -> result.getParserMessages().toString());
+    Assertions.assertEquals(messageType != MessageType.ERROR, result.isValid());
+  }
+}
@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class DoubleFormatterTest {
+
+  @Test
+  void testAppendToSpecialValues() {
+    assertAppendTo("NaN", Double.NaN);
+    assertAppendTo("Infinity", Double.POSITIVE_INFINITY);
+    assertAppendTo("-Infinity", Double.NEGATIVE_INFINITY);
+    assertAppendTo("0", 0.0);
+    assertAppendTo("0", -0.0);
+    assertAppendTo("1", 1);
+    assertAppendTo("-2", -2);
+    assertAppendTo("1.5", 1.5);
+    assertAppendTo("-1.5", -1.5);
+    assertAppendTo("0.1", 0.1);
+    assertAppendTo("0.30000000000000004", 0.1 + 0.2);
+    assertAppendTo("3.141592653589793", Math.PI);
+    assertAppendTo("0.001", 1e-3);
+    assertAppendTo("0.0000001", 1e-7);
+    assertAppendTo("123456.789", 123456.789);
+    assertAppendTo("100000000000000000000", 1e20);
+    assertAppendTo("9007199254740991", 0x1.0p53 - 1);
+    assertAppendTo("9223372036854776000", 0x1.0p63);
+    // Not shortest using Double.toString in JDK 8
+    assertAppendTo("0.00002", 2.0E-5);
+    assertAppendTo("1000000000000000000000000", 1.0E24);
+  }
+
+  @Test
+  void testAppendToExtremeValues() {
+    for (final double value : new double[] {Double.MIN_VALUE, Double.MIN_NORMAL,
+        Math.nextDown(Double.MIN_NORMAL), Double.MAX_VALUE, 0x1.0p-1022, 0x1.0p1023}) {
+      assertRoundTrip(value);
+      assertRoundTrip(-value);
+    }
+  }
+
+  @Test
+  void testAppendToRandomValues() {
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    for (int i = 0; i < 2000; i++) {
+      // Any bits
+      final double value = Double.longBitsToDouble(rng.nextLong());
+      if (Double.isFinite(value)) {
+        assertRoundTrip(value);
+      }
+      // Typical values
+      assertRoundTrip(rng.nextDouble());
+      assertRoundTrip((rng.nextDouble() - 0.5) * 1e6);
+      assertRoundTrip(rng.nextInt(100000) / 1000.0);
+    }
+  }
+
+  private static void assertAppendTo(String expected, double value) {
+    final StringBuilder sb = new StringBuilder("x");
+    Assertions.assertSame(sb, DoubleFormatter.appendTo(sb, value));
+    Assertions.assertEquals("x" + expected, sb.toString());
+  }
+
+  /**
+   * Assert the formatted value is the shortest decimal that parses to the same value, and is the
+   * closest such decimal to the exact value.
+   *
+   * @param value the value
+   */
+  private static void assertRoundTrip(double value) {
+    final String text = DoubleFormatter.appendTo(new StringBuilder(), value).toString();
+    Assertions.assertFalse(text.contains("E"), text);
+    Assertions.assertEquals(value, Double.parseDouble(text), text);
+    final BigDecimal expected = shortest(value);
+    Assertions.assertEquals(0, expected.compareTo(new BigDecimal(text)),
+        () -> expected.toPlainString() + " != " + text);
+  }
+
+  /**
+   * Get the closest decimal to the value of the shortest length that round-trips.
+   *
+   * @param value the value
+   * @return the decimal
+   */
+  private static BigDecimal shortest(double value) {
+    final BigDecimal exact = new BigDecimal(value);
+    for (int precision = 1; precision < 17; precision++) {
+      final BigDecimal candidate =
+          exact.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+      if (candidate.doubleValue() == value) {
+        return candidate;
+      }
+    }
+    return exact.round(new MathContext(17, RoundingMode.HALF_EVEN));
+  }
+}
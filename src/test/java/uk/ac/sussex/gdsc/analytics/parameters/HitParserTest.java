@@ -0,0 +1,217 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class HitParserTest {
+
+  @Test
+  void testNext() {
+    final String hit = "&a=1&&b=&c&d=x=y&";
+    final HitParser parser = new HitParser().reset(hit);
+    Assertions.assertSame(hit, parser.getHit());
+    assertNext(parser, "a", "1");
+    Assertions.assertEquals(1, parser.getNameStart());
+    Assertions.assertEquals(2, parser.getNameEnd());
+    Assertions.assertEquals(3, parser.getValueStart());
+    Assertions.assertEquals(4, parser.getValueEnd());
+    assertNext(parser, "b", "");
+    assertNext(parser, "c", "");
+    Assertions.assertEquals(parser.getNameEnd(), parser.getValueStart());
+    // The first '=' separates the name and value
+    assertNext(parser, "d", "x=y");
+    Assertions.assertFalse(parser.next());
+    Assertions.assertFalse(parser.next());
+
+    Assertions.assertFalse(new HitParser().next());
+    Assertions.assertFalse(new HitParser().reset("").next());
+    Assertions.assertFalse(new HitParser().reset("&&").next());
+  }
+
+  @Test
+  void testResetRange() {
+    final String hit = "/collect?a=1&b=2";
+    final HitParser parser = new HitParser().reset(hit, 9, 14);
+    assertNext(parser, "a", "1");
+    assertNext(parser, "b", "");
+    Assertions.assertFalse(parser.next());
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> parser.reset(hit, -1, 3));
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> parser.reset(hit, 3, 2));
+    Assertions.assertThrows(IndexOutOfBoundsException.class,
+        () -> parser.reset(hit, 0, hit.length() + 1));
+    Assertions.assertThrows(NullPointerException.class, () -> parser.reset(null, 0, 0));
+  }
+
+  @Test
+  void testResetByteBuffer() {
+    final byte[] bytes = "xxv=1&cd12=a+b%C3%A9xx".getBytes(StandardCharsets.US_ASCII);
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, bytes.length - 4);
+    final HitParser parser = new HitParser().reset(buffer);
+    assertNext(parser, "v", "1");
+    Assertions.assertSame(ProtocolSpecification.PROTOCOL_VERSION, parser.getSpecification());
+    assertNext(parser, "cd12", "a bé");
+    Assertions.assertSame(ProtocolSpecification.CUSTOM_DIMENSION, parser.getSpecification());
+    Assertions.assertEquals(12, parser.getIndex(0));
+    Assertions.assertEquals("cd12=a+b%C3%A9", parser.getHit()
+        .subSequence(parser.getNameStart(), parser.getValueEnd()).toString());
+    Assertions.assertFalse(parser.next());
+    // Position is unchanged
+    Assertions.assertEquals(2, buffer.position());
+  }
+
+  @Test
+  void testDecode() {
+    final HitParser parser = new HitParser();
+    final String[] values = {"plain", "with space", "a&b=c", "complex ἀ Ģ ↛ 😀",
+        "%+", "100%"};
+    for (final String value : values) {
+      parser.reset("n=" + UrlEncoderHelper.encode(value));
+      assertNext(parser, "n", value);
+    }
+    // Long values grow the buffer
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      sb.append("ἀ");
+    }
+    parser.reset("n=" + UrlEncoderHelper.encode(sb.toString()));
+    assertNext(parser, "n", sb.toString());
+    // Unencoded characters are used verbatim
+    parser.reset("n=ἀ+%C3%A9");
+    assertNext(parser, "n", "ἀ é");
+
+    for (final String hit : new String[] {"n=%", "n=%2", "n=%zz", "n=%2g"}) {
+      parser.reset(hit);
+      Assertions.assertTrue(parser.next());
+      Assertions.assertEquals("n", parser.getName());
+      Assertions.assertThrows(IllegalArgumentException.class, () -> parser.getValue(), hit);
+    }
+  }
+
+  @Test
+  void testGetSpecification() {
+    final HitParser parser = new HitParser().reset("pr3cm4=5&c%64=x&unknown=1");
+    Assertions.assertTrue(parser.next());
+    Assertions.assertSame(ProtocolSpecification.PRODUCT_CUSTOM_METRIC, parser.getSpecification());
+    Assertions.assertEquals(3, parser.getIndex(0));
+    Assertions.assertEquals(4, parser.getIndex(1));
+    Assertions.assertTrue(parser.next());
+    // Encoded names are not resolved
+    Assertions.assertNull(parser.getSpecification());
+    Assertions.assertTrue(parser.next());
+    Assertions.assertNull(parser.getSpecification());
+  }
+
+  @Test
+  void testToParameter() {
+    assertParameter("v=1", ProtocolVersionParameter.class);
+    assertParameter("v=2", CustomParameter.class);
+    assertParameter("t=event", HitTypeParameter.class);
+    assertParameter("t=unknown", CustomParameter.class);
+    assertParameter("sc=start", SessionControlParameter.class);
+    assertParameter("sc=unknown", CustomParameter.class);
+    assertParameter("pa=checkout_option", ProductActionParameter.class);
+    assertParameter("pa=unknown", CustomParameter.class);
+    assertParameter("tid=UA-12345-6", NoIndexTextParameter.class);
+    assertParameter("cd12=a+b", OneIndexTextParameter.class);
+    assertParameter("cd0=a", CustomParameter.class);
+    assertParameter("cd12345678901=a", CustomParameter.class);
+    assertParameter("il1pi2nm=a", TwoIndexTextParameter.class);
+    assertParameter("il1pi2cd3=a", ThreeIndexTextParameter.class);
+    assertParameter("aip=1", NoIndexBooleanParameter.class);
+    assertParameter("aip=0", NoIndexBooleanParameter.class);
+    assertParameter("aip=2", CustomParameter.class);
+    assertParameter("ev=42", NoIndexIntParameter.class);
+    assertParameter("qt=12345678901", NoIndexLongParameter.class);
+    assertParameter("qt=123456789012345678901", CustomParameter.class);
+    assertParameter("qt=x", CustomParameter.class);
+    assertParameter("pr1qt=-3", OneIndexIntParameter.class);
+    assertParameter("pr1qt=12345678901", CustomParameter.class);
+    assertParameter("pr3cm4=5", TwoIndexIntParameter.class);
+    assertParameter("il1pi2cm3=5", ThreeIndexIntParameter.class);
+    assertParameter("cm1=1.5", OneIndexNumberParameter.class);
+    assertParameter("cm1=NaN", CustomParameter.class);
+    assertParameter("tr=1.50", CustomParameter.class);
+    assertParameter("unknown=1", CustomParameter.class);
+  }
+
+  @Test
+  void testParseRoundTrip() {
+    final Parameters parameters = Parameters.newRequiredBuilder("UA-12345-6")
+        .addHitType(HitType.PAGEVIEW).addDocumentLocationUrl("http://www.example.com/a?b=c&d")
+        .addDocumentTitle("Complex ἀ Ģ ↛ title").addSessionControl(SessionControl.START)
+        .addCustomDimension(1, "a b").addCustomMetric(2, 42).addNonInteractionHit(true)
+        .addQueueTime(System.currentTimeMillis() - 10).addScreenResolution(640, 480)
+        .addUserLanguage(Locale.UK).addCacheBuster()
+        .add(ProductActionParameter.PURCHASE)
+        .add(new OneIndexNumberParameter(ProtocolSpecification.CUSTOM_METRIC, 3, 1.25))
+        .add(new TwoIndexIntParameter(ProtocolSpecification.PRODUCT_CUSTOM_METRIC, 3, 4, 5))
+        .add(new ThreeIndexTextParameter(
+            ProtocolSpecification.PRODUCT_IMPRESSION_CUSTOM_DIMENSION, 1, 2, 3, "x"))
+        .add("custom", "value").build();
+    final String hit = parameters.format();
+    final Parameters parsed = HitParser.parse(hit);
+    Assertions.assertEquals(hit, parsed.format());
+    Assertions.assertEquals(new HitValidator().validate(parameters),
+        new HitValidator().validate(parsed));
+  }
+
+  @Test
+  void testParseCurrency() {
+    // Currency is not URL encoded by the currency parameter so cannot be reformatted exactly
+    final String hit = new NoIndexCurrencyParameter(ProtocolSpecification.TRANSACTION_REVENUE,
+        Locale.UK, 12.5).format();
+    final HitParser parser = new HitParser().reset(hit);
+    Assertions.assertTrue(parser.next());
+    Assertions.assertSame(ProtocolSpecification.TRANSACTION_REVENUE, parser.getSpecification());
+    Assertions.assertEquals("\u00a312.50", parser.getValue());
+    Assertions.assertEquals(CustomParameter.class, parser.toParameter().getClass());
+  }
+
+  private static void assertNext(HitParser parser, String name, String value) {
+    Assertions.assertTrue(parser.next());
+    Assertions.assertEquals(name, parser.getName());
+    Assertions.assertEquals(value, parser.getValue());
+  }
+
+  private static void assertParameter(String hit,
+      Class<? extends FormattedParameter> expected) {
+    final HitParser parser = new HitParser().reset(hit);
+    Assertions.assertTrue(parser.next());
+    final FormattedParameter parameter = parser.toParameter();
+    Assertions.assertEquals(expected, parameter.getClass(), hit);
+    Assertions.assertEquals(hit, parameter.format(), hit);
+  }
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.ParserMessage.MessageType;
+
+@SuppressWarnings("javadoc")
+class HitParsingResultTest {
+
+  @Test
+  void testParserMessage() {
+    final ParserMessage message =
+        new ParserMessage(MessageType.ERROR, "CODE", "Description", "tid");
+    Assertions.assertEquals(MessageType.ERROR, message.getMessageType());
+    Assertions.assertEquals("CODE", message.getMessageCode());
+    Assertions.assertEquals("Description", message.getDescription());
+    Assertions.assertEquals("tid", message.getParameter());
+    Assertions.assertEquals("ERROR CODE [tid]: Description", message.toString());
+    Assertions.assertEquals(
+        "{\"messageType\":\"ERROR\",\"description\":\"Description\","
+            + "\"messageCode\":\"CODE\",\"parameter\":\"tid\"}",
+        message.formatJson(new StringBuilder()).toString());
+    final ParserMessage message2 = new ParserMessage(MessageType.INFO, "CODE", "Text", null);
+    Assertions.assertNull(message2.getParameter());
+    Assertions.assertEquals("INFO CODE: Text", message2.toString());
+    Assertions.assertEquals(
+        "{\"messageType\":\"INFO\",\"description\":\"Text\",\"messageCode\":\"CODE\"}",
+        message2.formatJson(new StringBuilder()).toString());
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new ParserMessage(null, "CODE", "Text", null));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new ParserMessage(MessageType.INFO, null, "Text", null));
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new ParserMessage(MessageType.INFO, "CODE", null, null));
+  }
+
+  @Test
+  void testAppendJsonString() {
+    Assertions.assertEquals("\"a\\\"b\\\\c\\nd\\re\\tf\\u0001g\"", ParserMessage
+        .appendJsonString(new StringBuilder(), "a\"b\\c\nd\re\tf\u0001g").toString());
+  }
+
+  @Test
+  void testHitParsingResult() {
+    final List<ParserMessage> messages = new ArrayList<>();
+    messages.add(new ParserMessage(MessageType.INFO, "CODE", "Text", null));
+    messages.add(new ParserMessage(MessageType.WARN, "CODE", "Text", null));
+    final HitParsingResult result = new HitParsingResult("v=1", messages);
+    Assertions.assertEquals("v=1", result.getHit());
+    Assertions.assertEquals(messages, result.getParserMessages());
+    Assertions.assertTrue(result.isValid());
+    Assertions.assertThrows(UnsupportedOperationException.class,
+        () -> result.getParserMessages().clear());
+    messages.add(new ParserMessage(MessageType.ERROR, "CODE", "Text", null));
+    Assertions.assertFalse(new HitParsingResult("v=1", messages).isValid());
+    Assertions.assertThrows(NullPointerException.class,
+        () -> new HitParsingResult(null, messages));
+  }
+
+  @Test
+  void testToJson() {
+    final HitParsingResult result1 = new HitParsingResult("v=1", Collections.emptyList());
+    final HitParsingResult result2 = new HitParsingResult("x",
+        Arrays.asList(new ParserMessage(MessageType.ERROR, "CODE", "Text", "v")));
+    Assertions.assertEquals(
+        "{\"hitParsingResult\":[{\"valid\":true,\"parserMessage\":[],\"hit\":\"v=1\"}],"
+            + "\"parserMessage\":[{\"messageType\":\"INFO\","
+            + "\"description\":\"Found 1 hit in the request.\",\"messageCode\":\"INFO\"}]}",
+        HitParsingResult.toJson(Arrays.asList(result1)));
+    final String json = HitParsingResult.toJson(Arrays.asList(result1, result2));
+    Assertions.assertTrue(json.contains("{\"valid\":false,\"parserMessage\":[{\"messageType\":"
+        + "\"ERROR\",\"description\":\"Text\",\"messageCode\":\"CODE\",\"parameter\":\"v\"}],"
+        + "\"hit\":\"x\"}"), json);
+    Assertions.assertTrue(json.contains("Found 2 hits in the request."), json);
+  }
+}
@@ -62,6 +62,7 @@ class HitTypeParameterTest {
   void testCreate() {
     for (final HitType ht : HitType.values()) {
       Assertions.assertTrue(HitTypeParameter.create(ht).format().endsWith("=" + ht.toString()));
+      Assertions.assertSame(ht, HitTypeParameter.create(ht).getHitType());
     }
     Assertions.assertThrows(NullPointerException.class, () -> {
       HitTypeParameter.create(null);
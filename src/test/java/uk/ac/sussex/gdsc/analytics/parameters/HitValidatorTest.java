@@ -0,0 +1,219 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters.Builder;
+
+@SuppressWarnings("javadoc")
+class HitValidatorTest {
+
+  private final String trackingId = "UA-12345-6";
+  private final String clientId = "123e4567-e89b-12d3-a456-426655440000";
+
+  private Builder newBuilder() {
+    return Parameters.newBuilder().addVersion().addTrackingId(trackingId).addClientId(clientId);
+  }
+
+  @Test
+  void testValidHits() {
+    final HitValidator validator = new HitValidator();
+    assertValid(validator, newBuilder().addHitType(HitType.PAGEVIEW)
+        .addDocumentLocationUrl("http://www.example.com/index.html").build());
+    assertValid(validator, newBuilder().addHitType(HitType.PAGEVIEW)
+        .addDocumentHostName("www.example.com").addDocumentPath("/index.html").build());
+    assertValid(validator,
+        newBuilder().addHitType(HitType.SCREENVIEW).addScreenName("Home").build());
+    assertValid(validator, newBuilder().addHitType(HitType.EVENT).addEventCategory("Video")
+        .addEventAction("Play").addEventLabel("Test").build());
+    assertValid(validator, newBuilder().addHitType(HitType.SOCIAL).addSocialNetwork("facebook")
+        .addSocialAction("like").addSocialActionTarget("http://foo.com").build());
+    assertValid(validator,
+        newBuilder().addHitType(HitType.TIMING).addUserTimingCategory("category")
+            .addUserTimingVariableName("lookup").addUserTimingTime(123).build());
+    assertValid(validator, newBuilder().addHitType(HitType.EXCEPTION).build());
+    // User Id can be used instead of client Id
+    assertValid(validator, Parameters.newBuilder().addVersion().addTrackingId(trackingId)
+        .addUserId("Mr. Test").addHitType(HitType.EXCEPTION).build());
+  }
+
+  @Test
+  void testValidSplitHit() {
+    final HitValidator validator = new HitValidator();
+    final Parameters client = newBuilder().build();
+    final Parameters hit =
+        Parameters.newBuilder().addHitType(HitType.SCREENVIEW).addScreenName("Home").build();
+    Assertions.assertEquals(HitValidator.VALID, validator.validate(client, hit));
+    Assertions.assertEquals(HitValidator.MISSING_HIT_TYPE, validator.validate(client));
+    final Parameters hit2 =
+        Parameters.newBuilder().addHitType(HitType.EVENT).addScreenName("Home").build();
+    Assertions.assertEquals(
+        HitValidator.MISSING_REQUIRED_PARAMETER | HitValidator.UNSUPPORTED_PARAMETER,
+        validator.validate(client, hit2));
+  }
+
+  @Test
+  void testMissingRequired() {
+    final HitValidator validator = new HitValidator();
+    final Parameters hit = Parameters.newBuilder().build();
+    Assertions.assertEquals(HitValidator.MISSING_PROTOCOL_VERSION
+        | HitValidator.MISSING_TRACKING_ID | HitValidator.MISSING_CLIENT_ID
+        | HitValidator.MISSING_HIT_TYPE, validator.validate(hit));
+    Assertions.assertEquals(HitValidator.MISSING_REQUIRED_PARAMETER,
+        validator.validate(newBuilder().addHitType(HitType.PAGEVIEW).build()));
+    Assertions.assertEquals(HitValidator.MISSING_REQUIRED_PARAMETER, validator.validate(
+        newBuilder().addHitType(HitType.PAGEVIEW).addDocumentHostName("www.example.com").build()));
+    Assertions.assertEquals(HitValidator.MISSING_REQUIRED_PARAMETER, validator
+        .validate(newBuilder().addHitType(HitType.EVENT).addEventCategory("Video").build()));
+    Assertions.assertEquals(HitValidator.MISSING_REQUIRED_PARAMETER,
+        validator.validate(newBuilder().addHitType(HitType.TRANSACTION).build()));
+  }
+
+  @Test
+  void testUnsupported() {
+    final HitValidator validator = new HitValidator();
+    Assertions.assertEquals(HitValidator.UNSUPPORTED_PARAMETER,
+        validator.validate(newBuilder().addHitType(HitType.EXCEPTION)
+            .addEventCategory("Video").build()));
+  }
+
+  @Test
+  void testDuplicate() {
+    final HitValidator validator = new HitValidator();
+    Assertions.assertEquals(HitValidator.DUPLICATE_PARAMETER, validator.validate(
+        newBuilder().addHitType(HitType.EXCEPTION).addHitType(HitType.EXCEPTION).build()));
+    // Indexed parameters with different indexes are not duplicates
+    Assertions.assertEquals(HitValidator.VALID,
+        validator.validate(newBuilder().addHitType(HitType.EXCEPTION)
+            .addCustomDimension(1, "a").addCustomDimension(2, "b").build()));
+  }
+
+  @Test
+  void testValueTooLong() {
+    final HitValidator validator = new HitValidator();
+    final int max = ProtocolSpecification.SCREEN_NAME.getMaxLength();
+    final StringBuilder sb = new StringBuilder(max + 1);
+    for (int i = 0; i < max; i++) {
+      sb.append('a');
+    }
+    Assertions.assertEquals(HitValidator.VALID, validator.validate(
+        newBuilder().addHitType(HitType.SCREENVIEW).addScreenName(sb.toString()).build()));
+    // Length is measured in UTF-8 bytes
+    sb.setCharAt(0, 'é');
+    Assertions.assertEquals(HitValidator.VALUE_TOO_LONG, validator.validate(
+        newBuilder().addHitType(HitType.SCREENVIEW).addScreenName(sb.toString()).build()));
+    sb.setCharAt(0, 'a');
+    sb.append('a');
+    Assertions.assertEquals(HitValidator.VALUE_TOO_LONG, validator.validate(
+        newBuilder().addHitType(HitType.SCREENVIEW).addScreenName(sb.toString()).build()));
+  }
+
+  @Test
+  void testCustomParameters() {
+    final HitValidator validator = new HitValidator();
+    // Custom parameters with the name of a protocol specification are identified
+    final Parameters hit = Parameters.newBuilder().add("v", "1").add("tid", trackingId)
+        .add("cid", clientId).add("t", "event").add("ec", "Video").add("ea", "Play")
+        .add("unknown", "ignored").build();
+    Assertions.assertEquals(HitValidator.VALID, validator.validate(hit));
+    Assertions.assertEquals(HitValidator.MISSING_HIT_TYPE,
+        validator.validate(newBuilder().add("t", "unknown").build()));
+    Assertions.assertEquals(HitValidator.DUPLICATE_PARAMETER | HitValidator.UNSUPPORTED_PARAMETER,
+        validator.validate(newBuilder().add("t", "screenview").addScreenName("Home")
+            .add("cd", "Home").add("ec", "Video").build()));
+  }
+
+  @Test
+  void testToString() {
+    Assertions.assertTrue(HitValidator.isValid(HitValidator.VALID));
+    Assertions.assertFalse(HitValidator.isValid(HitValidator.VALUE_TOO_LONG));
+    Assertions.assertEquals("VALID", HitValidator.toString(HitValidator.VALID));
+    Assertions.assertEquals("MISSING_TRACKING_ID|VALUE_TOO_LONG",
+        HitValidator.toString(HitValidator.MISSING_TRACKING_ID | HitValidator.VALUE_TOO_LONG));
+  }
+
+  @Test
+  void testUtf8Length() {
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    final char[] chars = new char[20];
+    for (int i = 0; i < 1000; i++) {
+      for (int j = 0; j < chars.length; j++) {
+        // Mix of 1, 2, 3 byte chars and surrogates
+        switch (rng.nextInt(4)) {
+          case 0:
+            chars[j] = (char) rng.nextInt(0x80);
+            break;
+          case 1:
+            chars[j] = (char) rng.nextInt(0x800);
+            break;
+          case 2:
+            chars[j] = (char) rng.nextInt(0xd800);
+            break;
+          default:
+            if (j + 1 < chars.length) {
+              final int codePoint = 0x10000 + rng.nextInt(0x100000);
+              chars[j++] = Character.highSurrogate(codePoint);
+              chars[j] = Character.lowSurrogate(codePoint);
+            } else {
+              chars[j] = 'x';
+            }
+            break;
+        }
+      }
+      final String value = new String(chars);
+      Assertions.assertEquals(value.getBytes(StandardCharsets.UTF_8).length,
+          HitValidator.utf8Length(value), value);
+    }
+  }
+
+  @Test
+  void testHelpers() {
+    Assertions.assertSame(ProtocolSpecification.TRACKING_ID, HitValidator.getSpecification("tid"));
+    Assertions.assertNull(HitValidator.getSpecification("cd_"));
+    Assertions.assertNull(HitValidator.getSpecification("unknown"));
+    for (final HitType hitType : HitType.values()) {
+      Assertions.assertSame(hitType, HitValidator.getHitType(hitType.toString()));
+    }
+    Assertions.assertTrue(
+        HitValidator.isRequired(HitType.EVENT, ProtocolSpecification.EVENT_ACTION));
+    Assertions.assertFalse(
+        HitValidator.isRequired(HitType.EVENT, ProtocolSpecification.EVENT_LABEL));
+  }
+
+  private static void assertValid(HitValidator validator, Parameters parameters) {
+    final int result = validator.validate(parameters);
+    Assertions.assertEquals(HitValidator.VALID, result,
+        () -> parameters.format() + " : " + HitValidator.toString(result));
+  }
+}
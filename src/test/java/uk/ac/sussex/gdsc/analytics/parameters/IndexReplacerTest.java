@@ -187,4 +187,41 @@ class IndexReplacerTest {
     Assertions.assertEquals("one97two98three99xx",
         r3.replaceTo(new StringBuilder(), 97, 98, 99).toString());
   }
+
+  @Test
+  void testOneIndexReplaceEqualsTo() {
+    final OneIndexReplacer cached = (OneIndexReplacer) IndexReplacerFactory
+        .createIndexReplacer(ProtocolSpecification.CUSTOM_DIMENSION);
+    final OneIndexReplacer uncached = new OneIndexReplacer("cd_");
+    for (final int index : new int[] {1, 2, 99, Constants.MAX_CACHED_INDEX,
+        Constants.MAX_CACHED_INDEX + 1, 12345}) {
+      final String expected = "cd" + index + "=";
+      // Repeat to use the cached value
+      for (int i = 0; i < 2; i++) {
+        Assertions.assertEquals("x" + expected,
+            cached.replaceEqualsTo(new StringBuilder("x"), index).toString());
+      }
+      Assertions.assertEquals(expected, uncached.replaceEqualsTo(new StringBuilder(), index)
+          .toString());
+    }
+  }
+
+  @Test
+  void testTwoIndexReplaceEqualsTo() {
+    final TwoIndexReplacer cached = (TwoIndexReplacer) IndexReplacerFactory
+        .createIndexReplacer(ProtocolSpecification.PRODUCT_CUSTOM_DIMENSION);
+    final TwoIndexReplacer uncached = new TwoIndexReplacer("pr_cd_");
+    final int[] indexes = {1, 2, 99, Constants.MAX_CACHED_INDEX, Constants.MAX_CACHED_INDEX + 1};
+    for (final int index1 : indexes) {
+      for (final int index2 : indexes) {
+        final String expected = "pr" + index1 + "cd" + index2 + "=";
+        for (int i = 0; i < 2; i++) {
+          Assertions.assertEquals("x" + expected,
+              cached.replaceEqualsTo(new StringBuilder("x"), index1, index2).toString());
+        }
+        Assertions.assertEquals(expected,
+            uncached.replaceEqualsTo(new StringBuilder(), index1, index2).toString());
+      }
+    }
+  }
 }
@@ -29,6 +29,9 @@
 
 package uk.ac.sussex.gdsc.analytics.parameters;
 
+import java.util.regex.Pattern;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -156,4 +159,85 @@ class IpAddressUtilsTest {
       Assertions.assertEquals(expected, IpAddressUtils.isIpAddress(ipAddress), ipAddress);
     }
   }
+
+  @Test
+  void testIsIpAddressWithRandomAddresses() {
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    final InetAddressValidator validator = InetAddressValidator.getInstance();
+    final Pattern ipv4 = Pattern.compile(IpAddressUtils.IPV4_REGEX);
+    final StringBuilder sb = new StringBuilder();
+    // Characters weighted towards valid addresses.
+    // Includes non-ASCII digits: U+0661 (Arabic-Indic 1) and U+FF21 (Fullwidth A).
+    final String chars = "0000111222555999aAfFg...::::::/%\u0661\uff21";
+    for (int i = 0; i < 100000; i++) {
+      sb.setLength(0);
+      if (rng.nextBoolean()) {
+        randomAddress(rng, sb);
+      }
+      final int length = rng.nextInt(8);
+      for (int j = 0; j < length; j++) {
+        final int index = rng.nextInt(sb.length() + 1);
+        final char ch = chars.charAt(rng.nextInt(chars.length()));
+        // Insert, replace or delete
+        final int op = rng.nextInt(3);
+        if (op == 0 || index == sb.length()) {
+          sb.insert(index, ch);
+        } else if (op == 1) {
+          sb.setCharAt(index, ch);
+        } else {
+          sb.deleteCharAt(index);
+        }
+      }
+      final String ipAddress = sb.toString();
+      // Commons Validator supports IPv6 zones (%) and CIDR prefixes (/) which are not supported
+      if (ipAddress.indexOf('%') < 0 && ipAddress.indexOf('/') < 0) {
+        Assertions.assertEquals(validator.isValid(ipAddress),
+            IpAddressUtils.isIpAddress(ipAddress), ipAddress);
+      }
+      Assertions.assertEquals(ipv4.matcher(ipAddress).matches(), IpAddressUtils.isIpV4(ipAddress),
+          ipAddress);
+    }
+  }
+
+  private static void randomAddress(UniformRandomProvider rng, StringBuilder sb) {
+    final int type = rng.nextInt(3);
+    if (type == 0) {
+      appendIpV4(rng, sb);
+      return;
+    }
+    final int groups = type == 1 ? 8 : 6;
+    final int skip = rng.nextBoolean() ? rng.nextInt(groups) : -1;
+    for (int i = 0; i < groups; i++) {
+      if (i == skip) {
+        sb.append(i == 0 ? "::" : ":");
+        // Skip some groups
+        i += rng.nextInt(groups - i);
+        if (i == groups - 1) {
+          if (type == 1) {
+            sb.append(':');
+          }
+          break;
+        }
+        sb.append(Integer.toHexString(rng.nextInt(0x10000)));
+      } else {
+        if (i != 0) {
+          sb.append(':');
+        }
+        sb.append(Integer.toHexString(rng.nextInt(0x10000)));
+      }
+    }
+    if (type == 2) {
+      sb.append(':');
+      appendIpV4(rng, sb);
+    }
+  }
+
+  private static void appendIpV4(UniformRandomProvider rng, StringBuilder sb) {
+    for (int i = 0; i < 4; i++) {
+      if (i != 0) {
+        sb.append('.');
+      }
+      sb.append(rng.nextInt(300));
+    }
+  }
 }
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class ParameterNameResolverTest {
+
+  @Test
+  void testResolveAll() {
+    final int[] indexes = new int[ParameterNameResolver.MAX_INDEXES];
+    final int[] expected = {3, 45, 678};
+    for (final ProtocolSpecification spec : ProtocolSpecification.values()) {
+      final String name = replaceIndexes(spec.getNameFormat(), expected);
+      Assertions.assertSame(spec, ParameterNameResolver.resolve(name, indexes), name);
+      for (int i = 0; i < spec.getNumberOfIndexes(); i++) {
+        Assertions.assertEquals(expected[i], indexes[i], name);
+      }
+    }
+  }
+
+  @Test
+  void testResolve() {
+    final int[] indexes = new int[ParameterNameResolver.MAX_INDEXES];
+    Assertions.assertSame(ProtocolSpecification.SCREEN_NAME,
+        ParameterNameResolver.resolve("cd", indexes));
+    Assertions.assertSame(ProtocolSpecification.CUSTOM_DIMENSION,
+        ParameterNameResolver.resolve("cd12", indexes));
+    Assertions.assertEquals(12, indexes[0]);
+    Assertions.assertSame(ProtocolSpecification.PRODUCT_CUSTOM_METRIC,
+        ParameterNameResolver.resolve("pr3cm4", indexes));
+    Assertions.assertEquals(3, indexes[0]);
+    Assertions.assertEquals(4, indexes[1]);
+    // Zero is not rejected
+    Assertions.assertSame(ProtocolSpecification.CUSTOM_DIMENSION,
+        ParameterNameResolver.resolve("cd0", indexes));
+    Assertions.assertEquals(0, indexes[0]);
+    // Overflow
+    Assertions.assertSame(ProtocolSpecification.CUSTOM_DIMENSION,
+        ParameterNameResolver.resolve("cd12345678901", indexes));
+    Assertions.assertEquals(ParameterNameResolver.INVALID_INDEX, indexes[0]);
+    Assertions.assertSame(ProtocolSpecification.CUSTOM_DIMENSION,
+        ParameterNameResolver.resolve("cd2147483647", indexes));
+    Assertions.assertEquals(Integer.MAX_VALUE, indexes[0]);
+  }
+
+  @Test
+  void testResolveUnknown() {
+    final int[] indexes = new int[ParameterNameResolver.MAX_INDEXES];
+    Assertions.assertNull(ParameterNameResolver.resolve("", indexes));
+    Assertions.assertNull(ParameterNameResolver.resolve("unknown", indexes));
+    Assertions.assertNull(ParameterNameResolver.resolve("cd_", indexes));
+    Assertions.assertNull(ParameterNameResolver.resolve("v1", indexes));
+    Assertions.assertNull(ParameterNameResolver.resolve("pr3cm", indexes));
+    Assertions.assertNull(ParameterNameResolver.resolve("pr1cd2x3y4", indexes));
+  }
+
+  private static String replaceIndexes(String nameFormat, int[] indexes) {
+    final StringBuilder sb = new StringBuilder();
+    int count = 0;
+    for (int i = 0; i < nameFormat.length(); i++) {
+      final char ch = nameFormat.charAt(i);
+      if (ch == '_') {
+        sb.append(indexes[count++]);
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+}
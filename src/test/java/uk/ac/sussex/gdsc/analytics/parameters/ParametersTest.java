@@ -459,6 +459,45 @@ class ParametersTest {
     }
   }
 
+  @Test
+  void testDiscardingHitBuilder() {
+    final FormattedParameter formattedParameter = Parameters.newBuilder().addUserId("id").build();
+    for (final boolean discard : new boolean[] {true, false}) {
+      final HitBuilder<Parameters> builder = new HitBuilder<Parameters>(formattedParameter,
+          HitTypeParameter.PAGEVIEW, 123, discard) {
+        @Override
+        public Parameters send() {
+          return build();
+        }
+      };
+      Assertions.assertThat(builder.getTimestamp()).isEqualTo(123);
+      final Parameters parameters = builder.addDocumentPath("/path").add("name", "value").send();
+      if (discard) {
+        Assertions.assertThat(parameters.format()).isEmpty();
+      } else {
+        Assertions.assertThat(parameters.format())
+            .isEqualTo("uid=id&t=pageview&dp=%2Fpath&name=value");
+      }
+    }
+  }
+
+  @Test
+  void testGetHitTypeAndIsTrue() {
+    final Parameters empty = Parameters.newBuilder().build();
+    Assertions.assertThat(empty.getHitType()).isNull();
+    Assertions.assertThat(empty.isTrue(ProtocolSpecification.NON_INTERACTION_HIT)).isFalse();
+    final Parameters nested = Parameters.newBuilder().addIsExceptionFatal(true)
+        .addNonInteractionHit(false).build();
+    final Parameters parameters = Parameters.newBuilder().add(nested)
+        .addHitType(HitType.EXCEPTION).build();
+    Assertions.assertThat(parameters.getHitType()).isEqualTo(HitType.EXCEPTION);
+    Assertions.assertThat(Parameters.newBuilder().add(parameters).build().getHitType())
+        .isEqualTo(HitType.EXCEPTION);
+    Assertions.assertThat(parameters.isTrue(ProtocolSpecification.IS_EXCEPTION_FATAL)).isTrue();
+    Assertions.assertThat(parameters.isTrue(ProtocolSpecification.NON_INTERACTION_HIT)).isFalse();
+    Assertions.assertThat(parameters.isTrue(ProtocolSpecification.JAVA_ENABLED)).isFalse();
+  }
+
   @Test
   void testFormatTo() {
     final Builder builder = Parameters.newBuilder();
@@ -29,6 +29,7 @@
 
 package uk.ac.sussex.gdsc.analytics.parameters;
 
+import java.util.EnumSet;
 import java.util.HashSet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -46,6 +47,17 @@ class ProtocolSpecificationTest {
     }
   }
 
+  @Test
+  void testIsSupportedMatchesSupportedHitTypes() {
+    for (final ProtocolSpecification spec : ProtocolSpecification.values()) {
+      final EnumSet<HitType> supported = spec.getSupportedHitTypes();
+      for (final HitType ht : HitType.values()) {
+        Assertions.assertEquals(supported.contains(ht), spec.isSupported(ht),
+            () -> spec + " " + ht);
+      }
+    }
+  }
+
   @Test
   void testGetMaxLength() {
     // Just check there are different values
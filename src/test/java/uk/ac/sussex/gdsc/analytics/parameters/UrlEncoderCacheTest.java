@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.parameters;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class UrlEncoderCacheTest {
+
+  @SuppressWarnings("unused")
+  @Test
+  void testConstructor() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new UrlEncoderCache(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new UrlEncoderCache(1, -1));
+    final UrlEncoderCache cache = new UrlEncoderCache(10);
+    Assertions.assertEquals(10, cache.getMaximumSize());
+    Assertions.assertEquals(UrlEncoderCache.DEFAULT_ADMISSION_LENGTH, cache.getAdmissionLength());
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals(0, cache.getHitCount());
+    Assertions.assertEquals(0, cache.getMissCount());
+    Assertions.assertEquals(5, new UrlEncoderCache(10, 5).getAdmissionLength());
+  }
+
+  @Test
+  void testEncode() {
+    final UrlEncoderCache cache = new UrlEncoderCache(10);
+    Assertions.assertThrows(NullPointerException.class, () -> cache.encode(null));
+    final String value = "with space & more";
+    final String expected = UrlEncoderHelper.encodeValue(value);
+    Assertions.assertEquals(expected, cache.encode(value));
+    Assertions.assertEquals(1, cache.getMissCount());
+    Assertions.assertEquals(0, cache.getHitCount());
+    Assertions.assertSame(cache.encode(value), cache.encode(value));
+    Assertions.assertEquals(1, cache.getMissCount());
+    Assertions.assertEquals(2, cache.getHitCount());
+    Assertions.assertEquals(1, cache.size());
+    cache.clear();
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals(0, cache.getHitCount());
+    Assertions.assertEquals(0, cache.getMissCount());
+  }
+
+  @Test
+  void testEviction() {
+    final int size = 5;
+    final UrlEncoderCache cache = new UrlEncoderCache(size);
+    for (int i = 0; i < size; i++) {
+      cache.encode("value" + i);
+    }
+    Assertions.assertEquals(size, cache.size());
+    // Use the first value so it is retained
+    cache.encode("value0");
+    Assertions.assertEquals(1, cache.getHitCount());
+    for (int i = size; i < 3 * size; i++) {
+      cache.encode("value" + i);
+      Assertions.assertEquals(size, cache.size());
+    }
+    // Referenced values survive one sweep of the clock
+    cache.encode("value0");
+    Assertions.assertEquals(1, cache.getHitCount());
+    cache.encode("value" + (3 * size - 1));
+    Assertions.assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  void testReferencedValueIsRetained() {
+    final UrlEncoderCache cache = new UrlEncoderCache(3);
+    cache.encode("a");
+    cache.encode("b");
+    cache.encode("c");
+    cache.encode("a");
+    // Evicts b
+    cache.encode("d");
+    final long hits = cache.getHitCount();
+    cache.encode("a");
+    Assertions.assertEquals(hits + 1, cache.getHitCount());
+    cache.encode("b");
+    Assertions.assertEquals(hits + 1, cache.getHitCount());
+  }
+
+  @Test
+  void testAdmissionOfLongValues() {
+    final UrlEncoderCache cache = new UrlEncoderCache(10, 5);
+    final String value = "a long value";
+    cache.encode(value);
+    Assertions.assertEquals(0, cache.size());
+    // Seen before so admitted
+    cache.encode(value);
+    Assertions.assertEquals(1, cache.size());
+    cache.encode(value);
+    Assertions.assertEquals(1, cache.getHitCount());
+    Assertions.assertEquals(2, cache.getMissCount());
+    // Short values are admitted immediately
+    cache.encode("short");
+    Assertions.assertEquals(2, cache.size());
+  }
+
+  @Test
+  void testConcurrentEncode() {
+    final int size = 50;
+    final UrlEncoderCache cache = new UrlEncoderCache(size, 3);
+    IntStream.range(0, 10000).parallel().forEach(i -> {
+      final String value = "value " + (i % 100);
+      Assertions.assertEquals(UrlEncoderHelper.encodeValue(value), cache.encode(value));
+    });
+    Assertions.assertEquals(10000, cache.getHitCount() + cache.getMissCount());
+    Assertions.assertTrue(cache.size() <= size);
+  }
+
+  @Test
+  void testUrlEncoderHelperCache() {
+    Assertions.assertNull(UrlEncoderHelper.getCache());
+    final UrlEncoderCache cache = new UrlEncoderCache(10);
+    UrlEncoderHelper.setCache(cache);
+    try {
+      Assertions.assertSame(cache, UrlEncoderHelper.getCache());
+      Assertions.assertEquals("with+space", UrlEncoderHelper.encode("with space"));
+      Assertions.assertEquals("with+space", UrlEncoderHelper.encode("with space"));
+      Assertions.assertEquals(1, cache.getHitCount());
+      Assertions.assertEquals(1, cache.getMissCount());
+    } finally {
+      UrlEncoderHelper.setCache(null);
+    }
+  }
+}
@@ -111,6 +111,7 @@ class UrlEncoderHelperTest {
       return "<<" + string + ">> == <<" + answer + ">> : <<" + encoded + ">>";
     });
     Assertions.assertEquals(string, decode(encoded));
+    Assertions.assertEquals(string, UrlEncoderHelper.decode(encoded));
   }
 
   private void testEncode(char ch) throws Exception {
@@ -121,6 +122,19 @@ class UrlEncoderHelperTest {
     return URLDecoder.decode(string, "UTF-8");
   }
 
+  @Test
+  void testDecoder() {
+    final String unencoded = "no-decoding_required.*";
+    Assertions.assertSame(unencoded, UrlEncoderHelper.decode(unencoded));
+    Assertions.assertEquals("a b", UrlEncoderHelper.decode("a+b"));
+    Assertions.assertEquals("a&b", UrlEncoderHelper.decode("a%26b"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> UrlEncoderHelper.decode("%"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> UrlEncoderHelper.decode("%zz"));
+    Assertions.assertThrows(UnsupportedEncodingRuntimeException.class, () -> {
+      UrlEncoderHelper.urlDecode("%41", "not UTF-8!");
+    });
+  }
+
   @Test
   void testEncoderThrows() {
     Assertions.assertThrows(UnsupportedEncodingRuntimeException.class, () -> {
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+class HitDecoderTest {
+
+  @Test
+  void testEmptyStream() throws IOException {
+    try (HitDecoder decoder = new HitDecoder(new ByteArrayInputStream(new byte[0]))) {
+      Assertions.assertNull(decoder.read());
+    }
+    // Header only
+    try (HitDecoder decoder = new HitDecoder(new ByteArrayInputStream(HitEncoderTest.encode()))) {
+      Assertions.assertNull(decoder.read());
+      Assertions.assertEquals(0, decoder.getDictionarySize());
+    }
+  }
+
+  @Test
+  void testRead() throws IOException {
+    final byte[] bytes = HitEncoderTest.encode("v=1&dt=title", "v=1&dt=title");
+    try (HitDecoder decoder = new HitDecoder(new ByteArrayInputStream(bytes))) {
+      final StringBuilder sb = new StringBuilder("prefix:");
+      Assertions.assertTrue(decoder.read(sb));
+      Assertions.assertEquals("prefix:v=1&dt=title", sb.toString());
+      Assertions.assertEquals("v=1&dt=title", decoder.read());
+      Assertions.assertEquals(1, decoder.getDictionarySize());
+      Assertions.assertFalse(decoder.read(sb));
+    }
+    Assertions.assertThrows(NullPointerException.class, () -> new HitDecoder(null));
+  }
+
+  @Test
+  void testReadLongString() throws IOException {
+    final char[] chars = new char[20000];
+    Arrays.fill(chars, 'a');
+    final String hit = "v=1&dt=" + new String(chars);
+    Assertions.assertEquals(Arrays.asList(hit, hit),
+        HitEncoderTest.decode(HitEncoderTest.encode(hit, hit)));
+  }
+
+  @Test
+  void testInvalidHeader() throws IOException {
+    final byte[] bytes = HitEncoderTest.encode("v=1");
+    assertThrows(IOException.class, HitEncoderTest.ascii("GAHX"));
+    // Version
+    final byte[] b1 = bytes.clone();
+    b1[BinaryHitFormat.MAGIC.length]++;
+    assertThrows(IOException.class, b1);
+    // Checksum
+    final byte[] b2 = bytes.clone();
+    b2[BinaryHitFormat.MAGIC.length + 3]++;
+    assertThrows(IOException.class, b2);
+    // Truncated
+    assertThrows(EOFException.class, Arrays.copyOf(bytes, 3));
+  }
+
+  @Test
+  void testCorruptData() throws IOException {
+    final byte[] bytes = HitEncoderTest.encode("v=1&dt=title&dp=title");
+    final int header = HitEncoderTest.encode().length;
+    // Truncated hit
+    for (int i = header + 1; i < bytes.length; i++) {
+      assertThrows(EOFException.class, Arrays.copyOf(bytes, i));
+    }
+    // Layout: count, name, tag, ...
+    final byte[] b1 = bytes.clone();
+    b1[header + 1] = 127;
+    assertThrows(IOException.class, b1);
+    final byte[] b2 = bytes.clone();
+    b2[header + 2] = 9;
+    assertThrows(IOException.class, b2);
+    // Dictionary reference to the first entry replaced with an unknown reference
+    final byte[] b3 = bytes.clone();
+    b3[b3.length - 1] = 5;
+    assertThrows(IOException.class, b3);
+    // Varint overflow
+    final byte[] b4 = Arrays.copyOf(bytes, header + 11);
+    Arrays.fill(b4, header, b4.length, (byte) 0xff);
+    assertThrows(IOException.class, b4);
+  }
+
+  @Test
+  void testCorruptStringLength() throws IOException {
+    final byte[] header = HitEncoderTest.encode();
+    // Layout: count, custom name, literal, length, ...
+    final byte[] bytes = Arrays.copyOf(header, header.length + 10);
+    int i = header.length;
+    bytes[i++] = 1;
+    bytes[i++] = BinaryHitFormat.CUSTOM_NAME;
+    bytes[i++] = BinaryHitFormat.LITERAL;
+    // Integer.MAX_VALUE
+    bytes[i++] = (byte) 0xff;
+    bytes[i++] = (byte) 0xff;
+    bytes[i++] = (byte) 0xff;
+    bytes[i++] = (byte) 0xff;
+    bytes[i++] = 0x07;
+    assertThrows(EOFException.class, bytes);
+  }
+
+  private static void assertThrows(Class<? extends IOException> type, byte[] bytes) {
+    Assertions.assertThrows(type, () -> {
+      try (HitDecoder decoder = new HitDecoder(new ByteArrayInputStream(bytes))) {
+        decoder.read();
+      }
+    });
+  }
+}
@@ -0,0 +1,234 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.ac.sussex.gdsc.analytics.parameters.HitType;
+import uk.ac.sussex.gdsc.analytics.parameters.NoIndexCurrencyParameter;
+import uk.ac.sussex.gdsc.analytics.parameters.Parameters;
+import uk.ac.sussex.gdsc.analytics.parameters.ProtocolSpecification;
+import uk.ac.sussex.gdsc.analytics.parameters.UrlEncoderCache;
+import uk.ac.sussex.gdsc.analytics.parameters.UrlEncoderHelper;
+
+@SuppressWarnings("javadoc")
+class HitEncoderTest {
+
+  @Test
+  void testRoundTrip() throws IOException {
+    final List<String> hits = new ArrayList<>();
+    hits.add(Parameters.newRequiredBuilder("UA-12345-6").addHitType(HitType.PAGEVIEW)
+        .addDocumentLocationUrl("http://www.example.com/a?b=c&d")
+        .addDocumentTitle("Complex ἀ Ģ ↛ 😀 title").addCustomDimension(1, "a b")
+        .addCustomMetric(2, -42).addNonInteractionHit(true).addQueueTime(12345678901L)
+        .addCacheBuster().add(new NoIndexCurrencyParameter(
+            ProtocolSpecification.TRANSACTION_REVENUE, Locale.UK, 12.5))
+        .add("custom", "value").build().format());
+    // Edge cases
+    hits.add("");
+    hits.add("v=1");
+    hits.add("a&b=&c=1");
+    // Non-canonical names
+    hits.add("cd012=a&cd0=b&cd12345678901=c&c%64=d&cd_=e&unknown=f");
+    // Non-canonical integers
+    hits.add("cm1=007&cm2=-0&cm3=+1&cm4=1234567890123456789&cm5=-&cm6=1.5&cm7=-123");
+    // Encodings that are not canonical
+    hits.add("dt=%7e&dp=%2f&dl=%zz&dh=a%20b&an=%C2%A3&aid=£");
+    final List<String> actual = roundTrip(hits);
+    Assertions.assertEquals(hits, actual);
+  }
+
+  @Test
+  void testRoundTripLarge() throws IOException {
+    final UniformRandomProvider rng = RandomSource.create(RandomSource.SPLIT_MIX_64);
+    final List<String> hits = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      // Hits from the same client
+      hits.add(Parameters.newRequiredBuilder("UA-12345-6")
+          .addClientId("123e4567-e89b-12d3-a456-426655440000").addHitType(HitType.EVENT)
+          .addEventCategory("Category " + rng.nextInt(5)).addEventAction("Action")
+          .addEventLabel(Long.toHexString(rng.nextLong())).addEventValue(rng.nextInt(1000))
+          .build().format());
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (HitEncoder encoder = new HitEncoder(out)) {
+      for (final String hit : hits) {
+        encoder.write(hit);
+      }
+      // Repeated strings are in the dictionary
+      Assertions.assertTrue(encoder.getDictionarySize() > 0);
+    }
+    final int textSize = hits.stream().mapToInt(String::length).sum();
+    Assertions.assertTrue(out.size() < textSize / 2,
+        () -> "Binary " + out.size() + " >= text/2 " + textSize);
+    Assertions.assertEquals(hits, decode(out.toByteArray()));
+  }
+
+  @Test
+  void testDictionaryLimit() throws IOException {
+    final List<String> hits = new ArrayList<>();
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i <= BinaryHitFormat.MAX_DICTIONARY_STRING_LENGTH; i++) {
+      sb.append('a');
+    }
+    final String longValue = sb.toString();
+    for (int i = 0; i < BinaryHitFormat.MAX_DICTIONARY_SIZE + 10; i++) {
+      hits.add("dt=t" + i + "&dl=" + longValue);
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (HitEncoder encoder = new HitEncoder(out)) {
+      for (final String hit : hits) {
+        encoder.write(hit);
+      }
+      Assertions.assertEquals(BinaryHitFormat.MAX_DICTIONARY_SIZE, encoder.getDictionarySize());
+    }
+    Assertions.assertEquals(hits, decode(out.toByteArray()));
+  }
+
+  @Test
+  void testEncoderCacheIsNotUsed() throws IOException {
+    final UrlEncoderCache previous = UrlEncoderHelper.getCache();
+    final UrlEncoderCache cache = new UrlEncoderCache(10);
+    UrlEncoderHelper.setCache(cache);
+    try {
+      final List<String> hits = new ArrayList<>();
+      hits.add("dt=a+b&dp=%2Fpage%3F1");
+      Assertions.assertEquals(hits, roundTrip(hits));
+      Assertions.assertEquals(0, cache.size());
+      Assertions.assertEquals(0, cache.getMissCount());
+    } finally {
+      UrlEncoderHelper.setCache(previous);
+    }
+  }
+
+  @Test
+  void testReset() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final HitEncoder encoder = new HitEncoder(out);
+    encoder.write("an=app&dt=title");
+    encoder.flush();
+    final byte[] first = out.toByteArray();
+    out.reset();
+    // Unflushed output is discarded
+    encoder.write("dt=other");
+    encoder.reset();
+    Assertions.assertEquals(0, encoder.getDictionarySize());
+    encoder.write("an=app&dt=title");
+    encoder.flush();
+    // The second stream is independent of the first
+    Assertions.assertArrayEquals(first, out.toByteArray());
+    Assertions.assertEquals(Arrays.asList("an=app&dt=title"), decode(out.toByteArray()));
+    encoder.close();
+    Assertions.assertThrows(IOException.class, encoder::reset);
+  }
+
+  @Test
+  void testWriteAfterClose() throws IOException {
+    final HitEncoder encoder = new HitEncoder(new ByteArrayOutputStream());
+    encoder.close();
+    // Close is idempotent
+    encoder.close();
+    Assertions.assertThrows(IOException.class, () -> encoder.write("v=1"));
+  }
+
+  @Test
+  void testFlush() throws IOException {
+    final int[] flushed = {0};
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) {
+        bytes.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        bytes.write(b, off, len);
+      }
+
+      @Override
+      public void flush() {
+        flushed[0]++;
+      }
+    };
+    final HitEncoder encoder = new HitEncoder(out);
+    encoder.write("v=1");
+    Assertions.assertEquals(0, bytes.size());
+    encoder.flush();
+    Assertions.assertEquals(1, flushed[0]);
+    Assertions.assertEquals(1, decode(bytes.toByteArray()).size());
+    Assertions.assertThrows(NullPointerException.class, () -> new HitEncoder(null));
+  }
+
+  static List<String> roundTrip(List<String> hits) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (HitEncoder encoder = new HitEncoder(out)) {
+      for (final String hit : hits) {
+        encoder.write(hit);
+      }
+    }
+    return decode(out.toByteArray());
+  }
+
+  static List<String> decode(byte[] bytes) throws IOException {
+    final List<String> hits = new ArrayList<>();
+    try (HitDecoder decoder = new HitDecoder(new ByteArrayInputStream(bytes))) {
+      for (String hit = decoder.read(); hit != null; hit = decoder.read()) {
+        hits.add(hit);
+      }
+    }
+    return hits;
+  }
+
+  static byte[] encode(String... hits) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (HitEncoder encoder = new HitEncoder(out)) {
+      for (final String hit : hits) {
+        encoder.write(hit);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  static byte[] ascii(String string) {
+    return string.getBytes(StandardCharsets.US_ASCII);
+  }
+}
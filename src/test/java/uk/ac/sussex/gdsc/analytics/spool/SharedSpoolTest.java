@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.HitDispatcher;
+import uk.ac.sussex.gdsc.analytics.HttpUrlConnectionCallback;
+
+@SuppressWarnings("javadoc")
+class SharedSpoolTest {
+
+  /**
+   * Record the hits that are sent.
+   */
+  static class RecordingDispatcher implements HitDispatcher {
+    final List<String> hits = new ArrayList<>();
+    final List<Long> timestamps = new ArrayList<>();
+    DispatchStatus status = DispatchStatus.COMPLETE;
+    boolean disabled;
+
+    @Override
+    public synchronized DispatchStatus send(CharSequence hit, long timestamp,
+        HttpUrlConnectionCallback callback) {
+      if (status == DispatchStatus.COMPLETE) {
+        hits.add(hit.toString());
+        timestamps.add(timestamp);
+      }
+      return status;
+    }
+
+    @Override
+    public IOException getLastIoException() {
+      return null;
+    }
+
+    @Override
+    public boolean isDisabled() {
+      return disabled;
+    }
+
+    @Override
+    public boolean start() {
+      return true;
+    }
+
+    @Override
+    public boolean stop() {
+      return true;
+    }
+
+    synchronized int size() {
+      return hits.size();
+    }
+  }
+
+  @Test
+  void testOpenThrows(@TempDir Path dir) throws IOException {
+    final Path path = dir.resolve("spool");
+    Assertions.assertThrows(NullPointerException.class, () -> SharedSpool.open(null));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> SharedSpool.open(path, SharedSpool.MIN_CAPACITY - 1));
+    final Path bad = dir.resolve("bad");
+    Files.write(bad, new byte[] {1, 2, 3});
+    Assertions.assertThrows(IOException.class, () -> SharedSpool.open(bad));
+    Files.write(bad, new byte[100]);
+    Assertions.assertThrows(IOException.class, () -> SharedSpool.open(bad));
+  }
+
+  @Test
+  void testOpenClampsCapacity(@TempDir Path dir) throws IOException {
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"), Integer.MAX_VALUE)) {
+      final int capacity = spool.getCapacity();
+      Assertions.assertTrue(capacity > Integer.MAX_VALUE - 128, () -> "Capacity: " + capacity);
+      Assertions.assertEquals(0, capacity % 4);
+    }
+  }
+
+  @Test
+  void testAppendAndDrain(@TempDir Path dir) throws IOException {
+    final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"), 2001)) {
+      Assertions.assertEquals(2004, spool.getCapacity());
+      Assertions.assertEquals(0, spool.size());
+      Assertions.assertThrows(IllegalStateException.class, () -> spool.drain(dispatcher, 1));
+      Assertions.assertTrue(spool.append("v=1&t=pageview&dp=%2Fhome", 123));
+      Assertions.assertTrue(spool.append("v=1&t=event&ec=a", 0));
+      Assertions.assertEquals(2, spool.size());
+
+      Assertions.assertFalse(spool.isLeaseHolder());
+      Assertions.assertTrue(spool.tryAcquireLease());
+      Assertions.assertTrue(spool.tryAcquireLease());
+      Assertions.assertTrue(spool.isLeaseHolder());
+      Assertions.assertEquals(1, spool.drain(dispatcher, 1));
+      Assertions.assertEquals(1, spool.size());
+      Assertions.assertEquals(1, spool.drain(dispatcher, 10));
+      Assertions.assertEquals(0, spool.drain(dispatcher, 10));
+      Assertions.assertEquals(0, spool.size());
+      spool.releaseLease();
+      Assertions.assertFalse(spool.isLeaseHolder());
+    }
+    Assertions.assertEquals(2, dispatcher.hits.size());
+    Assertions.assertEquals("v=1&t=pageview&dp=%2Fhome", dispatcher.hits.get(0));
+    Assertions.assertEquals("v=1&t=event&ec=a", dispatcher.hits.get(1));
+    Assertions.assertEquals(123L, dispatcher.timestamps.get(0));
+    Assertions.assertEquals(0L, dispatcher.timestamps.get(1));
+  }
+
+  @Test
+  void testDrainStopsOnError(@TempDir Path dir) throws IOException {
+    final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"))) {
+      spool.append("v=1&t=event", 0);
+      spool.tryAcquireLease();
+      dispatcher.disabled = true;
+      Assertions.assertEquals(0, spool.drain(dispatcher, 10));
+      dispatcher.disabled = false;
+      dispatcher.status = DispatchStatus.ERROR;
+      Assertions.assertEquals(0, spool.drain(dispatcher, 10));
+      Assertions.assertEquals(1, spool.size());
+      dispatcher.status = DispatchStatus.COMPLETE;
+      Assertions.assertEquals(1, spool.drain(dispatcher, 10));
+      Assertions.assertEquals(0, spool.size());
+    }
+  }
+
+  @Test
+  void testConcurrentDrainSendsEachHitOnce(@TempDir Path dir) throws Exception {
+    final int hits = 200;
+    final CountDownLatch started = new CountDownLatch(2);
+    final RecordingDispatcher dispatcher = new RecordingDispatcher() {
+      @Override
+      public DispatchStatus send(CharSequence hit, long timestamp,
+          HttpUrlConnectionCallback callback) {
+        // Allow the other thread to attempt to send the same hit
+        Thread.yield();
+        return super.send(hit, timestamp, callback);
+      }
+    };
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"))) {
+      for (int i = 0; i < hits; i++) {
+        Assertions.assertTrue(spool.append("v=1&t=event&ev=" + i, i));
+      }
+      Assertions.assertTrue(spool.tryAcquireLease());
+      final List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        futures.add(executor.submit(() -> {
+          started.countDown();
+          started.await();
+          return spool.drain(dispatcher, Integer.MAX_VALUE);
+        }));
+      }
+      int count = 0;
+      for (final Future<Integer> future : futures) {
+        count += future.get(30, TimeUnit.SECONDS);
+      }
+      Assertions.assertEquals(hits, count);
+      Assertions.assertEquals(0, spool.size());
+    } finally {
+      executor.shutdown();
+    }
+    Assertions.assertEquals(hits, dispatcher.hits.size());
+    for (int i = 0; i < hits; i++) {
+      Assertions.assertEquals("v=1&t=event&ev=" + i, dispatcher.hits.get(i));
+    }
+  }
+
+  @Test
+  void testDrainMovesFailedHit(@TempDir Path dir) throws IOException {
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"), SharedSpool.MIN_CAPACITY)) {
+      Assertions.assertTrue(spool.append("v=1&t=bad", 1));
+      Assertions.assertTrue(spool.append("v=1&t=good", 2));
+      Assertions.assertTrue(spool.tryAcquireLease());
+      // Fail only the first hit
+      final RecordingDispatcher dispatcher = new RecordingDispatcher() {
+        @Override
+        public synchronized DispatchStatus send(CharSequence hit, long timestamp,
+            HttpUrlConnectionCallback callback) {
+          return hit.toString().endsWith("bad") ? DispatchStatus.ERROR
+              : super.send(hit, timestamp, callback);
+        }
+      };
+      for (int i = 1; i < SharedSpool.MAX_ATTEMPTS; i++) {
+        Assertions.assertEquals(0, spool.drain(dispatcher, 10));
+        Assertions.assertEquals(2, spool.size());
+      }
+      // The failed hit is moved behind the good hit
+      Assertions.assertEquals(0, spool.drain(dispatcher, 10));
+      Assertions.assertEquals(2, spool.size());
+      Assertions.assertEquals(1, spool.drain(dispatcher, 10));
+      Assertions.assertEquals("[v=1&t=good]", dispatcher.hits.toString());
+      Assertions.assertEquals(1, spool.size());
+      final RecordingDispatcher dispatcher2 = new RecordingDispatcher();
+      Assertions.assertEquals(1, spool.drain(dispatcher2, 10));
+      Assertions.assertEquals("[v=1&t=bad]", dispatcher2.hits.toString());
+      Assertions.assertEquals(1L, dispatcher2.timestamps.get(0));
+      Assertions.assertEquals(0, spool.size());
+    }
+  }
+
+  @Test
+  void testWrapAndFull(@TempDir Path dir) throws IOException {
+    final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    final StringBuilder sb = new StringBuilder("v=1&t=event&ec=");
+    for (int i = 0; i < 100; i++) {
+      sb.append('x');
+    }
+    final String hit = sb.toString();
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"), SharedSpool.MIN_CAPACITY)) {
+      spool.tryAcquireLease();
+      int added = 0;
+      while (spool.append(hit, added)) {
+        added++;
+      }
+      Assertions.assertTrue(added > 1);
+      Assertions.assertEquals(1, spool.getDroppedCount());
+      // Repeatedly cycle the ring
+      int expected = 0;
+      for (int i = 0; i < 5; i++) {
+        Assertions.assertEquals(2, spool.drain(dispatcher, 2));
+        Assertions.assertTrue(spool.append(hit, added++));
+        Assertions.assertTrue(spool.append(hit, added++));
+        expected += 2;
+      }
+      Assertions.assertEquals(added - expected, spool.drain(dispatcher, Integer.MAX_VALUE));
+      Assertions.assertEquals(added, dispatcher.hits.size());
+      for (int i = 0; i < added; i++) {
+        Assertions.assertEquals(hit, dispatcher.hits.get(i));
+        Assertions.assertEquals(i, dispatcher.timestamps.get(i));
+      }
+
+      // Too big
+      for (int i = 0; i < SharedSpool.MIN_CAPACITY; i++) {
+        sb.append('x');
+      }
+      Assertions.assertFalse(spool.append(sb, 0));
+      Assertions.assertEquals(2, spool.getDroppedCount());
+    }
+  }
+
+  @Test
+  void testLeaseIsExclusive(@TempDir Path dir) throws IOException {
+    final Path path = dir.resolve("spool");
+    final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    try (SharedSpool spool1 = SharedSpool.open(path);
+        SharedSpool spool2 = SharedSpool.open(path, SharedSpool.MIN_CAPACITY)) {
+      // Existing capacity is used
+      Assertions.assertEquals(SharedSpool.DEFAULT_CAPACITY, spool2.getCapacity());
+      Assertions.assertTrue(spool1.tryAcquireLease());
+      Assertions.assertFalse(spool2.tryAcquireLease());
+      // Both can append
+      spool1.append("v=1&t=event&ec=1", 0);
+      spool2.append("v=1&t=event&ec=2", 0);
+      Assertions.assertEquals(2, spool2.size());
+      Assertions.assertEquals(2, spool1.drain(dispatcher, 10));
+      Assertions.assertEquals(0, spool2.size());
+      // Take over when released
+      spool1.close();
+      Assertions.assertThrows(IOException.class, () -> spool1.append("v=1", 0));
+      Assertions.assertTrue(spool2.tryAcquireLease());
+    }
+  }
+
+  @Test
+  void testReopen(@TempDir Path dir) throws IOException {
+    final Path path = dir.resolve("spool");
+    try (SharedSpool spool = SharedSpool.open(path)) {
+      spool.append("v=1&t=event&ec=1", 42);
+    }
+    final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    try (SharedSpool spool = SharedSpool.open(path)) {
+      Assertions.assertEquals(1, spool.size());
+      spool.tryAcquireLease();
+      Assertions.assertEquals(1, spool.drain(dispatcher, 10));
+    }
+    Assertions.assertEquals("v=1&t=event&ec=1", dispatcher.hits.get(0));
+    Assertions.assertEquals(42L, dispatcher.timestamps.get(0));
+  }
+
+  @Test
+  void testStartSender(@TempDir Path dir) throws IOException, InterruptedException {
+    final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"))) {
+      spool.startSender(dispatcher, executor, 10, TimeUnit.MILLISECONDS);
+      spool.append("v=1&t=event&ec=1", 0);
+      spool.append("v=1&t=event&ec=2", 0);
+      final long end = System.currentTimeMillis() + 5000;
+      while (dispatcher.size() < 2 && System.currentTimeMillis() < end) {
+        Thread.sleep(10);
+      }
+      Assertions.assertEquals(2, dispatcher.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+
+@SuppressWarnings("javadoc")
+class SpoolHitDispatcherTest {
+
+  @Test
+  void testSend(@TempDir Path dir) throws IOException {
+    Assertions.assertThrows(NullPointerException.class, () -> new SpoolHitDispatcher(null));
+    final SharedSpool spool = SharedSpool.open(dir.resolve("spool"), SharedSpool.MIN_CAPACITY);
+    final SpoolHitDispatcher dispatcher = new SpoolHitDispatcher(spool);
+    Assertions.assertSame(spool, dispatcher.getSpool());
+    Assertions.assertFalse(dispatcher.isDisabled());
+    Assertions.assertThrows(NullPointerException.class, () -> dispatcher.send(null, 0));
+    Assertions.assertEquals(DispatchStatus.COMPLETE, dispatcher.send("v=1&t=event", 0));
+    Assertions.assertEquals(1, spool.size());
+
+    final StringBuilder sb = new StringBuilder("v=1&t=event&ec=");
+    for (int i = 0; i < SharedSpool.MIN_CAPACITY; i++) {
+      sb.append('x');
+    }
+    // Full
+    Assertions.assertEquals(DispatchStatus.ERROR, dispatcher.send(sb, 0));
+    Assertions.assertNull(dispatcher.getLastIoException());
+
+    Assertions.assertTrue(dispatcher.stop());
+    Assertions.assertTrue(dispatcher.isDisabled());
+    Assertions.assertEquals(DispatchStatus.DISABLED, dispatcher.send("v=1&t=event", 0));
+    Assertions.assertTrue(dispatcher.start());
+
+    // Closed
+    spool.close();
+    Assertions.assertEquals(DispatchStatus.ERROR, dispatcher.send("v=1&t=event", 0));
+    Assertions.assertNotNull(dispatcher.getLastIoException());
+    Assertions.assertTrue(dispatcher.isDisabled());
+    Assertions.assertTrue(dispatcher.start());
+    Assertions.assertFalse(dispatcher.isDisabled());
+  }
+}
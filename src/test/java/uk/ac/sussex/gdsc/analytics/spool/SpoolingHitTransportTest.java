@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * Genome Damage and Stability Centre Analytics Package
+ *
+ * The GDSC Analytics package contains code to use the Google Analytics
+ * Measurement protocol to collect usage information from a Java application.
+ * %%
+ * Copyright (C) 2016 - 2020 Alex Herbert
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+package uk.ac.sussex.gdsc.analytics.spool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.sussex.gdsc.analytics.DispatchStatus;
+import uk.ac.sussex.gdsc.analytics.GzipHitTransport;
+import uk.ac.sussex.gdsc.analytics.HitBatch;
+import uk.ac.sussex.gdsc.analytics.HitTransport;
+import uk.ac.sussex.gdsc.analytics.spool.SharedSpoolTest.RecordingDispatcher;
+
+@SuppressWarnings("javadoc")
+class SpoolingHitTransportTest {
+
+  private static CompletableFuture<DispatchStatus> failed(Throwable ex) {
+    final CompletableFuture<DispatchStatus> result = new CompletableFuture<>();
+    result.completeExceptionally(ex);
+    return result;
+  }
+
+  private static ByteBuffer encode(String hit) {
+    return ByteBuffer.wrap(hit.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testSend(@TempDir Path dir) throws IOException {
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"), SharedSpool.MIN_CAPACITY)) {
+      Assertions.assertThrows(NullPointerException.class,
+          () -> new SpoolingHitTransport(null, spool));
+      final HitTransport complete =
+          (payload, batch) -> CompletableFuture.completedFuture(DispatchStatus.COMPLETE);
+      Assertions.assertThrows(NullPointerException.class,
+          () -> new SpoolingHitTransport(complete, null));
+
+      // Sent hits are not stored
+      SpoolingHitTransport transport = new SpoolingHitTransport(complete, spool);
+      Assertions.assertSame(spool, transport.getSpool());
+      Assertions.assertEquals(DispatchStatus.COMPLETE,
+          transport.send(encode("v=1&t=event"), HitBatch.single()).join());
+      transport = new SpoolingHitTransport(
+          (payload, batch) -> CompletableFuture.completedFuture(DispatchStatus.ERROR), spool);
+      Assertions.assertEquals(DispatchStatus.ERROR,
+          transport.send(encode("v=1&t=event"), HitBatch.single()).join());
+      Assertions.assertEquals(0, spool.size());
+
+      // Other failures are not stored
+      final IllegalStateException exception = new IllegalStateException();
+      transport = new SpoolingHitTransport((payload, batch) -> failed(exception), spool);
+      final CompletableFuture<DispatchStatus> result =
+          transport.send(encode("v=1&t=event"), HitBatch.single());
+      final CompletionException ex =
+          Assertions.assertThrows(CompletionException.class, result::join);
+      Assertions.assertSame(exception, ex.getCause());
+      Assertions.assertEquals(0, spool.size());
+
+      // Stored when the transport fails
+      transport = new SpoolingHitTransport(
+          (payload, batch) -> failed(new IOException("No connection")), spool);
+      final long start = System.currentTimeMillis();
+      final ByteBuffer payload = encode("v=1&qt=5000&t=event\nv=1&t=pageview&qt=x\n\nv=1&qt=10");
+      Assertions.assertEquals(DispatchStatus.COMPLETE,
+          transport.send(payload, HitBatch.of(3)).join());
+      final long end = System.currentTimeMillis();
+      Assertions.assertEquals(0, payload.position());
+      Assertions.assertEquals(3, spool.size());
+
+      // Payloads that are not URL encoded hits are not stored
+      final CompletableFuture<DispatchStatus> result3 =
+          transport.send(encode("{}"), HitBatch.single().withContentType("application/json"));
+      final CompletionException ex3 =
+          Assertions.assertThrows(CompletionException.class, result3::join);
+      Assertions.assertTrue(ex3.getCause() instanceof IOException);
+      Assertions.assertEquals(3, spool.size());
+
+      // Encoded payloads are not stored
+      final CompletableFuture<DispatchStatus> result4 =
+          transport.send(encode("v=1&t=event"), HitBatch.single().withContentEncoding("gzip"));
+      final CompletionException ex4 =
+          Assertions.assertThrows(CompletionException.class, result4::join);
+      Assertions.assertTrue(ex4.getCause() instanceof IOException);
+      Assertions.assertEquals(3, spool.size());
+
+      final RecordingDispatcher dispatcher = new RecordingDispatcher();
+      spool.tryAcquireLease();
+      Assertions.assertEquals(3, spool.drain(dispatcher, 10));
+      Assertions.assertEquals("v=1&t=event", dispatcher.hits.get(0));
+      Assertions.assertEquals("v=1&t=pageview", dispatcher.hits.get(1));
+      Assertions.assertEquals("v=1", dispatcher.hits.get(2));
+      final long timestamp = dispatcher.timestamps.get(0);
+      Assertions.assertTrue(timestamp >= start - 5000 && timestamp <= end - 5000);
+      // Invalid queue time is ignored
+      final long timestamp1 = dispatcher.timestamps.get(1);
+      Assertions.assertTrue(timestamp1 >= start && timestamp1 <= end);
+      final long timestamp2 = dispatcher.timestamps.get(2);
+      Assertions.assertTrue(timestamp2 >= start - 10 && timestamp2 <= end - 10);
+
+      // Full
+      final StringBuilder sb = new StringBuilder("v=1&t=event&ec=");
+      for (int i = 0; i < SharedSpool.MIN_CAPACITY; i++) {
+        sb.append('x');
+      }
+      Assertions.assertEquals(DispatchStatus.ERROR,
+          transport.send(encode(sb.toString()), HitBatch.single()).join());
+
+      // Closed
+      spool.close();
+      final CompletableFuture<DispatchStatus> result2 =
+          transport.send(encode("v=1&t=event"), HitBatch.single());
+      final CompletionException ex2 =
+          Assertions.assertThrows(CompletionException.class, result2::join);
+      Assertions.assertTrue(ex2.getCause() instanceof IOException);
+      Assertions.assertEquals(1, ex2.getCause().getSuppressed().length);
+    }
+  }
+
+  @Test
+  void testSendWithGzip(@TempDir Path dir) throws IOException {
+    try (SharedSpool spool = SharedSpool.open(dir.resolve("spool"), SharedSpool.MIN_CAPACITY)) {
+      final HitTransport failing = (payload, batch) -> failed(new IOException("No connection"));
+
+      // Compressed hits are not stored
+      final HitTransport gzipSpooling =
+          new GzipHitTransport(new SpoolingHitTransport(failing, spool));
+      final CompletableFuture<DispatchStatus> result =
+          gzipSpooling.send(encode("v=1&t=event\nv=1&t=pageview"), HitBatch.of(2));
+      final CompletionException ex =
+          Assertions.assertThrows(CompletionException.class, result::join);
+      Assertions.assertTrue(ex.getCause() instanceof IOException);
+      Assertions.assertEquals(0, spool.size());
+
+      // Hits are stored before compression
+      final HitTransport spoolingGzip =
+          new SpoolingHitTransport(new GzipHitTransport(failing), spool);
+      Assertions.assertEquals(DispatchStatus.COMPLETE,
+          spoolingGzip.send(encode("v=1&t=event\nv=1&t=pageview"), HitBatch.of(2)).join());
+      Assertions.assertEquals(2, spool.size());
+      final RecordingDispatcher dispatcher = new RecordingDispatcher();
+      spool.tryAcquireLease();
+      Assertions.assertEquals(2, spool.drain(dispatcher, 10));
+      Assertions.assertEquals("v=1&t=event", dispatcher.hits.get(0));
+      Assertions.assertEquals("v=1&t=pageview", dispatcher.hits.get(1));
+      // Missing queue time uses the time the hit was stored
+      Assertions.assertNotEquals(0L, dispatcher.timestamps.get(0));
+    }
+  }
+}